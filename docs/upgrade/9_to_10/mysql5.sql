@@ -0,0 +1,46 @@
+-- Store long job payloads compressed in a table of their own
+ALTER TABLE oc_job ADD COLUMN payload_stored TINYINT(1) NOT NULL DEFAULT 0;
+CREATE TABLE oc_job_payload (
+  id BIGINT(20) NOT NULL,
+  payload_length INTEGER NOT NULL,
+  data LONGBLOB,
+  PRIMARY KEY (id)
+) ENGINE=InnoDB DEFAULT CHARSET=utf8;
+
+-- Keep job trees which terminated long ago in an archive table
+CREATE TABLE oc_job_archive (
+  id BIGINT(20) NOT NULL,
+  creator TEXT NOT NULL,
+  organization VARCHAR(128) NOT NULL,
+  instance_version BIGINT(20) DEFAULT NULL,
+  status INTEGER DEFAULT NULL,
+  job_type VARCHAR(255) DEFAULT NULL,
+  operation VARCHAR(128) DEFAULT NULL,
+  created_host VARCHAR(255) DEFAULT NULL,
+  processing_host VARCHAR(255) DEFAULT NULL,
+  date_created DATETIME DEFAULT NULL,
+  date_started DATETIME DEFAULT NULL,
+  date_completed DATETIME DEFAULT NULL,
+  date_archived DATETIME DEFAULT NULL,
+  queue_time BIGINT(20) DEFAULT NULL,
+  run_time BIGINT(20) DEFAULT NULL,
+  payload LONGBLOB,
+  parent BIGINT(20) DEFAULT NULL,
+  root BIGINT(20) DEFAULT NULL,
+  dispatchable TINYINT(1) DEFAULT 0,
+  job_load FLOAT NOT NULL DEFAULT 1.0,
+  PRIMARY KEY (id),
+  INDEX IX_oc_job_archive_parent (parent),
+  INDEX IX_oc_job_archive_root (root),
+  INDEX IX_oc_job_archive_status (status),
+  INDEX IX_oc_job_archive_job_type (job_type),
+  INDEX IX_oc_job_archive_operation (operation),
+  INDEX IX_oc_job_archive_date_created (date_created)
+) ENGINE=InnoDB DEFAULT CHARSET=utf8;
+
+CREATE TABLE oc_job_archive_argument (
+  id BIGINT(20) NOT NULL,
+  argument LONGTEXT,
+  argument_index INTEGER DEFAULT NULL,
+  INDEX IX_oc_job_archive_argument_id (id)
+) ENGINE=InnoDB DEFAULT CHARSET=utf8;
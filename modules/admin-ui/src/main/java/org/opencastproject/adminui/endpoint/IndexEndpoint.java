@@ -141,7 +141,9 @@ public class IndexEndpoint {
 
   @POST
   @Path("recreateIndex")
-  @RestQuery(name = "recreateIndex", description = "Clear and repopulates the Admin UI Index directly from the Services",
+  @RestQuery(name = "recreateIndex",
+    description = "Repopulates a new Admin UI Index directly from the Services, which replaces the current one "
+      + "when done",
     returnDescription = "OK if repopulation has started", responses = {
     @RestResponse(description = "OK if repopulation has started", responseCode = HttpServletResponse.SC_OK) })
   public Response recreateIndex() {
@@ -157,4 +159,24 @@ public class IndexEndpoint {
     }));
     return R.ok();
   }
+
+  @POST
+  @Path("resumeIndexRebuild")
+  @RestQuery(name = "resumeIndexRebuild",
+    description = "Resumes a failed repopulation of the Admin UI Index, skipping services which are done",
+    returnDescription = "OK if repopulation has resumed", responses = {
+    @RestResponse(description = "OK if repopulation has resumed", responseCode = HttpServletResponse.SC_OK) })
+  public Response resumeIndexRebuild() {
+    final SecurityContext securityContext = new SecurityContext(securityService, securityService.getOrganization(),
+            securityService.getUser());
+    executor.execute(() -> securityContext.runInContext(() -> {
+      try {
+        logger.info("Resuming to repopulate the index");
+        indexRebuildService.resumeIndexRebuild(adminUISearchIndex);
+      } catch (Throwable t) {
+        logger.error("Repopulating the index failed", t);
+      }
+    }));
+    return R.ok();
+  }
 }
@@ -39,6 +39,21 @@ public interface ASelectQuery {
    */
   ASelectQuery page(int offset, int size);
 
+  /**
+   * Set keyset paging information. The records are ordered by their {@link ARecord#getSnapshotId() snapshot ID} and
+   * the page starts right after the given snapshot. Unlike {@link #page(int, int)}, the database does not need to skip
+   * the records of all previous pages, so paging through large results stays fast. Pass the snapshot ID of the last
+   * record of a page to get the next one, until a page is empty.
+   * <p>
+   * The page size limits the number of rows, so do not use this to fetch properties.
+   *
+   * @param snapshotId
+   *          the snapshot ID of the last record of the previous page or -1 for the first page
+   * @param size
+   *          the page size
+   */
+  ASelectQuery pageAfter(long snapshotId, int size);
+
   /**
    * Specify an order.
    */
@@ -40,6 +40,10 @@ public class ASelectQueryDecorator implements ASelectQuery {
     return mkDecorator(delegate.page(offset, size));
   }
 
+  @Override public ASelectQuery pageAfter(long snapshotId, int size) {
+    return mkDecorator(delegate.pageAfter(snapshotId, size));
+  }
+
   @Override public ASelectQuery orderBy(Order order) {
     return mkDecorator(delegate.orderBy(order));
   }
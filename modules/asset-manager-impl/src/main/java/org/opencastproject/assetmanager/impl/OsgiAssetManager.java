@@ -20,16 +20,15 @@
  */
 package org.opencastproject.assetmanager.impl;
 
-import static org.opencastproject.assetmanager.api.fn.Enrichments.enrich;
-
 import org.opencastproject.assetmanager.api.Asset;
 import org.opencastproject.assetmanager.api.AssetManager;
 import org.opencastproject.assetmanager.api.Availability;
 import org.opencastproject.assetmanager.api.Property;
 import org.opencastproject.assetmanager.api.Snapshot;
 import org.opencastproject.assetmanager.api.Version;
-import org.opencastproject.assetmanager.api.fn.Snapshots;
 import org.opencastproject.assetmanager.api.query.AQueryBuilder;
+import org.opencastproject.assetmanager.api.query.ARecord;
+import org.opencastproject.assetmanager.api.query.AResult;
 import org.opencastproject.assetmanager.api.query.RichAResult;
 import org.opencastproject.assetmanager.impl.persistence.Database;
 import org.opencastproject.assetmanager.impl.storage.AssetStore;
@@ -40,6 +39,7 @@ import org.opencastproject.index.rebuild.IndexProducer;
 import org.opencastproject.index.rebuild.IndexRebuildException;
 import org.opencastproject.index.rebuild.IndexRebuildService;
 import org.opencastproject.mediapackage.MediaPackage;
+import org.opencastproject.message.broker.api.MessageBarrier;
 import org.opencastproject.message.broker.api.MessageReceiver;
 import org.opencastproject.message.broker.api.MessageSender;
 import org.opencastproject.message.broker.api.assetmanager.AssetManagerItem;
@@ -97,6 +97,9 @@ public class OsgiAssetManager extends AbstractIndexProducer implements AssetMana
    */
   private static final Logger logger = LoggerFactory.getLogger(OsgiAssetManager.class);
 
+  /** The number of snapshots loaded at once when repopulating an index */
+  private static final int REPOPULATE_PAGE_SIZE = 1000;
+
   private SecurityService secSvc;
   private AuthorizationService authSvc;
   private OrganizationDirectoryService orgDir;
@@ -443,46 +446,63 @@ public class OsgiAssetManager extends AbstractIndexProducer implements AssetMana
   public void repopulate(final AbstractSearchIndex index) throws IndexRebuildException {
     final Organization org = secSvc.getOrganization();
     final User user = (org != null ? secSvc.getUser() : null);
+    final String destinationId = AssetManagerItem.ASSETMANAGER_QUEUE_PREFIX
+            + WordUtils.capitalize(index.getIndexName());
     try {
       final Organization defaultOrg = new DefaultOrganization();
       final User systemUser = SecurityUtil.createSystemUser(systemUserName, defaultOrg);
       secSvc.setOrganization(defaultOrg);
       secSvc.setUser(systemUser);
 
-      final AQueryBuilder q = delegate.createQuery();
-      final RichAResult r = enrich(q.select(q.snapshot()).where(q.version().isLatest()).run());
-      final int total = r.countSnapshots();
+      int total = 0;
+      for (Organization organization : orgDir.getOrganizations()) {
+        total += (int) delegate.countEvents(organization.getId());
+      }
       int current = 0;
       logIndexRebuildBegin(logger, index.getIndexName(), total, "snapshot(s)");
 
-      final Map<String, List<Snapshot>> byOrg = r.getSnapshots().groupMulti(Snapshots.getOrganizationId);
-      for (String orgId : byOrg.keySet()) {
-        final Organization snapshotOrg;
-        try {
-          snapshotOrg = orgDir.getOrganization(orgId);
-          secSvc.setOrganization(snapshotOrg);
-          secSvc.setUser(SecurityUtil.createSystemUser(systemUserName, snapshotOrg));
-
-          for (Snapshot snapshot : byOrg.get(orgId)) {
-            current += 1;
+      // Page through the latest snapshots instead of loading all of them at once
+      final Map<String, Organization> organizations = new HashMap<>();
+      long lastSnapshotId = -1;
+      while (true) {
+        final AQueryBuilder q = delegate.createQuery();
+        final AResult page = q.select(q.snapshot()).where(q.version().isLatest())
+                .pageAfter(lastSnapshotId, REPOPULATE_PAGE_SIZE).run();
+        if (page.getSize() == 0) {
+          break;
+        }
+        for (ARecord record : page) {
+          lastSnapshotId = record.getSnapshotId();
+          final Snapshot snapshot = record.getSnapshot().get();
+          final String orgId = snapshot.getOrganizationId();
+          current += 1;
+          try {
+            Organization snapshotOrg = organizations.get(orgId);
+            if (snapshotOrg == null) {
+              snapshotOrg = orgDir.getOrganization(orgId);
+              organizations.put(orgId, snapshotOrg);
+            }
+            secSvc.setOrganization(snapshotOrg);
+            secSvc.setUser(SecurityUtil.createSystemUser(systemUserName, snapshotOrg));
             try {
               AssetManagerItem.TakeSnapshot takeSnapshot = withMessaging.mkTakeSnapshotMessage(snapshot, null);
-              messageSender.sendObjectMessage(
-                      AssetManagerItem.ASSETMANAGER_QUEUE_PREFIX + WordUtils.capitalize(index.getIndexName()),
-                      MessageSender.DestinationType.Queue, takeSnapshot);
+              messageSender.sendObjectMessage(destinationId, MessageSender.DestinationType.Queue, takeSnapshot);
             } catch (Throwable t) {
               logSkippingElement(logger, "event", snapshot.getMediaPackage().getIdentifier().toString(), org, t);
             }
             logIndexRebuildProgress(logger, index.getIndexName(), total, current);
+          } catch (Throwable t) {
+            logIndexRebuildError(logger, index.getIndexName(), t, org);
+            throw new IndexRebuildException(index.getIndexName(), getService(), org, t);
+          } finally {
+            secSvc.setOrganization(defaultOrg);
+            secSvc.setUser(systemUser);
           }
-        } catch (Throwable t) {
-          logIndexRebuildError(logger, index.getIndexName(), t, org);
-          throw new IndexRebuildException(index.getIndexName(), getService(), org, t);
-        } finally {
-          secSvc.setOrganization(defaultOrg);
-          secSvc.setUser(systemUser);
         }
       }
+      // The snapshots are added to the index asynchronously by the receiver of the queue
+      awaitMessagesProcessed(logger, index, barrier -> messageSender.sendObjectMessage(destinationId,
+              MessageSender.DestinationType.Queue, new MessageBarrier(barrier)));
     } finally {
       secSvc.setOrganization(org);
       secSvc.setUser(user);
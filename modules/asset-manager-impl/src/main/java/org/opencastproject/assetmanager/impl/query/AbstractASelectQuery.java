@@ -93,6 +93,17 @@ public abstract class AbstractASelectQuery implements ASelectQuery, SelectQueryC
     };
   }
 
+  @Override public ASelectQuery pageAfter(final long snapshotId, final int size) {
+    return new AbstractASelectQuery(am) {
+      @Override public SelectQueryContribution contributeSelect(JPAQueryFactory f) {
+        return self.contributeSelect(f)
+                .andWhere(Q_SNAPSHOT.id.gt(snapshotId))
+                .order($(Q_SNAPSHOT.id.asc()))
+                .limit(size);
+      }
+    };
+  }
+
   @Override public ASelectQuery orderBy(final Order order) {
     return new AbstractASelectQuery(am) {
       @Override public SelectQueryContribution contributeSelect(JPAQueryFactory f) {
@@ -39,6 +39,7 @@ public class ASelectQueryDecoratorTest extends AbstractAssetManagerTestBase {
     assertThat(s.where(q.always()), instanceOf(ASelectQueryDecorator.class));
     assertThat(s.orderBy(q.organizationId().asc()), instanceOf(ASelectQueryDecorator.class));
     assertThat(s.page(0, 1), instanceOf(ASelectQueryDecorator.class));
+    assertThat(s.pageAfter(-1, 1), instanceOf(ASelectQueryDecorator.class));
     assertNotEquals(delegate.getClass(), s.getClass());
   }
 }
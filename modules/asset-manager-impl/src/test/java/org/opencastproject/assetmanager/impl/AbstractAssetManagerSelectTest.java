@@ -61,6 +61,7 @@ import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.junit.runners.MethodSorters;
 
+import java.util.ArrayList;
 import java.util.Date;
 import java.util.List;
 
@@ -754,4 +755,28 @@ public class AbstractAssetManagerSelectTest extends AbstractAssetManagerTestBase
     assertEquals(1, q.select().page(4, 5).where(q.seriesId().eq("series-1")).run().getSize());
     assertEquals(1, q.select().where(q.seriesId().eq("series-1")).page(4, 5).run().getSize());
   }
+
+  @Test
+  public void testKeysetPaging() throws Exception {
+    final String[] mpIds = createAndAddMediaPackagesSimple(5, 2, 2);
+    final List<String> paged = new ArrayList<>();
+    long last = -1;
+    int pages = 0;
+    while (true) {
+      final AResult page = q.select(q.snapshot()).where(q.version().isLatest()).pageAfter(last, 2).run();
+      if (page.getSize() == 0) {
+        break;
+      }
+      assertThat(page.getSize(), lessThanOrEqualTo(2L));
+      for (ARecord record : page) {
+        assertTrue("Records are ordered by snapshot ID", record.getSnapshotId() > last);
+        last = record.getSnapshotId();
+        paged.add(record.getMediaPackageId());
+      }
+      pages++;
+    }
+    assertEquals(3, pages);
+    assertEquals($(mpIds).toSet(), $(paged).toSet());
+    assertEquals(mpIds.length, paged.size());
+  }
 }
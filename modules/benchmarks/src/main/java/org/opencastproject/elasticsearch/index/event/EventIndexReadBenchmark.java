@@ -0,0 +1,115 @@
+/**
+ * Licensed to The Apereo Foundation under one or more contributor license
+ * agreements. See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ *
+ * The Apereo Foundation licenses this file to you under the Educational
+ * Community License, Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License. You may obtain a copy of the License
+ * at:
+ *
+ *   http://opensource.org/licenses/ecl2.txt
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ *
+ */
+
+package org.opencastproject.elasticsearch.index.event;
+
+import org.opencastproject.elasticsearch.impl.SearchMetadataCollection;
+import org.opencastproject.mediapackage.Publication;
+import org.opencastproject.mediapackage.PublicationImpl;
+import org.opencastproject.util.MimeTypes;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import javax.xml.bind.Unmarshaller;
+
+/**
+ * Compares the cost of reading an event from a search hit stored as JAXB XML, as written by earlier versions, with
+ * reading it from the JSON document written now. The publications are read as well, so both formats produce a fully
+ * populated event.
+ * <p>
+ * Run with <code>java -jar modules/benchmarks/target/benchmarks.jar EventIndexReadBenchmark</code>.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class EventIndexReadBenchmark {
+
+  /** The format the event is stored in */
+  @Param({ "xml", "json" })
+  public String format;
+
+  private SearchMetadataCollection hit;
+
+  private Unmarshaller unmarshaller;
+
+  @Setup(Level.Trial)
+  public void setUp() throws Exception {
+    final Event event = createEvent();
+    hit = new SearchMetadataCollection("event", Event.DOCUMENT_TYPE);
+    hit.addField(EventIndexSchema.OBJECT, "xml".equals(format) ? event.toXML() : event.toIndexJson(), false);
+    unmarshaller = Event.createUnmarshaller();
+    if (!event.toXML().equals(EventIndexUtils.toRecordingEvent(hit, unmarshaller).toXML())) {
+      throw new IllegalStateException("Reading the event from " + format + " does not yield the same event");
+    }
+  }
+
+  @Benchmark
+  public List<Publication> read() throws IOException {
+    return EventIndexUtils.toRecordingEvent(hit, unmarshaller).getPublications();
+  }
+
+  private static Event createEvent() {
+    final Event event = new Event("event", "mh_default_org");
+    event.setTitle("Land and Vegetation: Key players on the Climate Scene");
+    event.setDescription("This is the description for this event.");
+    event.setPresenters(Arrays.asList("presenter-one", "presenter-two"));
+    event.setContributors(Arrays.asList("contributor-one", "contributor-two"));
+    event.setSeriesId("series");
+    event.setSeriesName("Climate");
+    event.setWorkflowId(42L);
+    event.setDuration(3600000L);
+    event.setAccessPolicy("{\"acl\":{\"ace\":[{\"action\":\"read\",\"allow\":true,\"role\":\"ROLE_USER\"}]}}");
+    final Map<String, String> agentConfiguration = new HashMap<>();
+    agentConfiguration.put("capture.device.names", "presenter,presentation");
+    event.setAgentConfiguration(agentConfiguration);
+    final List<Publication> publications = new ArrayList<>();
+    for (String channel : Arrays.asList("engage-player", "api", "internal")) {
+      publications.add(PublicationImpl.publication(channel, channel, URI.create("http://localhost/" + channel),
+              MimeTypes.parseMimeType("text/html")));
+    }
+    event.setPublications(publications);
+    return event;
+  }
+
+}
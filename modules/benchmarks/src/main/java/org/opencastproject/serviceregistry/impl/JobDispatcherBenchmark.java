@@ -0,0 +1,87 @@
+/**
+ * Licensed to The Apereo Foundation under one or more contributor license
+ * agreements. See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ *
+ * The Apereo Foundation licenses this file to you under the Educational
+ * Community License, Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License. You may obtain a copy of the License
+ * at:
+ *
+ *   http://opensource.org/licenses/ecl2.txt
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ *
+ */
+
+
+package org.opencastproject.serviceregistry.impl;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the duration of a single {@link JobDispatcher} run over a given number of queued
+ * jobs. Every run starts from the same state: all jobs are queued and the simulated hosts are idle, so that each run
+ * dispatches jobs until the hosts are fully loaded and then skips the remaining jobs.
+ * <p>
+ * Run with <code>java -jar modules/benchmarks/target/benchmarks.jar JobDispatcherBenchmark</code>.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 20)
+@Fork(1)
+public class JobDispatcherBenchmark {
+
+  /** The number of queued jobs in the job table */
+  @Param({ "1000", "10000", "100000" })
+  public int queuedJobs;
+
+  /** The number of simulated hosts */
+  @Param({ "10" })
+  public int hosts;
+
+  private ServiceRegistryFixture fixture;
+
+  @Setup(Level.Trial)
+  public void setUp() throws Exception {
+    fixture = new ServiceRegistryFixture(hosts);
+    fixture.queueJobs(queuedJobs, null);
+  }
+
+  @Setup(Level.Invocation)
+  public void requeue() {
+    fixture.requeueJobs();
+  }
+
+  @TearDown(Level.Trial)
+  public void tearDown() {
+    fixture.close();
+  }
+
+  @Benchmark
+  public void dispatch() {
+    new JobDispatcher(fixture.getServiceRegistry()).run();
+  }
+
+}
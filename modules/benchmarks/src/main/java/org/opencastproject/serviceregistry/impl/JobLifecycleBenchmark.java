@@ -0,0 +1,145 @@
+/**
+ * Licensed to The Apereo Foundation under one or more contributor license
+ * agreements. See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ *
+ * The Apereo Foundation licenses this file to you under the Educational
+ * Community License, Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License. You may obtain a copy of the License
+ * at:
+ *
+ *   http://opensource.org/licenses/ecl2.txt
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ *
+ */
+
+
+package org.opencastproject.serviceregistry.impl;
+
+import org.opencastproject.job.api.Job;
+import org.opencastproject.job.api.Job.Status;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures throughput and latency of creating, updating and loading single jobs while the job table holds a given
+ * number of queued jobs.
+ * <p>
+ * Run with <code>java -jar modules/benchmarks/target/benchmarks.jar JobLifecycleBenchmark</code>.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({ Mode.Throughput, Mode.SampleTime })
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 10)
+@Measurement(iterations = 5, time = 10)
+@Fork(1)
+public class JobLifecycleBenchmark {
+
+  /** The number of jobs updated in turns by {@link #updateJob()} */
+  private static final int UPDATED_JOBS = 100;
+
+  /** Seed of the job selection, so that runs access the same jobs in the same order */
+  private static final long SEED = 42L;
+
+  /** The payloads of the benchmark jobs, each about the size of a small media package */
+  private static final String[] PAYLOADS = new String[2];
+
+  static {
+    for (int i = 0; i < PAYLOADS.length; i++) {
+      StringBuilder payload = new StringBuilder("<mediapackage id=\"mp-" + i + "\"><media>");
+      for (int j = 0; j < 20; j++) {
+        payload.append("<track id=\"track-").append(j).append("\"><mimetype>video/mp4</mimetype>")
+                .append("<url>http://localhost:8080/files/mediapackage/mp-").append(i).append("/track-").append(j)
+                .append("/presenter.mp4</url></track>");
+      }
+      PAYLOADS[i] = payload.append("</media></mediapackage>").toString();
+    }
+  }
+
+  /** The number of queued jobs in the job table */
+  @Param({ "1000", "10000", "100000" })
+  public int queuedJobs;
+
+  /** The number of simulated hosts */
+  @Param({ "10" })
+  public int hosts;
+
+  private ServiceRegistryFixture fixture;
+
+  private ServiceRegistryJpaImpl serviceRegistry;
+
+  private List<Long> queuedJobIds;
+
+  private List<Job> updatedJobs;
+
+  private Random random;
+
+  private int next = 0;
+
+  @Setup(Level.Trial)
+  public void setUp() throws Exception {
+    fixture = new ServiceRegistryFixture(hosts);
+    serviceRegistry = fixture.getServiceRegistry();
+    queuedJobIds = fixture.queueJobs(queuedJobs, PAYLOADS[0]);
+    updatedJobs = new ArrayList<>(UPDATED_JOBS);
+    for (int i = 0; i < UPDATED_JOBS; i++) {
+      Job job = serviceRegistry.createJob(fixture.getHosts().get(i % hosts), ServiceRegistryFixture.JOB_TYPES[0],
+              ServiceRegistryFixture.OPERATION, ServiceRegistryFixture.ARGUMENTS, PAYLOADS[0], false, null, 1.0f);
+      job.setStatus(Status.RUNNING);
+      updatedJobs.add(serviceRegistry.updateJob(job));
+    }
+    random = new Random(SEED);
+  }
+
+  @TearDown(Level.Trial)
+  public void tearDown() {
+    fixture.close();
+  }
+
+  @Benchmark
+  public Job createJob() throws Exception {
+    return serviceRegistry.createJob(fixture.getHosts().get(next++ % hosts),
+            ServiceRegistryFixture.JOB_TYPES[next % ServiceRegistryFixture.JOB_TYPES.length],
+            ServiceRegistryFixture.OPERATION, ServiceRegistryFixture.ARGUMENTS, PAYLOADS[0], true, null, 1.0f);
+  }
+
+  @Benchmark
+  public Job updateJob() throws Exception {
+    int index = next++ % UPDATED_JOBS;
+    Job job = updatedJobs.get(index);
+    // Alternate the payload, so every update is written to the database
+    job.setPayload(PAYLOADS[next / UPDATED_JOBS % PAYLOADS.length]);
+    job = serviceRegistry.updateJob(job);
+    updatedJobs.set(index, job);
+    return job;
+  }
+
+  @Benchmark
+  public Job getJob() throws Exception {
+    return serviceRegistry.getJob(queuedJobIds.get(random.nextInt(queuedJobIds.size())));
+  }
+
+}
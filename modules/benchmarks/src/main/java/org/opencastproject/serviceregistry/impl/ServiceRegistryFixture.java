@@ -0,0 +1,200 @@
+/**
+ * Licensed to The Apereo Foundation under one or more contributor license
+ * agreements. See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ *
+ * The Apereo Foundation licenses this file to you under the Educational
+ * Community License, Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License. You may obtain a copy of the License
+ * at:
+ *
+ *   http://opensource.org/licenses/ecl2.txt
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ *
+ */
+
+
+package org.opencastproject.serviceregistry.impl;
+
+import org.opencastproject.job.api.Job;
+import org.opencastproject.job.api.Job.Status;
+import org.opencastproject.job.api.JobSpec;
+import org.opencastproject.security.api.DefaultOrganization;
+import org.opencastproject.security.api.JaxbOrganization;
+import org.opencastproject.security.api.JaxbRole;
+import org.opencastproject.security.api.JaxbUser;
+import org.opencastproject.security.api.Organization;
+import org.opencastproject.security.api.OrganizationDirectoryService;
+import org.opencastproject.security.api.SecurityService;
+import org.opencastproject.security.api.TrustedHttpClient;
+import org.opencastproject.security.api.User;
+import org.opencastproject.security.api.UserDirectoryService;
+import org.opencastproject.util.persistence.PersistenceUtil;
+
+import org.apache.http.HttpStatus;
+import org.apache.http.HttpVersion;
+import org.apache.http.client.methods.HttpUriRequest;
+import org.apache.http.message.BasicHttpResponse;
+import org.apache.http.message.BasicStatusLine;
+import org.easymock.EasyMock;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import javax.persistence.EntityManager;
+import javax.persistence.EntityManagerFactory;
+import javax.persistence.EntityTransaction;
+
+/**
+ * A service registry backed by a fresh embedded H2 database, with simulated hosts which accept every dispatched job.
+ */
+final class ServiceRegistryFixture {
+
+  /** The job types, each of which is provided by a service on every simulated host */
+  static final String[] JOB_TYPES = { "org.opencastproject.composer", "org.opencastproject.inspection",
+          "org.opencastproject.distribution.download", "org.opencastproject.caption",
+          "org.opencastproject.textanalyzer" };
+
+  /** The operation of all benchmark jobs */
+  static final String OPERATION = "benchmark";
+
+  /** The arguments of all benchmark jobs, referring to a track in the working file repository */
+  static final List<String> ARGUMENTS = Collections.singletonList("<track id=\"track-1\" type=\"presenter/source\">"
+          + "<mimetype>video/mp4</mimetype><url>http://localhost:8080/files/mediapackage/"
+          + "10e8b2c4-6f39-4a1f-9d7b-3c1f0f6d2a55/track-1/presenter.mp4</url></track>");
+
+  /** The maximum load of each simulated host */
+  static final float HOST_MAX_LOAD = 8.0f;
+
+  /** The number of jobs created per transaction when queueing jobs */
+  private static final int QUEUE_BATCH_SIZE = 1000;
+
+  private final EntityManagerFactory emf;
+
+  private final ServiceRegistryJpaImpl serviceRegistry;
+
+  private final List<String> hosts = new ArrayList<>();
+
+  /**
+   * Creates a service registry with the given number of simulated hosts.
+   *
+   * @param hostCount
+   *          the number of simulated hosts
+   */
+  ServiceRegistryFixture(int hostCount) throws Exception {
+    emf = PersistenceUtil.newTestEntityManagerFactory("org.opencastproject.common");
+
+    Organization organization = new DefaultOrganization();
+    OrganizationDirectoryService organizationDirectoryService = EasyMock.createNiceMock(
+            OrganizationDirectoryService.class);
+    EasyMock.expect(organizationDirectoryService.getOrganization(EasyMock.anyString())).andReturn(organization)
+            .anyTimes();
+
+    JaxbOrganization jaxbOrganization = JaxbOrganization.fromOrganization(organization);
+    User user = new JaxbUser("benchmark", "test", jaxbOrganization,
+            new JaxbRole(jaxbOrganization.getAdminRole(), jaxbOrganization));
+    SecurityService securityService = EasyMock.createNiceMock(SecurityService.class);
+    EasyMock.expect(securityService.getUser()).andReturn(user).anyTimes();
+    EasyMock.expect(securityService.getOrganization()).andReturn(organization).anyTimes();
+    UserDirectoryService userDirectoryService = EasyMock.createNiceMock(UserDirectoryService.class);
+    EasyMock.expect(userDirectoryService.loadUser(EasyMock.anyString())).andReturn(user).anyTimes();
+
+    // Every simulated host accepts every job
+    TrustedHttpClient trustedHttpClient = EasyMock.createNiceMock(TrustedHttpClient.class);
+    EasyMock.expect(trustedHttpClient.execute(EasyMock.anyObject(HttpUriRequest.class))).andAnswer(
+        () -> new BasicHttpResponse(new BasicStatusLine(HttpVersion.HTTP_1_1, HttpStatus.SC_NO_CONTENT, null)))
+            .anyTimes();
+    EasyMock.replay(organizationDirectoryService, securityService, userDirectoryService, trustedHttpClient);
+
+    serviceRegistry = new ServiceRegistryJpaImpl();
+    serviceRegistry.setEntityManagerFactory(emf);
+    serviceRegistry.setOrganizationDirectoryService(organizationDirectoryService);
+    serviceRegistry.setSecurityService(securityService);
+    serviceRegistry.setUserDirectoryService(userDirectoryService);
+    serviceRegistry.setTrustedHttpClient(trustedHttpClient);
+    serviceRegistry.activate(null);
+
+    // Synchronize the dispatch queue with the database on every dispatch run
+    serviceRegistry.dispatchSyncInterval = 0;
+
+    for (int i = 0; i < hostCount; i++) {
+      String host = "http://node" + i + ".benchmark:8080";
+      serviceRegistry.registerHost(host, "127.0.0.1", "node" + i, Runtime.getRuntime().maxMemory(), 8,
+              HOST_MAX_LOAD);
+      for (String jobType : JOB_TYPES) {
+        serviceRegistry.registerService(jobType, host, "/" + jobType);
+      }
+      hosts.add(host);
+    }
+  }
+
+  /** @return the service registry */
+  ServiceRegistryJpaImpl getServiceRegistry() {
+    return serviceRegistry;
+  }
+
+  /** @return the base URLs of the simulated hosts */
+  List<String> getHosts() {
+    return hosts;
+  }
+
+  /**
+   * Queues dispatchable jobs, spread evenly across the job types and the creating hosts.
+   *
+   * @param count
+   *          the number of jobs to queue
+   * @param payload
+   *          the payload of the jobs
+   * @return the identifiers of the queued jobs
+   */
+  List<Long> queueJobs(int count, String payload) throws Exception {
+    List<Long> ids = new ArrayList<>(count);
+    List<JobSpec> specs = new ArrayList<>(QUEUE_BATCH_SIZE);
+    int batch = 0;
+    for (int i = 0; i < count; i++) {
+      specs.add(new JobSpec(JOB_TYPES[i % JOB_TYPES.length], OPERATION, ARGUMENTS, payload, true, null, 1.0f));
+      if (specs.size() == QUEUE_BATCH_SIZE || i == count - 1) {
+        for (Job job : serviceRegistry.createJobs(hosts.get(batch++ % hosts.size()), specs)) {
+          ids.add(job.getId());
+        }
+        specs.clear();
+      }
+    }
+    return ids;
+  }
+
+  /**
+   * Puts all jobs back into the queue, as if none of them had ever been dispatched.
+   */
+  void requeueJobs() {
+    EntityManager em = emf.createEntityManager();
+    EntityTransaction tx = em.getTransaction();
+    try {
+      tx.begin();
+      em.createQuery("UPDATE Job j SET j.status = :status, j.processorServiceRegistration = NULL")
+              .setParameter("status", Status.QUEUED.ordinal()).executeUpdate();
+      tx.commit();
+    } finally {
+      if (tx.isActive()) {
+        tx.rollback();
+      }
+      em.close();
+    }
+  }
+
+  /**
+   * Shuts the service registry and the database down.
+   */
+  void close() {
+    serviceRegistry.deactivate();
+    emf.close();
+  }
+
+}
@@ -0,0 +1,205 @@
+/**
+ * Licensed to The Apereo Foundation under one or more contributor license
+ * agreements. See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ *
+ * The Apereo Foundation licenses this file to you under the Educational
+ * Community License, Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License. You may obtain a copy of the License
+ * at:
+ *
+ *   http://opensource.org/licenses/ecl2.txt
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ *
+ */
+
+
+package org.opencastproject.util;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares serving a file, or its second half as a byte range, to a loopback socket with the stream copy the static
+ * resource servlet used before against {@link FileRangeStreamingOutput#transfer}.
+ * <p>
+ * Next to the throughput, the <code>cpuNanosPerGB</code> counter reports the CPU time the serving thread spends per GB
+ * sent. Add <code>-prof gc</code> to see the allocation rate.
+ * <p>
+ * Run with <code>java -jar modules/benchmarks/target/benchmarks.jar FileServingBenchmark</code>.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 10)
+@Measurement(iterations = 5, time = 10)
+@Fork(1)
+public class FileServingBenchmark {
+
+  /** Buffer size of the former stream copy */
+  private static final int LEGACY_BUFFER_SIZE = 2048;
+
+  /** The size of the served file in bytes */
+  @Param({ "1048576", "67108864" })
+  public long fileSize;
+
+  /** Whether only the second half of the file is requested */
+  @Param({ "false", "true" })
+  public boolean ranged;
+
+  private File file;
+
+  private long start;
+
+  private long end;
+
+  private ServerSocketChannel server;
+
+  private SocketChannel client;
+
+  private Thread drain;
+
+  /** The client side of the loopback connection as output stream */
+  private OutputStream stream;
+
+  /** CPU time used by the serving thread, reported per GB sent */
+  @State(Scope.Thread)
+  @AuxCounters(AuxCounters.Type.EVENTS)
+  public static class CpuCounters {
+    private static final ThreadMXBean THREADS = ManagementFactory.getThreadMXBean();
+
+    private long cpuNanos;
+    private long bytes;
+
+    public double cpuNanosPerGB() {
+      return bytes == 0 ? 0 : cpuNanos * 1e9 / bytes;
+    }
+
+    @Setup(Level.Iteration)
+    public void reset() {
+      cpuNanos = 0;
+      bytes = 0;
+    }
+
+    long begin() {
+      return THREADS.getCurrentThreadCpuTime();
+    }
+
+    void end(long begin, long sent) {
+      cpuNanos += THREADS.getCurrentThreadCpuTime() - begin;
+      bytes += sent;
+    }
+  }
+
+  @Setup(Level.Trial)
+  public void setUp() throws Exception {
+    file = File.createTempFile("file-serving-benchmark", ".bin");
+    byte[] block = new byte[1024 * 1024];
+    new Random(42).nextBytes(block);
+    try (OutputStream out = Files.newOutputStream(file.toPath())) {
+      for (long written = 0; written < fileSize; written += block.length) {
+        out.write(block, 0, (int) Math.min(block.length, fileSize - written));
+      }
+    }
+    start = ranged ? fileSize / 2 : 0;
+    end = fileSize - 1;
+
+    server = ServerSocketChannel.open().bind(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0));
+    client = SocketChannel.open(server.getLocalAddress());
+    final SocketChannel accepted = server.accept();
+    drain = new Thread(() -> {
+      final ByteBuffer buffer = ByteBuffer.allocateDirect(1024 * 1024);
+      try {
+        while (accepted.read(buffer) >= 0) {
+          buffer.clear();
+        }
+      } catch (IOException e) {
+        // connection closed by tear down
+      }
+    }, "file-serving-benchmark-drain");
+    drain.setDaemon(true);
+    drain.start();
+
+    stream = Channels.newOutputStream(client);
+  }
+
+  @TearDown(Level.Trial)
+  public void tearDown() throws Exception {
+    client.close();
+    server.close();
+    drain.join(1000);
+    Files.deleteIfExists(file.toPath());
+  }
+
+  /** The former <code>StaticResourceServlet.copyRange</code>: skip, then copy through a small heap buffer. */
+  @Benchmark
+  public long legacyStreamCopy(CpuCounters counters) throws IOException {
+    final long begin = counters.begin();
+    long bytesToRead = end - start + 1;
+    try (InputStream in = new FileInputStream(file)) {
+      in.skip(start);
+      final byte[] buffer = new byte[LEGACY_BUFFER_SIZE];
+      for (int len = in.read(buffer); len > 0; len = in.read(buffer)) {
+        final int n = (int) Math.min(len, bytesToRead);
+        stream.write(buffer, 0, n);
+        bytesToRead -= n;
+        if (bytesToRead < 1) {
+          break;
+        }
+      }
+    }
+    final long sent = end - start + 1 - bytesToRead;
+    counters.end(begin, sent);
+    return sent;
+  }
+
+  /** Positional channel reads through one larger buffer. */
+  @Benchmark
+  public long channelRead(CpuCounters counters) throws IOException {
+    final long begin = counters.begin();
+    final long sent;
+    try (FileChannel source = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+      sent = FileRangeStreamingOutput.transfer(source, start, end, stream);
+    }
+    counters.end(begin, sent);
+    return sent;
+  }
+
+}
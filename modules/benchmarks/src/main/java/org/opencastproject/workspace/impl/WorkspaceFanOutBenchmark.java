@@ -0,0 +1,252 @@
+/**
+ * Licensed to The Apereo Foundation under one or more contributor license
+ * agreements. See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ *
+ * The Apereo Foundation licenses this file to you under the Educational
+ * Community License, Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License. You may obtain a copy of the License
+ * at:
+ *
+ *   http://opensource.org/licenses/ecl2.txt
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ *
+ */
+
+
+
+package org.opencastproject.workspace.impl;
+
+import org.opencastproject.security.api.Organization;
+import org.opencastproject.security.api.SecurityService;
+import org.opencastproject.security.api.TrustedHttpClient;
+import org.opencastproject.workingfilerepository.api.WorkingFileRepository;
+
+import org.apache.commons.codec.digest.DigestUtils;
+import org.apache.commons.io.FileUtils;
+import org.apache.http.HttpStatus;
+import org.apache.http.HttpVersion;
+import org.apache.http.client.methods.HttpUriRequest;
+import org.apache.http.entity.InputStreamEntity;
+import org.apache.http.message.BasicHttpResponse;
+import org.easymock.EasyMock;
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.osgi.framework.BundleContext;
+import org.osgi.service.component.ComponentContext;
+
+import java.io.File;
+import java.io.InputStream;
+import java.net.URI;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Measures a fan-out: a number of operations on one node asking the workspace for the same remote file at the same
+ * time, as parallel encodings of one source do. The file is served over a simulated link shared by all transfers.
+ * <p>
+ * The <code>bytesServedPerRequest</code> counter reports how many bytes the server had to send per request, which is
+ * the bandwidth saved by letting requests share a download. With unique file names, every request needs its own copy
+ * of the file, so without sharing each of them downloads it.
+ * <p>
+ * Run with <code>java -jar modules/benchmarks/target/benchmarks.jar WorkspaceFanOutBenchmark</code>.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class WorkspaceFanOutBenchmark {
+
+  /** The requested file */
+  private static final URI SRC = URI.create("http://localhost:8080/files/mediapackage/mp/track/source.mp4");
+
+  /** The size of the requested file in bytes */
+  private static final int FILE_SIZE = 32 * 1024 * 1024;
+
+  /** The link sends the file in chunks of this size */
+  private static final int CHUNK_SIZE = 1024 * 1024;
+
+  /** The bandwidth of the simulated link in bytes per second */
+  private static final long LINK_BANDWIDTH = 1024L * 1024 * 1024;
+
+  /** The number of requests for the file arriving at the same time */
+  @Param({ "1", "4", "16" })
+  public int fanOut;
+
+  /** Whether requests share a running download of the same file */
+  @Param({ "false", "true" })
+  public boolean coalesce;
+
+  /** Whether each request asks for its own copy of the file */
+  @Param({ "false", "true" })
+  public boolean uniqueFilename;
+
+  private File root;
+
+  private WorkspaceImpl workspace;
+
+  private ExecutorService requests;
+
+  private byte[] content;
+
+  /** Serializes the chunks of all transfers, like a network link shared by them */
+  private final Object link = new Object();
+
+  /** The number of bytes sent by the simulated server */
+  private final AtomicLong served = new AtomicLong();
+
+  /** The bytes sent by the server, reported per request */
+  @State(Scope.Thread)
+  @AuxCounters(AuxCounters.Type.EVENTS)
+  public static class TransferCounters {
+    private long bytes;
+    private long requests;
+
+    public double bytesServedPerRequest() {
+      return requests == 0 ? 0 : (double) bytes / requests;
+    }
+
+    @Setup(Level.Iteration)
+    public void reset() {
+      bytes = 0;
+      requests = 0;
+    }
+  }
+
+  @Setup(Level.Trial)
+  public void setUp() throws Exception {
+    content = new byte[FILE_SIZE];
+    new Random(42).nextBytes(content);
+    final String md5 = DigestUtils.md5Hex(content);
+    root = Files.createTempDirectory("workspace-fan-out-benchmark").toFile();
+
+    BundleContext bundleContext = EasyMock.createNiceMock(BundleContext.class);
+    EasyMock.expect(bundleContext.getProperty(WorkspaceImpl.WORKSPACE_DOWNLOAD_COALESCE_KEY))
+            .andReturn(Boolean.toString(coalesce)).anyTimes();
+    ComponentContext cc = EasyMock.createNiceMock(ComponentContext.class);
+    EasyMock.expect(cc.getBundleContext()).andReturn(bundleContext).anyTimes();
+
+    WorkingFileRepository repo = EasyMock.createNiceMock(WorkingFileRepository.class);
+    EasyMock.expect(repo.getBaseUri()).andReturn(URI.create("http://localhost:8080/files")).anyTimes();
+    Organization organization = EasyMock.createNiceMock(Organization.class);
+    EasyMock.expect(organization.getId()).andReturn("mh_default_org").anyTimes();
+    SecurityService securityService = EasyMock.createNiceMock(SecurityService.class);
+    EasyMock.expect(securityService.getOrganization()).andReturn(organization).anyTimes();
+
+    TrustedHttpClient client = EasyMock.createNiceMock(TrustedHttpClient.class);
+    EasyMock.expect(client.execute(EasyMock.anyObject(HttpUriRequest.class))).andAnswer(() -> {
+      final HttpUriRequest request = (HttpUriRequest) EasyMock.getCurrentArguments()[0];
+      if (request.getFirstHeader("If-None-Match") != null
+              && md5.equals(request.getFirstHeader("If-None-Match").getValue())) {
+        return new BasicHttpResponse(HttpVersion.HTTP_1_1, HttpStatus.SC_NOT_MODIFIED, null);
+      }
+      final BasicHttpResponse response = new BasicHttpResponse(HttpVersion.HTTP_1_1, HttpStatus.SC_OK, null);
+      response.setHeader("ETag", "\"" + md5 + "\"");
+      response.setHeader("Content-Length", Integer.toString(FILE_SIZE));
+      response.setEntity(new InputStreamEntity(new LinkInputStream(), FILE_SIZE));
+      return response;
+    }).anyTimes();
+    EasyMock.replay(bundleContext, cc, repo, organization, securityService, client);
+
+    workspace = new WorkspaceImpl(root.getAbsolutePath(), false);
+    workspace.setRepository(repo);
+    workspace.setSecurityService(securityService);
+    workspace.setTrustedHttpClient(client);
+    workspace.activate(cc);
+    requests = Executors.newFixedThreadPool(fanOut);
+  }
+
+  @TearDown(Level.Trial)
+  public void tearDown() throws Exception {
+    requests.shutdownNow();
+    workspace.deactivate();
+    FileUtils.deleteDirectory(root);
+  }
+
+  /** Every fan-out starts with an empty workspace. */
+  @TearDown(Level.Invocation)
+  public void clearWorkspace() throws Exception {
+    FileUtils.cleanDirectory(root);
+  }
+
+  @Benchmark
+  public long concurrentGets(TransferCounters counters) throws Exception {
+    final long servedBefore = served.get();
+    final CountDownLatch start = new CountDownLatch(1);
+    final List<Future<File>> files = new ArrayList<>(fanOut);
+    for (int i = 0; i < fanOut; i++) {
+      files.add(requests.submit(() -> {
+        start.await();
+        return workspace.get(SRC, uniqueFilename);
+      }));
+    }
+    start.countDown();
+    long size = 0;
+    for (Future<File> file : files) {
+      size += file.get().length();
+    }
+    counters.bytes += served.get() - servedBefore;
+    counters.requests += fanOut;
+    return size;
+  }
+
+  /** The content of the file as sent over the simulated link. */
+  private final class LinkInputStream extends InputStream {
+
+    private int position = 0;
+
+    @Override
+    public int read() {
+      final byte[] b = new byte[1];
+      return read(b, 0, 1) < 0 ? -1 : b[0] & 0xff;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) {
+      if (position >= content.length) {
+        return -1;
+      }
+      // Send at most up to the end of the current chunk, waiting for the link at the start of each chunk
+      if (position % CHUNK_SIZE == 0) {
+        synchronized (link) {
+          LockSupport.parkNanos(TimeUnit.SECONDS.toNanos(1) * CHUNK_SIZE / LINK_BANDWIDTH);
+        }
+      }
+      final int n = Math.min(len, Math.min(content.length - position, CHUNK_SIZE - position % CHUNK_SIZE));
+      System.arraycopy(content, position, b, off, n);
+      position += n;
+      served.addAndGet(n);
+      return n;
+    }
+  }
+
+}
@@ -0,0 +1,253 @@
+/**
+ * Licensed to The Apereo Foundation under one or more contributor license
+ * agreements. See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ *
+ * The Apereo Foundation licenses this file to you under the Educational
+ * Community License, Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License. You may obtain a copy of the License
+ * at:
+ *
+ *   http://opensource.org/licenses/ecl2.txt
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ *
+ */
+
+
+package org.opencastproject.job.jpa;
+
+import org.opencastproject.job.api.Job;
+import org.opencastproject.job.api.Job.Status;
+import org.opencastproject.job.api.JobImpl;
+
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+
+import javax.persistence.Access;
+import javax.persistence.AccessType;
+import javax.persistence.CollectionTable;
+import javax.persistence.Column;
+import javax.persistence.ElementCollection;
+import javax.persistence.Entity;
+import javax.persistence.FetchType;
+import javax.persistence.Id;
+import javax.persistence.Index;
+import javax.persistence.JoinColumn;
+import javax.persistence.Lob;
+import javax.persistence.NamedQueries;
+import javax.persistence.NamedQuery;
+import javax.persistence.OrderColumn;
+import javax.persistence.Table;
+import javax.persistence.Temporal;
+import javax.persistence.TemporalType;
+import javax.persistence.Transient;
+
+/**
+ * A job which terminated long ago and has been moved out of the job table.
+ * <p>
+ * Archived jobs keep all attributes of the original job, but no longer take part in dispatching or load balancing.
+ * Relations to other jobs are kept as plain identifiers, since a job tree is always archived as a whole. The payload
+ * is always stored compressed.
+ */
+@Entity(name = "ArchivedJob")
+@Access(AccessType.FIELD)
+@Table(name = "oc_job_archive", indexes = {
+    @Index(name = "IX_oc_job_archive_parent", columnList = ("parent")),
+    @Index(name = "IX_oc_job_archive_root", columnList = ("root")),
+    @Index(name = "IX_oc_job_archive_status", columnList = ("status")),
+    @Index(name = "IX_oc_job_archive_job_type", columnList = ("job_type")),
+    @Index(name = "IX_oc_job_archive_operation", columnList = ("operation")),
+    @Index(name = "IX_oc_job_archive_date_created", columnList = ("date_created")) })
+@NamedQueries({
+        @NamedQuery(name = "ArchivedJob", query = "SELECT j FROM ArchivedJob j "
+                + "where j.status = :status and j.jobType = :serviceType order by j.dateCreated"),
+        @NamedQuery(name = "ArchivedJob.type", query = "SELECT j FROM ArchivedJob j "
+                + "where j.jobType = :serviceType order by j.dateCreated"),
+        @NamedQuery(name = "ArchivedJob.status", query = "SELECT j FROM ArchivedJob j "
+                + "where j.status = :status order by j.dateCreated"),
+        @NamedQuery(name = "ArchivedJob.all", query = "SELECT j FROM ArchivedJob j order by j.dateCreated"),
+        @NamedQuery(name = "ArchivedJob.root.children", query = "SELECT j FROM ArchivedJob j "
+                + "WHERE j.rootJobId = :id ORDER BY j.dateCreated"),
+        @NamedQuery(name = "ArchivedJob.children", query = "SELECT j FROM ArchivedJob j "
+                + "WHERE j.parentJobId = :id ORDER BY j.dateCreated"),
+        @NamedQuery(name = "ArchivedJob.payload", query = "SELECT j FROM ArchivedJob j "
+                + "where j.operation = :operation order by j.dateCreated"),
+        @NamedQuery(name = "ArchivedJob.countByOperationOnly", query = "SELECT COUNT(j) FROM ArchivedJob j "
+                + "where j.operation = :operation") })
+public class JpaArchivedJob {
+
+  @Id
+  @Column(name = "id")
+  private long id;
+
+  @Lob
+  @Column(name = "creator", nullable = false, length = 65535)
+  private String creator;
+
+  @Column(name = "organization", nullable = false, length = 128)
+  private String organization;
+
+  @Column(name = "instance_version")
+  private long version;
+
+  @Column(name = "status")
+  private int status;
+
+  @Column(name = "job_type", length = 255)
+  private String jobType;
+
+  @Column(name = "operation", length = 128)
+  private String operation;
+
+  @Lob
+  @Column(name = "argument", length = 2147483647)
+  @OrderColumn(name = "argument_index")
+  @ElementCollection(fetch = FetchType.EAGER)
+  @CollectionTable(name = "oc_job_archive_argument",
+      joinColumns = @JoinColumn(name = "id", referencedColumnName = "id", nullable = false))
+  private List<String> arguments;
+
+  @Column(name = "created_host", length = 255)
+  private String createdHost;
+
+  @Column(name = "processing_host", length = 255)
+  private String processingHost;
+
+  @Column(name = "date_created")
+  @Temporal(TemporalType.TIMESTAMP)
+  private Date dateCreated;
+
+  @Column(name = "date_started")
+  @Temporal(TemporalType.TIMESTAMP)
+  private Date dateStarted;
+
+  @Column(name = "date_completed")
+  @Temporal(TemporalType.TIMESTAMP)
+  private Date dateCompleted;
+
+  @Column(name = "date_archived")
+  @Temporal(TemporalType.TIMESTAMP)
+  private Date dateArchived;
+
+  @Column(name = "queue_time")
+  private Long queueTime = 0L;
+
+  @Column(name = "run_time")
+  private Long runTime = 0L;
+
+  /** The gzip compressed payload */
+  @Lob
+  @Column(name = "payload", length = 2147483647)
+  private byte[] payload;
+
+  @Column(name = "parent")
+  private Long parentJobId;
+
+  @Column(name = "root")
+  private Long rootJobId;
+
+  @Column(name = "dispatchable")
+  private boolean dispatchable;
+
+  @Column(name = "job_load", nullable = false)
+  private Float jobLoad = 1F;
+
+  @Transient
+  private URI uri;
+
+  public JpaArchivedJob() {
+  }
+
+  /**
+   * Creates the archived version of a job.
+   *
+   * @param job
+   *          the job to archive
+   * @return the archived job
+   */
+  public static JpaArchivedJob from(Job job) {
+    JpaArchivedJob archived = new JpaArchivedJob();
+    archived.id = job.getId();
+    archived.creator = job.getCreator();
+    archived.organization = job.getOrganization();
+    archived.version = job.getVersion();
+    archived.status = job.getStatus().ordinal();
+    archived.jobType = job.getJobType();
+    archived.operation = job.getOperation();
+    archived.arguments = job.getArguments() == null ? null : new ArrayList<>(job.getArguments());
+    archived.createdHost = job.getCreatedHost();
+    archived.processingHost = job.getProcessingHost();
+    archived.dateCreated = job.getDateCreated();
+    archived.dateStarted = job.getDateStarted();
+    archived.dateCompleted = job.getDateCompleted();
+    archived.dateArchived = new Date();
+    archived.queueTime = job.getQueueTime();
+    archived.runTime = job.getRunTime();
+    archived.payload = job.getPayload() == null ? null : JpaJobPayload.compress(job.getPayload());
+    archived.parentJobId = job.getParentJobId();
+    archived.rootJobId = job.getRootJobId();
+    archived.dispatchable = job.isDispatchable();
+    archived.jobLoad = job.getJobLoad();
+    return archived;
+  }
+
+  /**
+   * Converts the archived job back into a job. The payload is only decompressed when it is accessed.
+   *
+   * @return the job
+   */
+  public Job toJob() {
+    JobImpl job = new JobImpl(id, creator, organization, version, jobType, operation, arguments,
+            Status.values()[status], createdHost, processingHost, dateCreated, dateStarted, dateCompleted, queueTime,
+            runTime, null, parentJobId, rootJobId, dispatchable, uri, jobLoad);
+    job.setPayloadLoader(this::getPayload);
+    return job;
+  }
+
+  /** @return the decompressed payload */
+  public String getPayload() {
+    return payload == null ? null : JpaJobPayload.decompress(payload);
+  }
+
+  public long getId() {
+    return id;
+  }
+
+  public Long getParentJobId() {
+    return parentJobId;
+  }
+
+  public Long getRootJobId() {
+    return rootJobId;
+  }
+
+  public String getJobType() {
+    return jobType;
+  }
+
+  public Date getDateCreated() {
+    return dateCreated;
+  }
+
+  public Date getDateArchived() {
+    return dateArchived;
+  }
+
+  public void setUri(URI uri) {
+    this.uri = uri;
+  }
+
+  @Override
+  public String toString() {
+    return String.format("Archived job {id:%d, operation:%s, status:%s}", id, operation, Status.values()[status]);
+  }
+
+}
@@ -36,17 +36,21 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.net.URI;
+import java.util.Collections;
 import java.util.Date;
 import java.util.List;
+import java.util.Objects;
+import java.util.function.LongFunction;
+import java.util.function.Supplier;
 
 import javax.persistence.Access;
 import javax.persistence.AccessType;
-import javax.persistence.Basic;
 import javax.persistence.CascadeType;
 import javax.persistence.CollectionTable;
 import javax.persistence.Column;
 import javax.persistence.ElementCollection;
 import javax.persistence.Entity;
+import javax.persistence.EntityManager;
 import javax.persistence.FetchType;
 import javax.persistence.GeneratedValue;
 import javax.persistence.Id;
@@ -92,15 +96,19 @@ import javax.persistence.Version;
                 + "where j.status = :status order by j.dateCreated"),
         @NamedQuery(name = "Job.statuses", query = "SELECT j FROM Job j "
                 + "where j.status in :statuses order by j.dateCreated"),
+        @NamedQuery(name = "Job.status.ids", query = "SELECT j.id, j.status FROM Job j WHERE j.id IN :jobids"),
         @NamedQuery(name = "Job.all", query = "SELECT j FROM Job j order by j.dateCreated"),
-        @NamedQuery(name = "Job.dispatchable.status", query = "SELECT j FROM Job j where j.dispatchable = true and "
-                + "j.status in :statuses order by j.dateCreated"),
+        @NamedQuery(name = "Job.dispatchable.status.summary", query = "SELECT j.id, s.serviceType, j.operation, "
+                + "j.status, j.dateCreated FROM Job j JOIN j.creatorServiceRegistration s "
+                + "WHERE j.dispatchable = true AND j.status IN :statuses"),
+        @NamedQuery(name = "Job.dispatchable.status.ids", query = "SELECT j FROM Job j "
+                + "WHERE j.dispatchable = true AND j.status IN :statuses AND j.id IN :jobids"),
         @NamedQuery(name = "Job.dispatchable.status.idfilter", query = "SELECT j.id FROM Job j "
                 + "WHERE j.dispatchable = true AND j.status IN :statuses AND j.id IN :jobids ORDER BY j.dateCreated"),
         @NamedQuery(name = "Job.undispatchable.status", query = "SELECT j FROM Job j where j.dispatchable = false and "
                 + "j.status in :statuses order by j.dateCreated"),
-        @NamedQuery(name = "Job.payload", query = "SELECT j.payload FROM Job j where j.operation = :operation "
-                + "order by j.dateCreated"),
+        @NamedQuery(name = "Job.payload", query = "SELECT j.id, j.payload, j.payloadStored FROM Job j "
+                + "where j.operation = :operation order by j.dateCreated"),
         @NamedQuery(name = "Job.processinghost.status", query = "SELECT j FROM Job j "
                 + "where j.status in :statuses and j.processorServiceRegistration is not null and "
                 + "j.processorServiceRegistration.serviceType = :serviceType and "
@@ -108,7 +116,12 @@ import javax.persistence.Version;
         @NamedQuery(name = "Job.root.children", query = "SELECT j FROM Job j WHERE j.rootJob.id = :id ORDER BY j.dateCreated"),
         @NamedQuery(name = "Job.children", query = "SELECT j FROM Job j WHERE j.parentJob.id = :id ORDER BY j.dateCreated"),
         @NamedQuery(name = "Job.withoutParent", query = "SELECT j FROM Job j WHERE j.parentJob IS NULL"),
-        @NamedQuery(name = "Job.avgOperation", query = "SELECT j.operation, AVG(j.runTime), AVG(j.queueTime) FROM Job j GROUP BY j.operation"),
+        @NamedQuery(name = "Job.archivable", query = "SELECT j FROM Job j WHERE j.parentJob IS NULL "
+                + "AND j.status IN :statuses AND (j.dateCompleted < :date "
+                + "OR (j.dateCompleted IS NULL AND j.dateCreated < :date)) "
+                + "AND NOT EXISTS (SELECT c.id FROM Job c WHERE c.rootJob = j AND c.status NOT IN :statuses) "
+                + "ORDER BY j.dateCreated"),
+        @NamedQuery(name = "Job.avgOperation", query = "SELECT j.operation, AVG(j.runTime), AVG(j.queueTime), COUNT(j) FROM Job j GROUP BY j.operation"),
 
         // Job count queries
         @NamedQuery(name = "Job.count", query = "SELECT COUNT(j) FROM Job j "
@@ -201,10 +214,13 @@ public class JpaJob {
   private Long runTime = 0L;
 
   @Lob
-  @Basic(fetch = FetchType.LAZY)
   @Column(name = "payload", length = 16777215)
   private String payload;
 
+  /** Whether the payload is too long for the job table and is kept in the payload table instead */
+  @Column(name = "payload_stored", nullable = false)
+  private boolean payloadStored = false;
+
   @Column(name = "dispatchable")
   private boolean dispatchable = true;
 
@@ -251,6 +267,21 @@ public class JpaJob {
   @Transient
   private URI uri;
 
+  /** The payload kept in the payload table, once it has been set or read */
+  @Transient
+  private String storedPayload;
+
+  /** Whether the payload table has to be updated when this job is written */
+  @Transient
+  private boolean storedPayloadChanged = false;
+
+  /** Provides the payload of a job copied from a job whose payload has not been modified */
+  @Transient
+  private Supplier<String> unmodifiedPayload;
+
+  /** Reads payloads from the payload table, as provided by the job store */
+  private static volatile LongFunction<String> storedPayloadReader = null;
+
   public JpaJob() {
   }
 
@@ -262,7 +293,7 @@ public class JpaJob {
     this.jobType = creatingService.getServiceType();
     this.operation = operation;
     this.arguments = arguments;
-    this.payload = payload;
+    setPayload(payload);
     this.dispatchable = dispatchable;
     this.jobLoad = load;
     this.status = Status.INSTANTIATED.ordinal();
@@ -277,7 +308,12 @@ public class JpaJob {
     newJob.queueTime = job.getQueueTime();
     newJob.runTime = job.getRunTime();
     newJob.version = job.getVersion();
-    newJob.payload = job.getPayload();
+    if (job instanceof JobImpl && ((JobImpl) job).isPayloadUnmodified()) {
+      // Leave the payload where it is stored, instead of reading it just to write it back
+      newJob.unmodifiedPayload = job::getPayload;
+    } else {
+      newJob.setPayload(job.getPayload());
+    }
     newJob.jobType = job.getJobType();
     newJob.operation = job.getOperation();
     newJob.arguments = job.getArguments();
@@ -293,9 +329,25 @@ public class JpaJob {
   }
 
   public Job toJob() {
-    return new JobImpl(id, creator, organization, version, jobType, operation, arguments, Status.values()[status],
-            createdHost, processingHost, dateCreated, dateStarted, dateCompleted, queueTime, runTime, payload,
-            parentJobId, rootJobId, dispatchable, uri, jobLoad);
+    boolean deferred = unmodifiedPayload != null || payloadStored && storedPayload == null;
+    JobImpl job = new JobImpl(id, creator, organization, version, jobType, operation, arguments,
+            Status.values()[status], createdHost, processingHost, dateCreated, dateStarted, dateCompleted, queueTime,
+            runTime, deferred ? null : getPayload(), parentJobId, rootJobId, dispatchable, uri, jobLoad);
+    if (deferred) {
+      job.setPayloadLoader(this::getPayload);
+    }
+    return job;
+  }
+
+  /**
+   * Sets the function reading payloads from the payload table. Job stores provide it, so that the payloads of jobs
+   * loaded from the database are read when they are accessed.
+   *
+   * @param reader
+   *          the function reading the payload of the job with the given identifier, or <code>null</code>
+   */
+  public static void setStoredPayloadReader(LongFunction<String> reader) {
+    storedPayloadReader = reader;
   }
 
   public static Fn<JpaJob, Job> fnToJob() {
@@ -338,8 +390,81 @@ public class JpaJob {
     }
   }
 
+  /**
+   * Sets the payload. Long payloads are kept in the payload table, which {@link #writeStoredPayload(EntityManager)}
+   * updates, while short ones are stored along with the other job attributes. Setting the current payload again does
+   * not modify the job, as long as the payload is known.
+   *
+   * @param payload
+   *          the payload
+   */
   public void setPayload(String payload) {
-    this.payload = payload;
+    unmodifiedPayload = null;
+    if (JpaJobPayload.isCompressible(payload)) {
+      if (!payloadStored || !payload.equals(storedPayload)) {
+        this.payload = null;
+        this.payloadStored = true;
+        this.storedPayload = payload;
+        this.storedPayloadChanged = true;
+      }
+    } else if (payloadStored || !Objects.equals(payload, this.payload)) {
+      // A payload which was kept in the payload table has to be removed from there
+      this.storedPayloadChanged |= payloadStored;
+      this.payload = payload;
+      this.payloadStored = false;
+      this.storedPayload = null;
+    }
+  }
+
+  /** @return the payload, read from the payload table if necessary */
+  public String getPayload() {
+    if (unmodifiedPayload != null) {
+      return unmodifiedPayload.get();
+    }
+    if (!payloadStored) {
+      return payload;
+    }
+    LongFunction<String> reader = storedPayloadReader;
+    if (storedPayload == null && reader != null) {
+      storedPayload = reader.apply(id);
+    }
+    return storedPayload;
+  }
+
+  /** @return whether the payload is kept in the payload table */
+  public boolean isPayloadStored() {
+    return payloadStored;
+  }
+
+  /**
+   * @return whether the payload was copied from a job whose payload has not been modified, in which case it does not
+   *         have to be written
+   */
+  public boolean isPayloadUnmodified() {
+    return unmodifiedPayload != null;
+  }
+
+  /**
+   * Writes a changed payload to the payload table, or removes it from there once it fits into the job table. Has to be
+   * called whenever the job is persisted or merged, within the same transaction.
+   *
+   * @param em
+   *          the entity manager writing the job
+   */
+  public void writeStoredPayload(EntityManager em) {
+    if (!storedPayloadChanged) {
+      return;
+    }
+    if (id == 0) {
+      // The payload table refers to the job identifier, which is assigned once the job is written
+      em.flush();
+    }
+    if (payloadStored) {
+      JpaJobPayload.store(em, id, storedPayload);
+    } else {
+      JpaJobPayload.delete(em, Collections.singletonList(id));
+    }
+    storedPayloadChanged = false;
   }
 
   public void setStatus(Status status) {
@@ -358,6 +483,10 @@ public class JpaJob {
     this.operation = operation;
   }
 
+  public List<String> getArguments() {
+    return arguments;
+  }
+
   public void setArguments(List<String> arguments) {
     this.arguments = arguments;
   }
@@ -405,6 +534,10 @@ public class JpaJob {
     return id;
   }
 
+  public ServiceRegistrationJpaImpl getCreatorServiceRegistration() {
+    return creatorServiceRegistration;
+  }
+
   public ServiceRegistrationJpaImpl getProcessorServiceRegistration() {
     return processorServiceRegistration;
   }
@@ -462,6 +595,14 @@ public class JpaJob {
     return dateCompleted;
   }
 
+  public Long getQueueTime() {
+    return queueTime;
+  }
+
+  public Long getRunTime() {
+    return runTime;
+  }
+
   public String getCreator() {
     return creator;
   }
@@ -0,0 +1,226 @@
+/**
+ * Licensed to The Apereo Foundation under one or more contributor license
+ * agreements. See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ *
+ * The Apereo Foundation licenses this file to you under the Educational
+ * Community License, Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License. You may obtain a copy of the License
+ * at:
+ *
+ *   http://opensource.org/licenses/ecl2.txt
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ *
+ */
+
+
+package org.opencastproject.job.jpa;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+import javax.persistence.Access;
+import javax.persistence.AccessType;
+import javax.persistence.Column;
+import javax.persistence.Entity;
+import javax.persistence.EntityManager;
+import javax.persistence.Id;
+import javax.persistence.Lob;
+import javax.persistence.NamedQueries;
+import javax.persistence.NamedQuery;
+import javax.persistence.Table;
+
+/**
+ * The compressed payload of a job, stored outside of the job table.
+ * <p>
+ * Payloads often carry whole media packages or workflow instances. Payloads longer than the compression threshold are
+ * therefore gzip compressed and kept in a table of their own, so that the job rows stay small. The job only records
+ * whether its payload is kept here. Payloads are never loaded along with jobs, but read with the projection queries of
+ * this class when they are accessed.
+ */
+@Entity(name = "JobPayload")
+@Access(AccessType.FIELD)
+@Table(name = "oc_job_payload")
+@NamedQueries({
+        @NamedQuery(name = "JobPayload.data", query = "SELECT p.data FROM JobPayload p WHERE p.id = :id"),
+        @NamedQuery(name = "JobPayload.data.ids", query = "SELECT p.id, p.data FROM JobPayload p WHERE p.id IN :ids"),
+        @NamedQuery(name = "JobPayload.update", query = "UPDATE JobPayload p SET p.length = :length, p.data = :data "
+                + "WHERE p.id = :id"),
+        @NamedQuery(name = "JobPayload.delete", query = "DELETE FROM JobPayload p WHERE p.id IN :ids") })
+public class JpaJobPayload {
+
+  /** The default number of characters above which payloads are compressed */
+  public static final int DEFAULT_COMPRESSION_THRESHOLD = 4096;
+
+  /** The maximum number of job identifiers passed to a single query */
+  private static final int MAX_IDS_PER_QUERY = 1000;
+
+  /** The number of characters above which payloads are compressed, or a negative value to never compress */
+  private static volatile int compressionThreshold = DEFAULT_COMPRESSION_THRESHOLD;
+
+  /** The identifier of the job */
+  @Id
+  @Column(name = "id")
+  private long id;
+
+  /** The number of characters of the uncompressed payload */
+  @Column(name = "payload_length", nullable = false)
+  private int length;
+
+  @Lob
+  @Column(name = "data", length = 2147483647)
+  private byte[] data;
+
+  public JpaJobPayload() {
+  }
+
+  private JpaJobPayload(long id, int length, byte[] data) {
+    this.id = id;
+    this.length = length;
+    this.data = data;
+  }
+
+  /**
+   * Sets the number of characters above which payloads are compressed and moved out of the job table. Only affects
+   * payloads which are written after the change.
+   *
+   * @param threshold
+   *          the threshold in characters, or a negative value to keep all payloads in the job table
+   */
+  public static void setCompressionThreshold(int threshold) {
+    compressionThreshold = threshold;
+  }
+
+  /** @return the number of characters above which payloads are compressed */
+  public static int getCompressionThreshold() {
+    return compressionThreshold;
+  }
+
+  /**
+   * Returns whether a payload is long enough to be compressed.
+   *
+   * @param payload
+   *          the payload
+   * @return <code>true</code> if the payload should be stored in the payload table
+   */
+  public static boolean isCompressible(String payload) {
+    int threshold = compressionThreshold;
+    return payload != null && threshold >= 0 && payload.length() > threshold;
+  }
+
+  /**
+   * Reads the payload of a job from the payload table.
+   *
+   * @param em
+   *          the entity manager
+   * @param jobId
+   *          the job identifier
+   * @return the payload, or <code>null</code> if the payload table holds no payload for the job
+   */
+  public static String find(EntityManager em, long jobId) {
+    List<byte[]> data = em.createNamedQuery("JobPayload.data", byte[].class).setParameter("id", jobId)
+            .getResultList();
+    return data.isEmpty() ? null : decompress(data.get(0));
+  }
+
+  /**
+   * Reads the payloads of several jobs from the payload table, using one query per thousand jobs.
+   *
+   * @param em
+   *          the entity manager
+   * @param jobIds
+   *          the job identifiers
+   * @return the payloads by job identifier. Jobs without a payload in the payload table are missing.
+   */
+  public static Map<Long, String> findAll(EntityManager em, Collection<Long> jobIds) {
+    Map<Long, String> payloads = new HashMap<>();
+    List<Long> ids = new ArrayList<>(jobIds);
+    for (int i = 0; i < ids.size(); i += MAX_IDS_PER_QUERY) {
+      List<Object[]> rows = em.createNamedQuery("JobPayload.data.ids", Object[].class)
+              .setParameter("ids", ids.subList(i, Math.min(ids.size(), i + MAX_IDS_PER_QUERY))).getResultList();
+      for (Object[] row : rows) {
+        payloads.put(((Number) row[0]).longValue(), decompress((byte[]) row[1]));
+      }
+    }
+    return payloads;
+  }
+
+  /**
+   * Writes the payload of a job to the payload table, replacing a payload stored before. Requires an active
+   * transaction.
+   *
+   * @param em
+   *          the entity manager
+   * @param jobId
+   *          the job identifier
+   * @param payload
+   *          the payload
+   */
+  public static void store(EntityManager em, long jobId, String payload) {
+    byte[] data = compress(payload);
+    int updated = em.createNamedQuery("JobPayload.update").setParameter("id", jobId)
+            .setParameter("length", payload.length()).setParameter("data", data).executeUpdate();
+    if (updated == 0) {
+      em.persist(new JpaJobPayload(jobId, payload.length(), data));
+    }
+  }
+
+  /**
+   * Removes the payloads of jobs from the payload table. Requires an active transaction.
+   *
+   * @param em
+   *          the entity manager
+   * @param jobIds
+   *          the job identifiers
+   */
+  public static void delete(EntityManager em, Collection<Long> jobIds) {
+    List<Long> ids = new ArrayList<>(jobIds);
+    for (int i = 0; i < ids.size(); i += MAX_IDS_PER_QUERY) {
+      em.createNamedQuery("JobPayload.delete")
+              .setParameter("ids", ids.subList(i, Math.min(ids.size(), i + MAX_IDS_PER_QUERY))).executeUpdate();
+    }
+  }
+
+  static byte[] compress(String payload) {
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    try (OutputStream out = new GZIPOutputStream(bytes)) {
+      out.write(payload.getBytes(StandardCharsets.UTF_8));
+    } catch (IOException e) {
+      throw new UncheckedIOException("Unable to compress job payload", e);
+    }
+    return bytes.toByteArray();
+  }
+
+  static String decompress(byte[] data) {
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream(data.length * 4);
+    try (InputStream in = new GZIPInputStream(new ByteArrayInputStream(data))) {
+      byte[] buffer = new byte[8192];
+      int read;
+      while ((read = in.read(buffer)) != -1) {
+        bytes.write(buffer, 0, read);
+      }
+    } catch (IOException e) {
+      throw new UncheckedIOException("Unable to decompress job payload", e);
+    }
+    return new String(bytes.toByteArray(), StandardCharsets.UTF_8);
+  }
+
+}
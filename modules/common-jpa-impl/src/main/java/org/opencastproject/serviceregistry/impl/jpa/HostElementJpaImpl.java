@@ -0,0 +1,114 @@
+/**
+ * Licensed to The Apereo Foundation under one or more contributor license
+ * agreements. See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ *
+ * The Apereo Foundation licenses this file to you under the Educational
+ * Community License, Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License. You may obtain a copy of the License
+ * at:
+ *
+ *   http://opensource.org/licenses/ecl2.txt
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ *
+ */
+
+
+package org.opencastproject.serviceregistry.impl.jpa;
+
+import javax.persistence.Access;
+import javax.persistence.AccessType;
+import javax.persistence.Column;
+import javax.persistence.Entity;
+import javax.persistence.GeneratedValue;
+import javax.persistence.Id;
+import javax.persistence.Index;
+import javax.persistence.NamedQueries;
+import javax.persistence.NamedQuery;
+import javax.persistence.Table;
+import javax.persistence.UniqueConstraint;
+
+/**
+ * A record of a media package element held in the workspace of a host.
+ */
+@Entity(name = "HostElement")
+@Access(AccessType.FIELD)
+@Table(name = "oc_host_element", indexes = {
+    @Index(name = "IX_oc_host_element_mediapackage", columnList = ("mediapackage"))
+  }, uniqueConstraints = @UniqueConstraint(columnNames = { "host", "mediapackage", "element" }))
+@NamedQueries({
+  @NamedQuery(name = "HostElement.byHost", query = "SELECT e FROM HostElement e WHERE e.host = :host"),
+  @NamedQuery(name = "HostElement.byMediaPackages", query = "SELECT e FROM HostElement e WHERE e.mediaPackage IN :mediaPackages"),
+  @NamedQuery(name = "HostElement.hostsByElement", query = "SELECT e.host FROM HostElement e "
+      + "WHERE e.mediaPackage = :mediaPackage AND e.element = :element") })
+public class HostElementJpaImpl {
+
+  @Id
+  @Column(name = "id")
+  @GeneratedValue
+  private Long id;
+
+  @Column(name = "host", nullable = false)
+  private String host;
+
+  @Column(name = "mediapackage", nullable = false, length = 128)
+  private String mediaPackage;
+
+  @Column(name = "element", nullable = false, length = 128)
+  private String element;
+
+  @Column(name = "size", nullable = false)
+  private long size;
+
+  /**
+   * Default constructor needed by JPA
+   */
+  public HostElementJpaImpl() {
+  }
+
+  public HostElementJpaImpl(String host, String mediaPackage, String element, long size) {
+    this.host = host;
+    this.mediaPackage = mediaPackage;
+    this.element = element;
+    this.size = size;
+  }
+
+  public Long getId() {
+    return id;
+  }
+
+  public String getHost() {
+    return host;
+  }
+
+  public String getMediaPackage() {
+    return mediaPackage;
+  }
+
+  public String getElement() {
+    return element;
+  }
+
+  /**
+   * @return the number of bytes of the element stored on the host
+   */
+  public long getSize() {
+    return size;
+  }
+
+  public void setSize(long size) {
+    this.size = size;
+  }
+
+  @Override
+  public String toString() {
+    return "HostElement " + mediaPackage + "/" + element + " on " + host;
+  }
+
+}
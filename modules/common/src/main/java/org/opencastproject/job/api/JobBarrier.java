@@ -37,6 +37,11 @@ import java.util.Arrays;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 
 /**
  * This class is a utility implementation that will wait for all given jobs to change their status to either one of:
@@ -53,6 +58,9 @@ public final class JobBarrier {
   /** Default polling interval is 5 seconds */
   public static final long DEFAULT_POLLING_INTERVAL = 5000L;
 
+  /** Polling interval once the service registry notifies about terminated jobs, which is only a safety net */
+  public static final long FALLBACK_POLLING_INTERVAL = 60000L;
+
   /** The service registry used to do the polling */
   private final ServiceRegistry serviceRegistry;
 
@@ -261,6 +269,9 @@ public final class JobBarrier {
     /** Maximum wait in milliseconds or 0 for unlimited waiting */
     private final long workTime;
 
+    /** Completes once the service registry learned that all jobs terminated, <code>null</code> if not supported */
+    private CompletableFuture<List<Job>> completion = null;
+
     /**
      * Creates a new status updater that will wait for finished jobs. If <code>0</code> is passed in as the work time,
      * the updater will wait as long as it takes. Otherwise, it will stop after the indicated amount of time has passed.
@@ -276,14 +287,25 @@ public final class JobBarrier {
     public void run() {
       final long endTime = workTime > 0 ? System.currentTimeMillis() + workTime : 0;
       final Map<Job, Job.Status> finishedJobs = new HashMap<Job, Job.Status>();
+      // Get notified as soon as the jobs terminate, polling the registry is only needed as a fallback
+      completion = subscribe();
       while (true) {
         final long time = System.currentTimeMillis();
         // Wait a little..
         try {
-          final long timeToSleep = Math.min(pollingInterval, Math.abs(endTime - time));
-          Thread.sleep(timeToSleep);
+          final long interval = completion != null ? Math.max(pollingInterval, FALLBACK_POLLING_INTERVAL)
+                  : pollingInterval;
+          final long timeToSleep = Math.min(interval, Math.abs(endTime - time));
+          if (completion != null) {
+            awaitCompletion(timeToSleep);
+          } else {
+            Thread.sleep(timeToSleep);
+          }
         } catch (InterruptedException e) {
           logger.debug("Job polling thread was interrupted");
+          if (completion != null) {
+            completion.cancel(false);
+          }
           return;
         }
         // Look at all jobs and make sure all of them have reached the expected status
@@ -352,6 +374,46 @@ public final class JobBarrier {
       }
     }
 
+    /**
+     * Subscribes to the termination of the monitored jobs.
+     *
+     * @return the future completing once the jobs terminated, or <code>null</code> if the service registry does not
+     *         support notifications
+     */
+    private CompletableFuture<List<Job>> subscribe() {
+      final List<Long> jobIds = new ArrayList<Long>(jobs.size());
+      for (final Job job : jobs) {
+        jobIds.add(job.getId());
+      }
+      try {
+        return serviceRegistry.awaitJobs(jobIds);
+      } catch (ServiceRegistryException | RuntimeException e) {
+        logger.debug("Unable to subscribe to the termination of jobs {}, falling back to polling: {}", jobIds,
+                e.getMessage());
+        return null;
+      }
+    }
+
+    /**
+     * Waits for the service registry to report the termination of all jobs. Once it did, regular polling takes over
+     * to collect the outcome, which also covers the case of the notification reporting a failure.
+     *
+     * @param timeout
+     *          the maximum time to wait in milliseconds
+     * @throws InterruptedException
+     *           if the thread was interrupted while waiting
+     */
+    private void awaitCompletion(long timeout) throws InterruptedException {
+      try {
+        completion.get(timeout, TimeUnit.MILLISECONDS);
+        completion = null;
+      } catch (ExecutionException | CancellationException e) {
+        completion = null;
+      } catch (TimeoutException e) {
+        logger.trace("No termination notification received within {} ms, polling", timeout);
+      }
+    }
+
     /**
      * Notifies listeners about the status change.
      *
@@ -359,6 +421,10 @@ public final class JobBarrier {
      *          the status
      */
     private void updateAndNotify(Map<Job, Job.Status> status) {
+      // Stop listening for notifications we are no longer interested in
+      if (completion != null) {
+        completion.cancel(false);
+      }
       JobBarrier.this.setStatus(new Result(status));
       synchronized (JobBarrier.this) {
         JobBarrier.this.notifyAll();
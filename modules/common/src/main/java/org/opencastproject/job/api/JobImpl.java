@@ -31,6 +31,7 @@ import java.net.URI;
 import java.util.ArrayList;
 import java.util.Date;
 import java.util.List;
+import java.util.function.Supplier;
 
 public class JobImpl implements Job {
 
@@ -51,6 +52,8 @@ public class JobImpl implements Job {
   private Long queueTime = 0L;
   private Long runTime = 0L;
   private String payload;
+  private Supplier<String> payloadLoader;
+  private boolean payloadUnmodified = false;
   private Long parentJobId = null;
   private Long rootJobId = null;
   private boolean dispatchable = true;
@@ -258,12 +261,41 @@ public class JobImpl implements Job {
 
   @Override
   public String getPayload() {
+    Supplier<String> loader = payloadLoader;
+    if (loader != null) {
+      payload = loader.get();
+      payloadLoader = null;
+    }
     return payload;
   }
 
   @Override
   public void setPayload(String payload) {
     this.payload = payload;
+    this.payloadLoader = null;
+    this.payloadUnmodified = false;
+  }
+
+  /**
+   * Defers loading the payload until it is accessed for the first time. Job stores use this to avoid reading large
+   * payloads for jobs which are only inspected for their status.
+   *
+   * @param payloadLoader
+   *          the function loading the payload
+   */
+  public void setPayloadLoader(Supplier<String> payloadLoader) {
+    this.payloadLoader = payloadLoader;
+    this.payloadUnmodified = true;
+  }
+
+  /**
+   * Returns whether the payload is still the one provided by the payload loader, whether or not it has been loaded. Job
+   * stores do not need to write such a payload back when the job is updated.
+   *
+   * @return <code>true</code> if the payload has not been set since the payload loader was provided
+   */
+  public boolean isPayloadUnmodified() {
+    return payloadUnmodified;
   }
 
   @Override
@@ -314,6 +346,10 @@ public class JobImpl implements Job {
     this.load = load;
   }
 
+  /**
+   * Jobs are identified by their identifier and version. The payload is not compared, so that putting a job into a
+   * hashed collection does not load its payload.
+   */
   @Override
   public boolean equals(Object o) {
     if (this == o)
@@ -324,24 +360,12 @@ public class JobImpl implements Job {
 
     JobImpl job = (JobImpl) o;
 
-    return new EqualsBuilder().append(id, job.id).append(dispatchable, job.dispatchable)
-            .append(creator, job.creator).append(organization, job.organization)
-            .append(jobType, job.jobType).append(operation, job.operation).append(arguments, job.arguments)
-            .append(status, job.status).append(failureReason, job.failureReason).append(createdHost, job.createdHost)
-            .append(processingHost, job.processingHost).append(dateCreated, job.dateCreated)
-            .append(dateStarted, job.dateStarted).append(dateCompleted, job.dateCompleted)
-            .append(queueTime, job.queueTime).append(runTime, job.runTime).append(payload, job.payload)
-            .append(parentJobId, job.parentJobId).append(rootJobId, job.rootJobId)
-            .append(uri, job.uri).append(load, job.load).isEquals();
+    return new EqualsBuilder().append(id, job.id).append(version, job.version).isEquals();
   }
 
   @Override
   public int hashCode() {
-    return new HashCodeBuilder(17, 37).append(id).append(creator).append(organization).append(jobType)
-            .append(operation).append(arguments).append(status).append(failureReason).append(createdHost)
-            .append(processingHost).append(dateCreated).append(dateStarted).append(dateCompleted).append(queueTime)
-            .append(runTime).append(payload).append(parentJobId).append(rootJobId).append(dispatchable).append(uri)
-            .append(load).toHashCode();
+    return new HashCodeBuilder(17, 37).append(id).append(version).toHashCode();
   }
 
   @Override
@@ -0,0 +1,149 @@
+/**
+ * Licensed to The Apereo Foundation under one or more contributor license
+ * agreements. See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ *
+ * The Apereo Foundation licenses this file to you under the Educational
+ * Community License, Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License. You may obtain a copy of the License
+ * at:
+ *
+ *   http://opensource.org/licenses/ecl2.txt
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ *
+ */
+
+
+package org.opencastproject.job.api;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Describes a job to be created by {@link org.opencastproject.serviceregistry.api.ServiceRegistry#createJobs(List)}.
+ * The attributes correspond to the parameters of the various
+ * {@link org.opencastproject.serviceregistry.api.ServiceRegistry#createJob(String, String, List, String, boolean,
+ * Job, Float)} variants.
+ */
+public final class JobSpec {
+
+  /** The type of service responsible for the job */
+  private final String jobType;
+
+  /** The operation for the service to run */
+  private final String operation;
+
+  /** The arguments to the operation */
+  private final List<String> arguments;
+
+  /** The optional initial payload */
+  private final String payload;
+
+  /** Whether the job can be enqueued for dispatch */
+  private final boolean dispatchable;
+
+  /** The parent job, or <code>null</code> to use the job currently being processed */
+  private final Job parentJob;
+
+  /** The load caused by the job, or <code>null</code> to use the service registry's default */
+  private final Float jobLoad;
+
+  /**
+   * Creates the specification of a dispatchable job without arguments.
+   *
+   * @param jobType
+   *          the type of service responsible for this job
+   * @param operation
+   *          the operation for this service to run
+   */
+  public JobSpec(String jobType, String operation) {
+    this(jobType, operation, null, null, true, null, null);
+  }
+
+  /**
+   * Creates the specification of a dispatchable job.
+   *
+   * @param jobType
+   *          the type of service responsible for this job
+   * @param operation
+   *          the operation for this service to run
+   * @param arguments
+   *          the arguments to the operation
+   * @param jobLoad
+   *          the load caused by this job, or <code>null</code> to use the default
+   */
+  public JobSpec(String jobType, String operation, List<String> arguments, Float jobLoad) {
+    this(jobType, operation, arguments, null, true, null, jobLoad);
+  }
+
+  /**
+   * Creates a job specification.
+   *
+   * @param jobType
+   *          the type of service responsible for this job
+   * @param operation
+   *          the operation for this service to run
+   * @param arguments
+   *          the arguments to the operation
+   * @param payload
+   *          an optional initial payload
+   * @param dispatchable
+   *          whether the job can be enqueued for dispatch
+   * @param parentJob
+   *          the parent job, or <code>null</code> to use the job currently being processed
+   * @param jobLoad
+   *          the load caused by this job, or <code>null</code> to use the default
+   */
+  public JobSpec(String jobType, String operation, List<String> arguments, String payload, boolean dispatchable,
+          Job parentJob, Float jobLoad) {
+    this.jobType = jobType;
+    this.operation = operation;
+    this.arguments = arguments == null ? Collections.<String> emptyList()
+            : Collections.unmodifiableList(new ArrayList<>(arguments));
+    this.payload = payload;
+    this.dispatchable = dispatchable;
+    this.parentJob = parentJob;
+    this.jobLoad = jobLoad;
+  }
+
+  public String getJobType() {
+    return jobType;
+  }
+
+  public String getOperation() {
+    return operation;
+  }
+
+  public List<String> getArguments() {
+    return arguments;
+  }
+
+  public String getPayload() {
+    return payload;
+  }
+
+  public boolean isDispatchable() {
+    return dispatchable;
+  }
+
+  public Job getParentJob() {
+    return parentJob;
+  }
+
+  public Float getJobLoad() {
+    return jobLoad;
+  }
+
+  @Override
+  public String toString() {
+    return "JobSpec {type:" + jobType + ", operation:" + operation + ", dispatchable:" + dispatchable + "}";
+  }
+
+}
@@ -0,0 +1,189 @@
+/**
+ * Licensed to The Apereo Foundation under one or more contributor license
+ * agreements. See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ *
+ * The Apereo Foundation licenses this file to you under the Educational
+ * Community License, Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License. You may obtain a copy of the License
+ * at:
+ *
+ *   http://opensource.org/licenses/ecl2.txt
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ *
+ */
+
+package org.opencastproject.serviceregistry.api;
+
+import org.opencastproject.job.api.Job;
+import org.opencastproject.job.api.Job.Status;
+import org.opencastproject.util.JobCanceledException;
+import org.opencastproject.util.NotFoundException;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Keeps track of the callers waiting for jobs to terminate. Service registry implementations feed every job update
+ * they learn about into {@link #update(Job)}, which completes the futures handed out by
+ * {@link #await(Collection)} as soon as all of their jobs reached a terminal state.
+ */
+public final class JobCompletionTracker {
+
+  /** The waiters by the identifiers of the jobs they are still waiting for */
+  private final Map<Long, List<Waiter>> waiters = new HashMap<>();
+
+  /**
+   * Returns whether a job with the given status will not change its status anymore.
+   *
+   * @param status
+   *          the job status
+   * @return <code>true</code> if the status is terminal
+   */
+  public static boolean isTerminal(Status status) {
+    switch (status) {
+      case CANCELLED:
+      case DELETED:
+      case FAILED:
+      case FINISHED:
+        return true;
+      default:
+        return false;
+    }
+  }
+
+  /**
+   * Registers interest in the termination of the given jobs.
+   *
+   * @param jobIds
+   *          the identifiers of the jobs to wait for
+   * @return a future which completes with the terminated jobs in the order of <code>jobIds</code>. It completes
+   *         exceptionally with a {@link JobCanceledException} as soon as one of the jobs gets canceled and with a
+   *         {@link NotFoundException} if one of the jobs disappears.
+   */
+  public CompletableFuture<List<Job>> await(Collection<Long> jobIds) {
+    if (jobIds.isEmpty()) {
+      return CompletableFuture.completedFuture(Collections.<Job> emptyList());
+    }
+    final Waiter waiter = new Waiter(jobIds);
+    synchronized (this) {
+      for (Long jobId : waiter.jobIds) {
+        waiters.computeIfAbsent(jobId, id -> new ArrayList<>()).add(waiter);
+      }
+    }
+    // Forget about waiters which are done, including those given up by the caller
+    waiter.future.whenComplete((jobs, t) -> remove(waiter));
+    return waiter.future;
+  }
+
+  /**
+   * Completes the waiters of the given job if the job reached a terminal state.
+   *
+   * @param job
+   *          the updated job
+   */
+  public void update(Job job) {
+    if (job == null || !isTerminal(job.getStatus())) {
+      return;
+    }
+    List<Waiter> affected;
+    synchronized (this) {
+      affected = waiters.remove(job.getId());
+    }
+    if (affected != null) {
+      for (Waiter waiter : affected) {
+        waiter.terminated(job);
+      }
+    }
+  }
+
+  /**
+   * Fails the waiters of a job which does not exist (anymore).
+   *
+   * @param jobId
+   *          the job identifier
+   */
+  public void missing(long jobId) {
+    List<Waiter> affected;
+    synchronized (this) {
+      affected = waiters.remove(jobId);
+    }
+    if (affected != null) {
+      for (Waiter waiter : affected) {
+        waiter.future.completeExceptionally(new NotFoundException("Job " + jobId + " not found"));
+      }
+    }
+  }
+
+  /**
+   * Returns whether somebody is waiting for the given job to terminate.
+   *
+   * @param jobId
+   *          the job identifier
+   * @return <code>true</code> if the job is awaited
+   */
+  public synchronized boolean isAwaited(long jobId) {
+    return waiters.containsKey(jobId);
+  }
+
+  /** @return the identifiers of all jobs that somebody is waiting for */
+  public synchronized Set<Long> getPending() {
+    return new HashSet<>(waiters.keySet());
+  }
+
+  private synchronized void remove(Waiter waiter) {
+    for (Long jobId : waiter.jobIds) {
+      List<Waiter> list = waiters.get(jobId);
+      if (list != null && list.remove(waiter) && list.isEmpty()) {
+        waiters.remove(jobId);
+      }
+    }
+  }
+
+  /** A caller waiting for a set of jobs */
+  private static final class Waiter {
+
+    private final Set<Long> jobIds;
+    private final Set<Long> pending;
+    private final Map<Long, Job> terminated = new HashMap<>();
+    private final CompletableFuture<List<Job>> future = new CompletableFuture<>();
+
+    Waiter(Collection<Long> jobIds) {
+      this.jobIds = new LinkedHashSet<>(jobIds);
+      this.pending = new HashSet<>(jobIds);
+    }
+
+    synchronized void terminated(Job job) {
+      if (!pending.remove(job.getId())) {
+        return;
+      }
+      if (Status.CANCELLED.equals(job.getStatus())) {
+        future.completeExceptionally(new JobCanceledException(job));
+        return;
+      }
+      terminated.put(job.getId(), job);
+      if (pending.isEmpty()) {
+        List<Job> result = new ArrayList<>(jobIds.size());
+        for (Long jobId : jobIds) {
+          result.add(terminated.get(jobId));
+        }
+        future.complete(result);
+      }
+    }
+  }
+
+}
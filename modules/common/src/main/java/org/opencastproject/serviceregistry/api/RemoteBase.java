@@ -27,6 +27,7 @@ import static org.opencastproject.util.data.Option.some;
 import org.opencastproject.mediapackage.MediaPackageElement;
 import org.opencastproject.mediapackage.MediaPackageElementParser;
 import org.opencastproject.security.api.TrustedHttpClient;
+import org.opencastproject.security.api.TrustedHttpClientException;
 import org.opencastproject.util.UrlSupport;
 import org.opencastproject.util.data.Function;
 import org.opencastproject.util.data.Option;
@@ -37,6 +38,7 @@ import org.apache.http.HttpResponse;
 import org.apache.http.HttpStatus;
 import org.apache.http.StatusLine;
 import org.apache.http.client.methods.HttpRequestBase;
+import org.apache.http.conn.ConnectionPoolTimeoutException;
 import org.joda.time.DateTimeConstants;
 import org.osgi.service.component.annotations.Reference;
 import org.slf4j.Logger;
@@ -49,6 +51,15 @@ import java.nio.charset.Charset;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * Base class serving as a convenience implementation for remote services.
@@ -72,6 +83,18 @@ public class RemoteBase {
   /** A list of known http statuses */
   private static final List<Integer> knownHttpStatuses = Arrays.asList(HttpStatus.SC_SERVICE_UNAVAILABLE);
 
+  /** The latency and health of the remote hosts, shared by all remote services */
+  private static final RemoteHostTracker hostTracker = new RemoteHostTracker();
+
+  /** Performs the http exchanges of asynchronous requests, while they are enabled */
+  private ExecutorService asyncRequestExecutor = null;
+
+  /** Schedules the retries of asynchronous requests, so that no thread is held while waiting for a service */
+  private ScheduledExecutorService asyncRetryScheduler = null;
+
+  /** The asynchronous requests which have not completed yet */
+  private final Set<AsyncRequest> pendingAsyncRequests = ConcurrentHashMap.newKeySet();
+
   /**
    * Creates a remote implementation for the given type of service.
    *
@@ -114,6 +137,57 @@ public class RemoteBase {
     }
   }
 
+  /**
+   * Asynchronous variant of {@link #runRequest(HttpRequestBase, Function)}. The function is applied on one of the
+   * threads performing asynchronous requests, and the response is closed afterwards.
+   *
+   * @param req
+   *          the http request
+   * @param f
+   *          the function extracting the result from the response
+   * @return the result, or none if no service accepted the request
+   */
+  protected <A> CompletableFuture<Option<A>> runRequestAsync(HttpRequestBase req, Function<HttpResponse, A> f) {
+    return getResponseAsync(req).thenApply(res -> {
+      try {
+        return res != null ? some(f.apply(res)) : Option.<A> none();
+      } finally {
+        closeConnection(res);
+      }
+    });
+  }
+
+  /**
+   * Enables the asynchronous requests of this remote service. The threads performing them belong to this service, so
+   * implementations calling this method on activation have to call {@link #stopAsyncRequests()} on deactivation.
+   *
+   * @param threads
+   *          the maximum number of asynchronous http exchanges performed at the same time
+   */
+  protected synchronized void startAsyncRequests(int threads) {
+    if (asyncRequestExecutor != null)
+      return;
+    asyncRequestExecutor = Executors.newFixedThreadPool(threads, daemonThreadFactory(serviceType + "-request"));
+    asyncRetryScheduler = Executors.newSingleThreadScheduledExecutor(daemonThreadFactory(serviceType + "-retry"));
+  }
+
+  /**
+   * Disables the asynchronous requests of this remote service and releases its threads. Requests which have not
+   * completed yet fail with an {@link IllegalStateException}.
+   */
+  protected synchronized void stopAsyncRequests() {
+    if (asyncRequestExecutor == null)
+      return;
+    asyncRetryScheduler.shutdownNow();
+    asyncRequestExecutor.shutdownNow();
+    asyncRetryScheduler = null;
+    asyncRequestExecutor = null;
+    for (AsyncRequest request : pendingAsyncRequests) {
+      request.result.completeExceptionally(new IllegalStateException(
+              "Asynchronous requests to services of type '" + serviceType + "' have been stopped"));
+    }
+  }
+
 
 
   public static final Function<HttpResponse, Option<List<MediaPackageElement>>> elementsFromHttpResponse =
@@ -193,61 +267,18 @@ public class RemoteBase {
         }
       }
 
-      URI originalUri = httpRequest.getURI();
-      String uriSuffix = null;
-      if (originalUri != null && StringUtils.isNotBlank(originalUri.toString())) {
-        uriSuffix = originalUri.toString();
-      }
-
-      // Try each available service
-      String fullUrl = null;
-      for (ServiceRegistration remoteService : remoteServices) {
-        HttpResponse response = null;
-        try {
-          if (uriSuffix == null) {
-            fullUrl = UrlSupport.concat(remoteService.getHost(), remoteService.getPath());
-          } else {
-            fullUrl = UrlSupport.concat(new String[] { remoteService.getHost(), remoteService.getPath(), uriSuffix });
-          }
-
-          logger.debug("Connecting to remote service of type '{}' at {}", serviceType, fullUrl);
-
-          URI uri = new URI(fullUrl);
-          httpRequest.setURI(uri);
-          response = client.execute(httpRequest);
-          StatusLine status = response.getStatusLine();
-          if (Arrays.asList(expectedHttpStatus).contains(status.getStatusCode())) {
-            if (servicesInWarningState.contains(fullUrl) || servicesInKnownState.contains(fullUrl)) {
-              logger.warn("Service at {} is back to normal with expected status code {}", fullUrl,
-                      status.getStatusCode());
-            }
-            return response;
-          } else {
-            if (!knownHttpStatuses.contains(status.getStatusCode()) && !servicesInWarningState.contains(fullUrl)) {
-              logger.warn("Service at {} returned unexpected response code {}", fullUrl, status.getStatusCode());
-              servicesInWarningState.add(fullUrl);
-              servicesInKnownState.remove(fullUrl);
-            } else if (knownHttpStatuses.contains(status.getStatusCode()) && !servicesInKnownState.contains(fullUrl)) {
-              logger.info("Service at {} returned known response code {}", fullUrl, status.getStatusCode());
-              servicesInKnownState.add(fullUrl);
-              servicesInWarningState.remove(fullUrl);
-            }
-          }
-        } catch (Exception e) {
-          logger.error("Exception while trying to dispatch job to {}: {}", fullUrl, e);
-          servicesInWarningState.add(fullUrl);
-        }
-        closeConnection(response);
+      HttpResponse response = tryServices(httpRequest, remoteServices, servicesInWarningState, servicesInKnownState,
+              expectedHttpStatus);
+      if (response != null) {
+        return response;
       }
 
       if (servicesInKnownState.isEmpty()) {
-        logger.warn("All services of type '{}' are in unknown state, abort remote call {}", serviceType, originalUri);
+        logger.warn("All services of type '{}' are in unknown state, abort remote call {}", serviceType,
+                httpRequest.getURI());
         return null;
       }
 
-      // Reset Original URI
-      httpRequest.setURI(originalUri);
-
       // If none of them accepted the request, let's wait and retry
       if (!warnedUnavailability) {
         logger.warn("No service of type '{}' is currently readily available", serviceType);
@@ -260,7 +291,7 @@ public class RemoteBase {
         if (System.currentTimeMillis() > maxWaitTimeMillis) {
           logger.warn(
                   "Still no service of type '{}' available while waiting for more than one day, abort remote call {}",
-                  serviceType, originalUri);
+                  serviceType, httpRequest.getURI());
           return null;
         }
         Thread.sleep(TIMEOUT);
@@ -272,6 +303,230 @@ public class RemoteBase {
     }
   }
 
+  /**
+   * Asynchronous variant of {@link #getResponse(HttpRequestBase, Integer...)}. The http exchanges are performed by the
+   * threads enabled with {@link #startAsyncRequests(int)}, and while no service is available, the next attempt is
+   * scheduled instead of holding a thread. The caller is responsible for closing the response once the future
+   * completes.
+   * <p>
+   * Cancelling the returned future stops any further attempts.
+   *
+   * @param httpRequest
+   *          the http request. If the URI is specified, it should include only the path beyond the service endpoint.
+   * @param expectedHttpStatus
+   *          any expected status codes to include in the return. Defaults to {@link HttpStatus#SC_OK}.
+   * @return the response, or <code>null</code> if we can not connect to any services
+   */
+  protected CompletableFuture<HttpResponse> getResponseAsync(HttpRequestBase httpRequest,
+          Integer... expectedHttpStatus) {
+    final AsyncRequest request = new AsyncRequest(httpRequest,
+            expectedHttpStatus.length > 0 ? expectedHttpStatus : new Integer[] { HttpStatus.SC_OK });
+    pendingAsyncRequests.add(request);
+    request.result.whenComplete((response, e) -> pendingAsyncRequests.remove(request));
+    submit(request, 0);
+    return request.result;
+  }
+
+  /**
+   * Hands an asynchronous request to the request threads, either at once or after the given delay.
+   */
+  private synchronized void submit(AsyncRequest request, long delay) {
+    if (asyncRequestExecutor == null) {
+      request.result.completeExceptionally(new IllegalStateException(
+              "Asynchronous requests to services of type '" + serviceType + "' are not enabled"));
+    } else if (delay > 0) {
+      asyncRetryScheduler.schedule(() -> submit(request, 0), delay, TimeUnit.MILLISECONDS);
+    } else {
+      asyncRequestExecutor.execute(request);
+    }
+  }
+
+  /**
+   * Sends a request to each of the given services in turn and returns the first response with an expected status.
+   * If there is none, the URI of the request is reset to its original value. The services are tried in the order
+   * determined by the {@link RemoteHostTracker}, which skips hosts that have been failing.
+   *
+   * @param httpRequest
+   *          the http request, with a URI relative to the service endpoint
+   * @param remoteServices
+   *          the services to try
+   * @param servicesInWarningState
+   *          the URLs of the services which failed or returned an unexpected status
+   * @param servicesInKnownState
+   *          the URLs of the services which returned a known status, e.g. because they are busy
+   * @param expectedHttpStatus
+   *          any expected status codes to include in the return
+   * @return the response, or <code>null</code> if no service returned an expected status
+   */
+  private HttpResponse tryServices(HttpRequestBase httpRequest, List<ServiceRegistration> remoteServices,
+          List<String> servicesInWarningState, List<String> servicesInKnownState, Integer... expectedHttpStatus) {
+    URI originalUri = httpRequest.getURI();
+    String uriSuffix = null;
+    if (originalUri != null && StringUtils.isNotBlank(originalUri.toString())) {
+      uriSuffix = originalUri.toString();
+    }
+
+    // Try each available service, starting with the one expected to respond fastest
+    String fullUrl = null;
+    for (ServiceRegistration remoteService : hostTracker.order(remoteServices)) {
+      HttpResponse response = null;
+      try {
+        if (uriSuffix == null) {
+          fullUrl = UrlSupport.concat(remoteService.getHost(), remoteService.getPath());
+        } else {
+          fullUrl = UrlSupport.concat(new String[] { remoteService.getHost(), remoteService.getPath(), uriSuffix });
+        }
+
+        logger.debug("Connecting to remote service of type '{}' at {}", serviceType, fullUrl);
+
+        URI uri = new URI(fullUrl);
+        httpRequest.setURI(uri);
+        final long start = hostTracker.start(remoteService.getHost());
+        boolean handled = false;
+        boolean sent = true;
+        try {
+          response = client.execute(httpRequest);
+          // server errors, including a service refusing work with 503, count as failures of the host
+          handled = response.getStatusLine().getStatusCode() < HttpStatus.SC_INTERNAL_SERVER_ERROR;
+        } catch (TrustedHttpClientException e) {
+          // running out of pooled connections says nothing about the remote host
+          sent = !(e.getCause() instanceof ConnectionPoolTimeoutException);
+          throw e;
+        } finally {
+          if (sent) {
+            hostTracker.finish(remoteService.getHost(), start, handled);
+          } else {
+            hostTracker.cancel(remoteService.getHost());
+          }
+        }
+        StatusLine status = response.getStatusLine();
+        if (Arrays.asList(expectedHttpStatus).contains(status.getStatusCode())) {
+          if (servicesInWarningState.contains(fullUrl) || servicesInKnownState.contains(fullUrl)) {
+            logger.warn("Service at {} is back to normal with expected status code {}", fullUrl,
+                    status.getStatusCode());
+          }
+          return response;
+        } else {
+          if (!knownHttpStatuses.contains(status.getStatusCode()) && !servicesInWarningState.contains(fullUrl)) {
+            logger.warn("Service at {} returned unexpected response code {}", fullUrl, status.getStatusCode());
+            servicesInWarningState.add(fullUrl);
+            servicesInKnownState.remove(fullUrl);
+          } else if (knownHttpStatuses.contains(status.getStatusCode()) && !servicesInKnownState.contains(fullUrl)) {
+            logger.info("Service at {} returned known response code {}", fullUrl, status.getStatusCode());
+            servicesInKnownState.add(fullUrl);
+            servicesInWarningState.remove(fullUrl);
+          }
+        }
+      } catch (Exception e) {
+        logger.error("Exception while trying to dispatch job to {}: {}", fullUrl, e);
+        servicesInWarningState.add(fullUrl);
+      }
+      closeConnection(response);
+    }
+
+    // Reset Original URI
+    httpRequest.setURI(originalUri);
+    return null;
+  }
+
+  /**
+   * A request which is retried asynchronously until a service accepts it, all services are in an unknown state or the
+   * maximum waiting time has passed.
+   */
+  private final class AsyncRequest implements Runnable {
+
+    private final CompletableFuture<HttpResponse> result = new CompletableFuture<>();
+    private final long maxWaitTimeMillis = System.currentTimeMillis() + DateTimeConstants.MILLIS_PER_DAY;
+    private final HttpRequestBase httpRequest;
+    private final Integer[] expectedHttpStatus;
+    private boolean warnedNoServices = false;
+    private boolean warnedUnavailability = false;
+
+    AsyncRequest(HttpRequestBase httpRequest, Integer[] expectedHttpStatus) {
+      this.httpRequest = httpRequest;
+      this.expectedHttpStatus = expectedHttpStatus;
+    }
+
+    @Override
+    public void run() {
+      if (result.isDone()) {
+        logger.debug("Giving up remote call {} to service of type '{}'", httpRequest.getURI(), serviceType);
+        return;
+      }
+      try {
+        final List<ServiceRegistration> remoteServices = remoteServiceManager.getServiceRegistrationsByLoad(
+                serviceType);
+        if (remoteServices == null || remoteServices.isEmpty()) {
+          if (!warnedNoServices) {
+            logger.warn("No services of type '{}' found, waiting...", serviceType);
+            warnedNoServices = true;
+          }
+          logger.debug("Still no services of type '{}' found, waiting...", serviceType);
+          retry();
+          return;
+        }
+
+        final List<String> servicesInKnownState = new ArrayList<>();
+        final HttpResponse response = tryServices(httpRequest, remoteServices, new ArrayList<>(),
+                servicesInKnownState, expectedHttpStatus);
+        if (response != null) {
+          if (!result.complete(response)) {
+            // The caller has given up in the meantime
+            closeConnection(response);
+          }
+          return;
+        }
+
+        if (servicesInKnownState.isEmpty()) {
+          logger.warn("All services of type '{}' are in unknown state, abort remote call {}", serviceType,
+                  httpRequest.getURI());
+          result.complete(null);
+          return;
+        }
+
+        if (!warnedUnavailability) {
+          logger.warn("No service of type '{}' is currently readily available", serviceType);
+          warnedUnavailability = true;
+        } else {
+          logger.debug("All services of type '{}' are still unavailable", serviceType);
+        }
+        retry();
+      } catch (ServiceRegistryException e) {
+        logger.warn("Unable to obtain a list of remote services", e);
+        result.complete(null);
+      } catch (Exception e) {
+        result.completeExceptionally(e);
+      }
+    }
+
+    /** Schedules the next attempt, unless the maximum waiting time has passed. */
+    private void retry() {
+      if (System.currentTimeMillis() > maxWaitTimeMillis) {
+        logger.warn("Still no service of type '{}' available while waiting for more than one day, abort remote call {}",
+                serviceType, httpRequest.getURI());
+        result.complete(null);
+        return;
+      }
+      submit(this, getRetryDelay());
+    }
+  }
+
+  /**
+   * @return the time in milliseconds to wait before asynchronous requests are retried
+   */
+  protected long getRetryDelay() {
+    return TIMEOUT;
+  }
+
+  private static ThreadFactory daemonThreadFactory(final String name) {
+    final AtomicInteger count = new AtomicInteger();
+    return runnable -> {
+      Thread thread = new Thread(runnable, name + "-" + count.incrementAndGet());
+      thread.setDaemon(true);
+      return thread;
+    };
+  }
+
   /**
    * Closes any http connections kept open by this http response.
    */
@@ -0,0 +1,274 @@
+/**
+ * Licensed to The Apereo Foundation under one or more contributor license
+ * agreements. See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ *
+ * The Apereo Foundation licenses this file to you under the Educational
+ * Community License, Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License. You may obtain a copy of the License
+ * at:
+ *
+ *   http://opensource.org/licenses/ecl2.txt
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ *
+ */
+
+package org.opencastproject.serviceregistry.api;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.function.LongSupplier;
+
+/**
+ * Keeps track of the latency, error rate and number of requests in flight per remote host, and decides in which order
+ * the hosts offering a service are tried.
+ * <p>
+ * Hosts failing repeatedly are ejected for a while (the circuit is opened). Once that time has passed, a single request
+ * is let through to probe the host, which closes the circuit again if it succeeds. The probe is claimed atomically
+ * while ordering the hosts, so concurrent callers never probe the same host twice. The remaining hosts are ordered by
+ * repeatedly picking two of them at random and taking the one with the lower expected latency, which spreads requests
+ * across healthy hosts while steering them away from slow ones.
+ */
+final class RemoteHostTracker {
+
+  /** The logger */
+  private static final Logger logger = LoggerFactory.getLogger(RemoteHostTracker.class);
+
+  /** The number of consecutive failures after which a host is ejected */
+  static final int FAILURE_THRESHOLD = 5;
+
+  /** The time in milliseconds a host stays ejected */
+  static final long EJECTION_TIME = 30000;
+
+  /** The weight of a new observation in the moving averages */
+  private static final double ALPHA = 0.2;
+
+  /** The state of a single host */
+  static final class Host {
+
+    private final String url;
+
+    /** Exponentially weighted moving average of the request latency in milliseconds */
+    private double latency = 0;
+
+    /** Exponentially weighted moving average of the share of failed requests */
+    private double errorRate = 0;
+
+    private int inFlight = 0;
+    private int consecutiveFailures = 0;
+
+    /** The time until which the host is ejected, in milliseconds; 0 if the circuit is closed */
+    private long ejectedUntil = 0;
+
+    /** The time the probe request was let through while the circuit is half open; 0 if there is none */
+    private long probeStarted = 0;
+
+    Host(String url) {
+      this.url = url;
+    }
+
+    /**
+     * Returns whether a request may be sent to this host. Once the ejection time has passed, the first caller claims
+     * the probe and all others are refused until the probe has finished. A probe which is never finished, e.g.
+     * because the caller did not get to send it, is given up after {@link #EJECTION_TIME}.
+     *
+     * @return whether requests may be sent to this host
+     */
+    synchronized boolean tryAcquire(long now) {
+      if (ejectedUntil == 0) {
+        return true;
+      }
+      if (now < ejectedUntil || (probeStarted != 0 && now < probeStarted + EJECTION_TIME)) {
+        return false;
+      }
+      probeStarted = now;
+      return true;
+    }
+
+    /** @return whether the circuit is half open and the probe request has been claimed */
+    synchronized boolean isProbing() {
+      return probeStarted != 0;
+    }
+
+    /** @return the expected latency of a new request, taking the requests in flight into account */
+    synchronized double getCost() {
+      return latency * (inFlight + 1) / Math.max(0.05, 1 - errorRate);
+    }
+
+    synchronized double getLatency() {
+      return latency;
+    }
+
+    synchronized double getErrorRate() {
+      return errorRate;
+    }
+
+    synchronized int getInFlight() {
+      return inFlight;
+    }
+
+    synchronized boolean isEjected(long now) {
+      return ejectedUntil != 0 && (now < ejectedUntil || probeStarted != 0);
+    }
+
+    synchronized void start() {
+      inFlight++;
+    }
+
+    synchronized void cancel() {
+      inFlight = Math.max(0, inFlight - 1);
+    }
+
+    synchronized void finish(long now, long duration, boolean success) {
+      inFlight = Math.max(0, inFlight - 1);
+      latency = latency == 0 ? duration : latency + ALPHA * (duration - latency);
+      errorRate += ALPHA * ((success ? 0 : 1) - errorRate);
+      if (success) {
+        if (ejectedUntil != 0) {
+          logger.info("Remote host {} is responding again", url);
+        }
+        consecutiveFailures = 0;
+        ejectedUntil = 0;
+        probeStarted = 0;
+      } else {
+        consecutiveFailures++;
+        if (probeStarted != 0 || (ejectedUntil == 0 && consecutiveFailures >= FAILURE_THRESHOLD)) {
+          logger.warn("Ejecting remote host {} for {} ms after {} consecutive failures", url, EJECTION_TIME,
+                  consecutiveFailures);
+          ejectedUntil = now + EJECTION_TIME;
+          probeStarted = 0;
+        }
+      }
+    }
+  }
+
+  /** The state per host URL */
+  private final Map<String, Host> hosts = new ConcurrentHashMap<>();
+
+  /** The clock in milliseconds */
+  private final LongSupplier clock;
+
+  /** The source of randomness for the host selection */
+  private final Random random;
+
+  RemoteHostTracker() {
+    this(System::currentTimeMillis, null);
+  }
+
+  RemoteHostTracker(LongSupplier clock, Random random) {
+    this.clock = clock;
+    this.random = random;
+  }
+
+  /**
+   * Returns the state of a host.
+   *
+   * @param url
+   *          the base URL of the host
+   * @return the host state
+   */
+  Host get(String url) {
+    return hosts.computeIfAbsent(url, Host::new);
+  }
+
+  /**
+   * Orders services by the state of their hosts. Services on ejected hosts are left out, unless all of them are
+   * ejected, in which case they are returned in their original order. Services on hosts this call claimed the probe
+   * for come first, so that the probe is actually sent.
+   *
+   * @param services
+   *          the services, ordered by preference (e.g. by load)
+   * @return the services in the order they should be tried
+   */
+  List<ServiceRegistration> order(List<ServiceRegistration> services) {
+    final long now = clock.getAsLong();
+    final List<ServiceRegistration> probes = new ArrayList<>();
+    final List<ServiceRegistration> candidates = new ArrayList<>(services.size());
+    for (ServiceRegistration service : services) {
+      final Host host = get(service.getHost());
+      if (host.tryAcquire(now)) {
+        if (host.isProbing()) {
+          probes.add(service);
+        } else {
+          candidates.add(service);
+        }
+      }
+    }
+    if (candidates.isEmpty() && probes.isEmpty()) {
+      logger.debug("All hosts offering {} are ejected, trying them anyway", services);
+      return new ArrayList<>(services);
+    }
+
+    // Power of two choices, falling back to the original order if both hosts are equally good
+    final Random rnd = random != null ? random : ThreadLocalRandom.current();
+    final List<ServiceRegistration> ordered = new ArrayList<>(probes.size() + candidates.size());
+    ordered.addAll(probes);
+    while (candidates.size() > 1) {
+      int a = rnd.nextInt(candidates.size());
+      int b = rnd.nextInt(candidates.size() - 1);
+      if (b >= a) {
+        b++;
+      }
+      double costA = get(candidates.get(a).getHost()).getCost();
+      double costB = get(candidates.get(b).getHost()).getCost();
+      int chosen = costA < costB || (costA == costB && a < b) ? a : b;
+      ordered.add(candidates.remove(chosen));
+    }
+    if (!candidates.isEmpty()) {
+      ordered.add(candidates.get(0));
+    }
+    return ordered;
+  }
+
+  /**
+   * Records the start of a request to a host.
+   *
+   * @param url
+   *          the base URL of the host
+   * @return the start time to pass to {@link #finish(String, long, boolean)}
+   */
+  long start(String url) {
+    final long now = clock.getAsLong();
+    get(url).start();
+    return now;
+  }
+
+  /**
+   * Records that a request to a host has not been sent after all, without judging the host by it.
+   *
+   * @param url
+   *          the base URL of the host
+   */
+  void cancel(String url) {
+    get(url).cancel();
+  }
+
+  /**
+   * Records the end of a request to a host.
+   *
+   * @param url
+   *          the base URL of the host
+   * @param start
+   *          the start time returned by {@link #start(String)}
+   * @param success
+   *          whether the host handled the request, as opposed to failing or refusing it
+   */
+  void finish(String url, long start, boolean success) {
+    final long now = clock.getAsLong();
+    get(url).finish(now, now - start, success);
+  }
+
+}
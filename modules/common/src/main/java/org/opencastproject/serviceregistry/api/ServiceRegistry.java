@@ -23,10 +23,12 @@ package org.opencastproject.serviceregistry.api;
 
 import org.opencastproject.job.api.Job;
 import org.opencastproject.job.api.Job.Status;
+import org.opencastproject.job.api.JobSpec;
 import org.opencastproject.serviceregistry.api.SystemLoad.NodeLoad;
 import org.opencastproject.util.NotFoundException;
 
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
 
 /** Manages clustered services and the {@link Job}s they may create to enable asynchronous job handling. */
 public interface ServiceRegistry {
@@ -333,6 +335,32 @@ public interface ServiceRegistry {
    */
   Job updateJob(Job job) throws NotFoundException, ServiceRegistryException;
 
+  /**
+   * Create and store a number of new jobs at once. Either all or none of the jobs are created. Specifications without
+   * a parent job get the job currently being processed as their parent, just like the jobs created by
+   * {@link #createJob(String, String, List, String, boolean, Float)}.
+   *
+   * @param specs
+   *          the specifications of the jobs to create
+   * @return the jobs, in the order of <code>specs</code>
+   * @throws ServiceRegistryException
+   *           if there is a problem creating the jobs
+   */
+  List<Job> createJobs(List<JobSpec> specs) throws ServiceRegistryException;
+
+  /**
+   * Update a number of jobs in the database at once. Either all or none of the jobs are updated.
+   *
+   * @param jobs
+   *          the jobs to update
+   * @return the updated jobs, in the order of <code>jobs</code>
+   * @throws NotFoundException
+   *           if one of the jobs does not exist
+   * @throws ServiceRegistryException
+   *           if there is a problem updating the jobs
+   */
+  List<Job> updateJobs(List<Job> jobs) throws NotFoundException, ServiceRegistryException;
+
   /**
    * Gets a receipt by its ID, or null if not found
    *
@@ -342,6 +370,23 @@ public interface ServiceRegistry {
    */
   Job getJob(long id) throws NotFoundException, ServiceRegistryException;
 
+  /**
+   * Subscribes to the termination of the given jobs. The returned future completes as soon as the service registry
+   * learns that all of the jobs reached one of the terminal states {@link Status#FINISHED}, {@link Status#FAILED} or
+   * {@link Status#DELETED}, without the caller having to poll for the job status.
+   * <p>
+   * The future completes exceptionally with a {@link org.opencastproject.util.JobCanceledException} as soon as one of
+   * the jobs gets canceled and with a {@link NotFoundException} if one of the jobs disappears. Callers may cancel the
+   * future to stop waiting.
+   *
+   * @param jobIds
+   *          the identifiers of the jobs to wait for
+   * @return the future holding the terminated jobs, in the order of <code>jobIds</code>
+   * @throws ServiceRegistryException
+   *           if there is a problem accessing the service registry
+   */
+  CompletableFuture<List<Job>> awaitJobs(List<Long> jobIds) throws ServiceRegistryException;
+
   /**
    * Deletes the given jobs from the service registry
    *
@@ -532,6 +577,20 @@ public interface ServiceRegistry {
    */
   HostRegistration getHostRegistration(String hostname) throws ServiceRegistryException;
 
+  /**
+   * Finds the hosts which reported holding a media package element in their workspace. The reports are refreshed
+   * periodically, so a host may have dropped the element in the meantime.
+   *
+   * @param mediaPackageId
+   *          the media package identifier
+   * @param elementId
+   *          the media package element identifier
+   * @return the base URLs of the hosts holding the element
+   * @throws ServiceRegistryException
+   *           if there is a problem accessing the service registry
+   */
+  List<String> getHostsHoldingElement(String mediaPackageId, String elementId) throws ServiceRegistryException;
+
   /**
    * Gets performance and runtime statistics for each known service registration.
    *
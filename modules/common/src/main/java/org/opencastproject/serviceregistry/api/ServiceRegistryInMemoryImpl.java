@@ -27,6 +27,7 @@ import org.opencastproject.job.api.Job.Status;
 import org.opencastproject.job.api.JobImpl;
 import org.opencastproject.job.api.JobParser;
 import org.opencastproject.job.api.JobProducer;
+import org.opencastproject.job.api.JobSpec;
 import org.opencastproject.security.api.Organization;
 import org.opencastproject.security.api.OrganizationDirectoryService;
 import org.opencastproject.security.api.SecurityService;
@@ -52,6 +53,7 @@ import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Set;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.Executors;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
@@ -79,6 +81,9 @@ public class ServiceRegistryInMemoryImpl implements ServiceRegistry {
   /** The serialized jobs */
   protected Map<Long, String> jobs = new HashMap<Long, String>();
 
+  /** The callers waiting for jobs to terminate */
+  protected final JobCompletionTracker jobCompletionTracker = new JobCompletionTracker();
+
   /** A mapping of services to jobs */
   protected Map<ServiceRegistrationInMemoryImpl, Set<Job>> jobHosts = new HashMap<ServiceRegistrationInMemoryImpl, Set<Job>>();
 
@@ -447,6 +452,7 @@ public class ServiceRegistryInMemoryImpl implements ServiceRegistry {
 
       jobs.remove(id);
     }
+    jobCompletionTracker.missing(id);
   }
 
   @Override
@@ -542,6 +548,7 @@ public class ServiceRegistryInMemoryImpl implements ServiceRegistry {
         throw new IllegalStateException("Error serializing job", e);
       }
     }
+    jobCompletionTracker.update(updatedJob);
     return updatedJob;
   }
 
@@ -589,6 +596,37 @@ public class ServiceRegistryInMemoryImpl implements ServiceRegistry {
     return job;
   }
 
+  /**
+   * {@inheritDoc}
+   *
+   * @see org.opencastproject.serviceregistry.api.ServiceRegistry#createJobs(java.util.List)
+   */
+  @Override
+  public List<Job> createJobs(List<JobSpec> specs) throws ServiceRegistryException {
+    List<Job> result = new ArrayList<>(specs.size());
+    for (JobSpec spec : specs) {
+      Job parentJob = spec.getParentJob() != null ? spec.getParentJob() : getCurrentJob();
+      Float jobLoad = spec.getJobLoad() != null ? spec.getJobLoad() : 1.0f;
+      result.add(createJob(spec.getJobType(), spec.getOperation(), spec.getArguments(), spec.getPayload(),
+              spec.isDispatchable(), parentJob, jobLoad));
+    }
+    return result;
+  }
+
+  /**
+   * {@inheritDoc}
+   *
+   * @see org.opencastproject.serviceregistry.api.ServiceRegistry#updateJobs(java.util.List)
+   */
+  @Override
+  public List<Job> updateJobs(List<Job> jobs) throws NotFoundException, ServiceRegistryException {
+    List<Job> result = new ArrayList<>(jobs.size());
+    for (Job job : jobs) {
+      result.add(updateJob(job));
+    }
+    return result;
+  }
+
   /**
    * {@inheritDoc}
    *
@@ -608,6 +646,25 @@ public class ServiceRegistryInMemoryImpl implements ServiceRegistry {
     }
   }
 
+  /**
+   * {@inheritDoc}
+   *
+   * @see org.opencastproject.serviceregistry.api.ServiceRegistry#awaitJobs(java.util.List)
+   */
+  @Override
+  public CompletableFuture<List<Job>> awaitJobs(List<Long> jobIds) throws ServiceRegistryException {
+    CompletableFuture<List<Job>> future = jobCompletionTracker.await(jobIds);
+    // The jobs might have terminated before we started listening
+    for (long jobId : jobIds) {
+      try {
+        jobCompletionTracker.update(getJob(jobId));
+      } catch (NotFoundException e) {
+        jobCompletionTracker.missing(jobId);
+      }
+    }
+    return future;
+  }
+
   /**
    * {@inheritDoc}
    *
@@ -929,6 +986,7 @@ public class ServiceRegistryInMemoryImpl implements ServiceRegistry {
             } catch (IOException e) {
               throw new IllegalStateException("Error unmarshaling job", e);
             }
+            jobCompletionTracker.update(job);
             securityService.setUser(null);
             securityService.setOrganization(null);
           }
@@ -1030,6 +1088,16 @@ public class ServiceRegistryInMemoryImpl implements ServiceRegistry {
     throw new ServiceRegistryException(String.format("Host registration for %s not found", hostname));
   }
 
+  /**
+   * {@inheritDoc}
+   * <p>
+   * The in-memory registry does not track the contents of workspaces, so no host is ever reported.
+   */
+  @Override
+  public List<String> getHostsHoldingElement(String mediaPackageId, String elementId) {
+    return Collections.emptyList();
+  }
+
   @Override
   public SystemLoad getCurrentHostLoads() {
     SystemLoad systemLoad = new SystemLoad();
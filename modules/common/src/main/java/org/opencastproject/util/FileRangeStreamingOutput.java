@@ -0,0 +1,113 @@
+/**
+ * Licensed to The Apereo Foundation under one or more contributor license
+ * agreements. See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ *
+ * The Apereo Foundation licenses this file to you under the Educational
+ * Community License, Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License. You may obtain a copy of the License
+ * at:
+ *
+ *   http://opensource.org/licenses/ecl2.txt
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ *
+ */
+
+
+package org.opencastproject.util;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+
+import javax.ws.rs.core.StreamingOutput;
+
+/**
+ * Writes a byte range of a file to a response, reading it through a {@link FileChannel} at absolute positions. The
+ * bytes are copied through a single buffer per response which is large enough to keep the number of writes to the
+ * container low.
+ */
+public class FileRangeStreamingOutput implements StreamingOutput {
+
+  /** Size of the copy buffer */
+  public static final int BUFFER_SIZE = 64 * 1024;
+
+  private final File file;
+  private final long start;
+  private final long end;
+
+  /**
+   * Creates an output for the bytes <code>start</code> to <code>end</code> (inclusive) of a file.
+   *
+   * @param file
+   *          the file to send
+   * @param start
+   *          the first byte to send
+   * @param end
+   *          the last byte to send
+   */
+  public FileRangeStreamingOutput(File file, long start, long end) {
+    this.file = file;
+    this.start = start;
+    this.end = end;
+  }
+
+  /**
+   * Creates an output for a whole file.
+   *
+   * @param file
+   *          the file to send
+   */
+  public FileRangeStreamingOutput(File file) {
+    this(file, 0, file.length() - 1);
+  }
+
+  @Override
+  public void write(OutputStream out) throws IOException {
+    try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+      transfer(channel, start, end, out);
+    }
+  }
+
+  /**
+   * Writes the bytes <code>start</code> to <code>end</code> (inclusive) of a file channel to an output stream. The
+   * position of the channel is not changed, so one channel can serve several ranges of the same file.
+   *
+   * @param channel
+   *          the channel to read from
+   * @param start
+   *          the first byte to write
+   * @param end
+   *          the last byte to write
+   * @param out
+   *          the output to write to
+   * @return the number of bytes written, which is less than requested if the file ends early
+   * @throws IOException
+   *           if reading the file or writing the output fails
+   */
+  public static long transfer(FileChannel channel, long start, long end, OutputStream out) throws IOException {
+    long position = start;
+    final ByteBuffer buffer = ByteBuffer.allocate((int) Math.max(0, Math.min(BUFFER_SIZE, end - start + 1)));
+    while (position <= end) {
+      buffer.clear();
+      buffer.limit((int) Math.min(buffer.capacity(), end - position + 1));
+      final int n = channel.read(buffer, position);
+      if (n < 0) {
+        break;
+      }
+      out.write(buffer.array(), 0, n);
+      position += n;
+    }
+    return position - start;
+  }
+
+}
@@ -82,6 +82,18 @@ public final class IoSupport {
    */
   private static Logger logger = LoggerFactory.getLogger(IoSupport.class.getName());
 
+  /**
+   * Monitors guarding {@link #locked(File, Function)} within this JVM, which {@link FileLock} does not. Files are
+   * spread across the monitors by their path, so operations on different files do not wait for each other.
+   */
+  private static final Object[] FILE_MONITORS = new Object[64];
+
+  static {
+    for (int i = 0; i < FILE_MONITORS.length; i++) {
+      FILE_MONITORS[i] = new Object();
+    }
+  }
+
   public static String getSystemTmpDir() {
     String tmpdir = System.getProperty("java.io.tmpdir");
     if (tmpdir == null) {
@@ -494,19 +506,23 @@ public final class IoSupport {
    * Please note that the implementation uses Java NIO {@link java.nio.channels.FileLock} which only guarantees that two
    * Java processes cannot interfere with each other.
    * <p>
-   * The implementation blocks until a lock can be acquired.
+   * The implementation blocks until a lock can be acquired. Within a JVM, <code>f</code> must not lock another file,
+   * since the monitor guarding that file may be held by a thread waiting for this one.
    *
    * @throws NotFoundException
    *            if the path to the file, to create a lock for, does not exist
    * @throws IOException
    *            if the file lock can not be created due to access limitations
    */
-  public static synchronized <A> A locked(File file, Function<File, A> f) throws NotFoundException, IOException {
-    final Effect0 key = acquireLock(file);
-    try {
-      return f.apply(file);
-    } finally {
-      key.apply();
+  public static <A> A locked(File file, Function<File, A> f) throws NotFoundException, IOException {
+    final int hash = file.getAbsoluteFile().toPath().normalize().hashCode();
+    synchronized (FILE_MONITORS[(hash ^ (hash >>> 16)) & (FILE_MONITORS.length - 1)]) {
+      final Effect0 key = acquireLock(file);
+      try {
+        return f.apply(file);
+      } finally {
+        key.apply();
+      }
     }
   }
 
@@ -47,10 +47,18 @@ import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
 import java.net.URI;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
 import javax.ws.rs.core.MediaType;
 import javax.ws.rs.core.Response;
+import javax.ws.rs.core.StreamingOutput;
 
 /** Utility functions for REST endpoints. */
 public final class RestUtil {
@@ -103,8 +111,16 @@ public final class RestUtil {
     return b;
   }
 
+  /** Boundary separating the parts of a multipart/byteranges response */
+  private static final String BYTERANGES_BOUNDARY = "OPENCAST_BYTERANGES_BOUNDARY";
+
+  /** A single range of a <code>Range</code> header */
+  private static final Pattern BYTE_RANGE = Pattern.compile("(\\d*)-(\\d*)");
+
   /**
-   * create a partial file response
+   * create a partial file response. Requests for several ranges are answered with a
+   * <code>multipart/byteranges</code> body, after overlapping or adjoining ranges have been merged. A range header
+   * which cannot be parsed is ignored and the whole file is sent.
    *
    * @param f
    *          the requested file
@@ -121,38 +137,143 @@ public final class RestUtil {
   public static Response.ResponseBuilder partialFileResponse(File f, String contentType, Option<String> fileName,
           String rangeHeader) throws IOException {
 
-    String rangeValue = rangeHeader.trim().substring("bytes=".length());
     long fileLength = f.length();
-    long start;
-    long end;
-    if (rangeValue.startsWith("-")) {
-      end = fileLength - 1;
-      start = fileLength - 1 - Long.parseLong(rangeValue.substring("-".length()));
-    } else {
-      String[] range = rangeValue.split("-");
-      start = Long.parseLong(range[0]);
-      end = range.length > 1 ? Long.parseLong(range[1]) : fileLength - 1;
+    List<long[]> ranges = parseByteRanges(rangeHeader, fileLength);
+    if (ranges == null) {
+      return fileResponse(f, contentType, fileName).entity(new FileRangeStreamingOutput(f))
+              .header("Accept-Ranges", "bytes");
     }
-    if (end > fileLength - 1) {
-      end = fileLength - 1;
+
+    if (ranges.isEmpty()) {
+      return Response.status(416).header("Content-Range", "bytes */" + fileLength);
     }
 
     // send partial response status code
     Response.ResponseBuilder response = Response.status(206);
-
-    if (start <= end) {
-      long contentLength = end - start + 1;
-      response.header("Accept-Ranges", "bytes");
-      response.header("Connection", "Close");
-      response.header("Content-Length", contentLength + "");
+    response.header("Accept-Ranges", "bytes");
+    if (ranges.size() == 1) {
+      long start = ranges.get(0)[0];
+      long end = ranges.get(0)[1];
+      response.header("Content-Length", (end - start + 1) + "");
       response.header("Content-Range", "bytes " + start + "-" + end + "/" + fileLength);
       response.header("Content-Type", contentType);
-      response.entity(new ChunkedFileInputStream(f, start, end));
+      response.entity(new FileRangeStreamingOutput(f, start, end));
+      return response;
     }
 
+    final List<byte[]> partHeaders = new ArrayList<>();
+    final byte[] trailer = ("\r\n--" + BYTERANGES_BOUNDARY + "--").getBytes(StandardCharsets.ISO_8859_1);
+    long contentLength = trailer.length;
+    for (long[] range : ranges) {
+      byte[] header = ("\r\n--" + BYTERANGES_BOUNDARY + "\r\nContent-Type: " + contentType
+              + "\r\nContent-Range: bytes " + range[0] + "-" + range[1] + "/" + fileLength + "\r\n\r\n")
+              .getBytes(StandardCharsets.ISO_8859_1);
+      partHeaders.add(header);
+      contentLength += header.length + range[1] - range[0] + 1;
+    }
+    final List<long[]> parts = ranges;
+    response.header("Content-Length", contentLength + "");
+    response.header("Content-Type", "multipart/byteranges; boundary=" + BYTERANGES_BOUNDARY);
+    response.entity((StreamingOutput) out -> {
+      try (FileChannel channel = FileChannel.open(f.toPath(), StandardOpenOption.READ)) {
+        for (int i = 0; i < parts.size(); i++) {
+          out.write(partHeaders.get(i));
+          FileRangeStreamingOutput.transfer(channel, parts.get(i)[0], parts.get(i)[1], out);
+        }
+      }
+      out.write(trailer);
+    });
     return response;
   }
 
+  /**
+   * Parses the value of a <code>Range</code> header like <code>bytes=0-99,200-</code>.
+   *
+   * @param rangeHeader
+   *          the range header
+   * @param fileLength
+   *          the length of the requested file
+   * @return the satisfiable ranges, sorted and merged, or <code>null</code> if the header is malformed and has to be
+   *         ignored as required by RFC 7233
+   */
+  static List<long[]> parseByteRanges(String rangeHeader, long fileLength) {
+    String value = rangeHeader.trim();
+    if (!value.startsWith("bytes=")) {
+      return null;
+    }
+    List<long[]> ranges = new ArrayList<>();
+    boolean empty = true;
+    for (String spec : value.substring("bytes=".length()).split(",")) {
+      // empty list elements are allowed
+      if (StringUtils.isBlank(spec)) {
+        continue;
+      }
+      empty = false;
+      long[] range;
+      try {
+        range = parseByteRange(spec.trim(), fileLength);
+      } catch (IllegalArgumentException e) {
+        return null;
+      }
+      if (range != null) {
+        ranges.add(range);
+      }
+    }
+    return empty ? null : coalesceByteRanges(ranges);
+  }
+
+  /**
+   * Parses a single range of a <code>Range</code> header like <code>0-99</code>, <code>100-</code> or
+   * <code>-100</code>, limiting it to the file.
+   *
+   * @return the first and last byte of the range or <code>null</code> if the range is unsatisfiable
+   * @throws IllegalArgumentException
+   *           if the range is malformed
+   */
+  private static long[] parseByteRange(String spec, long fileLength) {
+    Matcher matcher = BYTE_RANGE.matcher(spec);
+    if (!matcher.matches() || (matcher.group(1).isEmpty() && matcher.group(2).isEmpty())) {
+      throw new IllegalArgumentException("Malformed byte range " + spec);
+    }
+    long start;
+    long end;
+    if (matcher.group(1).isEmpty()) {
+      end = fileLength - 1;
+      start = Math.max(0, fileLength - Long.parseLong(matcher.group(2)));
+    } else {
+      start = Long.parseLong(matcher.group(1));
+      if (matcher.group(2).isEmpty()) {
+        end = fileLength - 1;
+      } else {
+        end = Long.parseLong(matcher.group(2));
+        if (end < start) {
+          throw new IllegalArgumentException("Malformed byte range " + spec);
+        }
+      }
+    }
+    if (end > fileLength - 1) {
+      end = fileLength - 1;
+    }
+    return start > end ? null : new long[] { start, end };
+  }
+
+  /** Sorts byte ranges and merges those which overlap or adjoin, so that no byte is sent twice. */
+  private static List<long[]> coalesceByteRanges(List<long[]> ranges) {
+    List<long[]> sorted = new ArrayList<>(ranges);
+    sorted.sort(Comparator.comparingLong(r -> r[0]));
+    List<long[]> result = new ArrayList<>();
+    long[] last = null;
+    for (long[] range : sorted) {
+      if (last != null && range[0] <= last[1] + 1) {
+        last[1] = Math.max(last[1], range[1]);
+      } else {
+        last = range;
+        result.add(range);
+      }
+    }
+    return result;
+  }
+
   /**
    * Create a stream response.
    *
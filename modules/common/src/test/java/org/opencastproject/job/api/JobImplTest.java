@@ -22,6 +22,8 @@
 package org.opencastproject.job.api;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
 import static org.junit.Assert.assertTrue;
 import static org.opencastproject.job.api.Job.FailureReason.NONE;
 import static org.opencastproject.job.api.Job.Status.DISPATCHING;
@@ -177,6 +179,38 @@ public class JobImplTest {
     assertEquals(job, equalJob);
   }
 
+  @Test
+  public void testEqualsDoesNotLoadPayload() throws Exception {
+    JobImpl lazyJob = new JobImpl(3L, "test", "test_org", 0L, "simple", "do", arguments, DISPATCHING, "localhost",
+            "remotehost", created, started, completed, 100L, 200L, null, 3L, 1L, true, uri, 1.5F);
+    lazyJob.setPayloadLoader(() -> {
+      throw new AssertionError("The payload must not be loaded");
+    });
+
+    assertEquals(job, lazyJob);
+    assertEquals(job.hashCode(), lazyJob.hashCode());
+  }
+
+  @Test
+  public void testPayloadUnmodified() throws Exception {
+    JobImpl lazyJob = new JobImpl(3L, "test", "test_org", 0L, "simple", "do", arguments, DISPATCHING, "localhost",
+            "remotehost", created, started, completed, 100L, 200L, null, 3L, 1L, true, uri, 1.5F);
+    assertFalse(lazyJob.isPayloadUnmodified());
+    lazyJob.setPayloadLoader(() -> "result");
+    assertEquals("result", lazyJob.getPayload());
+    assertTrue(lazyJob.isPayloadUnmodified());
+    lazyJob.setPayload("result");
+    assertFalse(lazyJob.isPayloadUnmodified());
+  }
+
+  @Test
+  public void testNotEqualWithOtherVersion() throws Exception {
+    Job newerJob = new JobImpl(3L, "test", "test_org", 1L, "simple", "do", arguments, DISPATCHING, "localhost",
+            "remotehost", created, started, completed, 100L, 200L, "result", 3L, 1L, true, uri, 1.5F);
+
+    assertNotEquals(job, newerJob);
+  }
+
   @Test
   public void testToString() throws Exception {
     Job newJob = new JobImpl(3L, "test", "test_org", 0L, "simple", "do", arguments, DISPATCHING, "localhost",
@@ -0,0 +1,99 @@
+/**
+ * Licensed to The Apereo Foundation under one or more contributor license
+ * agreements. See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ *
+ * The Apereo Foundation licenses this file to you under the Educational
+ * Community License, Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License. You may obtain a copy of the License
+ * at:
+ *
+ *   http://opensource.org/licenses/ecl2.txt
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ *
+ */
+
+package org.opencastproject.serviceregistry.api;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.opencastproject.job.api.Job;
+import org.opencastproject.job.api.Job.Status;
+import org.opencastproject.job.api.JobImpl;
+import org.opencastproject.util.JobCanceledException;
+import org.opencastproject.util.NotFoundException;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+
+public class JobCompletionTrackerTest {
+
+  private final JobCompletionTracker tracker = new JobCompletionTracker();
+
+  @Test
+  public void testCompletesOnceAllJobsTerminated() throws Exception {
+    CompletableFuture<List<Job>> future = tracker.await(Arrays.asList(1L, 2L));
+    tracker.update(job(2L, Status.FAILED));
+    tracker.update(job(1L, Status.RUNNING));
+    assertFalse(future.isDone());
+
+    tracker.update(job(1L, Status.FINISHED));
+    assertTrue(future.isDone());
+    assertEquals(1L, future.get().get(0).getId());
+    assertEquals(Status.FAILED, future.get().get(1).getStatus());
+    assertTrue(tracker.getPending().isEmpty());
+  }
+
+  @Test
+  public void testCanceledJob() throws Exception {
+    CompletableFuture<List<Job>> future = tracker.await(Arrays.asList(1L, 2L));
+    tracker.update(job(1L, Status.CANCELLED));
+    assertFailure(future, JobCanceledException.class);
+    assertFalse("Waiters are forgotten once done", tracker.isAwaited(2L));
+  }
+
+  @Test
+  public void testMissingJob() throws Exception {
+    CompletableFuture<List<Job>> future = tracker.await(Collections.singletonList(1L));
+    tracker.missing(1L);
+    assertFailure(future, NotFoundException.class);
+  }
+
+  @Test
+  public void testGivingUp() {
+    CompletableFuture<List<Job>> future = tracker.await(Collections.singletonList(1L));
+    assertTrue(tracker.isAwaited(1L));
+    future.cancel(false);
+    assertFalse(tracker.isAwaited(1L));
+  }
+
+  private static void assertFailure(CompletableFuture<List<Job>> future, Class<? extends Exception> type)
+          throws InterruptedException {
+    assertTrue(future.isCompletedExceptionally());
+    try {
+      future.get();
+    } catch (ExecutionException e) {
+      assertTrue(type.isInstance(e.getCause()));
+    }
+  }
+
+  private static Job job(long id, Status status) {
+    Job job = new JobImpl(id);
+    job.setStatus(status);
+    return job;
+  }
+
+}
@@ -0,0 +1,174 @@
+/**
+ * Licensed to The Apereo Foundation under one or more contributor license
+ * agreements. See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ *
+ * The Apereo Foundation licenses this file to you under the Educational
+ * Community License, Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License. You may obtain a copy of the License
+ * at:
+ *
+ *   http://opensource.org/licenses/ecl2.txt
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ *
+ */
+
+package org.opencastproject.serviceregistry.api;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import org.opencastproject.security.api.TrustedHttpClient;
+import org.opencastproject.util.data.Function;
+import org.opencastproject.util.data.Option;
+
+import org.apache.http.HttpResponse;
+import org.apache.http.HttpStatus;
+import org.apache.http.HttpVersion;
+import org.apache.http.client.methods.HttpGet;
+import org.apache.http.client.methods.HttpUriRequest;
+import org.apache.http.message.BasicHttpResponse;
+import org.easymock.EasyMock;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+public class RemoteBaseTest {
+
+  private static final String TYPE = "org.opencastproject.test";
+
+  private final List<ServiceRegistration> services = Collections.singletonList(
+          new ServiceRegistrationInMemoryImpl(TYPE, "http://localhost:8080", "/test", true));
+
+  private ServiceRegistry serviceRegistry;
+  private TrustedHttpClient client;
+  private RemoteBase remote;
+
+  @Before
+  public void setUp() {
+    serviceRegistry = EasyMock.createMock(ServiceRegistry.class);
+    client = EasyMock.createMock(TrustedHttpClient.class);
+    remote = new RemoteBase(TYPE) {
+      @Override
+      protected long getRetryDelay() {
+        return 10;
+      }
+    };
+    remote.setRemoteServiceManager(serviceRegistry);
+    remote.setTrustedHttpClient(client);
+    remote.startAsyncRequests(2);
+  }
+
+  @After
+  public void tearDown() {
+    remote.stopAsyncRequests();
+  }
+
+  private static HttpResponse response(int status) {
+    return new BasicHttpResponse(HttpVersion.HTTP_1_1, status, null);
+  }
+
+  @Test
+  public void testGetResponseTriesNextService() throws Exception {
+    HttpResponse busy = response(HttpStatus.SC_SERVICE_UNAVAILABLE);
+    HttpResponse ok = response(HttpStatus.SC_OK);
+    List<ServiceRegistration> twoServices = Arrays.asList(
+            new ServiceRegistrationInMemoryImpl(TYPE, "http://localhost:8081", "/test", true),
+            new ServiceRegistrationInMemoryImpl(TYPE, "http://localhost:8082", "/test", true));
+    EasyMock.expect(serviceRegistry.getServiceRegistrationsByLoad(TYPE)).andReturn(twoServices);
+    EasyMock.expect(client.execute(EasyMock.anyObject(HttpUriRequest.class))).andReturn(busy).andReturn(ok);
+    client.close(busy);
+    EasyMock.replay(serviceRegistry, client);
+
+    HttpGet get = new HttpGet("/path");
+    assertSame(ok, remote.getResponse(get));
+    EasyMock.verify(serviceRegistry, client);
+  }
+
+  @Test
+  public void testGetResponseGivesUpOnUnknownState() throws Exception {
+    HttpResponse error = response(HttpStatus.SC_INTERNAL_SERVER_ERROR);
+    EasyMock.expect(serviceRegistry.getServiceRegistrationsByLoad(TYPE)).andReturn(services);
+    EasyMock.expect(client.execute(EasyMock.anyObject(HttpUriRequest.class))).andReturn(error);
+    client.close(error);
+    EasyMock.replay(serviceRegistry, client);
+
+    HttpGet get = new HttpGet("/path");
+    assertNull(remote.getResponse(get));
+    assertEquals("/path", get.getURI().toString());
+    EasyMock.verify(serviceRegistry, client);
+  }
+
+  @Test
+  public void testAsyncRequestWaitsForService() throws Exception {
+    HttpResponse ok = response(HttpStatus.SC_OK);
+    HttpResponse busy = response(HttpStatus.SC_SERVICE_UNAVAILABLE);
+    EasyMock.expect(serviceRegistry.getServiceRegistrationsByLoad(TYPE))
+            .andReturn(Collections.<ServiceRegistration> emptyList()).andReturn(services).times(2);
+    EasyMock.expect(client.execute(EasyMock.anyObject(HttpUriRequest.class))).andReturn(busy).andReturn(ok);
+    client.close(busy);
+    EasyMock.replay(serviceRegistry, client);
+
+    HttpGet get = new HttpGet("/path");
+    assertSame(ok, remote.getResponseAsync(get).get(10, TimeUnit.SECONDS));
+    assertEquals("http://localhost:8080/test/path", get.getURI().toString());
+    EasyMock.verify(serviceRegistry, client);
+  }
+
+  @Test
+  public void testRunRequestAsync() throws Exception {
+    HttpResponse ok = response(HttpStatus.SC_OK);
+    EasyMock.expect(serviceRegistry.getServiceRegistrationsByLoad(TYPE)).andReturn(services);
+    EasyMock.expect(client.execute(EasyMock.anyObject(HttpUriRequest.class))).andReturn(ok);
+    client.close(ok);
+    EasyMock.replay(serviceRegistry, client);
+
+    Option<Integer> status = remote.runRequestAsync(new HttpGet("/path"), new Function<HttpResponse, Integer>() {
+      @Override
+      public Integer apply(HttpResponse response) {
+        return response.getStatusLine().getStatusCode();
+      }
+    }).get(10, TimeUnit.SECONDS);
+    assertEquals(HttpStatus.SC_OK, (int) status.get());
+    EasyMock.verify(serviceRegistry, client);
+  }
+
+  @Test
+  public void testStopFailsPendingRequests() throws Exception {
+    EasyMock.expect(serviceRegistry.getServiceRegistrationsByLoad(TYPE))
+            .andReturn(Collections.<ServiceRegistration> emptyList()).anyTimes();
+    EasyMock.replay(serviceRegistry, client);
+
+    CompletableFuture<HttpResponse> response = remote.getResponseAsync(new HttpGet("/path"));
+    remote.stopAsyncRequests();
+    try {
+      response.get(10, TimeUnit.SECONDS);
+      fail("Request did not fail after stopping");
+    } catch (ExecutionException e) {
+      assertTrue(e.getCause() instanceof IllegalStateException);
+    }
+  }
+
+  @Test
+  public void testAsyncRequestsNeedToBeStarted() throws Exception {
+    remote.stopAsyncRequests();
+    assertTrue(remote.getResponseAsync(new HttpGet("/path")).isCompletedExceptionally());
+  }
+
+}
@@ -0,0 +1,176 @@
+/**
+ * Licensed to The Apereo Foundation under one or more contributor license
+ * agreements. See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ *
+ * The Apereo Foundation licenses this file to you under the Educational
+ * Community License, Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License. You may obtain a copy of the License
+ * at:
+ *
+ *   http://opensource.org/licenses/ecl2.txt
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ *
+ */
+
+package org.opencastproject.serviceregistry.api;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+public class RemoteHostTrackerTest {
+
+  private static final String TYPE = "org.opencastproject.test";
+
+  private final AtomicLong now = new AtomicLong(1000);
+  private final RemoteHostTracker tracker = new RemoteHostTracker(now::get, new Random(42));
+
+  private final ServiceRegistration a = new ServiceRegistrationInMemoryImpl(TYPE, "http://a", "/test", true);
+  private final ServiceRegistration b = new ServiceRegistrationInMemoryImpl(TYPE, "http://b", "/test", true);
+
+  private void request(String host, long duration, boolean success) {
+    long start = tracker.start(host);
+    now.addAndGet(duration);
+    tracker.finish(host, start, success);
+  }
+
+  @Test
+  public void testPrefersFasterHost() {
+    request("http://a", 1000, true);
+    request("http://b", 10, true);
+    for (int i = 0; i < 10; i++) {
+      assertEquals(b, tracker.order(Arrays.asList(a, b)).get(0));
+    }
+  }
+
+  @Test
+  public void testKeepsOrderOfEqualHosts() {
+    assertEquals(Arrays.asList(a, b), tracker.order(Arrays.asList(a, b)));
+  }
+
+  @Test
+  public void testRequestsInFlightIncreaseCost() {
+    request("http://a", 10, true);
+    request("http://b", 15, true);
+    tracker.start("http://a");
+    tracker.start("http://a");
+    assertEquals(b, tracker.order(Arrays.asList(a, b)).get(0));
+  }
+
+  @Test
+  public void testCancelledRequestIsNotJudged() {
+    request("http://a", 10, true);
+    tracker.start("http://a");
+    tracker.cancel("http://a");
+    assertEquals(0, tracker.get("http://a").getInFlight());
+    assertEquals(0, tracker.get("http://a").getErrorRate(), 0);
+    assertEquals(10, tracker.get("http://a").getLatency(), 0);
+  }
+
+  @Test
+  public void testFailingHostIsEjectedAndProbed() {
+    for (int i = 0; i < RemoteHostTracker.FAILURE_THRESHOLD; i++) {
+      request("http://a", 10, false);
+    }
+    List<ServiceRegistration> ordered = tracker.order(Arrays.asList(a, b));
+    assertEquals(Arrays.asList(b), ordered);
+    assertTrue(tracker.get("http://a").isEjected(now.get()));
+
+    // once the ejection time has passed, a single probe is let through, ahead of the other hosts
+    now.addAndGet(RemoteHostTracker.EJECTION_TIME);
+    assertEquals(Arrays.asList(a, b), tracker.order(Arrays.asList(a, b)));
+    assertEquals(Arrays.asList(b), tracker.order(Arrays.asList(a, b)));
+    long start = tracker.start("http://a");
+
+    // a successful probe closes the circuit again
+    tracker.finish("http://a", start, true);
+    assertFalse(tracker.get("http://a").isEjected(now.get()));
+    assertEquals(2, tracker.order(Arrays.asList(a, b)).size());
+  }
+
+  @Test
+  public void testConcurrentCallersClaimASingleProbe() throws Exception {
+    for (int i = 0; i < RemoteHostTracker.FAILURE_THRESHOLD; i++) {
+      request("http://a", 10, false);
+    }
+    now.addAndGet(RemoteHostTracker.EJECTION_TIME);
+    final int callers = 8;
+    final CyclicBarrier barrier = new CyclicBarrier(callers);
+    final AtomicInteger probes = new AtomicInteger();
+    final ExecutorService executor = Executors.newFixedThreadPool(callers);
+    try {
+      final List<Future<?>> futures = new ArrayList<>();
+      for (int i = 0; i < callers; i++) {
+        futures.add(executor.submit(() -> {
+          barrier.await();
+          if (tracker.order(Arrays.asList(a, b)).contains(a)) {
+            probes.incrementAndGet();
+          }
+          return null;
+        }));
+      }
+      for (Future<?> future : futures) {
+        future.get(10, TimeUnit.SECONDS);
+      }
+    } finally {
+      executor.shutdownNow();
+    }
+    assertEquals(1, probes.get());
+  }
+
+  @Test
+  public void testUnsentProbeIsGivenUp() {
+    for (int i = 0; i < RemoteHostTracker.FAILURE_THRESHOLD; i++) {
+      request("http://a", 10, false);
+    }
+    now.addAndGet(RemoteHostTracker.EJECTION_TIME);
+    assertTrue(tracker.order(Arrays.asList(a, b)).contains(a));
+    assertFalse(tracker.order(Arrays.asList(a, b)).contains(a));
+
+    // the probe claimed above is never sent, so another one is let through eventually
+    now.addAndGet(RemoteHostTracker.EJECTION_TIME);
+    assertTrue(tracker.order(Arrays.asList(a, b)).contains(a));
+  }
+
+  @Test
+  public void testFailedProbeEjectsAgain() {
+    for (int i = 0; i < RemoteHostTracker.FAILURE_THRESHOLD; i++) {
+      request("http://a", 10, false);
+    }
+    now.addAndGet(RemoteHostTracker.EJECTION_TIME);
+    tracker.order(Arrays.asList(a, b));
+    request("http://a", 10, false);
+    assertTrue(tracker.get("http://a").isEjected(now.get()));
+  }
+
+  @Test
+  public void testAllHostsEjected() {
+    for (int i = 0; i < RemoteHostTracker.FAILURE_THRESHOLD; i++) {
+      request("http://a", 10, false);
+      request("http://b", 10, false);
+    }
+    assertEquals(Arrays.asList(a, b), tracker.order(Arrays.asList(a, b)));
+  }
+
+}
@@ -0,0 +1,83 @@
+/**
+ * Licensed to The Apereo Foundation under one or more contributor license
+ * agreements. See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ *
+ * The Apereo Foundation licenses this file to you under the Educational
+ * Community License, Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License. You may obtain a copy of the License
+ * at:
+ *
+ *   http://opensource.org/licenses/ecl2.txt
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ *
+ */
+
+
+package org.opencastproject.util;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import java.util.List;
+
+public class RestUtilTest {
+
+  private static final long LENGTH = 1000;
+
+  @Test
+  public void testParseByteRanges() {
+    assertRanges(RestUtil.parseByteRanges("bytes=0-99", LENGTH), new long[] { 0, 99 });
+    assertRanges(RestUtil.parseByteRanges("bytes=900-", LENGTH), new long[] { 900, 999 });
+    assertRanges(RestUtil.parseByteRanges("bytes=-100", LENGTH), new long[] { 900, 999 });
+    assertRanges(RestUtil.parseByteRanges("bytes=500-2000", LENGTH), new long[] { 500, 999 });
+  }
+
+  @Test
+  public void testParseByteRangesMergesOverlappingRanges() {
+    assertRanges(RestUtil.parseByteRanges("bytes=200-299, 0-99,100-149,,280-300", LENGTH),
+            new long[] { 0, 149 }, new long[] { 200, 300 });
+  }
+
+  @Test
+  public void testParseUnsatisfiableByteRanges() {
+    assertTrue(RestUtil.parseByteRanges("bytes=1000-", LENGTH).isEmpty());
+    assertTrue(RestUtil.parseByteRanges("bytes=-0", LENGTH).isEmpty());
+  }
+
+  @Test
+  public void testMalformedByteRangesAreIgnored() {
+    assertNull(RestUtil.parseByteRanges("bytes=abc", LENGTH));
+    assertNull(RestUtil.parseByteRanges("bytes=-", LENGTH));
+    assertNull(RestUtil.parseByteRanges("bytes=", LENGTH));
+    assertNull(RestUtil.parseByteRanges("bytes=,", LENGTH));
+    assertNull(RestUtil.parseByteRanges("bytes=0-1,x", LENGTH));
+    assertNull(RestUtil.parseByteRanges("bytes=5-3", LENGTH));
+    assertNull(RestUtil.parseByteRanges("bytes=1-2-3", LENGTH));
+    assertNull(RestUtil.parseByteRanges("bytes=0-99999999999999999999", LENGTH));
+    assertNull(RestUtil.parseByteRanges("items=0-1", LENGTH));
+  }
+
+  @Test
+  public void testTrailingSeparatorIsAllowed() {
+    assertRanges(RestUtil.parseByteRanges("bytes=0-1,", LENGTH), new long[] { 0, 1 });
+  }
+
+  private static void assertRanges(List<long[]> actual, long[]... expected) {
+    assertEquals(expected.length, actual.size());
+    for (int i = 0; i < expected.length; i++) {
+      assertArrayEquals(expected[i], actual.get(i));
+    }
+  }
+
+}
@@ -25,6 +25,7 @@ package org.opencastproject.elasticsearch.impl;
 import org.opencastproject.elasticsearch.api.SearchIndex;
 import org.opencastproject.elasticsearch.api.SearchIndexException;
 import org.opencastproject.elasticsearch.api.SearchQuery;
+import org.opencastproject.util.jmx.JmxUtil;
 import org.opencastproject.util.requests.SortCriterion;
 
 import org.apache.commons.io.IOUtils;
@@ -36,15 +37,23 @@ import org.apache.http.client.CredentialsProvider;
 import org.apache.http.impl.client.BasicCredentialsProvider;
 import org.elasticsearch.ElasticsearchException;
 import org.elasticsearch.ElasticsearchStatusException;
+import org.elasticsearch.action.DocWriteResponse;
+import org.elasticsearch.action.admin.indices.alias.Alias;
+import org.elasticsearch.action.admin.indices.alias.IndicesAliasesRequest;
+import org.elasticsearch.action.admin.indices.alias.IndicesAliasesRequest.AliasActions;
+import org.elasticsearch.action.admin.indices.alias.get.GetAliasesRequest;
 import org.elasticsearch.action.admin.indices.delete.DeleteIndexRequest;
+import org.elasticsearch.action.admin.indices.refresh.RefreshRequest;
 import org.elasticsearch.action.bulk.BulkItemResponse;
 import org.elasticsearch.action.bulk.BulkRequest;
 import org.elasticsearch.action.bulk.BulkResponse;
+import org.elasticsearch.action.delete.DeleteRequest;
 import org.elasticsearch.action.get.GetRequest;
 import org.elasticsearch.action.get.GetResponse;
 import org.elasticsearch.action.index.IndexRequest;
 import org.elasticsearch.action.search.SearchRequest;
 import org.elasticsearch.action.search.SearchType;
+import org.elasticsearch.action.support.IndicesOptions;
 import org.elasticsearch.action.support.WriteRequest;
 import org.elasticsearch.action.support.master.AcknowledgedResponse;
 import org.elasticsearch.client.RequestOptions;
@@ -53,6 +62,8 @@ import org.elasticsearch.client.RestClientBuilder;
 import org.elasticsearch.client.RestHighLevelClient;
 import org.elasticsearch.client.indices.CreateIndexRequest;
 import org.elasticsearch.client.indices.CreateIndexResponse;
+import org.elasticsearch.client.indices.GetIndexRequest;
+import org.elasticsearch.client.indices.GetIndexResponse;
 import org.elasticsearch.common.xcontent.XContentType;
 import org.elasticsearch.index.query.QueryBuilder;
 import org.elasticsearch.rest.RestStatus;
@@ -73,16 +84,49 @@ import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Consumer;
 import java.util.stream.Collectors;
 
+import javax.management.ObjectInstance;
+
 /**
  * A search index implementation based on ElasticSearch.
+ * <p>
+ * Every document type is stored in a physical index named after the type and a suffix, which is reached through an
+ * alias named after the type. This allows rebuilding the index into new shadow indices while the live indices keep
+ * serving searches, and replacing the live indices by switching the aliases.
+ * <p>
+ * While the index is being rebuilt, the shadow indices are also reachable through shadow aliases named after the type
+ * and <code>_shadow</code>. All nodes writing to the index look for these aliases and send their documents to both the
+ * live and the shadow indices, not only the node running the rebuild.
  */
 public abstract class AbstractElasticsearchIndex implements SearchIndex {
 
+  /**
+   * An operation on the index.
+   *
+   * @param <T>
+   *          the result of the operation
+   * @param <E>
+   *          a further exception the operation may throw
+   */
+  @FunctionalInterface
+  public interface IndexOperation<T, E extends Exception> {
+    T run() throws SearchIndexException, E;
+  }
+
   /** Logging facility */
   private static final Logger logger = LoggerFactory.getLogger(AbstractElasticsearchIndex.class);
 
@@ -104,6 +148,40 @@ public abstract class AbstractElasticsearchIndex implements SearchIndex {
   /** Configuration key defining the password of an external Elasticsearch server */
   public static final String ELASTICSEARCH_PASSWORD_KEY = "org.opencastproject.elasticsearch.password";
 
+  /** Configuration key defining the maximum number of documents sent in one bulk request */
+  public static final String ELASTICSEARCH_BULK_ACTIONS_KEY = "org.opencastproject.elasticsearch.bulk.actions";
+
+  /** Configuration key defining the maximum size of a bulk request in bytes */
+  public static final String ELASTICSEARCH_BULK_SIZE_KEY = "org.opencastproject.elasticsearch.bulk.size";
+
+  /** Configuration key defining how long documents wait for other documents to be sent along with in milliseconds */
+  public static final String ELASTICSEARCH_BULK_FLUSH_INTERVAL_KEY
+          = "org.opencastproject.elasticsearch.bulk.flush.interval";
+
+  /** Configuration key defining the maximum number of documents waiting to be sent */
+  public static final String ELASTICSEARCH_BULK_QUEUE_SIZE_KEY = "org.opencastproject.elasticsearch.bulk.queue.size";
+
+  /** Configuration key defining the refresh policy of bulk requests nobody waits for */
+  public static final String ELASTICSEARCH_BULK_REFRESH_KEY = "org.opencastproject.elasticsearch.bulk.refresh";
+
+  /** Default maximum number of documents sent in one bulk request */
+  private static final int ELASTICSEARCH_BULK_ACTIONS_DEFAULT = 1000;
+
+  /** Default maximum size of a bulk request in bytes */
+  private static final long ELASTICSEARCH_BULK_SIZE_DEFAULT = 5 * 1024 * 1024;
+
+  /** Default time documents wait for other documents to be sent along with in milliseconds */
+  private static final long ELASTICSEARCH_BULK_FLUSH_INTERVAL_DEFAULT = 500;
+
+  /** Default maximum number of documents waiting to be sent */
+  private static final int ELASTICSEARCH_BULK_QUEUE_SIZE_DEFAULT = 10000;
+
+  /** Default refresh policy of bulk requests nobody waits for */
+  private static final String ELASTICSEARCH_BULK_REFRESH_DEFAULT = "false";
+
+  /** JMX type of the bulk indexing statistics, followed by the index name */
+  private static final String JMX_BULK_INDEXING_TYPE = "ElasticsearchBulkIndexing-";
+
   /** Default port of an external Elasticsearch server */
   private static final int ELASTICSEARCH_SERVER_PORT_DEFAULT = 9200;
 
@@ -119,15 +197,48 @@ public abstract class AbstractElasticsearchIndex implements SearchIndex {
   /** Type of the document containing the index version information */
   private static final String VERSION_TYPE = "version";
 
+  /** Suffix of the aliases of the shadow indices of a running rebuild */
+  private static final String SHADOW_ALIAS_SUFFIX = "_shadow";
+
+  /** Time in milliseconds a node relies on its knowledge whether the index is being rebuilt */
+  static final long SHADOW_CHECK_INTERVAL = 10000;
+
   /** The index identifier */
   private String index = null;
 
   /** The high level client */
   private RestHighLevelClient client = null;
 
+  /** Sends the documents to the index in bulk requests */
+  private BulkIndexer bulkIndexer = null;
+
+  /** The registered bulk indexing statistics */
+  private ObjectInstance registeredBulkIndexingMXBean = null;
+
   /** List of sites with prepared index */
   private final List<String> preparedIndices = new ArrayList<>();
 
+  /** The suffix of the shadow indices of a running rebuild, or <code>null</code> if the index is not being rebuilt */
+  private volatile String shadowSuffix = null;
+
+  /** Whether a write could not be applied to the shadow indices */
+  private volatile boolean shadowIncomplete = false;
+
+  /** Whether the shadow aliases were found the last time this node looked for them */
+  private volatile boolean shadowFound = false;
+
+  /** When this node last looked for the shadow aliases */
+  private volatile long shadowChecked = 0;
+
+  /** Whether the current thread works on the shadow indices */
+  private final ThreadLocal<Boolean> onShadow = ThreadLocal.withInitial(() -> false);
+
+  /** Barriers sent to the message queues feeding the index which their receivers did not reach yet */
+  private final Map<String, CountDownLatch> pendingBarriers = new ConcurrentHashMap<>();
+
+  /** Keeps writes from running while the live indices are replaced by the shadow indices */
+  private final ReadWriteLock switchLock = new ReentrantReadWriteLock();
+
   /** The version number */
   private int indexVersion = -1;
 
@@ -149,6 +260,21 @@ public abstract class AbstractElasticsearchIndex implements SearchIndex {
   /** Password of an external Elasticsearch server to connect to. */
   private String password;
 
+  /** Maximum number of documents sent in one bulk request */
+  private int bulkActions = ELASTICSEARCH_BULK_ACTIONS_DEFAULT;
+
+  /** Maximum size of a bulk request in bytes */
+  private long bulkSize = ELASTICSEARCH_BULK_SIZE_DEFAULT;
+
+  /** Time documents wait for other documents to be sent along with in milliseconds */
+  private long bulkFlushInterval = ELASTICSEARCH_BULK_FLUSH_INTERVAL_DEFAULT;
+
+  /** Maximum number of documents waiting to be sent */
+  private int bulkQueueSize = ELASTICSEARCH_BULK_QUEUE_SIZE_DEFAULT;
+
+  /** Refresh policy of bulk requests nobody waits for */
+  private WriteRequest.RefreshPolicy bulkRefreshPolicy = WriteRequest.RefreshPolicy.NONE;
+
   /**
    * Returns an array of document types for the index. For every one of these, the corresponding document type
    * definition will be loaded.
@@ -181,6 +307,24 @@ public abstract class AbstractElasticsearchIndex implements SearchIndex {
                     ELASTICSEARCH_SERVER_PORT_DEFAULT + ""));
     username = StringUtils.trimToNull(ctx.getBundleContext().getProperty(ELASTICSEARCH_USERNAME_KEY));
     password = StringUtils.trimToNull(ctx.getBundleContext().getProperty(ELASTICSEARCH_PASSWORD_KEY));
+    bulkActions = Integer.parseInt(StringUtils
+            .defaultIfBlank(ctx.getBundleContext().getProperty(ELASTICSEARCH_BULK_ACTIONS_KEY),
+                    ELASTICSEARCH_BULK_ACTIONS_DEFAULT + ""));
+    bulkSize = Long.parseLong(StringUtils
+            .defaultIfBlank(ctx.getBundleContext().getProperty(ELASTICSEARCH_BULK_SIZE_KEY),
+                    ELASTICSEARCH_BULK_SIZE_DEFAULT + ""));
+    bulkFlushInterval = Long.parseLong(StringUtils
+            .defaultIfBlank(ctx.getBundleContext().getProperty(ELASTICSEARCH_BULK_FLUSH_INTERVAL_KEY),
+                    ELASTICSEARCH_BULK_FLUSH_INTERVAL_DEFAULT + ""));
+    bulkQueueSize = Integer.parseInt(StringUtils
+            .defaultIfBlank(ctx.getBundleContext().getProperty(ELASTICSEARCH_BULK_QUEUE_SIZE_KEY),
+                    ELASTICSEARCH_BULK_QUEUE_SIZE_DEFAULT + ""));
+    bulkRefreshPolicy = WriteRequest.RefreshPolicy.parse(StringUtils
+            .defaultIfBlank(ctx.getBundleContext().getProperty(ELASTICSEARCH_BULK_REFRESH_KEY),
+                    ELASTICSEARCH_BULK_REFRESH_DEFAULT).trim());
+    if (bulkActions < 1 || bulkSize < 1 || bulkFlushInterval < 0 || bulkQueueSize < 1) {
+      throw new ComponentException("Elasticsearch bulk request limits and queue size must be positive");
+    }
   }
 
   @Override
@@ -191,14 +335,21 @@ public abstract class AbstractElasticsearchIndex implements SearchIndex {
   @Override
   public void clear() throws IOException {
     try {
-      final DeleteIndexRequest request = new DeleteIndexRequest(
-              Arrays.stream(getDocumentTypes()).map(this::getIndexName).toArray(String[]::new));
-      final AcknowledgedResponse delete = client.indices().delete(request, RequestOptions.DEFAULT);
-      if (!delete.isAcknowledged()) {
-        logger.error("Index '{}' could not be deleted", getIndexName());
+      final List<String> liveIndices = new ArrayList<>();
+      for (String type : getDocumentTypes()) {
+        getPhysicalIndices(getAliasName(type)).entrySet().stream()
+                .filter(Entry::getValue)
+                .forEach(physicalIndex -> liveIndices.add(physicalIndex.getKey()));
+      }
+      if (!liveIndices.isEmpty()) {
+        final DeleteIndexRequest request = new DeleteIndexRequest(liveIndices.toArray(new String[0]));
+        final AcknowledgedResponse delete = client.indices().delete(request, RequestOptions.DEFAULT);
+        if (!delete.isAcknowledged()) {
+          logger.error("Index '{}' could not be deleted", getIndexName());
+        }
       }
       preparedIndices
-              .removeAll(Arrays.stream(getDocumentTypes()).map(this::getIndexName).collect(Collectors.toList()));
+              .removeAll(Arrays.stream(getDocumentTypes()).map(this::getAliasName).collect(Collectors.toList()));
       createIndex(getIndexName());
     } catch (ElasticsearchException exception) {
       if (exception.status() == RestStatus.NOT_FOUND) {
@@ -210,7 +361,7 @@ public abstract class AbstractElasticsearchIndex implements SearchIndex {
   }
 
   /**
-   * Posts the input document to the search index.
+   * Posts the input documents to the search index and waits until they are visible to searches.
    *
    * @param documents
    *          the input documents
@@ -219,31 +370,573 @@ public abstract class AbstractElasticsearchIndex implements SearchIndex {
    *           if posting to the index fails
    */
   protected BulkResponse update(ElasticsearchDocument... documents) throws SearchIndexException {
+    return update(true, documents);
+  }
 
-    final BulkRequest bulkRequest = new BulkRequest().setRefreshPolicy(WriteRequest.RefreshPolicy.IMMEDIATE);
+  /**
+   * Posts the input documents to the search index. The documents are queued and sent in bulk requests together with
+   * the documents of other callers.
+   * <p>
+   * Callers which read their own writes need to wait for them. Other callers only queue the documents and return, in
+   * which case failures to index the documents are only logged. Use {@link #awaitPendingUpdate(String, String)} before
+   * reading, modifying and writing a document again which might have been posted without waiting.
+   * <p>
+   * While the index is being rebuilt, the documents are sent to the shadow indices as well, in the same bulk request.
+   * Elasticsearch resolves the aliases of a bulk request against one cluster state, so a document either reaches both
+   * the live and the shadow indices, or it reaches the live indices after the switch to the shadow indices.
+   *
+   * @param wait
+   *          whether to wait until the documents are visible to searches
+   * @param documents
+   *          the input documents
+   * @return the query response, or <code>null</code> if not waiting for the documents
+   * @throws SearchIndexException
+   *           if posting to the index fails
+   */
+  protected BulkResponse update(boolean wait, ElasticsearchDocument... documents) throws SearchIndexException {
+    final boolean mirror = !onShadow.get() && hasShadow();
+    final List<IndexRequest> requests = new ArrayList<>(mirror ? 2 * documents.length : documents.length);
     for (ElasticsearchDocument doc : documents) {
-      bulkRequest.add(new IndexRequest(getIndexName(doc.getType())).id(doc.getUID()).source(doc));
+      requests.add(new IndexRequest(getIndexName(doc.getType())).id(doc.getUID()).source(doc));
+    }
+    if (mirror) {
+      // Do not create an index if the rebuild is over
+      for (ElasticsearchDocument doc : documents) {
+        requests.add(new IndexRequest(getShadowAliasName(doc.getType())).id(doc.getUID()).source(doc)
+                .setRequireAlias(true));
+      }
+    }
+    final long start = System.nanoTime();
+    final List<CompletableFuture<BulkItemResponse>> responses = queue(wait, requests.toArray(new IndexRequest[0]));
+    for (CompletableFuture<BulkItemResponse> response : responses.subList(documents.length, responses.size())) {
+      response.whenComplete(this::shadowWritten);
+    }
+    if (!wait) {
+      return null;
     }
 
     try {
-      final BulkResponse bulkResponse = client.bulk(bulkRequest, RequestOptions.DEFAULT);
+      final BulkItemResponse[] items = new BulkItemResponse[documents.length];
+      for (int i = 0; i < items.length; i++) {
+        items[i] = responses.get(i).get();
+      }
 
       // Check for errors
-      if (bulkResponse.hasFailures()) {
-        for (BulkItemResponse item : bulkResponse) {
-          if (item.isFailed()) {
-            logger.warn("Error updating {}: {}", item, item.getFailureMessage());
-            throw new SearchIndexException(item.getFailureMessage());
-          }
+      for (BulkItemResponse item : items) {
+        if (item.isFailed()) {
+          throw new SearchIndexException(item.getFailureMessage());
         }
       }
 
-      return bulkResponse;
+      return new BulkResponse(items, TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new SearchIndexException("Interrupted while updating documents in index " + getIndexName(), e);
+    } catch (ExecutionException e) {
+      throw new SearchIndexException("Cannot update documents in index " + getIndexName(), e.getCause());
     } catch (Throwable t) {
       throw new SearchIndexException("Cannot update documents in index " + getIndexName(), t);
     }
   }
 
+  /**
+   * Waits until documents posted before without waiting for them are visible to searches. Returns right away if there
+   * are no such documents.
+   *
+   * @param type
+   *          the document type
+   * @param uid
+   *          the document identifier
+   * @throws SearchIndexException
+   *           if the documents cannot be made visible
+   */
+  protected void awaitPendingUpdate(String type, String uid) throws SearchIndexException {
+    if (bulkIndexer != null) {
+      bulkIndexer.awaitVisible(getIndexName(type), uid);
+    }
+  }
+
+  /**
+   * Deletes a document from the index and waits until the deletion is visible to searches. While the index is being
+   * rebuilt, the document is deleted from the shadow indices as well, in the same bulk request.
+   *
+   * @param type
+   *          the document type
+   * @param uid
+   *          the document identifier
+   * @return whether the document was found
+   * @throws SearchIndexException
+   *           if deleting the document fails
+   */
+  protected boolean deleteDocument(String type, String uid) throws SearchIndexException {
+    final boolean mirror = !onShadow.get() && hasShadow();
+    final BulkRequest request = new BulkRequest().setRefreshPolicy(WriteRequest.RefreshPolicy.IMMEDIATE);
+    request.add(new DeleteRequest(getIndexName(type), uid));
+    if (mirror) {
+      request.add(new DeleteRequest(getShadowAliasName(type), uid));
+    }
+
+    final BulkResponse response;
+    try {
+      response = bulk(request);
+    } catch (IOException | ElasticsearchException e) {
+      throw new SearchIndexException("Cannot delete document " + uid + " from index " + getIndexName(), e);
+    }
+    if (mirror) {
+      shadowWritten(response.getItems()[1], null);
+    }
+    final BulkItemResponse item = response.getItems()[0];
+    if (item.isFailed()) {
+      throw new SearchIndexException(item.getFailureMessage());
+    }
+    return item.getResponse().getResult() != DocWriteResponse.Result.NOT_FOUND;
+  }
+
+  /**
+   * Looks whether the index is being rebuilt, by this or any other node. Other nodes are looked for at most once per
+   * {@link #SHADOW_CHECK_INTERVAL}.
+   *
+   * @return whether documents need to be written to the shadow indices as well
+   */
+  private boolean hasShadow() {
+    if (shadowSuffix != null) {
+      return true;
+    }
+    final long now = System.currentTimeMillis();
+    if (now - shadowChecked < SHADOW_CHECK_INTERVAL) {
+      return shadowFound;
+    }
+    shadowChecked = now;
+    try {
+      shadowFound = aliasExists(getShadowAliasName(getDocumentTypes()[0]));
+    } catch (IOException | ElasticsearchException e) {
+      // Writes to missing shadow aliases fail harmlessly, while missed writes would spoil a rebuild
+      logger.warn("Unable to look whether index '{}' is being rebuilt", index, e);
+      shadowFound = true;
+    }
+    return shadowFound;
+  }
+
+  /**
+   * Handles the response to a write to the shadow indices.
+   *
+   * @param item
+   *          the response to the write, or <code>null</code> if the bulk request failed
+   * @param failure
+   *          the failure of the bulk request, or <code>null</code>
+   */
+  private void shadowWritten(BulkItemResponse item, Throwable failure) {
+    if (failure == null && !item.isFailed()) {
+      return;
+    }
+    if (failure == null && item.getFailure().getStatus() == RestStatus.NOT_FOUND) {
+      // The shadow aliases are gone, so the rebuild is over or has been given up
+      logger.debug("Index '{}' is not being rebuilt anymore", index);
+      shadowFound = false;
+      if (shadowSuffix != null) {
+        shadowIncomplete = true;
+      }
+      return;
+    }
+    abandonShadow(failure != null ? failure : item.getFailure().getCause());
+  }
+
+  /**
+   * Gives up the running rebuild after a write could not be applied to its shadow indices. The shadow aliases are
+   * removed, which keeps the node running the rebuild from switching to the incomplete shadow indices.
+   *
+   * @param cause
+   *          the reason the write failed
+   */
+  private void abandonShadow(Throwable cause) {
+    logger.warn("Cannot apply write to the shadow indices of index '{}', the rebuild cannot be completed", index,
+            cause);
+    shadowIncomplete = true;
+    shadowFound = false;
+    for (String type : getDocumentTypes()) {
+      final IndicesAliasesRequest request = new IndicesAliasesRequest()
+              .addAliasAction(AliasActions.remove().index(getAliasName(type) + "_*").alias(getShadowAliasName(type)));
+      try {
+        updateAliases(request);
+      } catch (IOException | ElasticsearchException e) {
+        logger.error("Unable to remove the shadow alias of type '{}' of index '{}'", type, index, e);
+      }
+    }
+  }
+
+  /**
+   * Applies a write operation to the index, which does not overlap with a switch to the shadow indices on this node.
+   * The operation runs once. While the index is being rebuilt, the documents it writes with
+   * {@link #update(boolean, ElasticsearchDocument...)} and deletes with {@link #deleteDocument(String, String)} are
+   * written to the shadow indices as well.
+   *
+   * @param operation
+   *          the write operation
+   * @return the result of the operation
+   * @throws SearchIndexException
+   *           if the operation fails
+   * @throws E
+   *           if the operation fails
+   */
+  protected <T, E extends Exception> T write(IndexOperation<T, E> operation) throws SearchIndexException, E {
+    // The rebuild itself only writes to the shadow indices and switches to them when done
+    if (onShadow.get()) {
+      return operation.run();
+    }
+
+    switchLock.readLock().lock();
+    try {
+      return operation.run();
+    } finally {
+      switchLock.readLock().unlock();
+    }
+  }
+
+  /**
+   * Runs an operation on the shadow indices of the running rebuild. Searches and writes of the operation go to the
+   * shadow indices instead of the live indices.
+   *
+   * @param operation
+   *          the operation
+   * @return the result of the operation
+   * @throws IllegalStateException
+   *           if the index is not being rebuilt
+   * @throws SearchIndexException
+   *           if the operation fails
+   * @throws E
+   *           if the operation fails
+   */
+  public <T, E extends Exception> T runOnShadow(IndexOperation<T, E> operation)
+          throws IllegalStateException, SearchIndexException, E {
+    if (shadowSuffix == null) {
+      throw new IllegalStateException("Index " + index + " is not being rebuilt");
+    }
+    final boolean previous = onShadow.get();
+    onShadow.set(true);
+    try {
+      return operation.run();
+    } finally {
+      onShadow.set(previous);
+    }
+  }
+
+  /**
+   * Waits until a message queue feeding the index has processed the messages sent to it so far. The receivers of the
+   * queues update the index asynchronously, so sending the messages alone does not tell when the index reflects them.
+   *
+   * @param sendBarrier
+   *          sends a {@code MessageBarrier} with the given identifier to the queue. The receiver of the queue calls
+   *          {@link #reachBarrier(String)} with it once it processed all messages before it.
+   * @throws InterruptedException
+   *           if the thread is interrupted while waiting
+   */
+  public void awaitBarrier(Consumer<String> sendBarrier) throws InterruptedException {
+    final String id = UUID.randomUUID().toString();
+    final CountDownLatch reached = new CountDownLatch(1);
+    pendingBarriers.put(id, reached);
+    try {
+      sendBarrier.accept(id);
+      while (!reached.await(1, TimeUnit.MINUTES)) {
+        logger.info("Waiting for the messages sent to index '{}' to be processed", index);
+      }
+    } finally {
+      pendingBarriers.remove(id);
+    }
+  }
+
+  /**
+   * Reports that the receiver of a message queue feeding the index reached a barrier, i.e. processed all messages
+   * sent to the queue before it.
+   *
+   * @param id
+   *          the identifier of the barrier
+   */
+  public void reachBarrier(String id) {
+    final CountDownLatch reached = pendingBarriers.get(id);
+    if (reached == null) {
+      logger.debug("Nobody waits for barrier {} of index '{}' anymore", id, index);
+      return;
+    }
+    reached.countDown();
+  }
+
+  /**
+   * @return whether the index is being rebuilt into shadow indices
+   */
+  public boolean isRebuilding() {
+    return shadowSuffix != null;
+  }
+
+  /**
+   * Starts rebuilding the index into new and empty shadow indices. Searches keep using the live indices until
+   * {@link #switchToShadow()} replaces them, writes go to both from now on. The shadow indices of a previous rebuild
+   * are dropped.
+   * <p>
+   * Other nodes look for the shadow indices periodically, so this waits until all nodes write to the shadow indices
+   * before returning. Only one node may rebuild the index at a time.
+   *
+   * @throws SearchIndexException
+   *           if the shadow indices cannot be created or if interrupted
+   * @throws IOException
+   *           if the shadow indices cannot be created
+   */
+  public synchronized void createShadow() throws SearchIndexException, IOException {
+    dropShadow();
+
+    // Remove indices of rebuilds which were interrupted by a restart
+    final List<String> stale = new ArrayList<>();
+    for (String type : getDocumentTypes()) {
+      getPhysicalIndices(getAliasName(type)).entrySet().stream()
+              .filter(physicalIndex -> !physicalIndex.getValue())
+              .forEach(physicalIndex -> stale.add(physicalIndex.getKey()));
+    }
+    deleteIndices(stale);
+
+    final String suffix = Long.toString(System.currentTimeMillis());
+    final IndicesAliasesRequest aliases = new IndicesAliasesRequest();
+    for (String type : getDocumentTypes()) {
+      createSubIndex(type, getAliasName(type) + "_" + suffix, null);
+      aliases.addAliasAction(AliasActions.add().index(getAliasName(type) + "_" + suffix)
+              .alias(getShadowAliasName(type)));
+    }
+    // Nodes find all shadow indices at once
+    if (!updateAliases(aliases)) {
+      deleteIndices(Arrays.stream(getDocumentTypes()).map(type -> getAliasName(type) + "_" + suffix)
+              .collect(Collectors.toList()));
+      throw new SearchIndexException("Creating the shadow aliases of index " + index + " was not acknowledged");
+    }
+    shadowIncomplete = false;
+    shadowSuffix = suffix;
+    logger.info("Created shadow indices with suffix '{}' to rebuild index '{}'", suffix, index);
+
+    // The rebuild must not read documents which other nodes change without writing to the shadow indices
+    try {
+      awaitShadowDiscovery();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      dropShadow();
+      throw new SearchIndexException("Interrupted while waiting for the nodes to find the shadow indices of index "
+              + index, e);
+    }
+  }
+
+  /**
+   * Waits until all nodes looked for the shadow aliases since they were created.
+   *
+   * @throws InterruptedException
+   *           if interrupted while waiting
+   */
+  void awaitShadowDiscovery() throws InterruptedException {
+    // Leave room for checks which were under way when the aliases were created
+    Thread.sleep(2 * SHADOW_CHECK_INTERVAL);
+  }
+
+  /**
+   * Replaces the live indices with the shadow indices of the running rebuild. Writes of this node wait until the
+   * aliases of the index point to the shadow indices, the replaced indices are deleted afterwards. The shadow aliases
+   * are removed along with switching the aliases, which tells the other nodes that the rebuild is over.
+   * <p>
+   * Documents sent to the index through message queues reach the shadow indices as writes of the queue receivers, so
+   * the rebuild needs to wait for its messages to be processed with {@link #awaitBarrier(Consumer)} before switching.
+   *
+   * @throws IllegalStateException
+   *           if the index is not being rebuilt or messages sent to the index are still waited for
+   * @throws SearchIndexException
+   *           if the shadow indices missed writes or if the aliases cannot be switched
+   * @throws IOException
+   *           if the aliases cannot be switched
+   */
+  public synchronized void switchToShadow() throws IllegalStateException, SearchIndexException, IOException {
+    final List<String> replaced = new ArrayList<>();
+    switchLock.writeLock().lock();
+    try {
+      final String suffix = shadowSuffix;
+      if (suffix == null) {
+        throw new IllegalStateException("Index " + index + " is not being rebuilt");
+      }
+      if (!pendingBarriers.isEmpty()) {
+        throw new IllegalStateException("Messages sent to index " + index + " are still being processed");
+      }
+
+      // Nothing may be queued for the live indices when switching
+      if (bulkIndexer != null) {
+        bulkIndexer.flush();
+      }
+
+      // Nodes which failed to write to the shadow indices remove the shadow aliases
+      for (String type : getDocumentTypes()) {
+        if (!aliasExists(getShadowAliasName(type))) {
+          shadowIncomplete = true;
+        }
+      }
+      if (shadowIncomplete) {
+        throw new SearchIndexException("The shadow indices of index " + index + " missed writes");
+      }
+
+      final IndicesAliasesRequest request = new IndicesAliasesRequest();
+      for (String type : getDocumentTypes()) {
+        final String alias = getAliasName(type);
+        for (Entry<String, Boolean> physicalIndex : getPhysicalIndices(alias).entrySet()) {
+          if (!physicalIndex.getValue()) {
+            continue;
+          }
+          if (physicalIndex.getKey().equals(alias)) {
+            // An index created before the indices were reached through aliases
+            request.addAliasAction(AliasActions.removeIndex().index(alias));
+          } else {
+            request.addAliasAction(AliasActions.remove().index(physicalIndex.getKey()).alias(alias));
+            replaced.add(physicalIndex.getKey());
+          }
+        }
+        request.addAliasAction(AliasActions.add().index(alias + "_" + suffix).alias(alias));
+        request.addAliasAction(AliasActions.remove().index(alias + "_" + suffix).alias(getShadowAliasName(type)));
+      }
+      if (!updateAliases(request)) {
+        throw new SearchIndexException("Switching index " + index + " to the shadow indices was not acknowledged");
+      }
+      shadowSuffix = null;
+      shadowFound = false;
+    } finally {
+      switchLock.writeLock().unlock();
+    }
+    logger.info("Switched index '{}' to the rebuilt indices", index);
+
+    try {
+      deleteIndices(replaced);
+    } catch (IOException | ElasticsearchException e) {
+      logger.warn("Unable to delete the replaced indices {} of index '{}'", replaced, index, e);
+    }
+  }
+
+  /**
+   * Stops the running rebuild and deletes its shadow indices. Does nothing if the index is not being rebuilt.
+   *
+   * @throws SearchIndexException
+   *           if the writes to the shadow indices cannot be completed
+   * @throws IOException
+   *           if the shadow indices cannot be deleted
+   */
+  public synchronized void dropShadow() throws SearchIndexException, IOException {
+    final String suffix;
+    switchLock.writeLock().lock();
+    try {
+      suffix = shadowSuffix;
+      if (suffix == null) {
+        return;
+      }
+      shadowSuffix = null;
+      shadowFound = false;
+
+      // Queued writes would create the shadow indices again
+      if (bulkIndexer != null) {
+        bulkIndexer.flush();
+      }
+    } finally {
+      switchLock.writeLock().unlock();
+    }
+    // Deleting the shadow indices removes their aliases, which tells the other nodes that the rebuild is over
+    deleteIndices(Arrays.stream(getDocumentTypes()).map(type -> getAliasName(type) + "_" + suffix)
+            .collect(Collectors.toList()));
+    logger.info("Dropped shadow indices of index '{}'", index);
+  }
+
+  /**
+   * Looks up the physical indices of a document type.
+   *
+   * @param alias
+   *          the alias of the document type
+   * @return the names of the physical indices, and whether the alias points to them
+   * @throws IOException
+   *           if the indices cannot be looked up
+   */
+  Map<String, Boolean> getPhysicalIndices(String alias) throws IOException {
+    final GetIndexRequest request = new GetIndexRequest(alias, alias + "_*")
+            .indicesOptions(IndicesOptions.lenientExpandOpen());
+    final GetIndexResponse response = client.indices().get(request, RequestOptions.DEFAULT);
+    final Map<String, Boolean> physicalIndices = new HashMap<>();
+    for (String physicalIndex : response.getIndices()) {
+      physicalIndices.put(physicalIndex, physicalIndex.equals(alias)
+              || response.getAliases().getOrDefault(physicalIndex, Collections.emptyList()).stream()
+                      .anyMatch(metadata -> alias.equals(metadata.alias())));
+    }
+    return physicalIndices;
+  }
+
+  /**
+   * Deletes physical indices, ignoring those which do not exist.
+   *
+   * @param indices
+   *          the names of the indices
+   * @throws IOException
+   *           if the indices cannot be deleted
+   */
+  void deleteIndices(List<String> indices) throws IOException {
+    if (indices.isEmpty()) {
+      return;
+    }
+    final DeleteIndexRequest request = new DeleteIndexRequest(indices.toArray(new String[0]))
+            .indicesOptions(IndicesOptions.lenientExpandOpen());
+    if (!client.indices().delete(request, RequestOptions.DEFAULT).isAcknowledged()) {
+      logger.warn("Deleting indices {} was not acknowledged", indices);
+    }
+    logger.debug("Deleted indices {}", indices);
+  }
+
+  /**
+   * Applies all actions of an alias request in one atomic step.
+   *
+   * @param request
+   *          the alias actions
+   * @return whether the request was acknowledged
+   * @throws IOException
+   *           if the request fails
+   */
+  boolean updateAliases(IndicesAliasesRequest request) throws IOException {
+    return client.indices().updateAliases(request, RequestOptions.DEFAULT).isAcknowledged();
+  }
+
+  /**
+   * Looks whether an alias exists.
+   *
+   * @param alias
+   *          the alias name
+   * @return whether the alias exists
+   * @throws IOException
+   *           if the request fails
+   */
+  boolean aliasExists(String alias) throws IOException {
+    return client.indices().existsAlias(new GetAliasesRequest(alias), RequestOptions.DEFAULT);
+  }
+
+  /**
+   * Queues index requests to be sent in one bulk request.
+   *
+   * @param wait
+   *          whether the caller waits for the requests
+   * @param requests
+   *          the index requests
+   * @return the responses to the index requests, in the order of the requests
+   * @throws SearchIndexException
+   *           if the requests cannot be queued
+   */
+  List<CompletableFuture<BulkItemResponse>> queue(boolean wait, IndexRequest... requests)
+          throws SearchIndexException {
+    return bulkIndexer.add(wait, requests);
+  }
+
+  /**
+   * Sends a bulk request right away.
+   *
+   * @param request
+   *          the bulk request
+   * @return the bulk response
+   * @throws IOException
+   *           if the request fails
+   */
+  BulkResponse bulk(BulkRequest request) throws IOException {
+    return client.bulk(request, RequestOptions.DEFAULT);
+  }
+
   /**
    * Initializes an Elasticsearch node for the given index.
    *
@@ -280,6 +973,25 @@ public abstract class AbstractElasticsearchIndex implements SearchIndex {
       client = new RestHighLevelClient(builder);
     }
 
+    if (bulkIndexer == null) {
+      final RestHighLevelClient bulkClient = client;
+      bulkIndexer = new BulkIndexer(index, new BulkIndexer.Client() {
+        @Override
+        public BulkResponse bulk(BulkRequest request) throws IOException {
+          return bulkClient.bulk(request, RequestOptions.DEFAULT);
+        }
+
+        @Override
+        public void refresh(String... indices) throws IOException {
+          // Indices replaced by a rebuild may be gone
+          bulkClient.indices().refresh(new RefreshRequest(indices).indicesOptions(IndicesOptions.lenientExpandOpen()),
+                  RequestOptions.DEFAULT);
+        }
+      }, bulkActions, bulkSize, bulkFlushInterval, bulkQueueSize, bulkRefreshPolicy);
+      bulkIndexer.start();
+      registeredBulkIndexingMXBean = JmxUtil.registerMXBean(bulkIndexer, JMX_BULK_INDEXING_TYPE + index);
+    }
+
     // Create the index
     createIndex(index);
   }
@@ -291,6 +1003,17 @@ public abstract class AbstractElasticsearchIndex implements SearchIndex {
    *           if stopping the Elasticsearch node fails
    */
   protected void close() throws IOException {
+    if (bulkIndexer != null) {
+      try {
+        bulkIndexer.close();
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        logger.warn("Interrupted while sending the queued documents to index {}", index);
+      }
+      if (registeredBulkIndexingMXBean != null) {
+        JmxUtil.unregisterMXBean(registeredBulkIndexingMXBean);
+      }
+    }
     if (client != null) {
       client.close();
     }
@@ -308,17 +1031,38 @@ public abstract class AbstractElasticsearchIndex implements SearchIndex {
    *           if loading of the type definitions fails
    */
   private void createIndex(String idx) throws SearchIndexException, IOException {
+    final String suffix = Long.toString(System.currentTimeMillis());
     for (String type : getDocumentTypes()) {
-      createSubIndex(type, getIndexName(type));
+      final String alias = getAliasName(type);
+      if (client.indices().exists(new GetIndexRequest(alias), RequestOptions.DEFAULT)) {
+        createSubIndex(type, alias, null);
+      } else {
+        createSubIndex(type, alias + "_" + suffix, alias);
+      }
+      preparedIndices.add(alias);
     }
   }
 
-  private void createSubIndex(String type, String idxName) throws SearchIndexException, IOException {
+  /**
+   * Creates the physical index of a document type, unless it exists already, and makes sure it has the expected
+   * version.
+   *
+   * @param type
+   *          the document type
+   * @param idxName
+   *          the name of the physical index
+   * @param alias
+   *          the alias to reach a newly created index through, or <code>null</code>
+   */
+  void createSubIndex(String type, String idxName, String alias) throws SearchIndexException, IOException {
     try {
       logger.debug("Trying to create index for '{}'", idxName);
       final CreateIndexRequest request = new CreateIndexRequest(idxName)
               .settings(loadResources("indexSettings.json"), XContentType.JSON)
               .mapping(loadResources(type + "-mapping.json"), XContentType.JSON);
+      if (alias != null) {
+        request.alias(new Alias(alias));
+      }
 
       final CreateIndexResponse siteIdxResponse = client.indices().create(request, RequestOptions.DEFAULT);
       if (!siteIdxResponse.isAcknowledged()) {
@@ -360,8 +1104,6 @@ public abstract class AbstractElasticsearchIndex implements SearchIndex {
       logger.debug("Index version of site '{}' is {}", idxName, indexVersion);
       client.index(indexRequest, RequestOptions.DEFAULT);
     }
-
-    preparedIndices.add(idxName);
   }
 
   /**
@@ -482,16 +1224,46 @@ public abstract class AbstractElasticsearchIndex implements SearchIndex {
   }
 
   /**
-   * Returns the name of the sub index for the given type.
+   * Returns the name of the sub index for the given type. This is the shadow index of the running rebuild if the
+   * current thread works on it, or the alias of the live index otherwise.
    *
    * @param type
    *          The type to get the sub index for.
    * @return the index name
    */
   public String getIndexName(String type) {
+    if (!onShadow.get()) {
+      return getAliasName(type);
+    }
+    final String suffix = shadowSuffix;
+    if (suffix == null) {
+      throw new IllegalStateException("Rebuild of index " + index + " has been stopped");
+    }
+    return getAliasName(type) + "_" + suffix;
+  }
+
+  /**
+   * Returns the name of the alias of the live sub index for the given type.
+   *
+   * @param type
+   *          The type to get the alias for.
+   * @return the alias name
+   */
+  private String getAliasName(String type) {
     return getIndexName() + "_" + type;
   }
 
+  /**
+   * Returns the name of the alias of the shadow sub index for the given type.
+   *
+   * @param type
+   *          The type to get the alias for.
+   * @return the alias name
+   */
+  private String getShadowAliasName(String type) {
+    return getAliasName(type) + SHADOW_ALIAS_SUFFIX;
+  }
+
   protected RestHighLevelClient getClient() {
     return client;
   }
@@ -0,0 +1,553 @@
+/**
+ * Licensed to The Apereo Foundation under one or more contributor license
+ * agreements. See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ *
+ * The Apereo Foundation licenses this file to you under the Educational
+ * Community License, Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License. You may obtain a copy of the License
+ * at:
+ *
+ *   http://opensource.org/licenses/ecl2.txt
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ *
+ */
+
+
+package org.opencastproject.elasticsearch.impl;
+
+import org.opencastproject.elasticsearch.api.SearchIndexException;
+import org.opencastproject.elasticsearch.impl.jmx.BulkIndexingMXBean;
+
+import org.elasticsearch.action.bulk.BulkItemResponse;
+import org.elasticsearch.action.bulk.BulkRequest;
+import org.elasticsearch.action.bulk.BulkResponse;
+import org.elasticsearch.action.index.IndexRequest;
+import org.elasticsearch.action.support.WriteRequest.RefreshPolicy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Collects index requests and sends them to Elasticsearch in bulk requests. A bulk request is sent as soon as enough
+ * documents or bytes are queued or the oldest queued document has waited for the flush interval.
+ * <p>
+ * Bulk requests are sent with the configured refresh policy. Requests whose callers need to read their own writes
+ * are flushed right away and make their bulk request wait for the next refresh. Documents which have been written
+ * without a refresh are remembered until a refresh made them visible, so that {@link #awaitVisible(String, String)}
+ * can wait for them before a document is read, modified and written again.
+ */
+final class BulkIndexer implements BulkIndexingMXBean {
+
+  /** Logging facility */
+  private static final Logger logger = LoggerFactory.getLogger(BulkIndexer.class);
+
+  /** The operations needed from the Elasticsearch client */
+  interface Client {
+    BulkResponse bulk(BulkRequest request) throws IOException;
+
+    void refresh(String... indices) throws IOException;
+  }
+
+  /** A queued index request */
+  private static final class Write {
+    private final IndexRequest request;
+    private final String key;
+    private final long bytes;
+    private final long queued = System.nanoTime();
+    /** Whether this write needs to be sent in the same bulk request as the write queued before it */
+    private final boolean joined;
+    private final CompletableFuture<BulkItemResponse> done = new CompletableFuture<>();
+    /** Whether to flush without waiting for the flush interval. Guarded by the queue lock. */
+    private boolean urgent;
+    /** Whether this write is still queued. Guarded by the queue lock. */
+    private boolean queuedForFlush = true;
+    /** The bulk request this write was sent with */
+    private volatile long generation = Long.MAX_VALUE;
+
+    private Write(IndexRequest request, boolean urgent, boolean joined) {
+      this.request = request;
+      this.key = key(request.index(), request.id());
+      this.bytes = request.source().length();
+      this.urgent = urgent;
+      this.joined = joined;
+    }
+  }
+
+  private final String name;
+  private final Client client;
+  private final int maxActions;
+  private final long maxBytes;
+  private final long flushInterval;
+  private final int capacity;
+  private final RefreshPolicy refreshPolicy;
+
+  private final ReentrantLock lock = new ReentrantLock();
+  private final Condition notEmpty = lock.newCondition();
+  private final Condition notFull = lock.newCondition();
+  private final ArrayDeque<Write> queue = new ArrayDeque<>();
+  private long queuedBytes = 0;
+  private int urgentWrites = 0;
+  private boolean closed = false;
+
+  /** Writes which have been sent without a refresh, or are still queued, by index and document identifier */
+  private final Map<String, Write> pending = new ConcurrentHashMap<>();
+  /** The indices written to */
+  private final Set<String> indices = ConcurrentHashMap.newKeySet();
+  /** The last bulk request sent */
+  private volatile long flushed = 0;
+  /** The last bulk request which was made visible by an explicit refresh */
+  private long refreshed = 0;
+  private final Object refreshLock = new Object();
+
+  private final AtomicLong bulkRequests = new AtomicLong();
+  private final AtomicLong indexedDocuments = new AtomicLong();
+  private final AtomicLong failedDocuments = new AtomicLong();
+  private final AtomicLong indexedBytes = new AtomicLong();
+  private final AtomicLong flushLatency = new AtomicLong();
+  private final AtomicLong maxFlushLatency = new AtomicLong();
+  private final AtomicLong refreshes = new AtomicLong();
+
+  private Thread flusher;
+
+  /**
+   * Creates a bulk indexer. It needs to be started before documents can be added.
+   *
+   * @param name
+   *          the name of the index, used for logging
+   * @param client
+   *          the client to send the bulk requests with
+   * @param maxActions
+   *          the maximum number of documents per bulk request
+   * @param maxBytes
+   *          the maximum size of a bulk request in bytes. Single documents exceeding this are sent on their own.
+   * @param flushInterval
+   *          the maximum time in milliseconds a document waits for other documents to be sent along with
+   * @param capacity
+   *          the maximum number of queued documents, adding further documents blocks until there is room
+   * @param refreshPolicy
+   *          the refresh policy of bulk requests without documents whose writers wait for them to become visible
+   */
+  BulkIndexer(String name, Client client, int maxActions, long maxBytes, long flushInterval, int capacity,
+          RefreshPolicy refreshPolicy) {
+    if (maxActions < 1 || maxBytes < 1 || flushInterval < 0 || capacity < 1) {
+      throw new IllegalArgumentException("Bulk request limits and queue capacity must be positive");
+    }
+    this.name = name;
+    this.client = client;
+    this.maxActions = maxActions;
+    this.maxBytes = maxBytes;
+    this.flushInterval = TimeUnit.MILLISECONDS.toNanos(flushInterval);
+    this.capacity = capacity;
+    this.refreshPolicy = refreshPolicy;
+  }
+
+  /** Starts the thread sending the bulk requests. */
+  synchronized void start() {
+    if (flusher == null) {
+      flusher = new Thread(this::run, "Elasticsearch bulk indexer (" + name + ")");
+      flusher.setDaemon(true);
+      flusher.start();
+    }
+  }
+
+  /**
+   * Sends the queued documents and stops the thread sending the bulk requests. Adding documents fails afterwards.
+   *
+   * @throws InterruptedException
+   *           if interrupted while waiting for the queued documents to be sent
+   */
+  void close() throws InterruptedException {
+    lock.lock();
+    try {
+      closed = true;
+      notEmpty.signalAll();
+      notFull.signalAll();
+    } finally {
+      lock.unlock();
+    }
+    final Thread thread;
+    synchronized (this) {
+      thread = flusher;
+    }
+    if (thread != null) {
+      thread.join();
+    }
+  }
+
+  /**
+   * Queues index requests, blocking while the queue is full. The requests are sent in the same bulk request, even if
+   * they exceed its limits, so that Elasticsearch resolves their indices and aliases against the same cluster state.
+   *
+   * @param urgent
+   *          whether the caller waits for the requests, in which case they are sent right away and their bulk request
+   *          waits for a refresh to make them visible to searches
+   * @param requests
+   *          the index requests
+   * @return the responses to the index requests, in the order of the requests. Failed requests complete normally
+   *         with a failed response, while failures of the whole bulk request complete them exceptionally.
+   * @throws SearchIndexException
+   *           if the bulk indexer is closed or interrupted while waiting for room in the queue
+   */
+  List<CompletableFuture<BulkItemResponse>> add(boolean urgent, IndexRequest... requests)
+          throws SearchIndexException {
+    final List<CompletableFuture<BulkItemResponse>> responses = new ArrayList<>(requests.length);
+    lock.lock();
+    try {
+      // Queue all requests at once, so they cannot be split across bulk requests
+      while (!queue.isEmpty() && queue.size() + requests.length > capacity && !closed) {
+        notFull.await();
+      }
+      if (closed) {
+        throw new SearchIndexException("Bulk indexer of index " + name + " is closed");
+      }
+      for (int i = 0; i < requests.length; i++) {
+        final IndexRequest request = requests[i];
+        final Write write = new Write(request, urgent, i > 0);
+        queue.add(write);
+        queuedBytes += write.bytes;
+        if (urgent) {
+          urgentWrites++;
+        }
+        indices.add(request.index());
+        pending.put(write.key, write);
+        responses.add(write.done);
+      }
+      notEmpty.signal();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new SearchIndexException("Interrupted while queuing documents for index " + name, e);
+    } finally {
+      lock.unlock();
+    }
+    return responses;
+  }
+
+  /**
+   * Waits until previous writes of a document have been sent and are visible to searches. This flushes the queue if
+   * the document is still queued and refreshes the index if it has been sent without a refresh. Returns right away if
+   * there are no such writes.
+   *
+   * @param index
+   *          the name of the index
+   * @param id
+   *          the document identifier
+   * @throws SearchIndexException
+   *           if the index cannot be refreshed or if interrupted
+   */
+  void awaitVisible(String index, String id) throws SearchIndexException {
+    final String key = key(index, id);
+    Write write;
+    while ((write = pending.get(key)) != null) {
+      lock.lock();
+      try {
+        if (write.queuedForFlush && !write.urgent) {
+          write.urgent = true;
+          urgentWrites++;
+          notEmpty.signal();
+        }
+      } finally {
+        lock.unlock();
+      }
+      try {
+        write.done.get();
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        throw new SearchIndexException("Interrupted while waiting for document " + id + " to be indexed", e);
+      } catch (ExecutionException e) {
+        // The document was not written, so there is nothing to wait for
+      }
+      if (pending.get(key) == write) {
+        refresh(write.generation);
+      }
+    }
+  }
+
+  /**
+   * Waits until all documents added so far have been sent and are visible to searches. Queued documents are sent
+   * right away instead of waiting for the flush interval.
+   *
+   * @throws SearchIndexException
+   *           if the indices cannot be refreshed or if interrupted
+   */
+  void flush() throws SearchIndexException {
+    final List<Write> writes;
+    lock.lock();
+    try {
+      writes = new ArrayList<>(pending.values());
+      for (Write write : queue) {
+        if (!write.urgent) {
+          write.urgent = true;
+          urgentWrites++;
+        }
+      }
+      notEmpty.signal();
+    } finally {
+      lock.unlock();
+    }
+
+    long generation = 0;
+    for (Write write : writes) {
+      try {
+        write.done.get();
+        if (pending.get(write.key) == write) {
+          generation = Math.max(generation, write.generation);
+        }
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        throw new SearchIndexException("Interrupted while flushing index " + name, e);
+      } catch (ExecutionException e) {
+        // The document was not written, so there is nothing to wait for
+      }
+    }
+    if (generation > 0) {
+      refresh(generation);
+    }
+  }
+
+  /**
+   * Refreshes the indices written to, unless they have been refreshed after the given bulk request was sent.
+   *
+   * @param generation
+   *          the bulk request to make visible
+   * @throws SearchIndexException
+   *           if the refresh fails
+   */
+  private void refresh(long generation) throws SearchIndexException {
+    synchronized (refreshLock) {
+      if (refreshed >= generation) {
+        return;
+      }
+      final long upTo = flushed;
+      try {
+        client.refresh(indices.toArray(new String[0]));
+      } catch (IOException | RuntimeException e) {
+        throw new SearchIndexException("Cannot refresh index " + name, e);
+      }
+      refreshes.incrementAndGet();
+      refreshed = upTo;
+      pending.values().removeIf(write -> write.generation <= upTo);
+    }
+  }
+
+  /** Sends bulk requests until closed and drained. */
+  private void run() {
+    try {
+      List<Write> batch;
+      while ((batch = nextBatch()) != null) {
+        send(batch);
+      }
+    } catch (InterruptedException e) {
+      logger.warn("Bulk indexer of index {} was interrupted, dropping {} queued documents", name, getQueueDepth());
+      failQueued(e);
+    }
+  }
+
+  /**
+   * Waits for the next batch of documents to send.
+   *
+   * @return the next batch or <code>null</code> if closed and all documents have been sent
+   */
+  private List<Write> nextBatch() throws InterruptedException {
+    lock.lock();
+    try {
+      while (queue.isEmpty()) {
+        if (closed) {
+          return null;
+        }
+        notEmpty.await();
+      }
+      final long deadline = queue.peek().queued + flushInterval;
+      long remaining = deadline - System.nanoTime();
+      while (remaining > 0 && urgentWrites == 0 && queue.size() < maxActions && queuedBytes < maxBytes && !closed) {
+        remaining = notEmpty.awaitNanos(remaining);
+      }
+      final List<Write> batch = new ArrayList<>(Math.min(queue.size(), maxActions));
+      long bytes = 0;
+      while (!queue.isEmpty() && (batch.isEmpty() || queue.peek().joined
+              || batch.size() < maxActions && bytes + queue.peek().bytes <= maxBytes)) {
+        final Write write = queue.poll();
+        write.queuedForFlush = false;
+        if (write.urgent) {
+          urgentWrites--;
+        }
+        bytes += write.bytes;
+        batch.add(write);
+      }
+      queuedBytes -= bytes;
+      notFull.signalAll();
+      return batch;
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  /** Sends a batch of documents and completes their responses. */
+  private void send(List<Write> batch) {
+    boolean urgent = false;
+    long bytes = 0;
+    for (Write write : batch) {
+      urgent |= write.urgent;
+      bytes += write.bytes;
+    }
+    final RefreshPolicy policy = urgent && refreshPolicy == RefreshPolicy.NONE ? RefreshPolicy.WAIT_UNTIL
+            : refreshPolicy;
+    final BulkRequest bulkRequest = new BulkRequest().setRefreshPolicy(policy);
+    batch.forEach(write -> bulkRequest.add(write.request));
+
+    final long start = System.nanoTime();
+    final BulkResponse response;
+    try {
+      response = client.bulk(bulkRequest);
+    } catch (IOException | RuntimeException e) {
+      logger.warn("Cannot send {} documents to index {}", batch.size(), name, e);
+      failedDocuments.addAndGet(batch.size());
+      for (Write write : batch) {
+        pending.remove(write.key, write);
+        write.done.completeExceptionally(e);
+      }
+      return;
+    }
+    final long latency = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+    bulkRequests.incrementAndGet();
+    indexedDocuments.addAndGet(batch.size());
+    indexedBytes.addAndGet(bytes);
+    flushLatency.addAndGet(latency);
+    maxFlushLatency.accumulateAndGet(latency, Math::max);
+    logger.debug("Sent {} documents ({} bytes) to index {} in {} ms", batch.size(), bytes, name, latency);
+
+    final long generation = flushed + 1;
+    final BulkItemResponse[] items = response.getItems();
+    for (int i = 0; i < batch.size(); i++) {
+      final Write write = batch.get(i);
+      final BulkItemResponse item = items[i];
+      write.generation = generation;
+      if (item.isFailed()) {
+        logger.warn("Error updating {}: {}", item.getId(), item.getFailureMessage());
+        failedDocuments.incrementAndGet();
+        pending.remove(write.key, write);
+      } else if (policy != RefreshPolicy.NONE) {
+        pending.remove(write.key, write);
+      }
+    }
+    // Callers may refresh as soon as their writes are done, which needs to cover this bulk request
+    flushed = generation;
+    for (int i = 0; i < batch.size(); i++) {
+      batch.get(i).done.complete(items[i]);
+    }
+
+    // Do not let the documents waiting for a refresh pile up
+    if (pending.size() > capacity) {
+      try {
+        refresh(generation);
+      } catch (SearchIndexException e) {
+        logger.warn("Cannot refresh index {}", name, e);
+      }
+    }
+  }
+
+  /** Fails all queued writes. */
+  private void failQueued(Exception e) {
+    lock.lock();
+    try {
+      closed = true;
+      for (Write write : queue) {
+        pending.remove(write.key, write);
+        write.done.completeExceptionally(e);
+      }
+      queue.clear();
+      queuedBytes = 0;
+      urgentWrites = 0;
+      notFull.signalAll();
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  private static String key(String index, String id) {
+    return index + "/" + id;
+  }
+
+  @Override
+  public int getQueueDepth() {
+    lock.lock();
+    try {
+      return queue.size();
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  @Override
+  public long getQueuedBytes() {
+    lock.lock();
+    try {
+      return queuedBytes;
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  @Override
+  public long getBulkRequests() {
+    return bulkRequests.get();
+  }
+
+  @Override
+  public long getIndexedDocuments() {
+    return indexedDocuments.get();
+  }
+
+  @Override
+  public long getFailedDocuments() {
+    return failedDocuments.get();
+  }
+
+  @Override
+  public double getAverageBulkDocuments() {
+    final long requests = bulkRequests.get();
+    return requests == 0 ? 0 : (double) indexedDocuments.get() / requests;
+  }
+
+  @Override
+  public long getAverageBulkBytes() {
+    final long requests = bulkRequests.get();
+    return requests == 0 ? 0 : indexedBytes.get() / requests;
+  }
+
+  @Override
+  public long getAverageFlushLatency() {
+    final long requests = bulkRequests.get();
+    return requests == 0 ? 0 : flushLatency.get() / requests;
+  }
+
+  @Override
+  public long getMaxFlushLatency() {
+    return maxFlushLatency.get();
+  }
+
+  @Override
+  public long getRefreshes() {
+    return refreshes.get();
+  }
+
+}
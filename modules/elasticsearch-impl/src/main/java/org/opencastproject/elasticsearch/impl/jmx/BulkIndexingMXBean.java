@@ -0,0 +1,98 @@
+/**
+ * Licensed to The Apereo Foundation under one or more contributor license
+ * agreements. See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ *
+ * The Apereo Foundation licenses this file to you under the Educational
+ * Community License, Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License. You may obtain a copy of the License
+ * at:
+ *
+ *   http://opensource.org/licenses/ecl2.txt
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ *
+ */
+
+
+package org.opencastproject.elasticsearch.impl.jmx;
+
+/** Statistics of the bulk requests sent to Elasticsearch. */
+public interface BulkIndexingMXBean {
+
+  /**
+   * Gets the number of documents waiting to be sent to Elasticsearch
+   *
+   * @return the queue depth
+   */
+  int getQueueDepth();
+
+  /**
+   * Gets the size of the documents waiting to be sent to Elasticsearch
+   *
+   * @return the queued bytes
+   */
+  long getQueuedBytes();
+
+  /**
+   * Gets the number of bulk requests sent
+   *
+   * @return the number of bulk requests
+   */
+  long getBulkRequests();
+
+  /**
+   * Gets the number of documents sent in bulk requests
+   *
+   * @return the number of documents
+   */
+  long getIndexedDocuments();
+
+  /**
+   * Gets the number of documents Elasticsearch failed to index
+   *
+   * @return the number of failed documents
+   */
+  long getFailedDocuments();
+
+  /**
+   * Gets the average number of documents per bulk request
+   *
+   * @return the average bulk size in documents
+   */
+  double getAverageBulkDocuments();
+
+  /**
+   * Gets the average size of a bulk request
+   *
+   * @return the average bulk size in bytes
+   */
+  long getAverageBulkBytes();
+
+  /**
+   * Gets the average time it took Elasticsearch to process a bulk request
+   *
+   * @return the average flush latency in milliseconds
+   */
+  long getAverageFlushLatency();
+
+  /**
+   * Gets the longest time it took Elasticsearch to process a bulk request
+   *
+   * @return the maximum flush latency in milliseconds
+   */
+  long getMaxFlushLatency();
+
+  /**
+   * Gets the number of explicit index refreshes issued to make queued documents visible to searches
+   *
+   * @return the number of refreshes
+   */
+  long getRefreshes();
+
+}
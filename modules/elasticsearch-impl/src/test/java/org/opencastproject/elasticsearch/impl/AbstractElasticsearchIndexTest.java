@@ -0,0 +1,378 @@
+/**
+ * Licensed to The Apereo Foundation under one or more contributor license
+ * agreements. See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ *
+ * The Apereo Foundation licenses this file to you under the Educational
+ * Community License, Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License. You may obtain a copy of the License
+ * at:
+ *
+ *   http://opensource.org/licenses/ecl2.txt
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ *
+ */
+
+package org.opencastproject.elasticsearch.impl;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import org.opencastproject.elasticsearch.api.SearchIndexException;
+import org.elasticsearch.action.DocWriteRequest;
+import org.elasticsearch.action.DocWriteRequest.OpType;
+import org.elasticsearch.action.admin.indices.alias.IndicesAliasesRequest;
+import org.elasticsearch.action.admin.indices.alias.IndicesAliasesRequest.AliasActions;
+import org.elasticsearch.action.bulk.BulkItemResponse;
+import org.elasticsearch.action.bulk.BulkRequest;
+import org.elasticsearch.action.bulk.BulkResponse;
+import org.elasticsearch.action.delete.DeleteResponse;
+import org.elasticsearch.action.index.IndexRequest;
+import org.elasticsearch.action.index.IndexResponse;
+import org.elasticsearch.index.IndexNotFoundException;
+import org.elasticsearch.index.shard.ShardId;
+import org.elasticsearch.rest.RestStatus;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.stream.Collectors;
+
+/**
+ * Test case for the alias handling and the shadow indices of {@link AbstractElasticsearchIndex}.
+ */
+public class AbstractElasticsearchIndexTest {
+
+  private TestIndex index;
+
+  @Before
+  public void setUp() throws Exception {
+    index = new TestIndex();
+    index.indices.put("test_event_1", new HashSet<>(Collections.singletonList("test_event")));
+    index.indices.put("test_series_1", new HashSet<>(Collections.singletonList("test_series")));
+  }
+
+  @Test
+  public void testCreateShadow() throws Exception {
+    // left behind by a rebuild interrupted by a restart
+    index.indices.put("test_event_0", new HashSet<>());
+
+    index.createShadow();
+    assertTrue(index.isRebuilding());
+    assertFalse(index.indices.containsKey("test_event_0"));
+    assertEquals(4, index.indices.size());
+
+    final String shadow = index.runOnShadow(() -> index.getIndexName("event"));
+    assertTrue(shadow.startsWith("test_event_"));
+    assertEquals("The shadow index must only be reachable through the shadow alias",
+            Collections.singleton("test_event_shadow"), index.indices.get(shadow));
+    assertEquals("test_event", index.getIndexName("event"));
+  }
+
+  @Test
+  public void testSwitchToShadow() throws Exception {
+    index.createShadow();
+    final String eventShadow = index.runOnShadow(() -> index.getIndexName("event"));
+    final String seriesShadow = index.runOnShadow(() -> index.getIndexName("series"));
+    final int aliasRequests = index.aliasRequests;
+
+    index.switchToShadow();
+    assertFalse(index.isRebuilding());
+    assertEquals("The aliases must be switched in one request", aliasRequests + 1, index.aliasRequests);
+    assertEquals(new HashSet<>(Arrays.asList(eventShadow, seriesShadow)), index.indices.keySet());
+    assertEquals(Collections.singleton("test_event"), index.indices.get(eventShadow));
+    assertEquals(Collections.singleton("test_series"), index.indices.get(seriesShadow));
+  }
+
+  @Test
+  public void testSwitchReplacesIndexWithoutAlias() throws Exception {
+    // an index created before the indices were reached through aliases
+    index.indices.remove("test_event_1");
+    index.indices.put("test_event", new HashSet<>());
+
+    index.createShadow();
+    final String shadow = index.runOnShadow(() -> index.getIndexName("event"));
+    index.switchToShadow();
+    assertFalse(index.indices.containsKey("test_event"));
+    assertEquals(Collections.singleton("test_event"), index.indices.get(shadow));
+  }
+
+  @Test
+  public void testSwitchWithoutRebuild() throws Exception {
+    try {
+      index.switchToShadow();
+      fail("There is nothing to switch to");
+    } catch (IllegalStateException e) {
+      // expected
+    }
+    assertEquals(0, index.aliasRequests);
+  }
+
+  @Test
+  public void testWritesAreMirrored() throws Exception {
+    index.update(false, document("a"));
+    assertEquals(Collections.singletonList("test_event/a"), index.sent);
+
+    index.createShadow();
+    final String shadow = index.runOnShadow(() -> index.getIndexName("event"));
+    index.sent.clear();
+    final int bulkRequests = index.bulkRequests;
+    index.update(false, document("b"));
+    assertEquals("The documents must be sent in one bulk request", bulkRequests + 1, index.bulkRequests);
+    assertEquals(Arrays.asList("test_event/b", "test_event_shadow/b"), index.sent);
+
+    // the rebuild itself only writes to the shadow indices
+    index.sent.clear();
+    index.runOnShadow(() -> index.update(false, document("c")));
+    assertEquals(Collections.singletonList(shadow + "/c"), index.sent);
+  }
+
+  @Test
+  public void testWriteRunsOnce() throws Exception {
+    index.createShadow();
+    final List<String> runs = new ArrayList<>();
+    index.write(() -> {
+      runs.add(index.getIndexName("event"));
+      return index.update(document("a"));
+    });
+    assertEquals(Collections.singletonList("test_event"), runs);
+    assertEquals(Arrays.asList("test_event/a", "test_event_shadow/a"), index.sent);
+  }
+
+  @Test
+  public void testDeletesAreMirrored() throws Exception {
+    index.createShadow();
+    assertTrue(index.write(() -> index.deleteDocument("event", "a")));
+    assertEquals(Arrays.asList("test_event/a", "test_event_shadow/a"), index.sent);
+  }
+
+  @Test
+  public void testOtherNodesFindShadow() throws Exception {
+    final TestIndex peer = new TestIndex(index.indices);
+    index.createShadow();
+    peer.update(false, document("a"));
+    assertFalse(peer.isRebuilding());
+    assertEquals(Arrays.asList("test_event/a", "test_event_shadow/a"), peer.sent);
+
+    // the peer stops writing to the shadow indices once they replaced the live indices
+    index.switchToShadow();
+    peer.sent.clear();
+    peer.update(false, document("b"));
+    peer.update(false, document("c"));
+    assertEquals(Arrays.asList("test_event/b", "test_event_shadow/b", "test_event/c"), peer.sent);
+  }
+
+  @Test
+  public void testFailedMirrorBlocksSwitch() throws Exception {
+    final TestIndex peer = new TestIndex(index.indices);
+    index.createShadow();
+    final int aliasRequests = index.aliasRequests;
+    peer.failShadow = true;
+    peer.update(false, document("a"));
+    try {
+      index.switchToShadow();
+      fail("The shadow indices missed a write");
+    } catch (SearchIndexException e) {
+      // expected
+    }
+    assertTrue(index.isRebuilding());
+    assertEquals(aliasRequests, index.aliasRequests);
+    assertEquals(Collections.singleton("test_event"), index.indices.get("test_event_1"));
+  }
+
+  @Test
+  public void testSwitchWaitsForMessages() throws Exception {
+    index.createShadow();
+    final List<String> barriers = new CopyOnWriteArrayList<>();
+    final Thread waiting = new Thread(() -> {
+      try {
+        index.awaitBarrier(barriers::add);
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+    });
+    waiting.start();
+    while (barriers.isEmpty()) {
+      Thread.sleep(10);
+    }
+    try {
+      index.switchToShadow();
+      fail("Messages are still being processed");
+    } catch (IllegalStateException e) {
+      // expected
+    }
+
+    index.reachBarrier("unknown");
+    index.reachBarrier(barriers.get(0));
+    waiting.join(10000);
+    assertFalse(waiting.isAlive());
+    index.switchToShadow();
+    assertFalse(index.isRebuilding());
+  }
+
+  @Test
+  public void testDropShadow() throws Exception {
+    index.createShadow();
+    index.dropShadow();
+    assertFalse(index.isRebuilding());
+    assertEquals(new HashSet<>(Arrays.asList("test_event_1", "test_series_1")), index.indices.keySet());
+
+    // nothing to drop
+    index.dropShadow();
+  }
+
+  private static ElasticsearchDocument document(String id) {
+    return new ElasticsearchDocument(id, "event", Collections.emptyList());
+  }
+
+  /** An index keeping its physical indices and their aliases in memory */
+  private static final class TestIndex extends AbstractElasticsearchIndex {
+
+    /** The physical indices and their aliases, shared by all nodes */
+    private final Map<String, Set<String>> indices;
+
+    /** The index or alias and identifier of the documents sent */
+    private final List<String> sent = new CopyOnWriteArrayList<>();
+
+    private int aliasRequests = 0;
+
+    private int bulkRequests = 0;
+
+    /** Whether writes to the shadow aliases fail */
+    private boolean failShadow = false;
+
+    private TestIndex() {
+      this(Collections.synchronizedMap(new TreeMap<>()));
+    }
+
+    private TestIndex(Map<String, Set<String>> indices) {
+      this.indices = indices;
+    }
+
+    @Override
+    public String[] getDocumentTypes() {
+      return new String[] { "event", "series" };
+    }
+
+    @Override
+    public String getIndexName() {
+      return "test";
+    }
+
+    @Override
+    Map<String, Boolean> getPhysicalIndices(String alias) {
+      final Map<String, Boolean> physicalIndices = new HashMap<>();
+      for (Map.Entry<String, Set<String>> physicalIndex : indices.entrySet()) {
+        final String name = physicalIndex.getKey();
+        if (name.equals(alias) || name.startsWith(alias + "_")) {
+          physicalIndices.put(name, name.equals(alias) || physicalIndex.getValue().contains(alias));
+        }
+      }
+      return physicalIndices;
+    }
+
+    @Override
+    void createSubIndex(String type, String idxName, String alias) {
+      indices.put(idxName, alias == null ? new HashSet<>() : new HashSet<>(Collections.singletonList(alias)));
+    }
+
+    @Override
+    void deleteIndices(List<String> names) {
+      indices.keySet().removeAll(names);
+    }
+
+    @Override
+    void awaitShadowDiscovery() {
+      // all nodes look for the shadow aliases on every write
+    }
+
+    @Override
+    boolean aliasExists(String alias) {
+      synchronized (indices) {
+        return indices.values().stream().anyMatch(aliases -> aliases.contains(alias));
+      }
+    }
+
+    @Override
+    List<CompletableFuture<BulkItemResponse>> queue(boolean wait, IndexRequest... requests) {
+      final BulkItemResponse[] items = bulk(new BulkRequest().add(requests)).getItems();
+      return Arrays.stream(items).map(CompletableFuture::completedFuture).collect(Collectors.toList());
+    }
+
+    @Override
+    BulkResponse bulk(BulkRequest request) {
+      bulkRequests++;
+      final List<DocWriteRequest<?>> requests = request.requests();
+      final BulkItemResponse[] items = new BulkItemResponse[requests.size()];
+      for (int i = 0; i < items.length; i++) {
+        final DocWriteRequest<?> item = requests.get(i);
+        sent.add(item.index() + "/" + item.id());
+        final boolean exists = indices.containsKey(item.index()) || aliasExists(item.index());
+        if (failShadow && item.index().endsWith("_shadow")) {
+          items[i] = new BulkItemResponse(i, item.opType(), new BulkItemResponse.Failure(item.index(), "_doc",
+                  item.id(), new IllegalArgumentException("mapping"), RestStatus.INTERNAL_SERVER_ERROR));
+        } else if (!exists && (item.isRequireAlias() || item.opType() == OpType.DELETE)) {
+          items[i] = new BulkItemResponse(i, item.opType(), new BulkItemResponse.Failure(item.index(), "_doc",
+                  item.id(), new IndexNotFoundException(item.index()), RestStatus.NOT_FOUND));
+        } else {
+          final ShardId shard = new ShardId(item.index(), "uuid", 0);
+          items[i] = new BulkItemResponse(i, item.opType(), item.opType() == OpType.DELETE
+                  ? new DeleteResponse(shard, "_doc", item.id(), i, 1, 1, true)
+                  : new IndexResponse(shard, "_doc", item.id(), i, 1, 1, true));
+        }
+      }
+      return new BulkResponse(items, 1);
+    }
+
+    @Override
+    boolean updateAliases(IndicesAliasesRequest request) {
+      aliasRequests++;
+      for (AliasActions action : request.getAliasActions()) {
+        for (String name : action.indices()) {
+          if (name.endsWith("*")) {
+            // a wildcard only removes the aliases from the matching indices
+            synchronized (indices) {
+              indices.entrySet().stream()
+                      .filter(physicalIndex -> physicalIndex.getKey().startsWith(name.substring(0, name.length() - 1)))
+                      .forEach(physicalIndex -> physicalIndex.getValue().removeAll(Arrays.asList(action.aliases())));
+            }
+            continue;
+          }
+          switch (action.actionType()) {
+            case ADD:
+              indices.get(name).addAll(Arrays.asList(action.aliases()));
+              break;
+            case REMOVE:
+              indices.get(name).removeAll(Arrays.asList(action.aliases()));
+              break;
+            case REMOVE_INDEX:
+              indices.remove(name);
+              break;
+            default:
+              throw new IllegalArgumentException("Unknown alias action " + action.actionType());
+          }
+        }
+      }
+      return true;
+    }
+  }
+
+}
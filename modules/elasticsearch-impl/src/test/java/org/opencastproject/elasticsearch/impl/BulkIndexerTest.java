@@ -0,0 +1,234 @@
+/**
+ * Licensed to The Apereo Foundation under one or more contributor license
+ * agreements. See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ *
+ * The Apereo Foundation licenses this file to you under the Educational
+ * Community License, Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License. You may obtain a copy of the License
+ * at:
+ *
+ *   http://opensource.org/licenses/ecl2.txt
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ *
+ */
+
+
+package org.opencastproject.elasticsearch.impl;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.elasticsearch.action.DocWriteRequest;
+import org.elasticsearch.action.DocWriteRequest.OpType;
+import org.elasticsearch.action.bulk.BulkItemResponse;
+import org.elasticsearch.action.bulk.BulkRequest;
+import org.elasticsearch.action.bulk.BulkResponse;
+import org.elasticsearch.action.index.IndexRequest;
+import org.elasticsearch.action.index.IndexResponse;
+import org.elasticsearch.action.support.WriteRequest.RefreshPolicy;
+import org.elasticsearch.index.shard.ShardId;
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Test case for {@link BulkIndexer}.
+ */
+public class BulkIndexerTest {
+
+  private static final String INDEX = "test_event";
+
+  /** The bulk requests sent */
+  private final List<BulkRequest> bulkRequests = new CopyOnWriteArrayList<>();
+
+  /** The number of refreshes */
+  private final AtomicInteger refreshes = new AtomicInteger();
+
+  /** Identifiers of documents to fail */
+  private final List<String> failing = new CopyOnWriteArrayList<>();
+
+  private final BulkIndexer.Client client = new BulkIndexer.Client() {
+    @Override
+    public BulkResponse bulk(BulkRequest request) {
+      bulkRequests.add(request);
+      final List<DocWriteRequest<?>> requests = request.requests();
+      final BulkItemResponse[] items = new BulkItemResponse[requests.size()];
+      for (int i = 0; i < items.length; i++) {
+        final String id = requests.get(i).id();
+        if (failing.contains(id)) {
+          items[i] = new BulkItemResponse(i, OpType.INDEX,
+                  new BulkItemResponse.Failure(INDEX, "_doc", id, new IllegalArgumentException("mapping")));
+        } else {
+          items[i] = new BulkItemResponse(i, OpType.INDEX,
+                  new IndexResponse(new ShardId(INDEX, "uuid", 0), "_doc", id, i, 1, 1, true));
+        }
+      }
+      return new BulkResponse(items, 1);
+    }
+
+    @Override
+    public void refresh(String... indices) {
+      refreshes.incrementAndGet();
+    }
+  };
+
+  private BulkIndexer indexer;
+
+  @After
+  public void tearDown() throws Exception {
+    if (indexer != null) {
+      indexer.close();
+    }
+  }
+
+  private BulkIndexer start(int maxActions, long flushInterval) {
+    indexer = new BulkIndexer(INDEX, client, maxActions, 1024 * 1024, flushInterval, 100, RefreshPolicy.NONE);
+    indexer.start();
+    return indexer;
+  }
+
+  private static IndexRequest[] requests(String... ids) {
+    final IndexRequest[] requests = new IndexRequest[ids.length];
+    for (int i = 0; i < ids.length; i++) {
+      requests[i] = new IndexRequest(INDEX).id(ids[i]).source(Collections.singletonMap("uid", ids[i]));
+    }
+    return requests;
+  }
+
+  @Test
+  public void testBatchesByNumberOfDocuments() throws Exception {
+    start(3, TimeUnit.MINUTES.toMillis(1));
+    final List<CompletableFuture<BulkItemResponse>> responses = indexer.add(false,
+            requests("a", "b", "c", "d", "e", "f", "g"));
+    responses.get(5).get(10, TimeUnit.SECONDS);
+
+    // The last document waits for the flush interval or until the indexer is closed
+    assertFalse(responses.get(6).isDone());
+    assertEquals(1, indexer.getQueueDepth());
+    indexer.close();
+    assertTrue(responses.get(6).isDone());
+
+    assertEquals(3, bulkRequests.size());
+    assertEquals(3, bulkRequests.get(0).numberOfActions());
+    assertEquals(3, bulkRequests.get(1).numberOfActions());
+    assertEquals(1, bulkRequests.get(2).numberOfActions());
+    for (BulkRequest request : bulkRequests) {
+      assertEquals(RefreshPolicy.NONE, request.getRefreshPolicy());
+    }
+    assertEquals(3, indexer.getBulkRequests());
+    assertEquals(7, indexer.getIndexedDocuments());
+    assertEquals(0, indexer.getQueueDepth());
+  }
+
+  @Test
+  public void testWaitingWritesAreSentRightAway() throws Exception {
+    start(100, TimeUnit.MINUTES.toMillis(1));
+    final BulkItemResponse response = indexer.add(true, requests("a")).get(0).get(10, TimeUnit.SECONDS);
+
+    assertFalse(response.isFailed());
+    assertEquals(1, bulkRequests.size());
+    assertEquals(RefreshPolicy.WAIT_UNTIL, bulkRequests.get(0).getRefreshPolicy());
+
+    // The document is visible already
+    indexer.awaitVisible(INDEX, "a");
+    assertEquals(0, refreshes.get());
+  }
+
+  @Test
+  public void testAwaitVisibleOfQueuedDocument() throws Exception {
+    start(100, TimeUnit.MINUTES.toMillis(1));
+    indexer.add(false, requests("a", "b"));
+
+    // Waiting for a queued document flushes the queue and waits for the next refresh
+    indexer.awaitVisible(INDEX, "a");
+    assertEquals(1, bulkRequests.size());
+    assertEquals(2, bulkRequests.get(0).numberOfActions());
+    assertEquals(RefreshPolicy.WAIT_UNTIL, bulkRequests.get(0).getRefreshPolicy());
+
+    indexer.awaitVisible(INDEX, "b");
+    assertEquals(0, refreshes.get());
+  }
+
+  @Test
+  public void testAwaitVisibleOfSentDocument() throws Exception {
+    start(100, 0);
+    final List<CompletableFuture<BulkItemResponse>> responses = indexer.add(false, requests("a", "b"));
+    responses.get(1).get(10, TimeUnit.SECONDS);
+
+    // Documents sent without a refresh need one
+    indexer.awaitVisible(INDEX, "a");
+    assertEquals(1, refreshes.get());
+
+    // The refresh made the other document visible as well
+    indexer.awaitVisible(INDEX, "b");
+    indexer.awaitVisible(INDEX, "c");
+    assertEquals(1, refreshes.get());
+    assertEquals(1, indexer.getRefreshes());
+  }
+
+  @Test
+  public void testFlush() throws Exception {
+    start(100, TimeUnit.MINUTES.toMillis(1));
+    indexer.add(false, requests("a", "b"));
+
+    // Queued documents are sent right away and become visible with their bulk request
+    indexer.flush();
+    assertEquals(1, bulkRequests.size());
+    assertEquals(RefreshPolicy.WAIT_UNTIL, bulkRequests.get(0).getRefreshPolicy());
+    assertEquals(0, indexer.getQueueDepth());
+    assertEquals(0, refreshes.get());
+  }
+
+  @Test
+  public void testFlushRefreshesSentDocuments() throws Exception {
+    start(100, 0);
+    indexer.add(false, requests("a", "b")).get(1).get(10, TimeUnit.SECONDS);
+
+    // Documents sent without a refresh need one, but only once
+    indexer.flush();
+    indexer.flush();
+    assertEquals(1, refreshes.get());
+  }
+
+  @Test
+  public void testRequestsOfOneCallAreSentTogether() throws Exception {
+    start(3, TimeUnit.MINUTES.toMillis(1));
+    indexer.add(false, requests("a", "b"));
+    indexer.add(false, requests("c", "d"));
+    indexer.flush();
+
+    // The bulk request limit must not separate the documents added together
+    assertEquals(1, bulkRequests.size());
+    assertEquals(4, bulkRequests.get(0).numberOfActions());
+  }
+
+  @Test
+  public void testFailedDocuments() throws Exception {
+    start(100, 0);
+    failing.add("b");
+    final List<CompletableFuture<BulkItemResponse>> responses = indexer.add(false, requests("a", "b"));
+
+    assertFalse(responses.get(0).get(10, TimeUnit.SECONDS).isFailed());
+    assertTrue(responses.get(1).get(10, TimeUnit.SECONDS).isFailed());
+    assertEquals(1, indexer.getFailedDocuments());
+
+    // There is nothing to wait for if the document was not written
+    indexer.awaitVisible(INDEX, "b");
+    assertEquals(0, refreshes.get());
+  }
+
+}
@@ -51,12 +51,8 @@ import org.opencastproject.util.data.Option;
 
 import com.google.common.util.concurrent.Striped;
 
-import org.elasticsearch.action.DocWriteResponse;
-import org.elasticsearch.action.delete.DeleteRequest;
-import org.elasticsearch.action.delete.DeleteResponse;
 import org.elasticsearch.action.search.SearchRequest;
 import org.elasticsearch.action.search.SearchResponse;
-import org.elasticsearch.action.support.WriteRequest;
 import org.elasticsearch.client.RequestOptions;
 import org.elasticsearch.common.document.DocumentField;
 import org.elasticsearch.search.SearchHit;
@@ -93,7 +89,8 @@ public abstract class AbstractSearchIndex extends AbstractElasticsearchIndex {
    * @param id
    *          The id of the event to update
    * @param updateFunction
-   *          The function that does the actual updating
+   *          The function that does the actual updating. It is applied once, while the index is being rebuilt its
+   *          result is written to the rebuilt index as well.
    * @param orgId
    *           the organization the event belongs to
    * @param user
@@ -103,17 +100,43 @@ public abstract class AbstractSearchIndex extends AbstractElasticsearchIndex {
    */
   public Optional<Event> addOrUpdateEvent(String id, Function<Optional<Event>, Optional<Event>> updateFunction,
           String orgId, User user) throws SearchIndexException {
+    return addOrUpdateEvent(id, updateFunction, orgId, user, true);
+  }
+
+  /**
+   * Adds or updates the event in the search index. Uses a locking mechanism to avoid issues like Lost Update.
+   *
+   * @param id
+   *          The id of the event to update
+   * @param updateFunction
+   *          The function that does the actual updating. It is applied once, while the index is being rebuilt its
+   *          result is written to the rebuilt index as well.
+   * @param orgId
+   *           the organization the event belongs to
+   * @param user
+   *           the user
+   * @param wait
+   *           whether to wait until the updated event is visible to searches. Callers not reading their own writes
+   *           can skip this, allowing the event to be sent in a bulk request with other documents.
+   * @throws SearchIndexException
+   *           Thrown if unable to update the event.
+   */
+  public Optional<Event> addOrUpdateEvent(String id, Function<Optional<Event>, Optional<Event>> updateFunction,
+          String orgId, User user, boolean wait) throws SearchIndexException {
     final Lock lock = this.locks.get(id);
     lock.lock();
     logger.debug("Locked event '{}'", id);
 
     try {
-      Optional<Event> eventOpt = getEvent(id, orgId, user);
-      Optional<Event> updatedEventOpt = updateFunction.apply(eventOpt);
-      if (updatedEventOpt.isPresent()) {
-        addOrUpdate(updatedEventOpt.get());
-      }
-      return updatedEventOpt;
+      return write(() -> {
+        awaitPendingUpdate(Event.DOCUMENT_TYPE, id.concat(orgId));
+        Optional<Event> eventOpt = getEvent(id, orgId, user);
+        Optional<Event> updatedEventOpt = updateFunction.apply(eventOpt);
+        if (updatedEventOpt.isPresent()) {
+          addOrUpdate(updatedEventOpt.get(), wait);
+        }
+        return updatedEventOpt;
+      });
     } finally {
       lock.unlock();
       logger.debug("Released locked event '{}'", id);
@@ -129,6 +152,20 @@ public abstract class AbstractSearchIndex extends AbstractElasticsearchIndex {
    *           if the event cannot be added or updated
    */
   protected void addOrUpdate(Event event) throws SearchIndexException {
+    addOrUpdate(event, true);
+  }
+
+  /**
+   * Adds the recording event to the search index or updates it accordingly if it is there.
+   *
+   * @param event
+   *          the recording event
+   * @param wait
+   *          whether to wait until the event is visible to searches
+   * @throws SearchIndexException
+   *           if the event cannot be added or updated
+   */
+  protected void addOrUpdate(Event event, boolean wait) throws SearchIndexException {
     logger.debug("Adding event {} to search index", event.getIdentifier());
 
     // Add the resource to the index
@@ -137,7 +174,7 @@ public abstract class AbstractSearchIndex extends AbstractElasticsearchIndex {
     ElasticsearchDocument doc = new ElasticsearchDocument(inputDocument.getIdentifier(),
             inputDocument.getDocumentType(), resourceMetadata);
     try {
-      update(doc);
+      update(wait, doc);
     } catch (Throwable t) {
       throw new SearchIndexException("Cannot write resource " + event + " to index", t);
     }
@@ -149,7 +186,8 @@ public abstract class AbstractSearchIndex extends AbstractElasticsearchIndex {
    * @param id
    *          The id of the series to add
    * @param updateFunction
-   *          The function that does the actual updating
+   *          The function that does the actual updating. It is applied once, while the index is being rebuilt its
+   *          result is written to the rebuilt index as well.
    * @param orgId
    *           the organization the series belongs to
    * @param user
@@ -159,17 +197,42 @@ public abstract class AbstractSearchIndex extends AbstractElasticsearchIndex {
    */
   public Optional<Series> addOrUpdateSeries(String id, Function<Optional<Series>, Optional<Series>> updateFunction,
           String orgId, User user) throws SearchIndexException {
+    return addOrUpdateSeries(id, updateFunction, orgId, user, true);
+  }
+
+  /**
+   * Adds or updates the series in the search index. Uses a locking mechanism to avoid issues like Lost Update.
+   *
+   * @param id
+   *          The id of the series to add
+   * @param updateFunction
+   *          The function that does the actual updating. It is applied once, while the index is being rebuilt its
+   *          result is written to the rebuilt index as well.
+   * @param orgId
+   *           the organization the series belongs to
+   * @param user
+   *           the user
+   * @param wait
+   *           whether to wait until the updated series is visible to searches
+   * @throws SearchIndexException
+   *           Thrown if unable to add or update the series.
+   */
+  public Optional<Series> addOrUpdateSeries(String id, Function<Optional<Series>, Optional<Series>> updateFunction,
+          String orgId, User user, boolean wait) throws SearchIndexException {
     final Lock lock = this.locks.get(id);
     lock.lock();
     logger.debug("Locked series '{}'", id);
 
     try {
-      Optional<Series> seriesOpt = getSeries(id, orgId, user);
-      Optional<Series> updatedSeriesOpt = updateFunction.apply(seriesOpt);
-      if (updatedSeriesOpt.isPresent()) {
-        addOrUpdate(updatedSeriesOpt.get());
-      }
-      return updatedSeriesOpt;
+      return write(() -> {
+        awaitPendingUpdate(Series.DOCUMENT_TYPE, id.concat(orgId));
+        Optional<Series> seriesOpt = getSeries(id, orgId, user);
+        Optional<Series> updatedSeriesOpt = updateFunction.apply(seriesOpt);
+        if (updatedSeriesOpt.isPresent()) {
+          addOrUpdate(updatedSeriesOpt.get(), wait);
+        }
+        return updatedSeriesOpt;
+      });
     } finally {
       lock.unlock();
       logger.debug("Released locked series '{}'", id);
@@ -183,6 +246,20 @@ public abstract class AbstractSearchIndex extends AbstractElasticsearchIndex {
    * @throws SearchIndexException
    */
   protected void addOrUpdate(Series series) throws SearchIndexException {
+    addOrUpdate(series, true);
+  }
+
+  /**
+   * Add or update a series in the search index.
+   *
+   * @param series
+   *          the series
+   * @param wait
+   *          whether to wait until the series is visible to searches
+   * @throws SearchIndexException
+   *           if the series cannot be added or updated
+   */
+  protected void addOrUpdate(Series series, boolean wait) throws SearchIndexException {
     logger.debug("Adding series {} to search index", series.getIdentifier());
 
     // Add the resource to the index
@@ -191,7 +268,7 @@ public abstract class AbstractSearchIndex extends AbstractElasticsearchIndex {
     ElasticsearchDocument doc = new ElasticsearchDocument(inputDocument.getIdentifier(),
             inputDocument.getDocumentType(), resourceMetadata);
     try {
-      update(doc);
+      update(wait, doc);
     } catch (Throwable t) {
       throw new SearchIndexException("Cannot write resource " + series + " to index", t);
     }
@@ -289,7 +366,8 @@ public abstract class AbstractSearchIndex extends AbstractElasticsearchIndex {
    * @param id
    *          The id of the theme to update
    * @param updateFunction
-   *          The function that does the actual updating
+   *          The function that does the actual updating. It is applied once, while the index is being rebuilt its
+   *          result is written to the rebuilt index as well.
    * @param orgId
    *           the organization the theme belongs to
    * @param user
@@ -304,12 +382,15 @@ public abstract class AbstractSearchIndex extends AbstractElasticsearchIndex {
     logger.debug("Locked theme '{}'", id);
 
     try {
-      Optional<IndexTheme> themeOpt = getTheme(id, orgId, user);
-      Optional<IndexTheme> updatedThemeOpt = updateFunction.apply(themeOpt);
-      if (updatedThemeOpt.isPresent()) {
-        addOrUpdate(updatedThemeOpt.get());
-      }
-      return updatedThemeOpt;
+      return write(() -> {
+        awaitPendingUpdate(IndexTheme.DOCUMENT_TYPE, Long.toString(id).concat(orgId));
+        Optional<IndexTheme> themeOpt = getTheme(id, orgId, user);
+        Optional<IndexTheme> updatedThemeOpt = updateFunction.apply(themeOpt);
+        if (updatedThemeOpt.isPresent()) {
+          addOrUpdate(updatedThemeOpt.get());
+        }
+        return updatedThemeOpt;
+      });
     } finally {
       lock.unlock();
       logger.debug("Released locked theme '{}'", id);
@@ -344,23 +425,21 @@ public abstract class AbstractSearchIndex extends AbstractElasticsearchIndex {
     lock.lock();
     logger.debug("Locked {} '{}'.", type, id);
     try {
-      String idWithOrgId = id.concat(orgId);
-      logger.debug("Removing element with id '{}' from search index '{}'", idWithOrgId, getIndexName(type));
-      final DeleteRequest deleteRequest = new DeleteRequest(getIndexName(type), idWithOrgId)
-              .setRefreshPolicy(WriteRequest.RefreshPolicy.IMMEDIATE);
-
-      final DeleteResponse delete = getClient().delete(deleteRequest, RequestOptions.DEFAULT);
-      if (delete.getResult().equals(DocWriteResponse.Result.NOT_FOUND)) {
-        logger.trace("Document {} to delete was not found on index '{}'", idWithOrgId, getIndexName(type));
-        return false;
-      }
-    } catch (IOException e) {
-      throw new SearchIndexException(e);
+      return write(() -> {
+        String idWithOrgId = id.concat(orgId);
+        // Make sure a queued update does not bring the document back
+        awaitPendingUpdate(type, idWithOrgId);
+        logger.debug("Removing element with id '{}' from search index '{}'", idWithOrgId, getIndexName(type));
+        if (!deleteDocument(type, idWithOrgId)) {
+          logger.trace("Document {} to delete was not found on index '{}'", idWithOrgId, getIndexName(type));
+          return false;
+        }
+        return true;
+      });
     } finally {
       lock.unlock();
       logger.debug("Released locked {} '{}'.", type, id);
     }
-    return true;
   }
 
   /**
@@ -390,18 +469,22 @@ public abstract class AbstractSearchIndex extends AbstractElasticsearchIndex {
    *           Thrown if the event cannot be found.
    */
   public void deleteAssets(String organization, User user, String uid) throws SearchIndexException, NotFoundException {
-    Optional<Event> eventOpt = getEvent(uid, organization, user);
-    if (!eventOpt.isPresent()) {
-      throw new NotFoundException("No event with id " + uid + " found.");
-    }
-    Event event = eventOpt.get();
-    event.setArchiveVersion(null);
+    write(() -> {
+      awaitPendingUpdate(Event.DOCUMENT_TYPE, uid.concat(organization));
+      Optional<Event> eventOpt = getEvent(uid, organization, user);
+      if (!eventOpt.isPresent()) {
+        throw new NotFoundException("No event with id " + uid + " found.");
+      }
+      Event event = eventOpt.get();
+      event.setArchiveVersion(null);
 
-    if (toDelete(event)) {
-      delete(Event.DOCUMENT_TYPE, uid, organization);
-    } else {
-      addOrUpdate(event);
-    }
+      if (toDelete(event)) {
+        delete(Event.DOCUMENT_TYPE, uid, organization);
+      } else {
+        addOrUpdate(event);
+      }
+      return null;
+    });
   }
 
   /**
@@ -420,18 +503,22 @@ public abstract class AbstractSearchIndex extends AbstractElasticsearchIndex {
    */
   public void deleteScheduling(String organization, User user, String uid)
           throws SearchIndexException, NotFoundException {
-    Optional<Event> eventOpt = getEvent(uid, organization, user);
-    if (!eventOpt.isPresent()) {
-      throw new NotFoundException("No event with id " + uid + " found.");
-    }
-    Event event = eventOpt.get();
-    event.setAgentId(null);
+    write(() -> {
+      awaitPendingUpdate(Event.DOCUMENT_TYPE, uid.concat(organization));
+      Optional<Event> eventOpt = getEvent(uid, organization, user);
+      if (!eventOpt.isPresent()) {
+        throw new NotFoundException("No event with id " + uid + " found.");
+      }
+      Event event = eventOpt.get();
+      event.setAgentId(null);
 
-    if (toDelete(event)) {
-      delete(Event.DOCUMENT_TYPE, uid, organization);
-    } else {
-      addOrUpdate(event);
-    }
+      if (toDelete(event)) {
+        delete(Event.DOCUMENT_TYPE, uid, organization);
+      } else {
+        addOrUpdate(event);
+      }
+      return null;
+    });
   }
 
   /**
@@ -452,23 +539,27 @@ public abstract class AbstractSearchIndex extends AbstractElasticsearchIndex {
    */
   public void deleteWorkflow(String organization, User user, String uid, Long workflowId)
           throws SearchIndexException, NotFoundException {
-    Optional<Event> eventOpt = getEvent(uid, organization, user);
-    if (!eventOpt.isPresent()) {
-      throw new NotFoundException("No event with id " + uid + " found.");
-    }
-    Event event = eventOpt.get();
-    if (event.getWorkflowId() != null && event.getWorkflowId().equals(workflowId)) {
-      logger.debug("Workflow {} is the current workflow of event {}. Removing it from event.", uid, workflowId);
-      event.setWorkflowId(null);
-      event.setWorkflowDefinitionId(null);
-      event.setWorkflowState(null);
-    }
+    write(() -> {
+      awaitPendingUpdate(Event.DOCUMENT_TYPE, uid.concat(organization));
+      Optional<Event> eventOpt = getEvent(uid, organization, user);
+      if (!eventOpt.isPresent()) {
+        throw new NotFoundException("No event with id " + uid + " found.");
+      }
+      Event event = eventOpt.get();
+      if (event.getWorkflowId() != null && event.getWorkflowId().equals(workflowId)) {
+        logger.debug("Workflow {} is the current workflow of event {}. Removing it from event.", uid, workflowId);
+        event.setWorkflowId(null);
+        event.setWorkflowDefinitionId(null);
+        event.setWorkflowState(null);
+      }
 
-    if (toDelete(event)) {
-      delete(Event.DOCUMENT_TYPE, uid, organization);
-    } else {
-      addOrUpdate(event);
-    }
+      if (toDelete(event)) {
+        delete(Event.DOCUMENT_TYPE, uid, organization);
+      } else {
+        addOrUpdate(event);
+      }
+      return null;
+    });
   }
 
   /**
@@ -0,0 +1,238 @@
+/**
+ * Licensed to The Apereo Foundation under one or more contributor license
+ * agreements. See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ *
+ * The Apereo Foundation licenses this file to you under the Educational
+ * Community License, Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License. You may obtain a copy of the License
+ * at:
+ *
+ *   http://opensource.org/licenses/ecl2.txt
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ *
+ */
+
+package org.opencastproject.elasticsearch.index;
+
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.JsonWriter;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Helpers to store index objects as JSON documents in the search index. The index objects read and write their fields
+ * with these helpers, without going through JAXB.
+ * <p>
+ * Documents written before the index objects were stored as JSON contain XML. Such documents can still be read and
+ * are converted when they are written again, e.g. by an index rebuild.
+ */
+public final class IndexObjectJson {
+
+  /** The logging facility */
+  private static final Logger logger = LoggerFactory.getLogger(IndexObjectJson.class);
+
+  /** The document types for which documents in the XML format have been found */
+  private static final Set<String> legacyTypes = ConcurrentHashMap.newKeySet();
+
+  /** Writes the fields of an index object */
+  @FunctionalInterface
+  public interface Fields {
+    void write(JsonWriter out) throws IOException;
+  }
+
+  /** Reads a field of an index object */
+  @FunctionalInterface
+  public interface Field {
+    void read(String name, JsonReader in) throws IOException;
+  }
+
+  /**
+   * This is a utility class and should therefore not be instantiated.
+   */
+  private IndexObjectJson() {
+  }
+
+  /**
+   * Checks whether a stored index object is a JSON document, as opposed to an XML document written before index
+   * objects were stored as JSON.
+   *
+   * @param object
+   *          the stored index object
+   * @param type
+   *          the document type, used to hint at converting documents in the XML format once
+   * @return whether the index object is a JSON document
+   */
+  public static boolean isJson(String object, String type) {
+    for (int i = 0; i < object.length(); i++) {
+      final char c = object.charAt(i);
+      if (!Character.isWhitespace(c)) {
+        if (c == '{') {
+          return true;
+        }
+        break;
+      }
+    }
+    if (legacyTypes.add(type)) {
+      logger.info("Found {} documents in the XML format in the search index, rebuild the index to convert them",
+              type);
+    }
+    return false;
+  }
+
+  /**
+   * Writes a JSON object. Fields with <code>null</code> values are left out.
+   *
+   * @param fields
+   *          writes the fields of the object
+   * @return the JSON document
+   */
+  public static String write(Fields fields) {
+    final StringWriter writer = new StringWriter();
+    try (JsonWriter out = new JsonWriter(writer)) {
+      out.setSerializeNulls(false);
+      out.beginObject();
+      fields.write(out);
+      out.endObject();
+    } catch (IOException e) {
+      throw new IllegalStateException(e);
+    }
+    return writer.toString();
+  }
+
+  /**
+   * Reads a JSON object. Fields the reader does not know need to be skipped with {@link JsonReader#skipValue()}.
+   *
+   * @param json
+   *          the JSON document
+   * @param field
+   *          reads a field of the object
+   * @throws IOException
+   *           if the JSON document is malformed
+   */
+  public static void read(String json, Field field) throws IOException {
+    try (JsonReader in = new JsonReader(new StringReader(json))) {
+      in.beginObject();
+      while (in.hasNext()) {
+        field.read(in.nextName(), in);
+      }
+      in.endObject();
+    } catch (IllegalStateException | NumberFormatException e) {
+      throw new IOException("Malformed index object", e);
+    }
+  }
+
+  /** Writes a list of strings, unless it is <code>null</code>. */
+  public static void writeStrings(JsonWriter out, String name, List<String> values) throws IOException {
+    if (values == null) {
+      return;
+    }
+    out.name(name).beginArray();
+    for (String value : values) {
+      out.value(value);
+    }
+    out.endArray();
+  }
+
+  /** Writes a map of strings as object, unless it is <code>null</code>. */
+  public static void writeStringMap(JsonWriter out, String name, Map<String, String> values) throws IOException {
+    if (values == null) {
+      return;
+    }
+    out.name(name).beginObject();
+    for (Map.Entry<String, String> entry : values.entrySet()) {
+      out.name(entry.getKey()).value(entry.getValue());
+    }
+    out.endObject();
+  }
+
+  /** Writes a date as milliseconds since the epoch, unless it is <code>null</code>. */
+  public static void writeDate(JsonWriter out, String name, Date value) throws IOException {
+    if (value != null) {
+      out.name(name).value(value.getTime());
+    }
+  }
+
+  /** Reads a string which may be <code>null</code>. */
+  public static String nextString(JsonReader in) throws IOException {
+    if (in.peek() == JsonToken.NULL) {
+      in.nextNull();
+      return null;
+    }
+    return in.nextString();
+  }
+
+  /** Reads a number which may be <code>null</code>. */
+  public static Long nextLong(JsonReader in) throws IOException {
+    if (in.peek() == JsonToken.NULL) {
+      in.nextNull();
+      return null;
+    }
+    return in.nextLong();
+  }
+
+  /** Reads a boolean which may be <code>null</code>. */
+  public static Boolean nextBoolean(JsonReader in) throws IOException {
+    if (in.peek() == JsonToken.NULL) {
+      in.nextNull();
+      return null;
+    }
+    return in.nextBoolean();
+  }
+
+  /** Reads a date written by {@link #writeDate(JsonWriter, String, Date)}. */
+  public static Date nextDate(JsonReader in) throws IOException {
+    final Long value = nextLong(in);
+    return value == null ? null : new Date(value);
+  }
+
+  /** Reads a list of strings which may be <code>null</code>. */
+  public static List<String> nextStrings(JsonReader in) throws IOException {
+    if (in.peek() == JsonToken.NULL) {
+      in.nextNull();
+      return null;
+    }
+    final List<String> values = new ArrayList<>();
+    in.beginArray();
+    while (in.hasNext()) {
+      values.add(nextString(in));
+    }
+    in.endArray();
+    return values;
+  }
+
+  /** Reads a map of strings which may be <code>null</code>. */
+  public static Map<String, String> nextStringMap(JsonReader in) throws IOException {
+    if (in.peek() == JsonToken.NULL) {
+      in.nextNull();
+      return null;
+    }
+    final Map<String, String> values = new HashMap<>();
+    in.beginObject();
+    while (in.hasNext()) {
+      values.put(in.nextName(), nextString(in));
+    }
+    in.endObject();
+    return values;
+  }
+
+}
@@ -21,7 +21,18 @@
 
 package org.opencastproject.elasticsearch.index.event;
 
+import static org.opencastproject.elasticsearch.index.IndexObjectJson.nextBoolean;
+import static org.opencastproject.elasticsearch.index.IndexObjectJson.nextLong;
+import static org.opencastproject.elasticsearch.index.IndexObjectJson.nextString;
+import static org.opencastproject.elasticsearch.index.IndexObjectJson.nextStringMap;
+import static org.opencastproject.elasticsearch.index.IndexObjectJson.nextStrings;
+import static org.opencastproject.elasticsearch.index.IndexObjectJson.writeStringMap;
+import static org.opencastproject.elasticsearch.index.IndexObjectJson.writeStrings;
+
 import org.opencastproject.elasticsearch.index.IndexObject;
+import org.opencastproject.elasticsearch.index.IndexObjectJson;
+import org.opencastproject.mediapackage.MediaPackageElementParser;
+import org.opencastproject.mediapackage.MediaPackageException;
 import org.opencastproject.mediapackage.Publication;
 import org.opencastproject.scheduler.api.RecordingState;
 import org.opencastproject.util.IoSupport;
@@ -242,6 +253,9 @@ public class Event implements IndexObject {
   @XmlElement(name = "publication")
   private List<Publication> publications = new ArrayList<>();
 
+  /** The publications read from the search index, which are parsed on first access */
+  private List<String> publicationsXml = null;
+
   /** The recording status of the event */
   @XmlElement(name = "recording_status")
   private String recordingStatus = null;
@@ -814,7 +828,7 @@ public class Event implements IndexObject {
    *          the subtype
    */
   public void updatePreview(String previewSubtype) {
-    hasPreview = EventIndexUtils.subflavorMatches(publications, previewSubtype);
+    hasPreview = EventIndexUtils.subflavorMatches(getPublications(), previewSubtype);
   }
 
   /**
@@ -844,6 +858,7 @@ public class Event implements IndexObject {
    */
   public void setPublications(List<Publication> publications) {
     this.publications = publications;
+    this.publicationsXml = null;
   }
 
   /**
@@ -852,6 +867,18 @@ public class Event implements IndexObject {
    * @return the publications
    */
   public List<Publication> getPublications() {
+    if (publicationsXml != null) {
+      final List<Publication> parsed = new ArrayList<>(publicationsXml.size());
+      for (String xml : publicationsXml) {
+        try {
+          parsed.add((Publication) MediaPackageElementParser.getFromXml(xml));
+        } catch (MediaPackageException e) {
+          throw new IllegalStateException("Unable to parse publication of event " + identifier, e);
+        }
+      }
+      publications = parsed;
+      publicationsXml = null;
+    }
     return publications;
   }
 
@@ -1122,6 +1149,202 @@ public class Event implements IndexObject {
     return event;
   }
 
+  /**
+   * Reads the recording event from the JSON document stored in the search index.
+   *
+   * @param json
+   *          the JSON document
+   * @return the deserialized recording event
+   * @throws IOException
+   *           if the JSON document is malformed
+   */
+  public static Event valueOfIndexJson(String json) throws IOException {
+    final Event event = new Event();
+    IndexObjectJson.read(json, (name, in) -> {
+      switch (name) {
+        case "identifier":
+          event.identifier = nextString(in);
+          break;
+        case "organization":
+          event.organization = nextString(in);
+          break;
+        case "title":
+          event.title = nextString(in);
+          break;
+        case "description":
+          event.description = nextString(in);
+          break;
+        case "subject":
+          event.subject = nextString(in);
+          break;
+        case "location":
+          event.location = nextString(in);
+          break;
+        case "presenters":
+          event.presenters = nextStrings(in);
+          break;
+        case "contributors":
+          event.contributors = nextStrings(in);
+          break;
+        case "series_id":
+          event.seriesId = nextString(in);
+          break;
+        case "series_name":
+          event.seriesName = nextString(in);
+          break;
+        case "language":
+          event.language = nextString(in);
+          break;
+        case "source":
+          event.source = nextString(in);
+          break;
+        case "created":
+          event.created = nextString(in);
+          break;
+        case "creator":
+          event.creator = nextString(in);
+          break;
+        case "publisher":
+          event.publisher = nextString(in);
+          break;
+        case "license":
+          event.license = nextString(in);
+          break;
+        case "rights":
+          event.rights = nextString(in);
+          break;
+        case "access_policy":
+          event.accessPolicy = nextString(in);
+          break;
+        case "managed_acl":
+          event.managedAcl = nextString(in);
+          break;
+        case "workflow_state":
+          event.workflowState = nextString(in);
+          break;
+        case "workflow_id":
+          event.workflowId = nextLong(in);
+          break;
+        case "workflow_definition_id":
+          event.workflowDefinitionId = nextString(in);
+          break;
+        case "recording_start_time":
+          event.recordingStartTime = nextString(in);
+          break;
+        case "recording_end_time":
+          event.recordingEndTime = nextString(in);
+          break;
+        case "duration":
+          event.duration = nextLong(in);
+          break;
+        case "event_status":
+          event.eventStatus = nextString(in);
+          break;
+        case "has_comments":
+          event.hasComments = nextBoolean(in);
+          break;
+        case "has_open_comments":
+          event.hasOpenComments = nextBoolean(in);
+          break;
+        case "has_preview":
+          event.hasPreview = nextBoolean(in);
+          break;
+        case "needs_cutting":
+          event.needsCutting = nextBoolean(in);
+          break;
+        case "publications":
+          event.publicationsXml = nextStrings(in);
+          event.publications = null;
+          break;
+        case "recording_status":
+          event.recordingStatus = nextString(in);
+          break;
+        case "archive_version":
+          event.archiveVersion = nextLong(in);
+          break;
+        case "agent_id":
+          event.agentId = nextString(in);
+          break;
+        case "agent_configuration":
+          event.agentConfigurations = nextStringMap(in);
+          break;
+        case "technical_end_time":
+          event.technicalEndTime = nextString(in);
+          break;
+        case "technical_start_time":
+          event.technicalStartTime = nextString(in);
+          break;
+        case "technical_presenters":
+          event.technicalPresenters = nextStrings(in);
+          break;
+        default:
+          in.skipValue();
+      }
+    });
+    return event;
+  }
+
+  /**
+   * Serializes the recording event to the JSON document stored in the search index. The publications are embedded as
+   * media package element XML and only parsed when they are accessed after reading the event.
+   *
+   * @return the JSON document
+   */
+  public String toIndexJson() {
+    return IndexObjectJson.write(out -> {
+      out.name("identifier").value(identifier);
+      out.name("organization").value(organization);
+      out.name("title").value(title);
+      out.name("description").value(description);
+      out.name("subject").value(subject);
+      out.name("location").value(location);
+      writeStrings(out, "presenters", presenters);
+      writeStrings(out, "contributors", contributors);
+      out.name("series_id").value(seriesId);
+      out.name("series_name").value(seriesName);
+      out.name("language").value(language);
+      out.name("source").value(source);
+      out.name("created").value(created);
+      out.name("creator").value(creator);
+      out.name("publisher").value(publisher);
+      out.name("license").value(license);
+      out.name("rights").value(rights);
+      out.name("access_policy").value(accessPolicy);
+      out.name("managed_acl").value(managedAcl);
+      out.name("workflow_state").value(workflowState);
+      out.name("workflow_id").value(workflowId);
+      out.name("workflow_definition_id").value(workflowDefinitionId);
+      out.name("recording_start_time").value(recordingStartTime);
+      out.name("recording_end_time").value(recordingEndTime);
+      out.name("duration").value(duration);
+      out.name("event_status").value(eventStatus);
+      out.name("has_comments").value(hasComments);
+      out.name("has_open_comments").value(hasOpenComments);
+      out.name("has_preview").value(hasPreview);
+      out.name("needs_cutting").value(needsCutting);
+      if (publicationsXml != null) {
+        writeStrings(out, "publications", publicationsXml);
+      } else if (publications != null) {
+        out.name("publications").beginArray();
+        for (Publication publication : publications) {
+          try {
+            out.value(MediaPackageElementParser.getAsXml(publication));
+          } catch (MediaPackageException e) {
+            throw new IllegalStateException("Unable to serialize publication of event " + identifier, e);
+          }
+        }
+        out.endArray();
+      }
+      out.name("recording_status").value(recordingStatus);
+      out.name("archive_version").value(archiveVersion);
+      out.name("agent_id").value(agentId);
+      writeStringMap(out, "agent_configuration", agentConfigurations);
+      out.name("technical_end_time").value(technicalEndTime);
+      out.name("technical_start_time").value(technicalStartTime);
+      writeStrings(out, "technical_presenters", technicalPresenters);
+    });
+  }
+
   /**
    * Initialize the JAXBContext.
    */
@@ -1135,6 +1358,7 @@ public class Event implements IndexObject {
    * @return the serialized recording event
    */
   public String toJSON() {
+    getPublications();
     try {
       if (context == null) {
         createJAXBContext();
@@ -1178,6 +1402,7 @@ public class Event implements IndexObject {
    * @return A String with this event's content as XML.
    */
   public String toXML() {
+    getPublications();
     try {
       if (context == null) {
         createJAXBContext();
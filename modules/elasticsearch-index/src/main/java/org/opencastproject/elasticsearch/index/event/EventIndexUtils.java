@@ -26,6 +26,7 @@ import org.opencastproject.elasticsearch.api.SearchMetadata;
 import org.opencastproject.elasticsearch.api.SearchResult;
 import org.opencastproject.elasticsearch.impl.SearchMetadataCollection;
 import org.opencastproject.elasticsearch.index.AbstractSearchIndex;
+import org.opencastproject.elasticsearch.index.IndexObjectJson;
 import org.opencastproject.elasticsearch.index.series.Series;
 import org.opencastproject.elasticsearch.index.series.SeriesSearchQuery;
 import org.opencastproject.mediapackage.Attachment;
@@ -85,7 +86,7 @@ public final class EventIndexUtils {
    *
    * @param metadata
    *          the search metadata
-   * @param unmarshaller the unmarshaller to use
+   * @param unmarshaller the unmarshaller to use for documents in the XML format
    * @return the search result item
    * @throws IOException
    *           if unmarshalling fails
@@ -93,8 +94,11 @@ public final class EventIndexUtils {
   public static Event toRecordingEvent(SearchMetadataCollection metadata, Unmarshaller unmarshaller)
           throws IOException {
     Map<String, SearchMetadata<?>> metadataMap = metadata.toMap();
-    String eventJson = (String) metadataMap.get(EventIndexSchema.OBJECT).getValue();
-    return Event.valueOf(IOUtils.toInputStream(eventJson, Charset.defaultCharset()), unmarshaller);
+    String eventObject = (String) metadataMap.get(EventIndexSchema.OBJECT).getValue();
+    if (IndexObjectJson.isJson(eventObject, Event.DOCUMENT_TYPE)) {
+      return Event.valueOfIndexJson(eventObject);
+    }
+    return Event.valueOf(IOUtils.toInputStream(eventObject, Charset.defaultCharset()), unmarshaller);
   }
 
   /**
@@ -109,7 +113,7 @@ public final class EventIndexUtils {
             event.getIdentifier().concat(event.getOrganization()), Event.DOCUMENT_TYPE);
     metadata.addField(EventIndexSchema.UID, event.getIdentifier(), true);
     metadata.addField(EventIndexSchema.ORGANIZATION, event.getOrganization(), false);
-    metadata.addField(EventIndexSchema.OBJECT, event.toXML(), false);
+    metadata.addField(EventIndexSchema.OBJECT, event.toIndexJson(), false);
     if (StringUtils.isNotBlank(event.getTitle())) {
       metadata.addField(EventIndexSchema.TITLE, event.getTitle(), true);
     }
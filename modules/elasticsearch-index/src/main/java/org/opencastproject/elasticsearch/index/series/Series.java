@@ -21,7 +21,15 @@
 
 package org.opencastproject.elasticsearch.index.series;
 
+import static org.opencastproject.elasticsearch.index.IndexObjectJson.nextDate;
+import static org.opencastproject.elasticsearch.index.IndexObjectJson.nextLong;
+import static org.opencastproject.elasticsearch.index.IndexObjectJson.nextString;
+import static org.opencastproject.elasticsearch.index.IndexObjectJson.nextStrings;
+import static org.opencastproject.elasticsearch.index.IndexObjectJson.writeDate;
+import static org.opencastproject.elasticsearch.index.IndexObjectJson.writeStrings;
+
 import org.opencastproject.elasticsearch.index.IndexObject;
+import org.opencastproject.elasticsearch.index.IndexObjectJson;
 import org.opencastproject.util.DateTimeSupport.UtcTimestampAdapter;
 import org.opencastproject.util.EqualsUtil;
 import org.opencastproject.util.IoSupport;
@@ -577,6 +585,100 @@ public class Series implements IndexObject {
     return event;
   }
 
+  /**
+   * Reads the series from the JSON document stored in the search index.
+   *
+   * @param json
+   *          the JSON document
+   * @return the deserialized series
+   * @throws IOException
+   *           if the JSON document is malformed
+   */
+  public static Series valueOfIndexJson(String json) throws IOException {
+    final Series series = new Series();
+    IndexObjectJson.read(json, (name, in) -> {
+      switch (name) {
+        case "identifier":
+          series.identifier = nextString(in);
+          break;
+        case "title":
+          series.title = nextString(in);
+          break;
+        case "description":
+          series.description = nextString(in);
+          break;
+        case "subject":
+          series.subject = nextString(in);
+          break;
+        case "organization":
+          series.organization = nextString(in);
+          break;
+        case "language":
+          series.language = nextString(in);
+          break;
+        case "creator":
+          series.creator = nextString(in);
+          break;
+        case "license":
+          series.license = nextString(in);
+          break;
+        case "access_policy":
+          series.accessPolicy = nextString(in);
+          break;
+        case "managed_acl":
+          series.managedAcl = nextString(in);
+          break;
+        case "createdDateTime":
+          series.createdDateTime = nextDate(in);
+          break;
+        case "organizers":
+          series.organizers = nextStrings(in);
+          break;
+        case "contributors":
+          series.contributors = nextStrings(in);
+          break;
+        case "publishers":
+          series.publishers = nextStrings(in);
+          break;
+        case "rights_holder":
+          series.rightsHolder = nextString(in);
+          break;
+        case "theme":
+          series.theme = nextLong(in);
+          break;
+        default:
+          in.skipValue();
+      }
+    });
+    return series;
+  }
+
+  /**
+   * Serializes the series to the JSON document stored in the search index.
+   *
+   * @return the JSON document
+   */
+  public String toIndexJson() {
+    return IndexObjectJson.write(out -> {
+      out.name("identifier").value(identifier);
+      out.name("title").value(title);
+      out.name("description").value(description);
+      out.name("subject").value(subject);
+      out.name("organization").value(organization);
+      out.name("language").value(language);
+      out.name("creator").value(creator);
+      out.name("license").value(license);
+      out.name("access_policy").value(accessPolicy);
+      out.name("managed_acl").value(managedAcl);
+      writeDate(out, "createdDateTime", createdDateTime);
+      writeStrings(out, "organizers", organizers);
+      writeStrings(out, "contributors", contributors);
+      writeStrings(out, "publishers", publishers);
+      out.name("rights_holder").value(rightsHolder);
+      out.name("theme").value(theme);
+    });
+  }
+
   /**
    * Initialize the JAXBContext.
    */
@@ -23,6 +23,7 @@ package org.opencastproject.elasticsearch.index.series;
 
 import org.opencastproject.elasticsearch.api.SearchMetadata;
 import org.opencastproject.elasticsearch.impl.SearchMetadataCollection;
+import org.opencastproject.elasticsearch.index.IndexObjectJson;
 import org.opencastproject.security.api.AccessControlEntry;
 import org.opencastproject.security.api.AccessControlList;
 import org.opencastproject.security.api.AccessControlParser;
@@ -62,15 +63,18 @@ public final class SeriesIndexUtils {
    *
    * @param metadata
    *          the search metadata
-   * @param unmarshaller the unmarshaller to use
+   * @param unmarshaller the unmarshaller to use for documents in the XML format
    * @return the search result item
    * @throws IOException
    *           if unmarshalling fails
    */
   public static Series toSeries(SearchMetadataCollection metadata, Unmarshaller unmarshaller) throws IOException {
     Map<String, SearchMetadata<?>> metadataMap = metadata.toMap();
-    String seriesXml = (String) metadataMap.get(SeriesIndexSchema.OBJECT).getValue();
-    return Series.valueOf(IOUtils.toInputStream(seriesXml, Charset.defaultCharset()), unmarshaller);
+    String seriesObject = (String) metadataMap.get(SeriesIndexSchema.OBJECT).getValue();
+    if (IndexObjectJson.isJson(seriesObject, Series.DOCUMENT_TYPE)) {
+      return Series.valueOfIndexJson(seriesObject);
+    }
+    return Series.valueOf(IOUtils.toInputStream(seriesObject, Charset.defaultCharset()), unmarshaller);
   }
 
   /**
@@ -85,7 +89,7 @@ public final class SeriesIndexUtils {
             series.getIdentifier().concat(series.getOrganization()), Series.DOCUMENT_TYPE);
     metadata.addField(SeriesIndexSchema.UID, series.getIdentifier(), true);
     metadata.addField(SeriesIndexSchema.ORGANIZATION, series.getOrganization(), false);
-    metadata.addField(SeriesIndexSchema.OBJECT, series.toXML(), false);
+    metadata.addField(SeriesIndexSchema.OBJECT, series.toIndexJson(), false);
     metadata.addField(SeriesIndexSchema.TITLE, series.getTitle(), true);
     if (StringUtils.trimToNull(series.getDescription()) != null) {
       metadata.addField(SeriesIndexSchema.DESCRIPTION, series.getDescription(), true);
@@ -21,9 +21,15 @@
 
 package org.opencastproject.elasticsearch.index.theme;
 
+import static org.opencastproject.elasticsearch.index.IndexObjectJson.nextDate;
+import static org.opencastproject.elasticsearch.index.IndexObjectJson.nextLong;
+import static org.opencastproject.elasticsearch.index.IndexObjectJson.nextString;
+import static org.opencastproject.elasticsearch.index.IndexObjectJson.writeDate;
+
 import org.opencastproject.elasticsearch.api.SearchMetadata;
 import org.opencastproject.elasticsearch.impl.SearchMetadataCollection;
 import org.opencastproject.elasticsearch.index.IndexObject;
+import org.opencastproject.elasticsearch.index.IndexObjectJson;
 import org.opencastproject.util.DateTimeSupport;
 import org.opencastproject.util.DateTimeSupport.UtcTimestampAdapter;
 import org.opencastproject.util.IoSupport;
@@ -344,6 +350,116 @@ public class IndexTheme implements IndexObject {
     }
   }
 
+  /**
+   * Reads the theme from the JSON document stored in the search index.
+   *
+   * @param json
+   *          the JSON document
+   * @return the deserialized theme
+   * @throws IOException
+   *           if the JSON document is malformed
+   */
+  public static IndexTheme valueOfIndexJson(String json) throws IOException {
+    final IndexTheme theme = new IndexTheme();
+    IndexObjectJson.read(json, (name, in) -> {
+      switch (name) {
+        case "identifier":
+          theme.identifier = nextLong(in);
+          break;
+        case "creationDate":
+          theme.creationDate = nextDate(in);
+          break;
+        case "default":
+          theme.isDefault = in.nextBoolean();
+          break;
+        case "description":
+          theme.description = nextString(in);
+          break;
+        case "name":
+          theme.name = nextString(in);
+          break;
+        case "creator":
+          theme.creator = nextString(in);
+          break;
+        case "organization":
+          theme.organization = nextString(in);
+          break;
+        case "bumperActive":
+          theme.bumperActive = in.nextBoolean();
+          break;
+        case "bumperFile":
+          theme.bumperFile = nextString(in);
+          break;
+        case "trailerActive":
+          theme.trailerActive = in.nextBoolean();
+          break;
+        case "trailerFile":
+          theme.trailerFile = nextString(in);
+          break;
+        case "titleSlideActive":
+          theme.titleSlideActive = in.nextBoolean();
+          break;
+        case "titleSlideMetadata":
+          theme.titleSlideMetadata = nextString(in);
+          break;
+        case "titleSlideBackground":
+          theme.titleSlideBackground = nextString(in);
+          break;
+        case "licenseSlideActive":
+          theme.licenseSlideActive = in.nextBoolean();
+          break;
+        case "licenseSlideDescription":
+          theme.licenseSlideDescription = nextString(in);
+          break;
+        case "licenseSlideBackground":
+          theme.licenseSlideBackground = nextString(in);
+          break;
+        case "watermarkActive":
+          theme.watermarkActive = in.nextBoolean();
+          break;
+        case "watermarkFile":
+          theme.watermarkFile = nextString(in);
+          break;
+        case "watermarkPosition":
+          theme.watermarkPosition = nextString(in);
+          break;
+        default:
+          in.skipValue();
+      }
+    });
+    return theme;
+  }
+
+  /**
+   * Serializes the theme to the JSON document stored in the search index.
+   *
+   * @return the JSON document
+   */
+  public String toIndexJson() {
+    return IndexObjectJson.write(out -> {
+      out.name("identifier").value(identifier);
+      writeDate(out, "creationDate", creationDate);
+      out.name("default").value(isDefault);
+      out.name("description").value(description);
+      out.name("name").value(name);
+      out.name("creator").value(creator);
+      out.name("organization").value(organization);
+      out.name("bumperActive").value(bumperActive);
+      out.name("bumperFile").value(bumperFile);
+      out.name("trailerActive").value(trailerActive);
+      out.name("trailerFile").value(trailerFile);
+      out.name("titleSlideActive").value(titleSlideActive);
+      out.name("titleSlideMetadata").value(titleSlideMetadata);
+      out.name("titleSlideBackground").value(titleSlideBackground);
+      out.name("licenseSlideActive").value(licenseSlideActive);
+      out.name("licenseSlideDescription").value(licenseSlideDescription);
+      out.name("licenseSlideBackground").value(licenseSlideBackground);
+      out.name("watermarkActive").value(watermarkActive);
+      out.name("watermarkFile").value(watermarkFile);
+      out.name("watermarkPosition").value(watermarkPosition);
+    });
+  }
+
   /**
    * Initialize the JAXBContext.
    */
@@ -381,8 +497,11 @@ public class IndexTheme implements IndexObject {
    */
   public static IndexTheme fromSearchMetadata(SearchMetadataCollection metadata) throws IOException {
     Map<String, SearchMetadata<?>> metadataMap = metadata.toMap();
-    String themeXml = (String) metadataMap.get(ThemeIndexSchema.OBJECT).getValue();
-    return IndexTheme.valueOf(IOUtils.toInputStream(themeXml));
+    String themeObject = (String) metadataMap.get(ThemeIndexSchema.OBJECT).getValue();
+    if (IndexObjectJson.isJson(themeObject, DOCUMENT_TYPE)) {
+      return IndexTheme.valueOfIndexJson(themeObject);
+    }
+    return IndexTheme.valueOf(IOUtils.toInputStream(themeObject));
   }
 
   /**
@@ -396,7 +515,7 @@ public class IndexTheme implements IndexObject {
     // Mandatory fields
     metadata.addField(ThemeIndexSchema.ID, getIdentifier(), true);
     metadata.addField(ThemeIndexSchema.ORGANIZATION, getOrganization(), false);
-    metadata.addField(ThemeIndexSchema.OBJECT, toXML(), false);
+    metadata.addField(ThemeIndexSchema.OBJECT, toIndexJson(), false);
 
     // Optional fields
     if (StringUtils.isNotBlank(getName())) {
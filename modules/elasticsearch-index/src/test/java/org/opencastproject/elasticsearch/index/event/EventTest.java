@@ -27,8 +27,12 @@ import static org.junit.Assert.assertThat;
 import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
 
+import org.opencastproject.mediapackage.Publication;
+import org.opencastproject.mediapackage.PublicationImpl;
 import org.opencastproject.scheduler.api.RecordingState;
 import org.opencastproject.security.api.DefaultOrganization;
+import org.opencastproject.util.MimeTypes;
+import org.opencastproject.workflow.api.WorkflowInstance.WorkflowState;
 
 import org.apache.commons.io.IOUtils;
 import org.json.simple.JSONArray;
@@ -41,7 +45,9 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.IOException;
+import java.net.URI;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -158,6 +164,45 @@ public class EventTest {
     assertThat(eventCAConfigJson, SameJSONAs.sameJSONAs(entryArray.toJSONString()).allowingAnyArrayOrdering());
   }
 
+  @Test
+  public void testIndexJsonRoundTrip() throws IOException {
+    Event event = new Event(id, defaultOrganization);
+    event.setTitle(title);
+    event.setDescription(description);
+    event.setSubject(subject);
+    event.setLocation(location);
+    event.setPresenters(presenters);
+    event.setContributors(contributors);
+    event.setAgentConfiguration(agentConfiguration);
+    event.setSeriesId("series");
+    event.setWorkflowId(42L);
+    event.setWorkflowState(WorkflowState.RUNNING);
+    event.setDuration(3600000L);
+    event.setArchiveVersion(3L);
+    event.setHasComments(true);
+    event.setRecordingStatus(RecordingState.UPLOAD_FINISHED);
+    Publication publication = PublicationImpl.publication("publication", "engage-player",
+            URI.create("http://localhost/engage"), MimeTypes.parseMimeType("text/html"));
+    event.setPublications(Collections.singletonList(publication));
+
+    String json = event.toIndexJson();
+    Event read = Event.valueOfIndexJson(json);
+    // Publications are passed through without parsing them
+    assertEquals(json, read.toIndexJson());
+    assertEquals(event.toXML(), read.toXML());
+    assertEquals(1, read.getPublications().size());
+    assertEquals("engage-player", read.getPublications().get(0).getChannel());
+    assertEquals(publication.getURI(), read.getPublications().get(0).getURI());
+  }
+
+  @Test
+  public void testIndexJsonSkipsUnknownFields() throws IOException {
+    Event event = Event.valueOfIndexJson("{\"identifier\":\"" + id + "\",\"unknown\":{\"nested\":[1,2]},"
+            + "\"title\":\"" + title + "\"}");
+    assertEquals(id, event.getIdentifier());
+    assertEquals(title, event.getTitle());
+  }
+
   @Test
   public void testHasRecordingStarted() {
     Event event = new Event(id, defaultOrganization);
@@ -98,6 +98,26 @@ public class SeriesTest {
     seriesXml = IOUtils.toString(getClass().getResource("/adminui_series_metadata.xml"));
   }
 
+  @Test
+  public void testIndexJsonRoundTrip() throws IOException {
+    Series series = new Series(id, organization);
+    series.setTitle(title);
+    series.setDescription(description);
+    series.setSubject(subject);
+    series.setLanguage(language);
+    series.setCreator(creator);
+    series.setLicense(license);
+    series.setAccessPolicy(accessPolicy);
+    series.setCreatedDateTime(createdDateTime);
+    series.setOrganizers(organizers);
+    series.setContributors(contributors);
+    series.setTheme(5L);
+
+    Series read = Series.valueOfIndexJson(series.toIndexJson());
+    assertEquals(series.toXML(), read.toXML());
+    assertEquals(createdDateTime, read.getCreatedDateTime());
+  }
+
   @Test
   public void testToJson() throws ParseException {
     // Initialize series
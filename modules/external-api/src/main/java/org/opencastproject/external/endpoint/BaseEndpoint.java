@@ -314,4 +314,25 @@ public class BaseEndpoint {
     return R.ok();
   }
 
+  @POST
+  @Path("resumeIndexRebuild")
+  @RestQuery(name = "resumeIndexRebuild",
+          description = "Resumes a failed repopulation of the External Index, skipping services which are done",
+          returnDescription = "OK if repopulation has resumed", responses = {
+          @RestResponse(description = "OK if repopulation has resumed", responseCode = HttpServletResponse.SC_OK) })
+  public Response resumeIndexRebuild() {
+    final SecurityContext securityContext = new SecurityContext(securityService, securityService.getOrganization(),
+            securityService.getUser());
+    executor.execute(() -> securityContext.runInContext(() -> {
+      try {
+        logger.info("Resuming to repopulate the external index");
+        indexRebuildService.resumeIndexRebuild(externalIndex);
+        logger.info("Finished repopulating the external index");
+      } catch (Throwable t) {
+        logger.error("Repopulating the external index failed", t);
+      }
+    }));
+    return R.ok();
+  }
+
 }
@@ -21,10 +21,13 @@
 
 package org.opencastproject.index.rebuild;
 
+import org.opencastproject.elasticsearch.index.AbstractSearchIndex;
 import org.opencastproject.security.api.Organization;
 
 import org.slf4j.Logger;
 
+import java.util.function.Consumer;
+
 /**
  * This implementation of IndexProducer adds logging methods for convenience.
  */
@@ -185,6 +188,31 @@ public abstract class AbstractIndexProducer implements IndexProducer {
     logger.error("Unable to re-index '{}' {} of organization '{}', skipping.", elementName, element, org.getId(), t);
   }
 
+  /**
+   * Wait until the messages this service sent to a message queue feeding the index have been processed. A service
+   * which repopulates the index through messages has only finished once they are in the index.
+   *
+   * @param logger
+   *           An slf4j logger to preserve the context.
+   * @param index
+   *           The index that's being rebuild.
+   * @param sendBarrier
+   *           Sends a message barrier with the given identifier to the queue.
+   *
+   * @throws IndexRebuildException
+   *           Thrown if waiting was interrupted.
+   */
+  protected void awaitMessagesProcessed(Logger logger, AbstractSearchIndex index, Consumer<String> sendBarrier)
+          throws IndexRebuildException {
+    try {
+      index.awaitBarrier(sendBarrier);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      logIndexRebuildError(logger, index.getIndexName(), e);
+      throw new IndexRebuildException(index.getIndexName(), getService(), e);
+    }
+  }
+
   /**
    * Log an error during an index rebuild for this service.
    *
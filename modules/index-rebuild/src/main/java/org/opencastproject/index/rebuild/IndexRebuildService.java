@@ -23,7 +23,12 @@ package org.opencastproject.index.rebuild;
 
 import static java.lang.String.format;
 
+import org.opencastproject.elasticsearch.api.SearchIndexException;
 import org.opencastproject.elasticsearch.index.AbstractSearchIndex;
+import org.opencastproject.security.api.Organization;
+import org.opencastproject.security.api.SecurityService;
+import org.opencastproject.security.api.User;
+import org.opencastproject.security.util.SecurityUtil;
 
 import org.osgi.framework.BundleActivator;
 import org.osgi.framework.BundleContext;
@@ -34,9 +39,26 @@ import org.osgi.framework.ServiceRegistration;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.EnumMap;
+import java.util.EnumSet;
 import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
 
 /**
  * The bundle activator is defined in the pom.xml of this bundle.
@@ -57,19 +79,65 @@ public class IndexRebuildService implements BundleActivator {
    *
    * We make this work by hooking into the OSGI lifecycle with the BundleActivator interface - this way we can start
    * the listener in the beginning and make sure we properly shut down in the end.
+   *
+   * How a complete rebuild works:
+   *
+   * The index is rebuilt into empty shadow indices while the current indices keep serving searches. Writes happening
+   * during the rebuild go to both, on all nodes. Once all services are done, the shadow indices replace the current
+   * ones. Only one node may rebuild an index at a time.
+   *
+   * Every service starts repopulating as soon as the services it depends on are done, so independent services run
+   * in parallel on a bounded thread pool. Services which repopulate the index by sending messages to the index only
+   * finish once those messages have been processed, so a service is done when its data is in the index. Each finished
+   * service is recorded in a checkpoint file in the data area of
+   * this bundle. If a rebuild fails, it can be resumed from that checkpoint into the same shadow indices. A service
+   * that did not finish is repopulated completely on resume. The shadow indices do not survive a restart, so a rebuild
+   * interrupted by one needs to start over.
    */
 
   /**
    * The services whose data is indexed by ElasticSearch.
-   * Attention: The order is relevant for the index rebuild and should not be changed!
+   * Attention: A service must be listed after the services it depends on!
    */
   public enum Service {
-    Themes, Series, Scheduler, Workflow, AssetManager, Comments
+    Themes,
+    Series,
+    // These services all update the events, which reference the title of their series. Where they set the same
+    // fields, later services overwrite earlier ones, so they need to run one after another in this order.
+    Scheduler(Series),
+    Workflow(Scheduler),
+    AssetManager(Workflow),
+    // comments are only added to events already in the index
+    Comments(AssetManager);
+
+    private final Service[] dependencies;
+
+    Service(Service... dependencies) {
+      this.dependencies = dependencies;
+    }
+
+    /**
+     * @return the services whose data needs to be in the index before this service can add its data
+     */
+    public Service[] getDependencies() {
+      return dependencies.clone();
+    }
   }
 
+  /** The configuration key for the number of services repopulating the index in parallel */
+  public static final String THREADS_KEY = "org.opencastproject.index.rebuild.threads";
+
+  /** The default number of services repopulating the index in parallel */
+  public static final int DEFAULT_THREADS = 2;
+
+  /** The checkpoint property holding the services that finished repopulating the index */
+  private static final String CHECKPOINT_COMPLETED = "completed";
+
   private static final Logger logger = LoggerFactory.getLogger(IndexRebuildService.class);
   private final Map<IndexRebuildService.Service, IndexProducer> indexProducers = new ConcurrentHashMap<>();
   private ServiceRegistration<?> serviceRegistration = null;
+  private BundleContext bundleContext = null;
+  private int threads = DEFAULT_THREADS;
 
   /**
    * Called by OSGI when this bundle is started.
@@ -81,6 +149,13 @@ public class IndexRebuildService implements BundleActivator {
    */
   @Override
   public void start(BundleContext bundleContext) throws Exception {
+    this.bundleContext = bundleContext;
+    String threadsValue = bundleContext.getProperty(THREADS_KEY);
+    if (threadsValue != null && !threadsValue.trim().isEmpty()) {
+      threads = Math.max(1, Integer.parseInt(threadsValue.trim()));
+    }
+    logger.debug("Using {} threads to rebuild the index", threads);
+
     // check if there are already IndexProducers available
     ServiceReference<?>[] serviceReferences = bundleContext.getAllServiceReferences(IndexProducer.class.getName(),
             null);
@@ -110,23 +185,130 @@ public class IndexRebuildService implements BundleActivator {
   }
 
   /**
-   * Clear and rebuild the index from all services.
+   * Rebuild the index from all services. The current index keeps serving searches until the rebuilt one replaces it.
    *
    * @param index
    *           The index to rebuild.
    *
    * @throws IOException
-   *           Thrown if the index cannot be cleared.
+   *           Thrown if the index to rebuild into cannot be created.
    * @throws IndexRebuildException
    *           Thrown if the index rebuild failed.
    */
   public synchronized void rebuildIndex(AbstractSearchIndex index)
           throws IOException, IndexRebuildException {
-    index.clear();
-    logger.info("Index '{}' cleared, starting complete rebuild.", index.getIndexName());
-    for (IndexRebuildService.Service service: IndexRebuildService.Service.values()) {
-      rebuildIndex(index, service);
+    try {
+      index.createShadow();
+    } catch (SearchIndexException e) {
+      throw new IndexRebuildException(format("Cannot create shadow indices to rebuild index %s", index.getIndexName()),
+              e);
+    }
+    logger.info("Starting complete rebuild of index '{}'.", index.getIndexName());
+    Set<Service> completed = EnumSet.noneOf(Service.class);
+    writeCheckpoint(index, completed);
+    rebuildIndex(index, completed);
+  }
+
+  /**
+   * Resume a complete rebuild of the index which failed or was interrupted. Services which already finished
+   * repopulating the index are skipped, the index is not cleared.
+   *
+   * @param index
+   *           The index to rebuild.
+   *
+   * @throws IllegalStateException
+   *           Thrown if there is no unfinished rebuild of the index.
+   * @throws IndexRebuildException
+   *           Thrown if the index rebuild failed.
+   */
+  public synchronized void resumeIndexRebuild(AbstractSearchIndex index)
+          throws IllegalStateException, IndexRebuildException {
+    Set<Service> completed = readCheckpoint(index);
+    if (completed == null || !index.isRebuilding()) {
+      throw new IllegalStateException(format("There is no unfinished rebuild of index %s", index.getIndexName()));
+    }
+    logger.info("Resuming rebuild of index '{}', skipping completed services {}.", index.getIndexName(), completed);
+    rebuildIndex(index, completed);
+  }
+
+  /**
+   * Repopulate the index from all services which are not completed yet. A service is started as soon as all services
+   * it depends on are done.
+   *
+   * @param index
+   *           The index to rebuild.
+   * @param completed
+   *           The services which already repopulated the index.
+   *
+   * @throws IndexRebuildException
+   *           Thrown if the index rebuild failed.
+   */
+  private void rebuildIndex(AbstractSearchIndex index, Set<Service> completed) throws IndexRebuildException {
+    // the producers may rely on the security context of the caller, which is bound to the calling thread
+    final SecurityService securityService = getSecurityService();
+    final Organization organization = securityService != null ? securityService.getOrganization() : null;
+    final User user = securityService != null ? securityService.getUser() : null;
+
+    final AtomicInteger threadNumber = new AtomicInteger();
+    final ExecutorService executor = Executors.newFixedThreadPool(threads,
+            runnable -> new Thread(runnable, "index-rebuild-" + threadNumber.incrementAndGet()));
+    final Map<Service, CompletableFuture<Void>> tasks = new EnumMap<>(Service.class);
+    try {
+      for (Service service : Service.values()) {
+        if (completed.contains(service)) {
+          tasks.put(service, CompletableFuture.completedFuture(null));
+          continue;
+        }
+        final CompletableFuture<?>[] dependencies = Arrays.stream(service.getDependencies())
+                .map(tasks::get)
+                .toArray(CompletableFuture[]::new);
+        tasks.put(service, CompletableFuture.allOf(dependencies).thenRunAsync(() -> {
+          Runnable repopulate = () -> {
+            try {
+              index.runOnShadow(() -> {
+                rebuildIndex(index, service);
+                return null;
+              });
+            } catch (IndexRebuildException | SearchIndexException e) {
+              throw new CompletionException(e);
+            }
+          };
+          if (securityService != null && organization != null && user != null) {
+            SecurityUtil.runAs(securityService, organization, user, repopulate);
+          } else {
+            repopulate.run();
+          }
+          synchronized (completed) {
+            completed.add(service);
+            writeCheckpoint(index, completed);
+          }
+        }, executor));
+      }
+
+      try {
+        CompletableFuture.allOf(tasks.values().toArray(new CompletableFuture[0])).join();
+      } catch (CompletionException e) {
+        Throwable cause = e;
+        while (cause instanceof CompletionException && cause.getCause() != null) {
+          cause = cause.getCause();
+        }
+        logger.error("Rebuild of index '{}' failed, completed services: {}", index.getIndexName(), completed);
+        if (cause instanceof IndexRebuildException) {
+          throw (IndexRebuildException) cause;
+        }
+        throw new IndexRebuildException(format("Rebuild of index %s failed", index.getIndexName()), cause);
+      }
+    } finally {
+      executor.shutdownNow();
+    }
+
+    try {
+      index.switchToShadow();
+    } catch (IOException | SearchIndexException e) {
+      throw new IndexRebuildException(format("Cannot switch to rebuilt index %s", index.getIndexName()), e);
     }
+    deleteCheckpoint(index);
+    logger.info("Finished complete rebuild of index '{}'", index.getIndexName());
   }
 
   /**
@@ -173,6 +355,106 @@ public class IndexRebuildService implements BundleActivator {
     logger.info("Finished to rebuild index '{}' from service '{}'", index.getIndexName(), service);
   }
 
+  /**
+   * Get the security service, if available.
+   *
+   * @return the security service or <code>null</code>
+   */
+  private SecurityService getSecurityService() {
+    if (bundleContext == null) {
+      return null;
+    }
+    ServiceReference<SecurityService> reference = bundleContext.getServiceReference(SecurityService.class);
+    return reference != null ? bundleContext.getService(reference) : null;
+  }
+
+  /**
+   * Get the file holding the progress of a complete rebuild of an index.
+   *
+   * @param index
+   *           The index being rebuilt.
+   *
+   * @return the checkpoint file or <code>null</code> if the framework provides no data area
+   */
+  private File getCheckpointFile(AbstractSearchIndex index) {
+    if (bundleContext == null) {
+      return null;
+    }
+    return bundleContext.getDataFile("index-rebuild-" + index.getIndexName() + ".properties");
+  }
+
+  /**
+   * Store which services finished repopulating the index.
+   *
+   * @param index
+   *           The index being rebuilt.
+   * @param completed
+   *           The services which finished repopulating the index.
+   */
+  private void writeCheckpoint(AbstractSearchIndex index, Collection<Service> completed) {
+    File file = getCheckpointFile(index);
+    if (file == null) {
+      return;
+    }
+    Properties checkpoint = new Properties();
+    checkpoint.setProperty(CHECKPOINT_COMPLETED,
+            completed.stream().map(Service::name).collect(Collectors.joining(",")));
+    try (OutputStream out = new FileOutputStream(file)) {
+      checkpoint.store(out, "Progress of the rebuild of index " + index.getIndexName());
+    } catch (IOException e) {
+      logger.warn("Unable to store progress of the rebuild of index '{}'", index.getIndexName(), e);
+    }
+  }
+
+  /**
+   * Read which services finished repopulating the index during an unfinished rebuild.
+   *
+   * @param index
+   *           The index being rebuilt.
+   *
+   * @return the completed services or <code>null</code> if there is no unfinished rebuild
+   */
+  private Set<Service> readCheckpoint(AbstractSearchIndex index) {
+    File file = getCheckpointFile(index);
+    if (file == null || !file.isFile()) {
+      return null;
+    }
+    Properties checkpoint = new Properties();
+    try (InputStream in = new FileInputStream(file)) {
+      checkpoint.load(in);
+    } catch (IOException e) {
+      logger.warn("Unable to read progress of the rebuild of index '{}'", index.getIndexName(), e);
+      return null;
+    }
+    Set<Service> completed = EnumSet.noneOf(Service.class);
+    for (String name : checkpoint.getProperty(CHECKPOINT_COMPLETED, "").split(",")) {
+      if (name.trim().isEmpty()) {
+        continue;
+      }
+      try {
+        completed.add(Service.valueOf(name.trim()));
+      } catch (IllegalArgumentException e) {
+        // a service which no longer exists, or a damaged file; anything not recorded is repopulated again
+        logger.warn("Ignoring unknown service '{}' in the progress of the rebuild of index '{}'", name.trim(),
+                index.getIndexName());
+      }
+    }
+    return completed;
+  }
+
+  /**
+   * Remove the progress of a rebuild once it is finished.
+   *
+   * @param index
+   *           The index being rebuilt.
+   */
+  private void deleteCheckpoint(AbstractSearchIndex index) {
+    File file = getCheckpointFile(index);
+    if (file != null && file.exists() && !file.delete()) {
+      logger.warn("Unable to delete progress of the rebuild of index '{}'", index.getIndexName());
+    }
+  }
+
   /**
    * Add IndexProducer service to internal map.
    *
@@ -0,0 +1,196 @@
+/**
+ * Licensed to The Apereo Foundation under one or more contributor license
+ * agreements. See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ *
+ * The Apereo Foundation licenses this file to you under the Educational
+ * Community License, Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License. You may obtain a copy of the License
+ * at:
+ *
+ *   http://opensource.org/licenses/ecl2.txt
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ *
+ */
+
+package org.opencastproject.index.rebuild;
+
+import org.opencastproject.elasticsearch.impl.AbstractElasticsearchIndex.IndexOperation;
+import org.opencastproject.elasticsearch.index.AbstractSearchIndex;
+import org.opencastproject.index.rebuild.IndexRebuildService.Service;
+
+import org.easymock.EasyMock;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.osgi.framework.BundleContext;
+import org.osgi.framework.ServiceReference;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+public class IndexRebuildServiceTest {
+
+  @Rule
+  public TemporaryFolder folder = new TemporaryFolder();
+
+  /** What the producers and the index did, in order */
+  private final List<String> events = Collections.synchronizedList(new ArrayList<>());
+
+  /** Services failing to repopulate the index once */
+  private final Set<Service> failing = ConcurrentHashMap.newKeySet();
+
+  private IndexRebuildService rebuildService;
+  private AbstractSearchIndex index;
+  private File checkpoint;
+
+  @Before
+  @SuppressWarnings({ "rawtypes", "unchecked" })
+  public void setUp() throws Exception {
+    final File data = folder.newFolder();
+    checkpoint = new File(data, "index-rebuild-test.properties");
+
+    final BundleContext bundleContext = EasyMock.createNiceMock(BundleContext.class);
+    final List<ServiceReference> references = new ArrayList<>();
+    for (Service service : Service.values()) {
+      final ServiceReference reference = EasyMock.createMock(ServiceReference.class);
+      EasyMock.expect(bundleContext.getService(reference)).andReturn(producer(service)).anyTimes();
+      references.add(reference);
+    }
+    EasyMock.expect(bundleContext.getAllServiceReferences(IndexProducer.class.getName(), null))
+            .andReturn(references.toArray(new ServiceReference[0])).anyTimes();
+    EasyMock.expect(bundleContext.getDataFile(EasyMock.anyString()))
+            .andAnswer(() -> new File(data, (String) EasyMock.getCurrentArguments()[0])).anyTimes();
+    EasyMock.replay(bundleContext);
+
+    index = EasyMock.createNiceMock(AbstractSearchIndex.class);
+    EasyMock.expect(index.getIndexName()).andReturn("test").anyTimes();
+    EasyMock.expect(index.isRebuilding()).andReturn(true).anyTimes();
+    EasyMock.expect(index.runOnShadow(EasyMock.anyObject()))
+            .andAnswer(() -> ((IndexOperation) EasyMock.getCurrentArguments()[0]).run()).anyTimes();
+    index.switchToShadow();
+    EasyMock.expectLastCall().andAnswer(() -> {
+      events.add("switch");
+      return null;
+    }).anyTimes();
+    EasyMock.replay(index);
+
+    rebuildService = new IndexRebuildService();
+    rebuildService.start(bundleContext);
+  }
+
+  private IndexProducer producer(Service service) {
+    return new IndexProducer() {
+      @Override
+      public void repopulate(AbstractSearchIndex index) throws IndexRebuildException {
+        events.add("start " + service);
+        if (failing.remove(service)) {
+          throw new IndexRebuildException("Repopulating from " + service + " failed");
+        }
+        events.add("end " + service);
+      }
+
+      @Override
+      public Service getService() {
+        return service;
+      }
+    };
+  }
+
+  @Test
+  public void testServicesRunAfterTheirDependencies() throws Exception {
+    rebuildService.rebuildIndex(index);
+
+    for (Service service : Service.values()) {
+      final int start = events.indexOf("start " + service);
+      Assert.assertTrue(service + " did not run", start >= 0);
+      for (Service dependency : service.getDependencies()) {
+        Assert.assertTrue(service + " started before " + dependency + " was done",
+                events.indexOf("end " + dependency) < start);
+      }
+    }
+    Assert.assertEquals("switch", events.get(events.size() - 1));
+    Assert.assertFalse(checkpoint.exists());
+  }
+
+  @Test
+  public void testEventServicesRunInOrder() throws Exception {
+    rebuildService.rebuildIndex(index);
+
+    final List<Service> eventServices = Arrays.asList(Service.Scheduler, Service.Workflow, Service.AssetManager,
+            Service.Comments);
+    for (int i = 1; i < eventServices.size(); i++) {
+      Assert.assertTrue(events.indexOf("end " + eventServices.get(i - 1))
+              < events.indexOf("start " + eventServices.get(i)));
+    }
+  }
+
+  @Test
+  public void testFailedRebuildIsResumedFromCheckpoint() throws Exception {
+    failing.add(Service.Workflow);
+    try {
+      rebuildService.rebuildIndex(index);
+      Assert.fail("The rebuild should have failed");
+    } catch (IndexRebuildException e) {
+      // expected
+    }
+    Assert.assertFalse(events.contains("switch"));
+    Assert.assertFalse(events.contains("start " + Service.AssetManager));
+
+    final Properties progress = new Properties();
+    try (InputStream in = new FileInputStream(checkpoint)) {
+      progress.load(in);
+    }
+    Assert.assertEquals(new HashSet<>(Arrays.asList("Themes", "Series", "Scheduler")),
+            new HashSet<>(Arrays.asList(progress.getProperty("completed").split(","))));
+
+    events.clear();
+    rebuildService.resumeIndexRebuild(index);
+    Assert.assertEquals(Arrays.asList("start Workflow", "end Workflow", "start AssetManager", "end AssetManager",
+            "start Comments", "end Comments", "switch"), events);
+    Assert.assertFalse(checkpoint.exists());
+  }
+
+  @Test
+  public void testResumeIgnoresUnknownServices() throws Exception {
+    final Properties progress = new Properties();
+    progress.setProperty("completed", "Themes,NoSuchService, ,Series");
+    try (OutputStream out = new FileOutputStream(checkpoint)) {
+      progress.store(out, null);
+    }
+
+    rebuildService.resumeIndexRebuild(index);
+    Assert.assertFalse(events.contains("start " + Service.Themes));
+    Assert.assertFalse(events.contains("start " + Service.Series));
+    for (Service service : Arrays.asList(Service.Scheduler, Service.Workflow, Service.AssetManager,
+            Service.Comments)) {
+      Assert.assertTrue(events.contains("end " + service));
+    }
+    Assert.assertEquals("switch", events.get(events.size() - 1));
+  }
+
+  @Test(expected = IllegalStateException.class)
+  public void testResumeWithoutUnfinishedRebuild() throws Exception {
+    rebuildService.resumeIndexRebuild(index);
+  }
+
+}
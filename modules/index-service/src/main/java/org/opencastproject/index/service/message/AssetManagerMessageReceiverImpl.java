@@ -112,7 +112,7 @@ public class AssetManagerMessageReceiverImpl extends BaseMessageReceiverImpl<Ass
 
     // Persist the scheduling event
     try {
-      getSearchIndex().addOrUpdateEvent(eventId, updateFunction, organization, user);
+      getSearchIndex().addOrUpdateEvent(eventId, updateFunction, organization, user, false);
       logger.debug("Asset manager entry {} updated in the {} search index", eventId, getSearchIndex().getIndexName());
     } catch (SearchIndexException e) {
       logger.error("Error retrieving the recording event from the search index: {}", e.getMessage());
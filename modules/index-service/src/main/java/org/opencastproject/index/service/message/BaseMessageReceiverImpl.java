@@ -23,6 +23,7 @@ package org.opencastproject.index.service.message;
 
 import org.opencastproject.elasticsearch.index.AbstractSearchIndex;
 import org.opencastproject.message.broker.api.BaseMessage;
+import org.opencastproject.message.broker.api.MessageBarrier;
 import org.opencastproject.message.broker.api.MessageReceiver;
 import org.opencastproject.message.broker.api.MessageSender;
 import org.opencastproject.message.broker.api.MessageSender.DestinationType;
@@ -120,6 +121,11 @@ public abstract class BaseMessageReceiverImpl<T extends Serializable> {
           if (baseMessage == null) {
             continue;
           }
+          if (baseMessage.getObject() instanceof MessageBarrier) {
+            // The messages are processed in order, so all messages sent before the barrier are done
+            index.reachBarrier(((MessageBarrier) baseMessage.getObject()).getId());
+            continue;
+          }
           securityService.setOrganization(baseMessage.getOrganization());
           securityService.setUser(baseMessage.getUser());
           execute.curry(baseMessage.getObject()).toFn().apply(baseMessage.getId().get());
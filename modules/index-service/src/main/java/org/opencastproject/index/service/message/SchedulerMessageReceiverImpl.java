@@ -132,7 +132,7 @@ public class SchedulerMessageReceiverImpl extends BaseMessageReceiverImpl<Schedu
       };
 
       try {
-        getSearchIndex().addOrUpdateEvent(mediaPackageId, updateFunction, organization, user);
+        getSearchIndex().addOrUpdateEvent(mediaPackageId, updateFunction, organization, user, false);
         logger.debug("Scheduled recording {} updated in the {} search index", mediaPackageId,
                 getSearchIndex().getIndexName());
       } catch (SearchIndexException e) {
@@ -148,7 +148,7 @@ public class SeriesMessageReceiverImpl extends BaseMessageReceiverImpl<SeriesIte
     if (updateFunction != null) {
       try {
         Optional<Series> updatedSeriesOpt = getSearchIndex().addOrUpdateSeries(seriesId, updateFunction, organization,
-                user);
+                user, false);
 
         // update series title in events
         if (updatedSeriesOpt.isPresent() && updatedSeriesOpt.get().isSeriesTitleUpdated()) {
@@ -167,7 +167,7 @@ public class SeriesMessageReceiverImpl extends BaseMessageReceiverImpl<SeriesIte
               return Optional.empty();
             };
 
-            getSearchIndex().addOrUpdateEvent(eventId, eventUpdateFunction, organization, user);
+            getSearchIndex().addOrUpdateEvent(eventId, eventUpdateFunction, organization, user, false);
           }
         }
         logger.debug("Series {} updated in the search index", seriesId);
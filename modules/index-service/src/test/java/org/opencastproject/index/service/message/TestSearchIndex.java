@@ -88,12 +88,12 @@ public class TestSearchIndex extends AbstractSearchIndex {
   }
 
   @Override
-  public void addOrUpdate(Event event) throws SearchIndexException {
+  public void addOrUpdate(Event event, boolean wait) throws SearchIndexException {
     this.eventResult = event;
   }
 
   @Override
-  public void addOrUpdate(Series series) throws SearchIndexException {
+  public void addOrUpdate(Series series, boolean wait) throws SearchIndexException {
     this.seriesResult = series;
   }
 
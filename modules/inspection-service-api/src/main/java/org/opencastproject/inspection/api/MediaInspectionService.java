@@ -27,6 +27,7 @@ import org.opencastproject.mediapackage.MediaPackageException;
 
 import java.net.URI;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
 
 /**
  * Anayzes media to determine its technical metadata.
@@ -107,4 +108,27 @@ public interface MediaInspectionService {
    */
   Job enrich(MediaPackageElement original, boolean override, Map<String, String> options)
           throws MediaInspectionException, MediaPackageException;
+
+  /**
+   * Asynchronous variant of {@link #enrich(MediaPackageElement, boolean, Map)}, which allows to submit the elements of
+   * a media package at the same time. Implementations waiting for a remote service return before the job is created.
+   * By default, the job is created before this method returns.
+   *
+   * @param original
+   *          The original media package element that will be inspected
+   * @param override
+   *          In case of conflict between existing and automatically obtained metadata this switch selects preference.
+   * @param options
+   *          Options in form of key/value pairs that are passed to the MediaInspectionService implementation.
+   * @return the receipt of this job. The future fails with a {@link MediaInspectionException} or a
+   *         {@link MediaPackageException} if the job could not be created.
+   */
+  default CompletableFuture<Job> enrichAsync(MediaPackageElement original, boolean override,
+          Map<String, String> options) {
+    try {
+      return CompletableFuture.completedFuture(enrich(original, override, options));
+    } catch (MediaInspectionException | MediaPackageException e) {
+      return CompletableFuture.failedFuture(e);
+    }
+  }
 }
@@ -130,7 +130,7 @@ public class MediaInspector {
 
         // Checksum
         try {
-          track.setChecksum(Checksum.create(ChecksumType.DEFAULT_TYPE, file));
+          track.setChecksum(getChecksum(trackURI, file));
         } catch (IOException e) {
           throw new MediaInspectionException("Unable to read " + file, e);
         }
@@ -260,7 +260,7 @@ public class MediaInspector {
           track.setDuration(metadata.getDuration());
         if (track.getChecksum() == null || override) {
           try {
-            track.setChecksum(Checksum.create(ChecksumType.DEFAULT_TYPE, file));
+            track.setChecksum(getChecksum(originalTrackUrl, file));
           } catch (IOException e) {
             throw new MediaInspectionException("Unable to read " + file, e);
           }
@@ -331,7 +331,7 @@ public class MediaInspector {
       // Checksum
       if (element.getChecksum() == null || override) {
         try {
-          element.setChecksum(Checksum.create(ChecksumType.DEFAULT_TYPE, file));
+          element.setChecksum(getChecksum(element.getURI(), file));
         } catch (IOException e) {
           throw new MediaInspectionException("Error generating checksum for " + element.getURI(), e);
         }
@@ -359,6 +359,27 @@ public class MediaInspector {
     }
   }
 
+  /**
+   * Returns the checksum of a file. The checksum is only computed if the workspace does not know it already, which
+   * saves reading large files once more after the media analyzer did.
+   *
+   * @param uri
+   *          the uri the file was taken from
+   * @param file
+   *          the file in the workspace
+   * @return the checksum
+   * @throws IOException
+   *           if the file cannot be read
+   */
+  private Checksum getChecksum(URI uri, File file) throws IOException {
+    final Checksum checksum = workspace.getChecksum(uri);
+    if (checksum != null && ChecksumType.DEFAULT_TYPE.equals(checksum.getType())) {
+      logger.debug("Using the known checksum of {}", uri);
+      return checksum;
+    }
+    return Checksum.create(ChecksumType.DEFAULT_TYPE, file);
+  }
+
   /**
    * Asks the media analyzer to extract the file's metadata.
    *
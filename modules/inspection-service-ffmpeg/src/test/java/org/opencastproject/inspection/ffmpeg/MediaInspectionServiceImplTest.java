@@ -110,6 +110,21 @@ public class MediaInspectionServiceImplTest {
     }
   }
 
+  @Test
+  public void testInspectionWithKnownChecksum() throws Exception {
+    final URI trackUri = getResource("/test.mp4");
+    final Checksum known = Checksum.create(ChecksumType.DEFAULT_TYPE, "00000000000000000000000000000000");
+    for (String binary : ffprobePath) {
+      Workspace workspace = EasyMock.createNiceMock(Workspace.class);
+      EasyMock.expect(workspace.get(trackUri)).andReturn(new File(trackUri)).anyTimes();
+      EasyMock.expect(workspace.getChecksum(trackUri)).andReturn(known).anyTimes();
+      EasyMock.replay(workspace);
+      // The checksum known to the workspace is used instead of reading the file again
+      Track track = new MediaInspector(workspace, binary).inspectTrack(trackUri, Options.NO_OPTION);
+      assertEquals(known, track.getChecksum());
+    }
+  }
+
   @Test
   public void testInspectionEmptyContainer() throws Exception {
     final URI trackUri = getResource("/nostreams.mp4");
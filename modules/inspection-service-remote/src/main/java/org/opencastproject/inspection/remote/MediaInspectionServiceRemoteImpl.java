@@ -39,15 +39,20 @@ import org.apache.http.client.methods.HttpGet;
 import org.apache.http.client.methods.HttpPost;
 import org.apache.http.client.utils.URLEncodedUtils;
 import org.apache.http.message.BasicNameValuePair;
+import org.osgi.service.component.annotations.Activate;
 import org.osgi.service.component.annotations.Component;
+import org.osgi.service.component.annotations.Deactivate;
 import org.osgi.service.component.annotations.Reference;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.io.IOException;
 import java.net.URI;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 
 /**
  * Proxies a remote media inspection service for use as a JVM-local service.
@@ -64,6 +69,9 @@ public class MediaInspectionServiceRemoteImpl extends RemoteBase implements Medi
   /** The logger */
   private static final Logger logger = LoggerFactory.getLogger(MediaInspectionServiceRemoteImpl.class);
 
+  /** The number of enrich requests sent to the remote services at the same time */
+  private static final int ASYNC_REQUEST_THREADS = 4;
+
   /**
    * Constructs a new remote media inspection service proxy
    */
@@ -71,6 +79,22 @@ public class MediaInspectionServiceRemoteImpl extends RemoteBase implements Medi
     super(JOB_TYPE);
   }
 
+  /**
+   * OSGi callback on component activation.
+   */
+  @Activate
+  public void activate() {
+    startAsyncRequests(ASYNC_REQUEST_THREADS);
+  }
+
+  /**
+   * OSGi callback on component deactivation.
+   */
+  @Deactivate
+  public void deactivate() {
+    stopAsyncRequests();
+  }
+
   /**
    * Sets the trusted http client
    *
@@ -147,26 +171,13 @@ public class MediaInspectionServiceRemoteImpl extends RemoteBase implements Medi
   @Override
   public Job enrich(MediaPackageElement original, boolean override, final Map<String, String> options)
           throws MediaInspectionException {
-    assert (options != null);
-    List<NameValuePair> params = new ArrayList<NameValuePair>();
-    try {
-      params.add(new BasicNameValuePair("mediaPackageElement", MediaPackageElementParser.getAsXml(original)));
-      params.add(new BasicNameValuePair("override", new Boolean(override).toString()));
-      params.add(new BasicNameValuePair("options", Options.toJson(options)));
-    } catch (Exception e) {
-      throw new MediaInspectionException(e);
-    }
+    HttpPost post = enrichRequest(original, override, options);
     logger.info("Enriching {} using a remote media inspection service", original);
     HttpResponse response = null;
     try {
-      HttpPost post = new HttpPost("/enrich");
-      post.setEntity(new UrlEncodedFormEntity(params, "UTF-8"));
       response = getResponse(post);
       if (response != null) {
-        Job receipt = JobParser.parseJob(response.getEntity().getContent());
-        logger.info("Completing inspection of media file at {} using a remote media inspection service",
-                original.getURI());
-        return receipt;
+        return parseEnrichReceipt(original, response);
       }
     } catch (Exception e) {
       throw new MediaInspectionException("Unable to enrich " + original + " using a remote inspection service", e);
@@ -176,4 +187,59 @@ public class MediaInspectionServiceRemoteImpl extends RemoteBase implements Medi
     throw new MediaInspectionException("Unable to enrich " + original + " using a remote inspection service");
   }
 
+  /**
+   * {@inheritDoc}
+   *
+   * The request is sent by the threads performing asynchronous requests, so that waiting for an available media
+   * inspection service does not hold the calling thread.
+   */
+  @Override
+  public CompletableFuture<Job> enrichAsync(MediaPackageElement original, boolean override,
+          Map<String, String> options) {
+    final HttpPost post;
+    try {
+      post = enrichRequest(original, override, options);
+    } catch (MediaInspectionException e) {
+      return CompletableFuture.failedFuture(e);
+    }
+    logger.info("Enriching {} using a remote media inspection service", original);
+    return getResponseAsync(post).thenApply(response -> {
+      if (response == null) {
+        throw new CompletionException(new MediaInspectionException(
+                "Unable to enrich " + original + " using a remote inspection service"));
+      }
+      try {
+        return parseEnrichReceipt(original, response);
+      } catch (IOException e) {
+        throw new CompletionException(new MediaInspectionException(
+                "Unable to enrich " + original + " using a remote inspection service", e));
+      } finally {
+        closeConnection(response);
+      }
+    });
+  }
+
+  private HttpPost enrichRequest(MediaPackageElement original, boolean override, Map<String, String> options)
+          throws MediaInspectionException {
+    assert (options != null);
+    List<NameValuePair> params = new ArrayList<NameValuePair>();
+    HttpPost post = new HttpPost("/enrich");
+    try {
+      params.add(new BasicNameValuePair("mediaPackageElement", MediaPackageElementParser.getAsXml(original)));
+      params.add(new BasicNameValuePair("override", new Boolean(override).toString()));
+      params.add(new BasicNameValuePair("options", Options.toJson(options)));
+      post.setEntity(new UrlEncodedFormEntity(params, "UTF-8"));
+    } catch (Exception e) {
+      throw new MediaInspectionException(e);
+    }
+    return post;
+  }
+
+  private Job parseEnrichReceipt(MediaPackageElement original, HttpResponse response) throws IOException {
+    Job receipt = JobParser.parseJob(response.getEntity().getContent());
+    logger.info("Completing inspection of media file at {} using a remote media inspection service",
+            original.getURI());
+    return receipt;
+  }
+
 }
@@ -23,7 +23,6 @@ package org.opencastproject.workflow.handler.inspection;
 
 import static java.lang.String.format;
 
-import org.opencastproject.inspection.api.MediaInspectionException;
 import org.opencastproject.inspection.api.MediaInspectionOptions;
 import org.opencastproject.inspection.api.MediaInspectionService;
 import org.opencastproject.job.api.Job;
@@ -62,7 +61,10 @@ import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
 
 /**
  * Workflow operation used to inspect all tracks of a media package.
@@ -148,28 +150,30 @@ public class InspectWorkflowOperationHandler extends AbstractWorkflowOperationHa
       }
     }
 
+    // Submit all tracks at once, so that their inspection requests do not wait for each other
+    final Map<Track, CompletableFuture<Job>> submissions = new LinkedHashMap<>();
     for (Track track : mediaPackage.getTracks()) {
+      if (!isCaptions(track)) {
+        logger.info("Inspecting track '{}' of {}", track.getIdentifier(), mediaPackage);
+        submissions.put(track, inspectionService.enrichAsync(track, rewrite, options));
+      }
+    }
+    final Map<Track, Job> inspectJobs = new HashMap<>();
+    for (Map.Entry<Track, CompletableFuture<Job>> submission : submissions.entrySet()) {
+      inspectJobs.put(submission.getKey(), awaitSubmission(submission.getValue()));
+    }
+    if (!inspectJobs.isEmpty() && !waitForStatus(inspectJobs.values().toArray(new Job[0])).isSuccess()) {
+      throw new WorkflowOperationException("Not all tracks of " + mediaPackage + " could be inspected");
+    }
 
-      logger.info("Inspecting track '{}' of {}", track.getIdentifier(), mediaPackage);
-
-      Job inspectJob = null;
+    for (Track track : mediaPackage.getTracks()) {
       Track inspectedTrack;
-      if (track != null && track.getURI() != null && (track.getURI().toString().endsWith(".vtt")
-              || track.getURI().toString().endsWith(".srt"))) {
+      if (isCaptions(track)) {
         inspectedTrack = (Track)track.clone();
         inspectedTrack.setMimeType(MimeType.mimeType("text", "vtt"));
         logger.info("Track '{}' of {} contains captions", track.getIdentifier(), mediaPackage);
       } else {
-        try {
-          inspectJob = inspectionService.enrich(track, rewrite, options);
-          if (!waitForStatus(inspectJob).isSuccess()) {
-            throw new WorkflowOperationException("Track " + track + " could not be inspected");
-          }
-        } catch (MediaInspectionException e) {
-          throw new WorkflowOperationException("Error inspecting media package", e);
-        } catch (MediaPackageException e) {
-          throw new WorkflowOperationException("Error parsing media package", e);
-        }
+        Job inspectJob = inspectJobs.get(track);
 
         // add this receipt's queue and execution times to the total
         long timeInQueue = inspectJob.getQueueTime() == null ? 0 : inspectJob.getQueueTime();
@@ -210,6 +214,37 @@ public class InspectWorkflowOperationHandler extends AbstractWorkflowOperationHa
     return createResult(mediaPackage, Action.CONTINUE, totalTimeInQueue);
   }
 
+  /**
+   * Returns whether the track holds captions, which are not inspected.
+   */
+  private static boolean isCaptions(Track track) {
+    return track != null && track.getURI() != null && (track.getURI().toString().endsWith(".vtt")
+            || track.getURI().toString().endsWith(".srt"));
+  }
+
+  /**
+   * Waits until the inspection of a track has been submitted.
+   *
+   * @param submission
+   *          the submission of the inspection
+   * @return the inspection job
+   * @throws WorkflowOperationException
+   *           if the inspection could not be submitted
+   */
+  private Job awaitSubmission(CompletableFuture<Job> submission) throws WorkflowOperationException {
+    try {
+      return submission.get();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new WorkflowOperationException("Interrupted while submitting the inspection of a track", e);
+    } catch (ExecutionException e) {
+      if (e.getCause() instanceof MediaPackageException) {
+        throw new WorkflowOperationException("Error parsing media package", e.getCause());
+      }
+      throw new WorkflowOperationException("Error inspecting media package", e.getCause());
+    }
+  }
+
   /**
    * Updates those dublin core fields that can be gathered from the technical metadata.
    *
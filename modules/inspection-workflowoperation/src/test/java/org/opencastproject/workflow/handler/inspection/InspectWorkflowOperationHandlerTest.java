@@ -59,6 +59,7 @@ import java.util.ArrayList;
 import java.util.Date;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
 
 public class InspectWorkflowOperationHandlerTest {
   private InspectWorkflowOperationHandler operationHandler;
@@ -145,8 +146,8 @@ public class InspectWorkflowOperationHandlerTest {
     operationHandler.setServiceRegistry(serviceRegistry);
 
     inspectionService = EasyMock.createNiceMock(MediaInspectionService.class);
-    EasyMock.expect(inspectionService.enrich((Track) EasyMock.anyObject(), EasyMock.anyBoolean(),
-            (Map<String, String>) EasyMock.anyObject())).andReturn(job);
+    EasyMock.expect(inspectionService.enrichAsync((Track) EasyMock.anyObject(), EasyMock.anyBoolean(),
+            (Map<String, String>) EasyMock.anyObject())).andReturn(CompletableFuture.completedFuture(job));
     EasyMock.replay(inspectionService);
     operationHandler.setInspectionService(inspectionService);
 
@@ -22,9 +22,27 @@
 package org.opencastproject.kernel.security;
 
 /**
- * An MxBean that exposes the number of open http connections to a JXM agent
+ * An MxBean that exposes the number of open http connections and the utilization of the connection pool to a JXM agent
  */
 public interface HttpConnectionMXBean {
   /** Gets the number of open http connections */
   int getOpenConnections();
+
+  /** Gets the number of pooled connections currently in use */
+  int getLeasedConnections();
+
+  /** Gets the number of idle pooled connections kept alive for reuse */
+  int getAvailableConnections();
+
+  /** Gets the number of requests waiting for a pooled connection */
+  int getPendingConnections();
+
+  /** Gets the maximum number of pooled connections to all hosts */
+  int getMaxConnections();
+
+  /** Gets the maximum number of pooled connections to a single host */
+  int getMaxConnectionsPerHost();
+
+  /** Gets the number of hosts for which a digest authentication nonce is kept for reuse */
+  int getCachedNonces();
 }
@@ -41,21 +41,31 @@ import org.apache.commons.lang3.StringUtils;
 import org.apache.commons.lang3.math.NumberUtils;
 import org.apache.http.Header;
 import org.apache.http.HeaderElement;
+import org.apache.http.HttpEntity;
+import org.apache.http.HttpEntityEnclosingRequest;
+import org.apache.http.HttpHost;
 import org.apache.http.HttpResponse;
+import org.apache.http.HttpStatus;
 import org.apache.http.auth.AuthScope;
 import org.apache.http.auth.UsernamePasswordCredentials;
 import org.apache.http.client.ClientProtocolException;
 import org.apache.http.client.CredentialsProvider;
 import org.apache.http.client.config.AuthSchemes;
 import org.apache.http.client.config.RequestConfig;
+import org.apache.http.client.methods.CloseableHttpResponse;
 import org.apache.http.client.methods.HttpGet;
 import org.apache.http.client.methods.HttpHead;
 import org.apache.http.client.methods.HttpRequestBase;
 import org.apache.http.client.methods.HttpUriRequest;
+import org.apache.http.client.utils.URIUtils;
+import org.apache.http.conn.ConnectionPoolTimeoutException;
 import org.apache.http.impl.auth.DigestScheme;
 import org.apache.http.impl.client.BasicCredentialsProvider;
 import org.apache.http.impl.client.CloseableHttpClient;
 import org.apache.http.impl.client.HttpClientBuilder;
+import org.apache.http.impl.client.IdleConnectionEvictor;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+import org.apache.http.util.EntityUtils;
 import org.osgi.service.component.ComponentContext;
 import org.osgi.service.component.annotations.Activate;
 import org.osgi.service.component.annotations.Component;
@@ -71,6 +81,7 @@ import java.lang.management.ManagementFactory;
 import java.util.Map;
 import java.util.Random;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
 
 import javax.management.MBeanServer;
 import javax.management.ObjectName;
@@ -118,6 +129,31 @@ public class TrustedHttpClientImpl implements TrustedHttpClient, HttpConnectionM
   public static final String NONCE_TIMEOUT_RETRY_MAXIMUM_VARIABLE_TIME_KEY =
     "org.opencastproject.security.digest.nonce.variable.time";
 
+  /** The configuration property specifying the maximum number of pooled connections to all hosts */
+  public static final String MAX_CONNECTIONS_KEY = "org.opencastproject.security.http.max.connections";
+
+  /** The configuration property specifying the maximum number of pooled connections to a single host */
+  public static final String MAX_CONNECTIONS_PER_HOST_KEY =
+    "org.opencastproject.security.http.max.connections.per.host";
+
+  /** The configuration property specifying the time in seconds after which idle pooled connections are closed */
+  public static final String IDLE_CONNECTION_TIMEOUT_KEY = "org.opencastproject.security.http.idle.timeout";
+
+  /** The configuration property specifying the time in seconds a request waits for a pooled connection */
+  public static final String CONNECTION_LEASE_TIMEOUT_KEY = "org.opencastproject.security.http.lease.timeout";
+
+  /** The default maximum number of pooled connections to all hosts */
+  public static final int DEFAULT_MAX_CONNECTIONS = 400;
+
+  /** The default maximum number of pooled connections to a single host */
+  public static final int DEFAULT_MAX_CONNECTIONS_PER_HOST = 100;
+
+  /** The default time in seconds after which idle pooled connections are closed */
+  public static final int DEFAULT_IDLE_CONNECTION_TIMEOUT = 60;
+
+  /** The default time in seconds a request waits for a pooled connection */
+  public static final int DEFAULT_CONNECTION_LEASE_TIMEOUT = 10;
+
   /** The default time until a connection attempt fails */
   public static final int DEFAULT_CONNECTION_TIMEOUT = 60 * 1000;
 
@@ -151,8 +187,35 @@ public class TrustedHttpClientImpl implements TrustedHttpClient, HttpConnectionM
   /** The number of times to retry a request after a nonce timeout. */
   private int nonceTimeoutRetries = DEFAULT_NONCE_TIMEOUT_RETRIES;
 
-  /** The map of open responses to their http clients, which need to be closed after we are finished with the response */
-  protected Map<HttpResponse, CloseableHttpClient> responseMap = new ConcurrentHashMap<>();
+  /** The map of open responses to the underlying responses, which need to be closed to release their connection */
+  protected Map<HttpResponse, CloseableHttpResponse> responseMap = new ConcurrentHashMap<>();
+
+  /** The digest authentication state per host, holding the last nonce that host has handed out */
+  private final Map<HttpHost, DigestScheme> nonces = new ConcurrentHashMap<>();
+
+  /** The maximum number of pooled connections to all hosts */
+  private int maxConnections = DEFAULT_MAX_CONNECTIONS;
+
+  /** The maximum number of pooled connections to a single host */
+  private int maxConnectionsPerHost = DEFAULT_MAX_CONNECTIONS_PER_HOST;
+
+  /** The time in seconds after which idle pooled connections are closed */
+  private int idleConnectionTimeout = DEFAULT_IDLE_CONNECTION_TIMEOUT;
+
+  /** The time in seconds a request waits for a pooled connection before it fails */
+  private int connectionLeaseTimeout = DEFAULT_CONNECTION_LEASE_TIMEOUT;
+
+  /** The connection pool shared by all requests, created on first use */
+  private PoolingHttpClientConnectionManager connectionManager = null;
+
+  /** Closes pooled connections which have been idle for too long */
+  private IdleConnectionEvictor connectionEvictor = null;
+
+  /** The http client for GET and HEAD requests, which handles digest authentication on its own */
+  private CloseableHttpClient authenticatingHttpClient = null;
+
+  /** The http client for all other requests, which are authenticated manually */
+  private CloseableHttpClient httpClient = null;
 
   /** Used to add a random amount of time up to retryMaximumVariableTime to retry a request after a nonce timeout. */
   private final Random generator = new Random();
@@ -186,6 +249,13 @@ public class TrustedHttpClientImpl implements TrustedHttpClient, HttpConnectionM
     getRetryNumber(cc);
     getRetryBaseTime(cc);
     getRetryMaximumVariableTime(cc);
+    maxConnections = getIntFromComponentContext(cc, MAX_CONNECTIONS_KEY, DEFAULT_MAX_CONNECTIONS);
+    maxConnectionsPerHost = getIntFromComponentContext(cc, MAX_CONNECTIONS_PER_HOST_KEY,
+                                                       DEFAULT_MAX_CONNECTIONS_PER_HOST);
+    idleConnectionTimeout = getIntFromComponentContext(cc, IDLE_CONNECTION_TIMEOUT_KEY,
+                                                       DEFAULT_IDLE_CONNECTION_TIMEOUT);
+    connectionLeaseTimeout = getIntFromComponentContext(cc, CONNECTION_LEASE_TIMEOUT_KEY,
+                                                        DEFAULT_CONNECTION_LEASE_TIMEOUT);
 
     // register with jmx
     try {
@@ -321,6 +391,7 @@ public class TrustedHttpClientImpl implements TrustedHttpClient, HttpConnectionM
   @Deactivate
   public void deactivate() {
     logger.debug("deactivate");
+    closeHttpClients();
   }
 
   public TrustedHttpClientImpl() {
@@ -333,10 +404,100 @@ public class TrustedHttpClientImpl implements TrustedHttpClient, HttpConnectionM
 
   /** Creates a new HttpClientBuilder to use for making requests. */
   public HttpClientBuilder makeHttpClientBuilder(int connectionTimeout, int socketTimeout) {
-    RequestConfig config = RequestConfig.custom()
-        .setConnectionRequestTimeout(connectionTimeout)
+    return HttpClientBuilder.create().setDefaultRequestConfig(makeRequestConfig(connectionTimeout, socketTimeout));
+  }
+
+  /**
+   * Creates the configuration of a request. Waiting for a connection from the pool is limited separately from
+   * connecting, so that an exhausted pool shows up quickly instead of looking like an unreachable host.
+   */
+  private RequestConfig makeRequestConfig(int connectionTimeout, int socketTimeout) {
+    return RequestConfig.custom()
+        .setConnectTimeout(connectionTimeout)
+        .setConnectionRequestTimeout(connectionLeaseTimeout * MILLISECONDS_IN_SECONDS)
         .setSocketTimeout(socketTimeout).build();
-    return HttpClientBuilder.create().setDefaultRequestConfig(config);
+  }
+
+  /**
+   * Returns one of the shared http clients, creating them along with their connection pool on first use. Both clients
+   * use the same pool, so connections to a host are kept alive and reused across requests regardless of their method.
+   *
+   * @param authenticating
+   *         whether to return the client which handles digest authentication on its own
+   * @return the http client
+   */
+  protected synchronized CloseableHttpClient getHttpClient(boolean authenticating) {
+    if (connectionManager == null) {
+      connectionManager = new PoolingHttpClientConnectionManager();
+      connectionManager.setMaxTotal(maxConnections);
+      connectionManager.setDefaultMaxPerRoute(maxConnectionsPerHost);
+      if (idleConnectionTimeout > 0) {
+        connectionEvictor = new IdleConnectionEvictor(connectionManager, idleConnectionTimeout, TimeUnit.SECONDS);
+        connectionEvictor.start();
+      }
+
+      // The builders are not chained, so that subclasses may hand out builders which don't return themselves
+      CredentialsProvider provider = new BasicCredentialsProvider();
+      provider.setCredentials(
+          new AuthScope(AuthScope.ANY_HOST, AuthScope.ANY_PORT, AuthScope.ANY_REALM, AuthSchemes.DIGEST),
+          new UsernamePasswordCredentials(user, pass));
+      HttpClientBuilder authenticatingBuilder = makeHttpClientBuilder(DEFAULT_CONNECTION_TIMEOUT,
+                                                                      DEFAULT_SOCKET_TIMEOUT);
+      authenticatingBuilder.setConnectionManager(connectionManager);
+      authenticatingBuilder.setConnectionManagerShared(true);
+      authenticatingBuilder.setDefaultCredentialsProvider(provider);
+      authenticatingHttpClient = authenticatingBuilder.build();
+
+      HttpClientBuilder builder = makeHttpClientBuilder(DEFAULT_CONNECTION_TIMEOUT, DEFAULT_SOCKET_TIMEOUT);
+      builder.setConnectionManager(connectionManager);
+      builder.setConnectionManagerShared(true);
+      httpClient = builder.build();
+      logger.debug("Created http connection pool with at most {} connections and {} connections per host",
+                   maxConnections, maxConnectionsPerHost);
+    }
+    return authenticating ? authenticatingHttpClient : httpClient;
+  }
+
+  /** Closes the shared http clients along with all pooled connections. */
+  protected synchronized void closeHttpClients() {
+    if (connectionManager == null) {
+      return;
+    }
+    if (connectionEvictor != null) {
+      connectionEvictor.shutdown();
+      connectionEvictor = null;
+    }
+    for (CloseableHttpClient client : new CloseableHttpClient[] { authenticatingHttpClient, httpClient }) {
+      try {
+        if (client != null) {
+          client.close();
+        }
+      } catch (IOException e) {
+        logger.warn("Unable to close http client", e);
+      }
+    }
+    connectionManager.shutdown();
+    connectionManager = null;
+    authenticatingHttpClient = null;
+    httpClient = null;
+    responseMap.clear();
+    nonces.clear();
+  }
+
+  /**
+   * Applies the timeouts to a request, unless it has been configured explicitly.
+   *
+   * @param httpUriRequest
+   *         the request
+   * @param connectionTimeout
+   *         the time until a connection attempt fails
+   * @param socketTimeout
+   *         the time between packets that causes a connection to fail
+   */
+  private void setTimeouts(HttpUriRequest httpUriRequest, int connectionTimeout, int socketTimeout) {
+    if (httpUriRequest instanceof HttpRequestBase && ((HttpRequestBase) httpUriRequest).getConfig() == null) {
+      ((HttpRequestBase) httpUriRequest).setConfig(makeRequestConfig(connectionTimeout, socketTimeout));
+    }
   }
 
   /**
@@ -370,58 +531,82 @@ public class TrustedHttpClientImpl implements TrustedHttpClient, HttpConnectionM
       }
     }
 
-    final HttpClientBuilder clientBuilder = makeHttpClientBuilder(connectionTimeout, socketTimeout);
     if ("GET".equalsIgnoreCase(httpUriRequest.getMethod()) || "HEAD".equalsIgnoreCase(httpUriRequest.getMethod())) {
-      // Set the user/pass
-      CredentialsProvider provider = new BasicCredentialsProvider();
-      provider.setCredentials(
-          new AuthScope(AuthScope.ANY_HOST, AuthScope.ANY_PORT, AuthScope.ANY_REALM, AuthSchemes.DIGEST),
-          new UsernamePasswordCredentials(user, pass));
-      final CloseableHttpClient httpClient = clientBuilder.setDefaultCredentialsProvider(provider).build();
       // Run the request (the http client handles the multiple back-and-forth requests)
+      final CloseableHttpClient httpClient = getHttpClient(true);
       try {
         httpUriRequest = getSignedUrl(httpUriRequest);
-        HttpResponse response = new HttpResponseWrapper(httpClient.execute(httpUriRequest));
-        responseMap.put(response, httpClient);
+        setTimeouts(httpUriRequest, connectionTimeout, socketTimeout);
+        final CloseableHttpResponse httpResponse = httpClient.execute(httpUriRequest);
+        HttpResponse response = new HttpResponseWrapper(httpResponse);
+        responseMap.put(response, httpResponse);
         return response;
       } catch (IOException e) {
-        try {
-          httpClient.close();
-        } catch (IOException ioException) {
-          throw new TrustedHttpClientException(e);
-        }
+        logPoolExhaustion(httpUriRequest, e);
         throw new TrustedHttpClientException(e);
       }
     } else {
-      final CloseableHttpClient httpClient = clientBuilder.build();
+      final CloseableHttpClient httpClient = getHttpClient(false);
+      setTimeouts(httpUriRequest, connectionTimeout, socketTimeout);
       // HttpClient doesn't handle the request dynamics for other verbs (especially when sending a streamed multipart
       // request), so we need to handle the details of the digest auth back-and-forth manually
-      manuallyHandleDigestAuthentication(httpUriRequest, httpClient);
-      HttpResponse response = null;
+      final boolean reusedNonce = manuallyHandleDigestAuthentication(httpUriRequest, isRepeatable(httpUriRequest));
+      CloseableHttpResponse httpResponse = null;
       try {
-        response = new HttpResponseWrapper(httpClient.execute(httpUriRequest));
-        if (nonceTimeoutRetries > 0 && hadNonceTimeoutResponse(response)) {
-          httpClient.close();
-          response = retryAuthAndRequestAfterNonceTimeout(httpUriRequest, response);
+        httpResponse = httpClient.execute(httpUriRequest);
+        if (reusedNonce && httpResponse.getStatusLine().getStatusCode() == HttpStatus.SC_UNAUTHORIZED) {
+          // The server does not accept the nonce anymore, so we get a fresh one and try again right away
+          logger.debug("Reused nonce rejected by {}, requesting a new one", httpUriRequest.getURI());
+          httpResponse.close();
+          manuallyHandleDigestAuthentication(httpUriRequest, false);
+          httpResponse = httpClient.execute(httpUriRequest);
         }
-        responseMap.put(response, httpClient);
+        if (nonceTimeoutRetries > 0 && hadNonceTimeoutResponse(httpResponse)) {
+          httpResponse = retryAuthAndRequestAfterNonceTimeout(httpUriRequest, httpResponse, httpClient);
+        }
+        HttpResponse response = new HttpResponseWrapper(httpResponse);
+        responseMap.put(response, httpResponse);
         return response;
       } catch (Exception e) {
-        // if we have a response, remove it from the map
-        if (response != null) {
-          responseMap.remove(response);
-        }
-        // close the http connection(s)
-        try {
-          httpClient.close();
-        } catch (IOException ioException) {
-          throw new TrustedHttpClientException(e);
+        logPoolExhaustion(httpUriRequest, e);
+        // release the connection
+        if (httpResponse != null) {
+          try {
+            httpResponse.close();
+          } catch (IOException ioException) {
+            throw new TrustedHttpClientException(e);
+          }
         }
         throw new TrustedHttpClientException(e);
       }
     }
   }
 
+  /** Logs a hint at the connection limits if a request failed because no pooled connection became available. */
+  private void logPoolExhaustion(HttpUriRequest httpUriRequest, Exception e) {
+    if (e instanceof ConnectionPoolTimeoutException) {
+      logger.warn("No connection to {} became available within {} seconds: all {} connections to that host or all {} "
+              + "connections in total are in use. Either responses are not closed or {} needs to be raised.",
+              URIUtils.extractHost(httpUriRequest.getURI()), connectionLeaseTimeout, maxConnectionsPerHost,
+              maxConnections, MAX_CONNECTIONS_PER_HOST_KEY);
+    }
+  }
+
+  /**
+   * Determines whether a request can be sent more than once.
+   *
+   * @param httpUriRequest
+   *         the request
+   * @return true if the request has no entity or a repeatable one
+   */
+  private static boolean isRepeatable(HttpUriRequest httpUriRequest) {
+    if (httpUriRequest instanceof HttpEntityEnclosingRequest) {
+      HttpEntity entity = ((HttpEntityEnclosingRequest) httpUriRequest).getEntity();
+      return entity == null || entity.isRepeatable();
+    }
+    return true;
+  }
+
   /**
    * If the request is a GET, sign the URL and return a new {@link HttpUriRequest} that is signed.
    *
@@ -464,19 +649,21 @@ public class TrustedHttpClientImpl implements TrustedHttpClient, HttpConnectionM
    *         The request to be made that isn't a GET, those are handled automatically.
    * @param response
    *         The response with the bad nonce timeout in it.
+   * @param httpClient
+   *         The client to send the request through.
    * @return A new response for the request if it was successful without the nonce timing out again or just the same
    * response it got if it ran out of attempts.
    * @throws TrustedHttpClientException
    * @throws IOException
    * @throws ClientProtocolException
    */
-  private HttpResponse retryAuthAndRequestAfterNonceTimeout(HttpUriRequest httpUriRequest, HttpResponse response)
+  private CloseableHttpResponse retryAuthAndRequestAfterNonceTimeout(HttpUriRequest httpUriRequest,
+          CloseableHttpResponse response, CloseableHttpClient httpClient)
           throws TrustedHttpClientException, IOException, ClientProtocolException {
     // Get rid of old security headers with the old nonce.
     httpUriRequest.removeHeaders(AUTHORIZATION_HEADER_NAME);
 
     for (int i = 0; i < nonceTimeoutRetries; i++) {
-      CloseableHttpClient httpClient = makeHttpClientBuilder(DEFAULT_CONNECTION_TIMEOUT, DEFAULT_SOCKET_TIMEOUT).build();
       int variableDelay = 0;
       // Make sure that we have a variable delay greater than 0.
       if (retryMaximumVariableTime > 0) {
@@ -493,13 +680,12 @@ public class TrustedHttpClientImpl implements TrustedHttpClient, HttpConnectionM
           logger.error("Suffered InteruptedException while trying to sleep until next retry.", e);
         }
       }
-      manuallyHandleDigestAuthentication(httpUriRequest, httpClient);
-      response = new HttpResponseWrapper(httpClient.execute(httpUriRequest));
+      response.close();
+      manuallyHandleDigestAuthentication(httpUriRequest, false);
+      response = httpClient.execute(httpUriRequest);
       if (!hadNonceTimeoutResponse(response)) {
-        responseMap.put(response, httpClient);
         break;
       }
-      httpClient.close();
     }
     return response;
   }
@@ -517,49 +703,62 @@ public class TrustedHttpClientImpl implements TrustedHttpClient, HttpConnectionM
   }
 
   /**
-   * Handles the necessary handshake for digest authenticaion in the case where it isn't a GET operation.
+   * Handles the necessary handshake for digest authenticaion in the case where it isn't a GET operation. The nonce a
+   * host hands out is kept and reused for subsequent requests to that host until it is rejected, which saves the
+   * handshake for most requests.
    *
    * @param httpUriRequest
    *         The request location to get the digest authentication for.
-   * @param httpClient
-   *         The client to send the request through.
+   * @param reuseNonce
+   *         Whether a nonce obtained by an earlier request to the same host may be used.
+   * @return true if a nonce obtained by an earlier request has been used
    * @throws TrustedHttpClientException
-   *         Thrown if the client cannot be shutdown.
+   *         Thrown if the authentication header cannot be created.
    */
-  private void manuallyHandleDigestAuthentication(HttpUriRequest httpUriRequest, CloseableHttpClient httpClient)
+  private boolean manuallyHandleDigestAuthentication(HttpUriRequest httpUriRequest, boolean reuseNonce)
           throws TrustedHttpClientException {
-    HttpRequestBase digestRequest;
-    try {
-      digestRequest = (HttpRequestBase) httpUriRequest.getClass().newInstance();
-    } catch (Exception e) {
-      throw new IllegalStateException("Can not create a new " + httpUriRequest.getClass().getName());
-    }
-    digestRequest.setURI(httpUriRequest.getURI());
-    digestRequest.setHeader(REQUESTED_AUTH_HEADER, DIGEST_AUTH);
-    String[] realmAndNonce = getRealmAndNonce(digestRequest);
+    final HttpHost host = URIUtils.extractHost(httpUriRequest.getURI());
+    DigestScheme digestAuth = host != null && reuseNonce ? nonces.get(host) : null;
+    final boolean reused = digestAuth != null;
 
-    if (realmAndNonce != null) {
-      // Set the user/pass
-      UsernamePasswordCredentials creds = new UsernamePasswordCredentials(user, pass);
+    if (digestAuth == null) {
+      HttpRequestBase digestRequest;
+      try {
+        digestRequest = (HttpRequestBase) httpUriRequest.getClass().newInstance();
+      } catch (Exception e) {
+        throw new IllegalStateException("Can not create a new " + httpUriRequest.getClass().getName());
+      }
+      digestRequest.setURI(httpUriRequest.getURI());
+      digestRequest.setHeader(REQUESTED_AUTH_HEADER, DIGEST_AUTH);
+      String[] realmAndNonce = getRealmAndNonce(digestRequest);
+      if (realmAndNonce == null) {
+        if (host != null) {
+          nonces.remove(host);
+        }
+        return false;
+      }
 
       // Set up the digest authentication with the required values
-      DigestScheme digestAuth = new DigestScheme();
+      digestAuth = new DigestScheme();
       digestAuth.overrideParamter("realm", realmAndNonce[0]);
       digestAuth.overrideParamter("nonce", realmAndNonce[1]);
+      if (host != null) {
+        nonces.put(host, digestAuth);
+      }
+    }
 
-      // Add the authentication header
-      try {
+    // Set the user/pass
+    UsernamePasswordCredentials creds = new UsernamePasswordCredentials(user, pass);
+
+    // Add the authentication header
+    try {
+      synchronized (digestAuth) {
         httpUriRequest.setHeader(digestAuth.authenticate(creds, httpUriRequest));
-      } catch (Exception e) {
-        // close the http connection(s)
-        try {
-          httpClient.close();
-        } catch (IOException ex) {
-          throw new TrustedHttpClientException(ex);
-        }
-        throw new TrustedHttpClientException(e);
       }
+    } catch (Exception e) {
+      throw new TrustedHttpClientException(e);
     }
+    return reused;
   }
 
   /**
@@ -570,9 +769,10 @@ public class TrustedHttpClientImpl implements TrustedHttpClient, HttpConnectionM
   @Override
   public void close(HttpResponse response) throws IOException {
     if (response != null) {
-      CloseableHttpClient httpClient = responseMap.remove(response);
-      if (httpClient != null) {
-        httpClient.close();
+      // Closing the response hands its connection back to the pool
+      CloseableHttpResponse httpResponse = responseMap.remove(response);
+      if (httpResponse != null) {
+        httpResponse.close();
       }
     } else {
       logger.debug("Can not close a null response");
@@ -587,30 +787,26 @@ public class TrustedHttpClientImpl implements TrustedHttpClient, HttpConnectionM
    * @return A String[] containing the {realm, nonce}
    */
   protected String[] getRealmAndNonce(HttpRequestBase request) throws TrustedHttpClientException {
-    CloseableHttpClient httpClient = makeHttpClientBuilder(DEFAULT_CONNECTION_TIMEOUT, DEFAULT_SOCKET_TIMEOUT).build();
-    HttpResponse response;
-    try {
-      try {
-        response = new HttpResponseWrapper(httpClient.execute(request));
-        Header[] headers = response.getHeaders("WWW-Authenticate");
-        if (headers == null || headers.length == 0) {
-          logger.warn("URI {} does not support digest authentication", request.getURI());
-          return null;
-        }
-        Header authRequiredResponseHeader = headers[0];
-        String nonce = null;
-        String realm = null;
-        for (HeaderElement element : authRequiredResponseHeader.getElements()) {
-          if ("nonce".equals(element.getName())) {
-            nonce = element.getValue();
-          } else if ("Digest realm".equals(element.getName())) {
-            realm = element.getValue();
-          }
+    setTimeouts(request, DEFAULT_CONNECTION_TIMEOUT, DEFAULT_SOCKET_TIMEOUT);
+    try (CloseableHttpResponse response = getHttpClient(false).execute(request)) {
+      // Read the challenge body so that the connection can be reused
+      EntityUtils.consume(response.getEntity());
+      Header[] headers = response.getHeaders("WWW-Authenticate");
+      if (headers == null || headers.length == 0) {
+        logger.warn("URI {} does not support digest authentication", request.getURI());
+        return null;
+      }
+      Header authRequiredResponseHeader = headers[0];
+      String nonce = null;
+      String realm = null;
+      for (HeaderElement element : authRequiredResponseHeader.getElements()) {
+        if ("nonce".equals(element.getName())) {
+          nonce = element.getValue();
+        } else if ("Digest realm".equals(element.getName())) {
+          realm = element.getValue();
         }
-        return new String[]{realm, nonce};
-      } finally {
-        httpClient.close();
       }
+      return new String[]{realm, nonce};
     } catch (IOException e) {
       throw new TrustedHttpClientException(e);
     }
@@ -621,6 +817,36 @@ public class TrustedHttpClientImpl implements TrustedHttpClient, HttpConnectionM
     return responseMap.size();
   }
 
+  @Override
+  public synchronized int getLeasedConnections() {
+    return connectionManager == null ? 0 : connectionManager.getTotalStats().getLeased();
+  }
+
+  @Override
+  public synchronized int getAvailableConnections() {
+    return connectionManager == null ? 0 : connectionManager.getTotalStats().getAvailable();
+  }
+
+  @Override
+  public synchronized int getPendingConnections() {
+    return connectionManager == null ? 0 : connectionManager.getTotalStats().getPending();
+  }
+
+  @Override
+  public int getMaxConnections() {
+    return maxConnections;
+  }
+
+  @Override
+  public int getMaxConnectionsPerHost() {
+    return maxConnectionsPerHost;
+  }
+
+  @Override
+  public int getCachedNonces() {
+    return nonces.size();
+  }
+
   /**
    * @return Returns the number of times the TrustedHttpClient will retry a request if nonce timeouts are occuring.
    */
@@ -131,9 +131,81 @@ public class TrustedHttpClientImplTest {
         .andReturn(new BasicStatusLine(new ProtocolVersion("Http", 1, 1), 401, "Nonce has expired/timed out"))
         .anyTimes();
     expect(nonceResponse.getHeaders("WWW-Authenticate")).andReturn(new Header[] {}).anyTimes();
+    for (CloseableHttpResponse response : new CloseableHttpResponse[] { okResponse, digestResponse, nonceResponse }) {
+      expect(response.getEntity()).andReturn(null).anyTimes();
+      response.close();
+      EasyMock.expectLastCall().anyTimes();
+    }
     replay(okResponse, digestResponse, nonceResponse);
   }
 
+  private TrustedHttpClientImpl createClient(CloseableHttpClient httpClient) {
+    bundleContextMock = createNiceMock(BundleContext.class);
+    expect(bundleContextMock.getProperty(TrustedHttpClientImpl.DIGEST_AUTH_USER_KEY)).andReturn("u");
+    expect(bundleContextMock.getProperty(TrustedHttpClientImpl.DIGEST_AUTH_PASS_KEY)).andReturn("p");
+    expect(bundleContextMock.getProperty(TrustedHttpClientImpl.NONCE_TIMEOUT_RETRY_KEY)).andReturn("0");
+    replay(bundleContextMock);
+
+    componentContextMock = createNiceMock(ComponentContext.class);
+    expect(componentContextMock.getBundleContext()).andReturn(bundleContextMock).anyTimes();
+    replay(componentContextMock);
+
+    HttpClientBuilder httpClientBuilder = createNiceMock(HttpClientBuilder.class);
+    expect(httpClientBuilder.build()).andReturn(httpClient).anyTimes();
+    replay(httpClientBuilder);
+    TrustedHttpClientImpl client = new TrustedHttpClientImpl("u", "p") {
+      @Override
+      public HttpClientBuilder makeHttpClientBuilder(int connectionTimeout, int socketTimeout) {
+        return httpClientBuilder;
+      }
+    };
+    client.setServiceRegistry(serviceRegistry);
+    client.setSecurityService(securityService);
+    client.activate(componentContextMock);
+    return client;
+  }
+
+  @Test
+  public void nonceIsReusedForSubsequentRequests() throws IOException {
+    CloseableHttpClient httpClient = createMock(CloseableHttpClient.class);
+    // Digest handshake for the first request only
+    expect(httpClient.execute(isA(HttpUriRequest.class))).andReturn(digestResponse);
+    expect(httpClient.execute(isA(HttpUriRequest.class))).andReturn(okResponse).times(2);
+    replay(httpClient);
+    client = createClient(httpClient);
+
+    HttpResponse response = client.execute(new HttpPost("http://localhost:8080/fake"));
+    Assert.assertEquals(200, response.getStatusLine().getStatusCode());
+    client.close(response);
+    response = client.execute(new HttpPost("http://localhost:8080/fake"));
+    Assert.assertEquals(200, response.getStatusLine().getStatusCode());
+    client.close(response);
+
+    Assert.assertEquals(1, client.getCachedNonces());
+    Assert.assertEquals(0, client.getOpenConnections());
+    verify(httpClient);
+  }
+
+  @Test
+  public void rejectedNonceIsReplaced() throws IOException {
+    CloseableHttpClient httpClient = createMock(CloseableHttpClient.class);
+    // First request with a fresh nonce
+    expect(httpClient.execute(isA(HttpUriRequest.class))).andReturn(digestResponse);
+    expect(httpClient.execute(isA(HttpUriRequest.class))).andReturn(okResponse);
+    // Second request with the reused nonce, which the server no longer accepts
+    expect(httpClient.execute(isA(HttpUriRequest.class))).andReturn(nonceResponse);
+    // New digest handshake and successful retry without waiting
+    expect(httpClient.execute(isA(HttpUriRequest.class))).andReturn(digestResponse);
+    expect(httpClient.execute(isA(HttpUriRequest.class))).andReturn(okResponse);
+    replay(httpClient);
+    client = createClient(httpClient);
+
+    client.close(client.execute(new HttpPost("http://localhost:8080/fake")));
+    HttpResponse response = client.execute(new HttpPost("http://localhost:8080/fake"));
+    Assert.assertEquals(200, response.getStatusLine().getStatusCode());
+    verify(httpClient);
+  }
+
   @Test
   public void noDefaultHttpConnectionFactoryResultsInException() {
     try {
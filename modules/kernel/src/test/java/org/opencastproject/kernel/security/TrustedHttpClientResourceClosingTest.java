@@ -28,8 +28,8 @@ import org.opencastproject.security.urlsigning.exception.UrlSigningException;
 import org.opencastproject.security.urlsigning.service.UrlSigningService;
 
 import org.apache.http.HttpResponse;
+import org.apache.http.client.methods.CloseableHttpResponse;
 import org.apache.http.client.methods.HttpGet;
-import org.apache.http.impl.client.CloseableHttpClient;
 import org.easymock.EasyMock;
 import org.junit.Test;
 import org.slf4j.Logger;
@@ -63,7 +63,7 @@ public class TrustedHttpClientResourceClosingTest {
       setUrlSigningService(urlSigningService);
     }
 
-    Map<HttpResponse, CloseableHttpClient> getResponseMap() {
+    Map<HttpResponse, CloseableHttpResponse> getResponseMap() {
       return responseMap;
     }
   }
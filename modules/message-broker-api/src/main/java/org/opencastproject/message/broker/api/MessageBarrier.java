@@ -0,0 +1,49 @@
+/**
+ * Licensed to The Apereo Foundation under one or more contributor license
+ * agreements. See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ *
+ * The Apereo Foundation licenses this file to you under the Educational
+ * Community License, Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License. You may obtain a copy of the License
+ * at:
+ *
+ *   http://opensource.org/licenses/ecl2.txt
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ *
+ */
+
+package org.opencastproject.message.broker.api;
+
+import java.io.Serializable;
+
+/**
+ * Marks a position in a message queue. A receiver which processes the messages of the queue one after another reports
+ * the barrier once it is reached, which tells the sender that all messages sent to the queue before the barrier have
+ * been processed.
+ */
+public class MessageBarrier implements Serializable {
+
+  private static final long serialVersionUID = -4296432118396237513L;
+
+  private final String id;
+
+  /**
+   * @param id
+   *          the identifier the receiver reports the barrier with
+   */
+  public MessageBarrier(String id) {
+    this.id = id;
+  }
+
+  public String getId() {
+    return id;
+  }
+
+}
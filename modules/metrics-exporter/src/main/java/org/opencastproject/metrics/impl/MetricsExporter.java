@@ -28,6 +28,7 @@ import org.opencastproject.security.api.OrganizationDirectoryService;
 import org.opencastproject.serviceregistry.api.ServiceRegistration;
 import org.opencastproject.serviceregistry.api.ServiceRegistry;
 import org.opencastproject.serviceregistry.api.ServiceState;
+import org.opencastproject.serviceregistry.api.ServiceStatistics;
 import org.opencastproject.serviceregistry.api.SystemLoad;
 import org.opencastproject.util.doc.rest.RestQuery;
 import org.opencastproject.util.doc.rest.RestResponse;
@@ -120,6 +121,21 @@ public class MetricsExporter {
       .help("Number of services in a cluster")
       .labelNames("state")
       .register();
+  private final Gauge serviceJobs = Gauge.build()
+      .name("opencast_service_jobs")
+      .help("Jobs per service and host")
+      .labelNames("host", "service", "status")
+      .register();
+  private final Gauge serviceMeanRunTime = Gauge.build()
+      .name("opencast_service_mean_run_time_seconds")
+      .help("Mean run time of jobs per service and host")
+      .labelNames("host", "service")
+      .register();
+  private final Gauge serviceMeanQueueTime = Gauge.build()
+      .name("opencast_service_mean_queue_time_seconds")
+      .help("Mean queue time of jobs per service and host")
+      .labelNames("host", "service")
+      .register();
   private final Gauge version = Gauge.build()
       .name("opencast_version")
       .help("Version of Opencast (based on metrics module)")
@@ -161,6 +177,17 @@ public class MetricsExporter {
     servicesTotal.labels(ServiceState.WARNING.name()).set(warn);
     servicesTotal.labels(ServiceState.ERROR.name()).set(error);
 
+    // track job statistics per service (served from the registry's in-memory statistics)
+    for (ServiceStatistics statistics: serviceRegistry.getServiceStatistics()) {
+      final String host = statistics.getServiceRegistration().getHost();
+      final String service = statistics.getServiceRegistration().getServiceType();
+      serviceJobs.labels(host, service, "running").set(statistics.getRunningJobs());
+      serviceJobs.labels(host, service, "queued").set(statistics.getQueuedJobs());
+      serviceJobs.labels(host, service, "finished").set(statistics.getFinishedJobs());
+      serviceMeanRunTime.labels(host, service).set(statistics.getMeanRunTime() / 1000.0);
+      serviceMeanQueueTime.labels(host, service).set(statistics.getMeanQueueTime() / 1000.0);
+    }
+
     // prepare series for jobs and workflows so we get a zero value if there is no job
     Map<String, Integer> workflows = new HashMap<>();
     Map<String, Map<String, Integer>> jobs = new HashMap<>();
@@ -27,6 +27,7 @@ import org.opencastproject.job.api.JobImpl;
 import org.opencastproject.security.api.DefaultOrganization;
 import org.opencastproject.security.api.Organization;
 import org.opencastproject.security.api.OrganizationDirectoryService;
+import org.opencastproject.serviceregistry.api.JaxbServiceStatistics;
 import org.opencastproject.serviceregistry.api.ServiceRegistration;
 import org.opencastproject.serviceregistry.api.ServiceRegistrationInMemoryImpl;
 import org.opencastproject.serviceregistry.api.ServiceRegistry;
@@ -78,11 +79,17 @@ public class MetricsExporterTest {
     // mock service registry
     ServiceRegistration serviceRegistration = new ServiceRegistrationInMemoryImpl("service.type", "opencast.org",
         ServiceState.ERROR.name(), false);
+    JaxbServiceStatistics serviceStatistics = new JaxbServiceStatistics(serviceRegistration);
+    serviceStatistics.setRunningJobs(2);
+    serviceStatistics.setQueuedJobs(3);
+    serviceStatistics.setMeanRunTime(1500L);
     ServiceRegistry serviceRegistry = EasyMock.createMock(ServiceRegistry.class);
     EasyMock.expect(serviceRegistry.getCurrentHostLoads()).andReturn(systemLoad).anyTimes();
     EasyMock.expect(serviceRegistry.getActiveJobs()).andReturn(Arrays.asList(job1, job2)).anyTimes();
     EasyMock.expect(serviceRegistry.getServiceRegistrations())
         .andReturn(Collections.singletonList(serviceRegistration)).anyTimes();
+    EasyMock.expect(serviceRegistry.getServiceStatistics())
+        .andReturn(Collections.singletonList(serviceStatistics)).anyTimes();
 
     // prepare organization
     Organization organization = new DefaultOrganization();
@@ -102,6 +109,10 @@ public class MetricsExporterTest {
     // test exporter
     final String body = exporter.metrics().getEntity().toString();
     Assert.assertTrue(body.contains("opencast_job_load_max{host=\"opencast.org\",} 12.3"));
+    Assert.assertTrue(body.contains(
+        "opencast_service_jobs{host=\"opencast.org\",service=\"service.type\",status=\"queued\",} 3.0"));
+    Assert.assertTrue(body.contains(
+        "opencast_service_mean_run_time_seconds{host=\"opencast.org\",service=\"service.type\",} 1.5"));
     Assert.assertTrue(body.contains("opencast_asset_manager_events{organization=\"mh_default_org\",} 5.0"));
   }
 }
@@ -53,6 +53,8 @@ public class OaiPmhServerInfoRemoteImpl extends RemoteBase implements OaiPmhServ
       } catch (IOException e) {
         logger.error("Cannot contact remote service", e);
         chuck(e);
+      } finally {
+        closeConnection(r);
       }
     }
     return false;
@@ -65,6 +67,8 @@ public class OaiPmhServerInfoRemoteImpl extends RemoteBase implements OaiPmhServ
       } catch (IOException e) {
         logger.error("Cannot contact remote service", e);
         return chuck(e);
+      } finally {
+        closeConnection(r);
       }
     }
     throw new RuntimeException("Cannot contact remote service");
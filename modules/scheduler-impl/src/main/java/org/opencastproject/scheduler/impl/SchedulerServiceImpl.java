@@ -58,6 +58,7 @@ import org.opencastproject.mediapackage.MediaPackageException;
 import org.opencastproject.mediapackage.MediaPackageSupport;
 import org.opencastproject.mediapackage.identifier.Id;
 import org.opencastproject.mediapackage.identifier.IdImpl;
+import org.opencastproject.message.broker.api.MessageBarrier;
 import org.opencastproject.message.broker.api.MessageReceiver;
 import org.opencastproject.message.broker.api.MessageSender;
 import org.opencastproject.message.broker.api.scheduler.SchedulerItem;
@@ -1588,6 +1589,9 @@ public class SchedulerServiceImpl extends AbstractIndexProducer implements Sched
         }
       });
     }
+    // The events are added to the index asynchronously by the receiver of the queue
+    awaitMessagesProcessed(logger, index, barrier -> messageSender.sendObjectMessage(destinationId,
+            MessageSender.DestinationType.Queue, new MessageBarrier(barrier)));
   }
 
   @Override
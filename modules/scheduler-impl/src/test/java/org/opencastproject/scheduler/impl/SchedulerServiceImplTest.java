@@ -1547,9 +1547,13 @@ public class SchedulerServiceImplTest {
 
     AbstractSearchIndex index = EasyMock.createMock(AbstractSearchIndex.class);
     EasyMock.expect(index.getIndexName()).andReturn("adminui").anyTimes();
+    // the scheduler waits for its messages to be indexed
+    index.awaitBarrier(EasyMock.anyObject());
+    EasyMock.expectLastCall().once();
     EasyMock.replay(index);
 
     schedSvc.repopulate(index);
+    EasyMock.verify(index);
     assertTrue(schedulerItemsCapture.hasCaptured());
     List<DublinCoreCatalog> dublincoreCatalogs = new ArrayList<>();
     for (SchedulerItemList schedulerItemList : schedulerItemsCapture.getValues()) {
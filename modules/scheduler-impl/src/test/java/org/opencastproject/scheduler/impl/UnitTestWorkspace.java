@@ -21,6 +21,7 @@
 package org.opencastproject.scheduler.impl;
 
 import org.opencastproject.mediapackage.identifier.Id;
+import org.opencastproject.util.Checksum;
 import org.opencastproject.util.FileSupport;
 import org.opencastproject.util.IoSupport;
 import org.opencastproject.util.NotFoundException;
@@ -36,6 +37,8 @@ import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.net.URI;
+import java.util.Collections;
+import java.util.Map;
 import java.util.UUID;
 
 /**
@@ -183,4 +186,14 @@ public class UnitTestWorkspace implements Workspace {
   public String rootDirectory() {
     return null;
   }
+
+  @Override
+  public Checksum getChecksum(URI uri) {
+    return null;
+  }
+
+  @Override
+  public Map<String, Map<String, Long>> getLocalElementSizes() {
+    return Collections.emptyMap();
+  }
 }
@@ -33,6 +33,7 @@ import org.opencastproject.index.rebuild.IndexProducer;
 import org.opencastproject.index.rebuild.IndexRebuildException;
 import org.opencastproject.index.rebuild.IndexRebuildService;
 import org.opencastproject.mediapackage.EName;
+import org.opencastproject.message.broker.api.MessageBarrier;
 import org.opencastproject.message.broker.api.MessageReceiver;
 import org.opencastproject.message.broker.api.MessageSender;
 import org.opencastproject.message.broker.api.series.SeriesItem;
@@ -598,6 +599,9 @@ public class SeriesServiceImpl extends AbstractIndexProducer implements SeriesSe
       logIndexRebuildError(logger, index.getIndexName(), e);
       throw new IndexRebuildException(index.getIndexName(), getService(), e);
     }
+    // The series are added to the index asynchronously by the receiver of the queue
+    awaitMessagesProcessed(logger, index, barrier -> messageSender.sendObjectMessage(destinationId,
+            MessageSender.DestinationType.Queue, new MessageBarrier(barrier)));
   }
 
   @Override
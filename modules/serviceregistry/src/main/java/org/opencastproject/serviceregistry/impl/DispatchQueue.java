@@ -0,0 +1,340 @@
+/**
+ * Licensed to The Apereo Foundation under one or more contributor license
+ * agreements. See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ *
+ * The Apereo Foundation licenses this file to you under the Educational
+ * Community License, Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License. You may obtain a copy of the License
+ * at:
+ *
+ *   http://opensource.org/licenses/ecl2.txt
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ *
+ */
+
+package org.opencastproject.serviceregistry.impl;
+
+import static org.opencastproject.serviceregistry.impl.ServiceRegistryJpaImpl.TYPE_WORKFLOW;
+
+import org.opencastproject.job.api.Job.Status;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+
+/**
+ * In-memory index of the jobs that are waiting to be dispatched by this service registry.
+ * <p>
+ * The queue only holds the few attributes needed to decide in which order jobs are dispatched and whether a whole
+ * group of jobs (same job type and operation) can be skipped. The jobs themselves are loaded from the database only
+ * right before they are dispatched. Until the queue has been synchronized with the database for the first time, all
+ * modifications are ignored, so nodes that never dispatch do not accumulate entries.
+ */
+final class DispatchQueue {
+
+  /** Orders entries the same way the dispatcher always did: regular jobs first, restarted jobs first, then FIFO */
+  static final Comparator<Entry> DISPATCH_ORDER = new Comparator<Entry>() {
+    @Override
+    public int compare(Entry a, Entry b) {
+      if (a.isWorkflow() != b.isWorkflow()) {
+        return a.isWorkflow() ? 1 : -1;
+      }
+      if (a.isRestart() != b.isRestart()) {
+        return a.isRestart() ? -1 : 1;
+      }
+      int byDate = Long.compare(a.getDateCreated(), b.getDateCreated());
+      return byDate != 0 ? byDate : Long.compare(a.getId(), b.getId());
+    }
+  };
+
+  /** All queued entries by job identifier */
+  private final Map<Long, Entry> entries = new HashMap<>();
+
+  /** All queued entries, ordered for dispatching */
+  private final TreeSet<Entry> ordered = new TreeSet<>(DISPATCH_ORDER);
+
+  /** Number of queued entries by job signature (job type and operation) */
+  private final Map<String, Integer> signatures = new HashMap<>();
+
+  /** Incremented on every modification, used to protect local changes during a synchronization */
+  private long generation = 0;
+
+  /** Time of the last synchronization with the database, or -1 if the queue has never been synchronized */
+  private long lastSync = -1;
+
+  /** Whether the dispatcher has been woken up since it last waited */
+  private boolean signalled = false;
+
+  /**
+   * Returns whether the given job status qualifies a dispatchable job for the queue.
+   *
+   * @param status
+   *          the job status
+   * @return <code>true</code> if jobs with this status are waiting to be dispatched
+   */
+  static boolean isQueued(Status status) {
+    return Status.QUEUED.equals(status) || Status.RESTART.equals(status);
+  }
+
+  /**
+   * Builds the signature used to group jobs that share their dispatching fate.
+   *
+   * @param jobType
+   *          the job type
+   * @param operation
+   *          the job operation
+   * @return the job signature
+   */
+  static String signature(String jobType, String operation) {
+    return new StringBuilder(String.valueOf(jobType)).append('@').append(operation).toString();
+  }
+
+  /**
+   * Adds or replaces the entry for a job. The call is ignored until the queue has been synchronized once.
+   *
+   * @param id
+   *          the job identifier
+   * @param jobType
+   *          the job type
+   * @param operation
+   *          the job operation
+   * @param status
+   *          the job status, either {@link Status#QUEUED} or {@link Status#RESTART}
+   * @param dateCreated
+   *          the creation date, may be <code>null</code> for jobs which have just been created
+   */
+  synchronized void offer(long id, String jobType, String operation, Status status, Date dateCreated) {
+    if (lastSync < 0) {
+      return;
+    }
+    generation++;
+    put(new Entry(id, jobType, operation, status, dateCreated, generation));
+  }
+
+  /**
+   * Removes the entry for the given job, if any.
+   *
+   * @param id
+   *          the job identifier
+   * @return <code>true</code> if the job was queued
+   */
+  synchronized boolean remove(long id) {
+    if (lastSync >= 0) {
+      generation++;
+    }
+    Entry entry = entries.remove(id);
+    if (entry == null) {
+      return false;
+    }
+    unindex(entry);
+    return true;
+  }
+
+  /**
+   * Returns the queued entries in dispatching order. The returned list is a copy which can be iterated while the queue
+   * is being modified.
+   *
+   * @return the queued entries
+   */
+  synchronized List<Entry> snapshot() {
+    return new ArrayList<>(ordered);
+  }
+
+  /**
+   * Returns the number of queued jobs with the given signature.
+   *
+   * @param signature
+   *          the job signature
+   * @return the number of queued jobs with this signature
+   */
+  synchronized int count(String signature) {
+    Integer count = signatures.get(signature);
+    return count != null ? count : 0;
+  }
+
+  /** @return the number of queued jobs */
+  synchronized int size() {
+    return entries.size();
+  }
+
+  /**
+   * Returns whether the queue should be synchronized with the database, which is always the case before the first
+   * synchronization.
+   *
+   * @param interval
+   *          the minimum time between two synchronizations in milliseconds
+   * @return <code>true</code> if a synchronization is due
+   */
+  synchronized boolean isSyncDue(long interval) {
+    return lastSync < 0 || System.currentTimeMillis() - lastSync >= interval;
+  }
+
+  /**
+   * Marks the start of a synchronization with the database.
+   *
+   * @return a token to hand to {@link #completeSync(Collection, long)}
+   */
+  synchronized long beginSync() {
+    return generation;
+  }
+
+  /**
+   * Replaces the queue content by the jobs found in the database. Jobs which have been offered locally after
+   * {@link #beginSync()} was called might not be part of the database result yet and are kept.
+   *
+   * @param fromDb
+   *          the queued jobs as found in the database
+   * @param token
+   *          the token returned by {@link #beginSync()}
+   */
+  synchronized void completeSync(Collection<Entry> fromDb, long token) {
+    List<Entry> recent = new ArrayList<>();
+    for (Entry entry : entries.values()) {
+      if (entry.generation > token) {
+        recent.add(entry);
+      }
+    }
+    entries.clear();
+    ordered.clear();
+    signatures.clear();
+    for (Entry entry : fromDb) {
+      // A local modification after the synchronization started might have dequeued this job already. We keep it
+      // anyway: the dispatcher verifies the job status before dispatching and drops stale entries.
+      put(entry);
+    }
+    for (Entry entry : recent) {
+      put(entry);
+    }
+    lastSync = System.currentTimeMillis();
+  }
+
+  /** Forgets all entries and returns to the unsynchronized state. */
+  synchronized void clear() {
+    entries.clear();
+    ordered.clear();
+    signatures.clear();
+    lastSync = -1;
+  }
+
+  /** Wakes up the dispatcher. */
+  synchronized void signal() {
+    signalled = true;
+    notifyAll();
+  }
+
+  /**
+   * Waits until the dispatcher is woken up or the timeout elapses.
+   *
+   * @param timeout
+   *          the maximum time to wait in milliseconds
+   * @return <code>true</code> if the dispatcher has been woken up, <code>false</code> on timeout
+   * @throws InterruptedException
+   *           if the waiting thread is interrupted
+   */
+  synchronized boolean await(long timeout) throws InterruptedException {
+    long deadline = System.currentTimeMillis() + timeout;
+    long remaining = timeout;
+    while (!signalled && remaining > 0) {
+      wait(remaining);
+      remaining = deadline - System.currentTimeMillis();
+    }
+    boolean result = signalled;
+    signalled = false;
+    return result;
+  }
+
+  private void put(Entry entry) {
+    Entry previous = entries.put(entry.getId(), entry);
+    if (previous != null) {
+      unindex(previous);
+    }
+    ordered.add(entry);
+    signatures.merge(entry.getSignature(), 1, Integer::sum);
+  }
+
+  private void unindex(Entry entry) {
+    ordered.remove(entry);
+    Integer count = signatures.get(entry.getSignature());
+    if (count == null || count <= 1) {
+      signatures.remove(entry.getSignature());
+    } else {
+      signatures.put(entry.getSignature(), count - 1);
+    }
+  }
+
+  /** A queued job */
+  static final class Entry {
+
+    private final long id;
+    private final String jobType;
+    private final String operation;
+    private final Status status;
+    private final long dateCreated;
+    private final String signature;
+    private final long generation;
+
+    Entry(long id, String jobType, String operation, Status status, Date dateCreated) {
+      this(id, jobType, operation, status, dateCreated, 0);
+    }
+
+    private Entry(long id, String jobType, String operation, Status status, Date dateCreated, long generation) {
+      this.id = id;
+      this.jobType = jobType;
+      this.operation = operation;
+      this.status = status;
+      this.dateCreated = dateCreated != null ? dateCreated.getTime() : System.currentTimeMillis();
+      this.signature = signature(jobType, operation);
+      this.generation = generation;
+    }
+
+    long getId() {
+      return id;
+    }
+
+    String getJobType() {
+      return jobType;
+    }
+
+    String getOperation() {
+      return operation;
+    }
+
+    Status getStatus() {
+      return status;
+    }
+
+    long getDateCreated() {
+      return dateCreated;
+    }
+
+    String getSignature() {
+      return signature;
+    }
+
+    boolean isWorkflow() {
+      return TYPE_WORKFLOW.equals(jobType);
+    }
+
+    boolean isRestart() {
+      return Status.RESTART.equals(status);
+    }
+
+    @Override
+    public String toString() {
+      return String.format("Queued job {id:%d, signature:%s, status:%s}", id, signature, status);
+    }
+  }
+
+}
@@ -0,0 +1,247 @@
+/**
+ * Licensed to The Apereo Foundation under one or more contributor license
+ * agreements. See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ *
+ * The Apereo Foundation licenses this file to you under the Educational
+ * Community License, Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License. You may obtain a copy of the License
+ * at:
+ *
+ *   http://opensource.org/licenses/ecl2.txt
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ *
+ */
+
+package org.opencastproject.serviceregistry.impl;
+
+import org.opencastproject.job.jpa.JpaJob;
+import org.opencastproject.serviceregistry.api.ServiceRegistration;
+import org.opencastproject.serviceregistry.api.ServiceRegistryException;
+import org.opencastproject.serviceregistry.api.SystemLoad;
+import org.opencastproject.serviceregistry.api.SystemLoad.NodeLoad;
+import org.opencastproject.serviceregistry.impl.jpa.HostElementJpaImpl;
+import org.opencastproject.workspace.api.Workspace;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import javax.persistence.EntityManager;
+import javax.persistence.EntityTransaction;
+import javax.persistence.PersistenceException;
+import javax.persistence.TypedQuery;
+
+/**
+ * Keeps track of the media package elements held on each host and prefers those hosts when dispatching jobs reading
+ * these elements. When run, the elements held in the local workspace are reported.
+ */
+final class InputLocality implements Runnable {
+
+  /** The logging facility */
+  private static final Logger logger = LoggerFactory.getLogger(InputLocality.class);
+
+  /** Matches the media package and element identifiers in the working file repository URIs of job arguments */
+  static final Pattern MEDIAPACKAGE_ELEMENT_URI_PATTERN = Pattern.compile(
+          "/mediapackage/([^/\\s\"'<>?#]+)/([^/\\s\"'<>?#]+)/");
+
+  /** The service registry dispatching the jobs */
+  private final ServiceRegistryJpaImpl registry;
+
+  /**
+   * Creates the locality tracking of the given service registry.
+   *
+   * @param registry
+   *          the service registry
+   */
+  InputLocality(ServiceRegistryJpaImpl registry) {
+    this.registry = registry;
+  }
+
+  /**
+   * Reports the media package elements held in the local workspace.
+   *
+   * @see java.lang.Runnable#run()
+   */
+  @Override
+  public void run() {
+    Workspace ws = registry.workspace;
+    if (ws == null) {
+      return;
+    }
+    try {
+      updateHostElements(registry.hostName, ws.getLocalElementSizes());
+    } catch (Throwable t) {
+      logger.warn("Error reporting the workspace contents of {}", registry.hostName, t);
+    }
+  }
+
+  /**
+   * Reorders the candidate services of a job so that hosts already holding the job's input elements come first. Each
+   * host is scored by the share of input bytes it holds locally, weighted against its load factor by the dispatch
+   * locality weight. Services with equal scores keep their order.
+   *
+   * @param em
+   *          the entity manager
+   * @param job
+   *          the job to dispatch
+   * @param services
+   *          the candidate services, ordered by load
+   * @param systemLoad
+   *          the current load by host
+   * @return the candidate services, ordered by score
+   */
+  List<ServiceRegistration> sortByLocality(EntityManager em, JpaJob job, List<ServiceRegistration> services,
+          SystemLoad systemLoad) {
+    final Map<String, Set<String>> inputs = getInputElements(job.getArguments());
+    if (inputs.isEmpty()) {
+      return services;
+    }
+
+    final Map<String, Long> localBytes = new HashMap<>();
+    final TypedQuery<HostElementJpaImpl> query = em.createNamedQuery("HostElement.byMediaPackages",
+            HostElementJpaImpl.class);
+    query.setParameter("mediaPackages", inputs.keySet());
+    for (HostElementJpaImpl element : query.getResultList()) {
+      if (inputs.get(element.getMediaPackage()).contains(element.getElement())) {
+        localBytes.merge(element.getHost(), element.getSize(), Long::sum);
+      }
+    }
+    if (localBytes.isEmpty()) {
+      return services;
+    }
+
+    final float weight = registry.dispatchLocalityWeight;
+    final double maxLocalBytes = Collections.max(localBytes.values());
+    final Map<String, Double> scores = new HashMap<>();
+    for (ServiceRegistration service : services) {
+      final double locality = localBytes.getOrDefault(service.getHost(), 0L) / maxLocalBytes;
+      final NodeLoad load = systemLoad.get(service.getHost());
+      final double loadFactor = load != null ? load.getLoadFactor() : 0.0;
+      scores.put(service.getHost(), weight * locality - (1 - weight) * loadFactor);
+    }
+
+    final List<ServiceRegistration> sorted = new ArrayList<>(services);
+    sorted.sort(Comparator.comparingDouble((ServiceRegistration service) -> scores.get(service.getHost())).reversed());
+    logger.debug("Candidate hosts for {} by locality: {}", job, scores);
+    return sorted;
+  }
+
+  /**
+   * Extracts the media package elements of the working file repository referenced by job arguments.
+   *
+   * @param arguments
+   *          the job arguments
+   * @return the element identifiers by media package identifier
+   */
+  static Map<String, Set<String>> getInputElements(List<String> arguments) {
+    final Map<String, Set<String>> elements = new HashMap<>();
+    if (arguments == null) {
+      return elements;
+    }
+    for (String argument : arguments) {
+      if (argument == null) {
+        continue;
+      }
+      final Matcher matcher = MEDIAPACKAGE_ELEMENT_URI_PATTERN.matcher(argument);
+      while (matcher.find()) {
+        elements.computeIfAbsent(matcher.group(1), id -> new HashSet<>()).add(matcher.group(2));
+      }
+    }
+    return elements;
+  }
+
+  /**
+   * Replaces the record of media package elements held on a host.
+   *
+   * @param host
+   *          the host's base URL
+   * @param elementSizes
+   *          the number of bytes held on the host, by media package identifier and element identifier
+   * @throws ServiceRegistryException
+   *           if there is a problem storing the record
+   */
+  void updateHostElements(String host, Map<String, Map<String, Long>> elementSizes)
+          throws ServiceRegistryException {
+    EntityManager em = null;
+    EntityTransaction tx = null;
+    int added = 0;
+    int removed = 0;
+    try {
+      em = registry.emf.createEntityManager();
+      tx = em.getTransaction();
+      tx.begin();
+      final Map<String, Map<String, Long>> remaining = new HashMap<>();
+      elementSizes.forEach((mediaPackage, sizes) -> remaining.put(mediaPackage, new HashMap<>(sizes)));
+      for (HostElementJpaImpl element : em.createNamedQuery("HostElement.byHost", HostElementJpaImpl.class)
+              .setParameter("host", host).getResultList()) {
+        final Map<String, Long> sizes = remaining.get(element.getMediaPackage());
+        final Long size = sizes != null ? sizes.remove(element.getElement()) : null;
+        if (size == null) {
+          em.remove(element);
+          removed++;
+        } else if (size != element.getSize()) {
+          element.setSize(size);
+        }
+      }
+      for (Map.Entry<String, Map<String, Long>> mediaPackage : remaining.entrySet()) {
+        for (Map.Entry<String, Long> element : mediaPackage.getValue().entrySet()) {
+          em.persist(new HostElementJpaImpl(host, mediaPackage.getKey(), element.getKey(), element.getValue()));
+          added++;
+        }
+      }
+      tx.commit();
+    } catch (PersistenceException e) {
+      throw new ServiceRegistryException(e);
+    } finally {
+      if (tx != null && tx.isActive()) {
+        tx.rollback();
+      }
+      if (em != null)
+        em.close();
+    }
+    logger.debug("Updated the elements held on {}: {} added, {} removed", host, added, removed);
+  }
+
+  /**
+   * Returns the hosts holding a media package element.
+   *
+   * @param mediaPackageId
+   *          the media package identifier
+   * @param elementId
+   *          the element identifier
+   * @return the base URLs of the hosts holding the element
+   * @throws ServiceRegistryException
+   *           if there is a problem reading the record
+   */
+  List<String> getHostsHoldingElement(String mediaPackageId, String elementId) throws ServiceRegistryException {
+    EntityManager em = null;
+    try {
+      em = registry.emf.createEntityManager();
+      return em.createNamedQuery("HostElement.hostsByElement", String.class)
+              .setParameter("mediaPackage", mediaPackageId).setParameter("element", elementId).getResultList();
+    } catch (PersistenceException e) {
+      throw new ServiceRegistryException(e);
+    } finally {
+      if (em != null)
+        em.close();
+    }
+  }
+
+}
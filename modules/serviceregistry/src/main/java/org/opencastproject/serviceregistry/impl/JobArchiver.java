@@ -0,0 +1,197 @@
+/**
+ * Licensed to The Apereo Foundation under one or more contributor license
+ * agreements. See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ *
+ * The Apereo Foundation licenses this file to you under the Educational
+ * Community License, Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License. You may obtain a copy of the License
+ * at:
+ *
+ *   http://opensource.org/licenses/ecl2.txt
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ *
+ */
+
+package org.opencastproject.serviceregistry.impl;
+
+import org.opencastproject.job.api.Job;
+import org.opencastproject.job.api.Job.Status;
+import org.opencastproject.job.jpa.JpaArchivedJob;
+import org.opencastproject.job.jpa.JpaJob;
+import org.opencastproject.job.jpa.JpaJobPayload;
+import org.opencastproject.serviceregistry.api.ServiceRegistryException;
+
+import org.apache.commons.lang3.time.DateUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+import javax.persistence.EntityManager;
+import javax.persistence.EntityTransaction;
+import javax.persistence.PersistenceException;
+import javax.persistence.TypedQuery;
+
+/**
+ * Moves old job trees from the job table to the job archive. When run, all job trees older than the configured job
+ * archive age are archived, batch by batch.
+ */
+final class JobArchiver implements Runnable {
+
+  /** The logging facility */
+  private static final Logger logger = LoggerFactory.getLogger(JobArchiver.class);
+
+  /** The job statuses after which jobs can be archived */
+  static final List<Integer> ARCHIVABLE_JOB_STATUSES = Arrays.asList(Status.CANCELLED.ordinal(),
+          Status.DELETED.ordinal(), Status.FAILED.ordinal(), Status.FINISHED.ordinal());
+
+  /** The service registry whose jobs are archived */
+  private final ServiceRegistryJpaImpl registry;
+
+  /**
+   * Creates an archiver for the jobs of the given service registry.
+   *
+   * @param registry
+   *          the service registry
+   */
+  JobArchiver(ServiceRegistryJpaImpl registry) {
+    this.registry = registry;
+  }
+
+  /**
+   * {@inheritDoc}
+   *
+   * @see java.lang.Runnable#run()
+   */
+  @Override
+  public void run() {
+    Date terminatedBefore = DateUtils.addDays(new Date(), -registry.jobArchiveAge);
+    int batchSize = registry.jobArchiveBatchSize;
+    int total = 0;
+    try {
+      int archived;
+      do {
+        archived = archive(terminatedBefore, batchSize);
+        total += archived;
+      } while (archived == batchSize && !Thread.currentThread().isInterrupted());
+    } catch (Throwable t) {
+      logger.warn("Error archiving jobs terminated before {}", terminatedBefore, t);
+    }
+    if (total > 0) {
+      logger.info("Archived {} job trees terminated before {}", total, terminatedBefore);
+    }
+  }
+
+  /**
+   * Moves job trees which terminated before the given date from the job table to the job archive. A job tree is only
+   * archived once its root job and all of its descendants terminated, so that jobs in the job table never refer to
+   * archived jobs.
+   *
+   * @param terminatedBefore
+   *          the date before which the root jobs must have terminated
+   * @param limit
+   *          the maximum number of job trees to archive
+   * @return the number of archived job trees
+   * @throws ServiceRegistryException
+   *           if there is a problem archiving the jobs
+   */
+  int archive(Date terminatedBefore, int limit) throws ServiceRegistryException {
+    EntityManager em = null;
+    EntityTransaction tx = null;
+    List<Long> archived = new ArrayList<>();
+    List<JobStatisticsCache.Sample> removed = new ArrayList<>();
+    int trees = 0;
+    try {
+      em = registry.emf.createEntityManager();
+      tx = em.getTransaction();
+      tx.begin();
+      TypedQuery<JpaJob> query = em.createNamedQuery("Job.archivable", JpaJob.class);
+      query.setParameter("statuses", ARCHIVABLE_JOB_STATUSES);
+      query.setParameter("date", terminatedBefore);
+      query.setMaxResults(limit);
+      for (JpaJob rootJob : query.getResultList()) {
+        List<JpaJob> tree = new ArrayList<>();
+        tree.add(rootJob);
+        tree.addAll(em.createNamedQuery("Job.root.children", JpaJob.class).setParameter("id", rootJob.getId())
+                .getResultList());
+        // Read the long payloads of the whole tree at once, and remove them from the payload table
+        List<Long> storedIds = tree.stream().filter(JpaJob::isPayloadStored).map(JpaJob::getId)
+                .collect(Collectors.toList());
+        Map<Long, String> storedPayloads = JpaJobPayload.findAll(em, storedIds);
+        JpaJobPayload.delete(em, storedIds);
+        for (JpaJob job : tree) {
+          Job archivedJob = job.toJob();
+          if (job.isPayloadStored()) {
+            archivedJob.setPayload(storedPayloads.get(job.getId()));
+          }
+          em.persist(JpaArchivedJob.from(archivedJob));
+        }
+        // Remove the youngest jobs first, so no job is removed while other jobs still refer to it
+        for (int i = tree.size() - 1; i >= 0; i--) {
+          em.remove(tree.get(i));
+          archived.add(tree.get(i).getId());
+          removed.add(JobStatisticsCache.Sample.of(tree.get(i)));
+        }
+        trees++;
+      }
+      tx.commit();
+    } catch (PersistenceException e) {
+      throw new ServiceRegistryException(e);
+    } finally {
+      if (tx != null && tx.isActive()) {
+        tx.rollback();
+      }
+      if (em != null)
+        em.close();
+    }
+    for (long id : archived) {
+      registry.removeFromLoadCache(id);
+    }
+    for (JobStatisticsCache.Sample sample : removed) {
+      registry.jobStatistics.update(sample, null);
+    }
+    if (trees > 0) {
+      logger.debug("Archived {} jobs of {} job trees", archived.size(), trees);
+    }
+    return trees;
+  }
+
+  /**
+   * Removes an archived job and its archived descendants.
+   *
+   * @param em
+   *          the entity manager, with an active transaction
+   * @param jobId
+   *          the job identifier
+   * @return <code>true</code> if the job was found in the job archive
+   */
+  boolean removeArchivedJob(EntityManager em, long jobId) {
+    JpaArchivedJob archivedJob = em.find(JpaArchivedJob.class, jobId);
+    if (archivedJob == null) {
+      return false;
+    }
+    List<JpaArchivedJob> children = archivedJob.getRootJobId() == null
+            ? em.createNamedQuery("ArchivedJob.root.children", JpaArchivedJob.class).setParameter("id", jobId)
+                    .getResultList()
+            : registry.getArchivedChildren(em, jobId);
+    for (JpaArchivedJob child : children) {
+      em.remove(child);
+    }
+    em.remove(archivedJob);
+    logger.debug("Removed archived job {} and {} archived child jobs", jobId, children.size());
+    return true;
+  }
+
+}
@@ -0,0 +1,283 @@
+/**
+ * Licensed to The Apereo Foundation under one or more contributor license
+ * agreements. See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ *
+ * The Apereo Foundation licenses this file to you under the Educational
+ * Community License, Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License. You may obtain a copy of the License
+ * at:
+ *
+ *   http://opensource.org/licenses/ecl2.txt
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ *
+ */
+
+package org.opencastproject.serviceregistry.impl;
+
+import org.opencastproject.job.api.Job;
+import org.opencastproject.job.api.Job.Status;
+import org.opencastproject.job.jpa.JpaArchivedJob;
+import org.opencastproject.job.jpa.JpaJob;
+import org.opencastproject.serviceregistry.api.JobCompletionTracker;
+import org.opencastproject.serviceregistry.api.ServiceRegistryException;
+import org.opencastproject.util.UrlSupport;
+
+import org.apache.http.HttpResponse;
+import org.apache.http.HttpStatus;
+import org.apache.http.client.methods.HttpPost;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+
+import javax.persistence.EntityManager;
+import javax.persistence.PersistenceException;
+import javax.persistence.Query;
+
+/**
+ * Completes the callers waiting for jobs to terminate.
+ * <p>
+ * Jobs terminating on this node complete the local waiters right away and are announced to the node processing the
+ * parent job, which is where a job is usually waited for. When run, the notifier checks on all awaited jobs, which is
+ * the safety net for lost announcements.
+ */
+final class JobCompletionNotifier implements Runnable {
+
+  /** The logging facility */
+  private static final Logger logger = LoggerFactory.getLogger(JobCompletionNotifier.class);
+
+  /** The service registry whose jobs are awaited */
+  private final ServiceRegistryJpaImpl registry;
+
+  /** The callers waiting for jobs to terminate */
+  private final JobCompletionTracker tracker = new JobCompletionTracker();
+
+  /** Sends termination notifications to the nodes waiting for jobs */
+  private volatile ExecutorService executor = null;
+
+  /**
+   * Creates a notifier for the jobs of the given service registry.
+   *
+   * @param registry
+   *          the service registry
+   */
+  JobCompletionNotifier(ServiceRegistryJpaImpl registry) {
+    this.registry = registry;
+  }
+
+  /** Starts sending termination notifications to other nodes. */
+  synchronized void start() {
+    if (executor == null || executor.isShutdown()) {
+      executor = Executors.newSingleThreadExecutor();
+    }
+  }
+
+  /** Stops sending termination notifications to other nodes. */
+  synchronized void stop() {
+    if (executor != null) {
+      executor.shutdownNow();
+    }
+  }
+
+  /**
+   * Waits for the given jobs to terminate.
+   *
+   * @param jobIds
+   *          the identifiers of the jobs to wait for
+   * @return the future completed with the terminated jobs
+   * @throws ServiceRegistryException
+   *           if the job status could not be read
+   */
+  CompletableFuture<List<Job>> await(List<Long> jobIds) throws ServiceRegistryException {
+    CompletableFuture<List<Job>> future = tracker.await(jobIds);
+    // The jobs might have terminated before we started listening
+    try {
+      checkAwaitedJobs(jobIds);
+    } catch (PersistenceException e) {
+      future.cancel(false);
+      throw new ServiceRegistryException(e);
+    }
+    return future;
+  }
+
+  /**
+   * Called when another node announces the termination of a job. The announcement only triggers a look at the job, the
+   * job status is always taken from the database.
+   *
+   * @param jobId
+   *          the identifier of the terminated job
+   * @throws ServiceRegistryException
+   *           if the job status could not be read
+   */
+  void jobTerminated(long jobId) throws ServiceRegistryException {
+    if (!tracker.isAwaited(jobId)) {
+      logger.trace("Ignoring termination of {}, nobody is waiting for it", jobId);
+      return;
+    }
+    try {
+      checkAwaitedJobs(Collections.singletonList(jobId));
+    } catch (PersistenceException e) {
+      throw new ServiceRegistryException(e);
+    }
+  }
+
+  /**
+   * Completes the waiters of a job which has been removed.
+   *
+   * @param jobId
+   *          the identifier of the removed job
+   */
+  void jobRemoved(long jobId) {
+    tracker.missing(jobId);
+  }
+
+  /**
+   * Checks on the jobs somebody is waiting for, in case a termination notification got lost.
+   *
+   * @see java.lang.Runnable#run()
+   */
+  @Override
+  public void run() {
+    Set<Long> awaited = tracker.getPending();
+    if (awaited.isEmpty()) {
+      return;
+    }
+    logger.trace("Checking the status of {} awaited jobs", awaited.size());
+    try {
+      checkAwaitedJobs(awaited);
+    } catch (Throwable t) {
+      logger.warn("Error checking the status of awaited jobs", t);
+    }
+  }
+
+  /**
+   * Looks up the status of the given jobs and completes the waiters of those which terminated or disappeared.
+   *
+   * @param jobIds
+   *          the identifiers of the awaited jobs
+   */
+  private void checkAwaitedJobs(Collection<Long> jobIds) {
+    if (jobIds.isEmpty()) {
+      return;
+    }
+    Set<Long> missing = new HashSet<>(jobIds);
+    List<Long> terminated = new ArrayList<>();
+    EntityManager em = null;
+    try {
+      em = registry.emf.createEntityManager();
+      Query query = em.createNamedQuery("Job.status.ids");
+      query.setParameter("jobids", jobIds);
+      for (Object result : query.getResultList()) {
+        Object[] row = (Object[]) result;
+        long id = ((Number) row[0]).longValue();
+        missing.remove(id);
+        if (JobCompletionTracker.isTerminal(Status.values()[((Number) row[1]).intValue()])) {
+          terminated.add(id);
+        }
+      }
+      for (long id : terminated) {
+        JpaJob job = em.find(JpaJob.class, id);
+        if (job != null) {
+          tracker.update(job.toJob());
+        }
+      }
+      for (Iterator<Long> ids = missing.iterator(); ids.hasNext();) {
+        JpaArchivedJob archivedJob = em.find(JpaArchivedJob.class, ids.next());
+        if (archivedJob != null) {
+          tracker.update(archivedJob.toJob());
+          ids.remove();
+        }
+      }
+    } finally {
+      if (em != null)
+        em.close();
+    }
+    for (long id : missing) {
+      tracker.missing(id);
+    }
+  }
+
+  /**
+   * Completes the local waiters of a job which reached a terminal state and announces the termination to the node
+   * processing the parent job, which is where the job is usually waited for.
+   *
+   * @param job
+   *          the job as persisted, attached to an entity manager
+   */
+  void announceTermination(JpaJob job) {
+    if (!JobCompletionTracker.isTerminal(job.getStatus())) {
+      return;
+    }
+    if (tracker.isAwaited(job.getId())) {
+      tracker.update(job.toJob());
+    }
+    JpaJob parentJob = job.getParentJob();
+    ExecutorService notifications = executor;
+    if (parentJob == null || parentJob.getProcessorServiceRegistration() == null || notifications == null) {
+      return;
+    }
+    final String host = parentJob.getProcessorServiceRegistration().getHost();
+    if (host == null || host.equals(registry.hostName)) {
+      return;
+    }
+    final long jobId = job.getId();
+    try {
+      notifications.execute(new Runnable() {
+        @Override
+        public void run() {
+          sendTerminationNotification(host, jobId);
+        }
+      });
+    } catch (RejectedExecutionException e) {
+      logger.debug("Not announcing termination of job {} to {}, the service registry is shutting down", jobId, host);
+    }
+  }
+
+  /**
+   * Tells a node that a job terminated. Lost notifications are not a problem since the awaited jobs are checked
+   * periodically anyway.
+   *
+   * @param host
+   *          the node to notify
+   * @param jobId
+   *          the identifier of the terminated job
+   */
+  private void sendTerminationNotification(String host, long jobId) {
+    HttpPost post = new HttpPost(UrlSupport.concat(host, "services", "job", Long.toString(jobId), "terminated"));
+    HttpResponse response = null;
+    try {
+      response = registry.client.execute(post);
+      int status = response.getStatusLine().getStatusCode();
+      if (status != HttpStatus.SC_NO_CONTENT) {
+        logger.debug("Host {} responded with {} to the termination notification of job {}", host, status, jobId);
+      }
+    } catch (Exception e) {
+      logger.debug("Unable to notify {} about the termination of job {}: {}", host, jobId, e.getMessage());
+    } finally {
+      try {
+        registry.client.close(response);
+      } catch (IOException e) {
+        // ignore
+      }
+    }
+  }
+
+}
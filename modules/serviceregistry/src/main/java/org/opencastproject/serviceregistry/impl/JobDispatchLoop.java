@@ -0,0 +1,74 @@
+/**
+ * Licensed to The Apereo Foundation under one or more contributor license
+ * agreements. See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ *
+ * The Apereo Foundation licenses this file to you under the Educational
+ * Community License, Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License. You may obtain a copy of the License
+ * at:
+ *
+ *   http://opensource.org/licenses/ecl2.txt
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ *
+ */
+
+package org.opencastproject.serviceregistry.impl;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Runs the {@link JobDispatcher} whenever the dispatch queue signals new work or freed capacity, and at least once
+ * per dispatch interval.
+ */
+final class JobDispatchLoop implements Runnable {
+
+  /** The logging facility */
+  private static final Logger logger = LoggerFactory.getLogger(JobDispatchLoop.class);
+
+  /** The service registry whose jobs are dispatched */
+  private final ServiceRegistryJpaImpl registry;
+
+  /** Whether the loop has been asked to stop, the dispatcher may swallow interrupts */
+  private volatile boolean stopped = false;
+
+  /**
+   * Creates a dispatch loop for the queued jobs of the given service registry.
+   *
+   * @param registry
+   *          the service registry
+   */
+  JobDispatchLoop(ServiceRegistryJpaImpl registry) {
+    this.registry = registry;
+  }
+
+  /** Asks the loop to stop after the current dispatching run. */
+  void stop() {
+    stopped = true;
+    registry.dispatchQueue.signal();
+  }
+
+  @Override
+  public void run() {
+    JobDispatcher dispatcher = new JobDispatcher(registry);
+    try {
+      while (!stopped && !Thread.currentThread().isInterrupted()) {
+        dispatcher.run();
+        if (!stopped) {
+          registry.dispatchQueue.await(registry.dispatchSyncInterval);
+        }
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+    logger.debug("Job dispatching has been stopped");
+  }
+
+}
@@ -0,0 +1,466 @@
+/**
+ * Licensed to The Apereo Foundation under one or more contributor license
+ * agreements. See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ *
+ * The Apereo Foundation licenses this file to you under the Educational
+ * Community License, Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License. You may obtain a copy of the License
+ * at:
+ *
+ *   http://opensource.org/licenses/ecl2.txt
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ *
+ */
+
+package org.opencastproject.serviceregistry.impl;
+
+import static com.entwinemedia.fn.Stream.$;
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.opencastproject.security.api.SecurityConstants.ORGANIZATION_HEADER;
+import static org.opencastproject.security.api.SecurityConstants.USER_HEADER;
+import static org.opencastproject.serviceregistry.impl.ServiceRegistryJpaImpl.DEFAULT_DISPATCH_JOBS_LIMIT;
+import static org.opencastproject.serviceregistry.impl.ServiceRegistryJpaImpl.START_WORKFLOW;
+import static org.opencastproject.serviceregistry.impl.ServiceRegistryJpaImpl.TYPE_WORKFLOW;
+
+import org.opencastproject.job.api.Job;
+import org.opencastproject.job.api.Job.Status;
+import org.opencastproject.job.jpa.JpaJob;
+import org.opencastproject.security.api.Organization;
+import org.opencastproject.security.api.TrustedHttpClientException;
+import org.opencastproject.security.api.User;
+import org.opencastproject.serviceregistry.api.HostRegistration;
+import org.opencastproject.serviceregistry.api.ServiceRegistration;
+import org.opencastproject.serviceregistry.api.ServiceRegistryException;
+import org.opencastproject.serviceregistry.api.SystemLoad;
+import org.opencastproject.serviceregistry.impl.jpa.ServiceRegistrationJpaImpl;
+import org.opencastproject.util.NotFoundException;
+import org.opencastproject.util.UrlSupport;
+
+import com.entwinemedia.fn.Fn;
+import com.entwinemedia.fn.Fn2;
+
+import org.apache.commons.io.IOUtils;
+import org.apache.http.HttpResponse;
+import org.apache.http.HttpStatus;
+import org.apache.http.client.entity.UrlEncodedFormEntity;
+import org.apache.http.client.methods.HttpPost;
+import org.apache.http.message.BasicNameValuePair;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import javax.persistence.EntityManager;
+
+/**
+ * This dispatcher implementation will check for jobs in the QUEUED {@link Status}. If
+ * new jobs are found, the dispatcher will attempt to dispatch each job to the least loaded service.
+ * <p>
+ * The jobs to dispatch are taken from the in-memory {@link DispatchQueue}, which is synchronized with the database
+ * once per dispatch interval. Once a job of a given type and operation could not be dispatched, the remaining jobs
+ * with the same signature are skipped without being loaded from the database.
+ */
+final class JobDispatcher implements Runnable {
+
+  /** The logging facility */
+  private static final Logger logger = LoggerFactory.getLogger(JobDispatcher.class);
+
+  /** The service registry whose jobs are dispatched */
+  private final ServiceRegistryJpaImpl registry;
+
+  /** A set with job signatures that cannot be dispatched in each interation */
+  private Set<String> undispatchableJobTypes = null;
+
+  /**
+   * Creates a dispatcher for the queued jobs of the given service registry.
+   *
+   * @param registry
+   *          the service registry
+   */
+  JobDispatcher(ServiceRegistryJpaImpl registry) {
+    this.registry = registry;
+  }
+
+  /**
+   * {@inheritDoc}
+   *
+   * @see java.lang.Thread#run()
+   */
+  @Override
+  public void run() {
+
+    logger.debug("Starting job dispatching");
+
+    undispatchableJobTypes = new HashSet<>();
+    EntityManager em = null;
+    try {
+      em = registry.emf.createEntityManager();
+
+      if (!registry.dispatchPriorityList.isEmpty()) {
+        logger.trace("Checking for outdated jobs in dispatchPriorityList's '{}' jobs",
+                registry.dispatchPriorityList.size());
+        // Remove outdated jobs from priority list
+        List<Long> jobIds = registry.getDispatchableJobsWithIdFilter(em, registry.dispatchPriorityList.keySet());
+        for (Long jobId : new HashSet<>(registry.dispatchPriorityList.keySet())) {
+          if (!jobIds.contains(jobId)) {
+            logger.debug("Removing outdated dispatchPriorityList job '{}'", jobId);
+            registry.dispatchPriorityList.remove(jobId);
+          }
+        }
+      }
+
+      if (registry.dispatchQueue.isSyncDue(registry.dispatchSyncInterval)) {
+        registry.synchronizeDispatchQueue(em);
+      }
+
+      // Restarted jobs come first, workflow jobs last (see DispatchQueue.DISPATCH_ORDER)
+      List<DispatchQueue.Entry> queuedJobs = registry.dispatchQueue.snapshot();
+      if (queuedJobs.isEmpty()) {
+        return;
+      }
+
+      // Read the host loads and registrations once per run, the loads are updated locally as jobs are dispatched
+      SystemLoad systemLoad = registry.getHostLoads(em);
+      List<ServiceRegistration> services = registry.getServiceRegistrations(em);
+      List<HostRegistration> hosts = registry.getHostRegistrations(em);
+
+      int next = 0;
+      while (next < queuedJobs.size()) {
+        List<Long> jobIds = new ArrayList<>(DEFAULT_DISPATCH_JOBS_LIMIT);
+        while (next < queuedJobs.size() && jobIds.size() < DEFAULT_DISPATCH_JOBS_LIMIT) {
+          DispatchQueue.Entry entry = queuedJobs.get(next++);
+          if (undispatchableJobTypes.contains(entry.getSignature())
+                  && !registry.dispatchPriorityList.containsKey(entry.getId())) {
+            continue;
+          }
+          jobIds.add(entry.getId());
+        }
+
+        List<JpaJob> dispatchableJobs = registry.getQueuedJobs(em, jobIds);
+        if (!dispatchableJobs.isEmpty())
+          dispatchDispatchableJobs(em, dispatchableJobs, systemLoad, services, hosts);
+      }
+
+    } catch (Throwable t) {
+      logger.warn("Error dispatching jobs", t);
+    } finally {
+      undispatchableJobTypes = null;
+      if (em != null)
+        em.close();
+      logger.debug("Finished job dispatching");
+    }
+  }
+
+  /**
+   * Dispatch the given jobs.
+   *
+   * @param em the entity manager
+   * @param jobsToDispatch list with dispatchable jobs to dispatch
+   * @param systemLoad the current load by host, updated with every dispatched job
+   * @param services all service registrations
+   * @param allHosts all host registrations
+   */
+  private void dispatchDispatchableJobs(EntityManager em, List<JpaJob> jobsToDispatch, SystemLoad systemLoad,
+          List<ServiceRegistration> services, List<HostRegistration> allHosts) {
+    for (JpaJob job : jobsToDispatch) {
+
+      // Remember the job type
+      String jobType = job.getJobType();
+
+      // Skip jobs that we already know can't be dispatched except of jobs in the priority list
+      String jobSignature = DispatchQueue.signature(jobType, job.getOperation());
+      if (undispatchableJobTypes.contains(jobSignature)
+              && !registry.dispatchPriorityList.keySet().contains(job.getId())) {
+        logger.trace("Skipping dispatching of {} with type '{}' for this round of dispatching", job,
+                jobType);
+        continue;
+      }
+
+      // Set the job's user and organization prior to dispatching
+      String creator = job.getCreator();
+      String creatorOrganization = job.getOrganization();
+
+      // Try to load the organization.
+      Organization organization = null;
+      try {
+        organization = registry.organizationDirectoryService.getOrganization(creatorOrganization);
+        registry.securityService.setOrganization(organization);
+      } catch (NotFoundException e) {
+        logger.debug("Skipping dispatching of job for non-existing organization '{}'", creatorOrganization);
+        continue;
+      }
+
+      // Try to load the user
+      User user = registry.userDirectoryService.loadUser(creator);
+      if (user == null) {
+        logger.warn("Unable to dispatch {}: creator '{}' is not available", job, creator);
+        continue;
+      }
+      registry.securityService.setUser(user);
+
+      // Start dispatching
+      try {
+        List<HostRegistration> hosts = $(allHosts).filter(filterOutPriorityHosts._2(job.getId())).toList();
+        List<ServiceRegistration> candidateServices = null;
+
+        // Depending on whether this running job is trying to reach out to other services or whether this is an
+        // attempt to execute the next operation in a workflow, choose either from a limited or from the full list
+        // of services
+        Job parentJob = null;
+        try {
+          if (job.getParentJob() != null)
+            parentJob = registry.getJob(job.getParentJob().getId());
+        } catch (NotFoundException e) {
+          // That's ok
+        }
+
+        // When a job A starts a series of child jobs, then those child jobs should only be dispatched at the
+        // same time if there is processing capacity available.
+        boolean parentHasRunningChildren = false;
+        if (parentJob != null) {
+          for (Job child : registry.getChildJobs(parentJob.getId())) {
+            if (Status.RUNNING.equals(child.getStatus())) {
+              parentHasRunningChildren = true;
+              break;
+            }
+          }
+        }
+
+        // If this is a root job (a new workflow or a new workflow operation), then only dispatch if there is
+        // capacity, i. e. the workflow service is ok dispatching the next workflow or the next workflow operation.
+        if (parentJob == null || TYPE_WORKFLOW.equals(jobType) || parentHasRunningChildren) {
+          logger.trace("Using available capacity only for dispatching of {} to a service of type '{}'", job,
+                  jobType);
+          candidateServices = registry.getServiceRegistrationsWithCapacity(jobType, services, hosts, systemLoad);
+        } else {
+          logger.trace("Using full list of services for dispatching of {} to a service of type '{}'", job, jobType);
+          candidateServices = registry.getServiceRegistrationsByLoad(jobType, services, hosts, systemLoad);
+        }
+
+        // Prefer hosts which don't need to download the job's input first
+        if (registry.dispatchLocalityWeight > 0.0f && candidateServices.size() > 1 && !TYPE_WORKFLOW.equals(jobType)) {
+          candidateServices = registry.inputLocality.sortByLocality(em, job, candidateServices, systemLoad);
+        }
+
+        // Try to dispatch the job
+        String hostAcceptingJob = null;
+        try {
+          hostAcceptingJob = dispatchJob(em, job, candidateServices);
+          try {
+            systemLoad.updateNodeLoad(hostAcceptingJob, job.getJobLoad());
+          } catch (NotFoundException e) {
+            logger.info("Host {} not found in load list, cannot dispatch {} to it", hostAcceptingJob, job);
+          }
+
+          registry.dispatchPriorityList.remove(job.getId());
+        } catch (ServiceUnavailableException e) {
+          logger.debug("Jobs of type {} currently cannot be dispatched", job.getOperation());
+          // Don't mark workflow jobs as undispatchable to not impact worklfow operations
+          if (!TYPE_WORKFLOW.equals(jobType))
+            undispatchableJobTypes.add(jobSignature);
+          continue;
+        } catch (UndispatchableJobException e) {
+          logger.debug("{} currently cannot be dispatched", job);
+          continue;
+        }
+
+        logger.debug("{} dispatched to {}", job, hostAcceptingJob);
+      } catch (ServiceRegistryException e) {
+        Throwable cause = (e.getCause() != null) ? e.getCause() : e;
+        logger.error("Error dispatching {}: {}", job, cause);
+      } finally {
+        registry.securityService.setUser(null);
+        registry.securityService.setOrganization(null);
+      }
+    }
+  }
+
+  /**
+   * Dispatches the job to the least loaded service that will accept the job, or throws a
+   * <code>ServiceUnavailableException</code> if there is no such service.
+   *
+   * @param em
+   *          the current entity manager
+   * @param job
+   *          the job to dispatch
+   * @param services
+   *          a list of service registrations
+   * @return the host that accepted the dispatched job, or <code>null</code> if no services took the job.
+   * @throws ServiceRegistryException
+   *           if the service registrations are unavailable
+   * @throws ServiceUnavailableException
+   *           if no service is available or if all available services refuse to take on more work
+   * @throws UndispatchableJobException
+   *           if the current job cannot be processed
+   */
+  String dispatchJob(EntityManager em, JpaJob job, List<ServiceRegistration> services)
+          throws ServiceRegistryException, ServiceUnavailableException, UndispatchableJobException {
+
+    if (services.size() == 0) {
+      logger.debug("No service is currently available to handle jobs of type '" + job.getJobType() + "'");
+      throw new ServiceUnavailableException("No service of type " + job.getJobType() + " available");
+    }
+
+    // Try the service registrations, after the first one finished, we quit;
+    job.setStatus(Status.DISPATCHING);
+
+    boolean triedDispatching = false;
+
+    boolean jobLoadExceedsMaximumLoads = false;
+    final Float highestMaxLoad = $(services).map(toHostRegistration).map(toMaxLoad).sort(sortFloatValuesDesc).head2();
+    if (job.getJobLoad() > highestMaxLoad) {
+      // None of the available hosts is able to accept the job because the largest max load value is less than this job's load value
+      jobLoadExceedsMaximumLoads = true;
+    }
+
+    for (ServiceRegistration registration : services) {
+      job.setProcessorServiceRegistration((ServiceRegistrationJpaImpl) registration);
+
+      // Skip registration of host with less max load than highest available max load
+      // Note: This service registration may or may not live on a node which is set to accept jobs exceeding its max load
+      if (jobLoadExceedsMaximumLoads
+              && job.getProcessorServiceRegistration().getHostRegistration().getMaxLoad() != highestMaxLoad) {
+        continue;
+      }
+
+      try {
+        job = registry.updateInternal(em, job);
+      } catch (Exception e) {
+        // In theory, we should catch javax.persistence.OptimisticLockException. Unfortunately, eclipselink throws
+        // org.eclipse.persistence.exceptions.OptimisticLockException. In order to avoid importing the implementation
+        // specific APIs, we just catch Exception.
+        logger.debug("Unable to dispatch {}.  This is likely caused by another service registry dispatching the job",
+                job);
+        throw new UndispatchableJobException(job + " is already being dispatched");
+      }
+
+      triedDispatching = true;
+
+      String serviceUrl = UrlSupport.concat(registration.getHost(), registration.getPath(), "dispatch");
+      HttpPost post = new HttpPost(serviceUrl);
+
+      // Add current organization and user so they can be used during execution at the remote end
+      post.addHeader(ORGANIZATION_HEADER, registry.securityService.getOrganization().getId());
+      post.addHeader(USER_HEADER, registry.securityService.getUser().getUsername());
+
+      List<BasicNameValuePair> params = new ArrayList<BasicNameValuePair>();
+      params.add(new BasicNameValuePair("id", Long.toString(job.getId())));
+      params.add(new BasicNameValuePair("operation", job.getOperation()));
+      post.setEntity(new UrlEncodedFormEntity(params, UTF_8));
+
+      // Post the request
+      HttpResponse response = null;
+      int responseStatusCode;
+      try {
+        logger.debug("Trying to dispatch {} type '{}' load {} to {}",
+                job, job.getJobType(), job.getJobLoad(), registration.getHost());
+        if (!START_WORKFLOW.equals(job.getOperation()))
+          registry.setCurrentJob(job.toJob());
+        response = registry.client.execute(post);
+        responseStatusCode = response.getStatusLine().getStatusCode();
+        if (responseStatusCode == HttpStatus.SC_NO_CONTENT) {
+          return registration.getHost();
+        } else if (responseStatusCode == HttpStatus.SC_SERVICE_UNAVAILABLE) {
+          logger.debug("Service {} is currently refusing to accept jobs of type {}", registration,
+                  job.getOperation());
+          continue;
+        } else if (responseStatusCode == HttpStatus.SC_PRECONDITION_FAILED) {
+          job.setStatus(Status.FAILED);
+          job = registry.updateJob(job);
+          logger.debug("Service {} refused to accept {}", registration, job);
+          throw new UndispatchableJobException(IOUtils.toString(response.getEntity().getContent()));
+        } else if (responseStatusCode == HttpStatus.SC_METHOD_NOT_ALLOWED) {
+          logger.debug("Service {} is not yet reachable", registration);
+          continue;
+        } else {
+          logger.warn("Service {} failed ({}) accepting {}", registration, responseStatusCode, job);
+          continue;
+        }
+      } catch (UndispatchableJobException e) {
+        throw e;
+      } catch (TrustedHttpClientException e) {
+        // Will try another node. If no other node, it will be re-queued
+        logger.warn("Unable to dispatch {}", job, e);
+        continue;
+      } catch (Exception e) {
+        logger.warn("Unable to dispatch {}", job, e);
+      } finally {
+        try {
+          registry.client.close(response);
+        } catch (IOException e) {
+          // ignore
+        }
+        registry.setCurrentJob(null);
+      }
+    }
+
+    // We've tried dispatching to every online service that can handle this type of job, with no luck.
+    if (triedDispatching) {
+      // Workflow type jobs are not set to priority list, because they handle accepting jobs not based on the job load
+      // If the system don't accepts jobs whose load exceeds the host's max load we can't make use of the priority
+      // list
+      if (registry.acceptJobLoadsExeedingMaxLoad && !registry.dispatchPriorityList.containsKey(job.getId())
+              && !TYPE_WORKFLOW.equals(job.getJobType()) && job.getProcessorServiceRegistration() != null) {
+        String host = job.getProcessorServiceRegistration().getHost();
+        logger.debug("About to add {} to dispatchPriorityList with processor host {}", job, host);
+        registry.dispatchPriorityList.put(job.getId(), host);
+      }
+
+      try {
+        job.setStatus(Status.QUEUED);
+        job.setProcessorServiceRegistration(null);
+        job = registry.updateJob(job);
+      } catch (Exception e) {
+        logger.error("Unable to put {} back into queue", job, e);
+      }
+    }
+
+    logger.debug("Unable to dispatch {}, no service is currently ready to accept the job", job);
+    throw new UndispatchableJobException(job + " is currently undispatchable");
+  }
+
+  private final Fn2<HostRegistration, Long, Boolean> filterOutPriorityHosts = new Fn2<HostRegistration, Long, Boolean>() {
+    @Override
+    public Boolean apply(HostRegistration host, Long jobId) {
+      if (registry.dispatchPriorityList.values().contains(host.getBaseUrl())
+              && !host.getBaseUrl().equals(registry.dispatchPriorityList.get(jobId))) {
+        return false;
+      }
+      return true;
+    }
+  };
+
+  private final Fn<ServiceRegistration, HostRegistration> toHostRegistration = new Fn<ServiceRegistration, HostRegistration>() {
+    @Override
+    public HostRegistration apply(ServiceRegistration s) {
+      return ((ServiceRegistrationJpaImpl) s).getHostRegistration();
+    }
+  };
+
+  private final Fn<HostRegistration, Float> toMaxLoad = new Fn<HostRegistration, Float>() {
+    @Override
+    public Float apply(HostRegistration h) {
+      return h.getMaxLoad();
+    }
+  };
+
+  private final Comparator<Float> sortFloatValuesDesc = new Comparator<Float>() {
+    @Override
+    public int compare(Float o1, Float o2) {
+      return o2.compareTo(o1);
+    }
+  };
+
+}
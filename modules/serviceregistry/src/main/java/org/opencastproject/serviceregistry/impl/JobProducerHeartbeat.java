@@ -0,0 +1,248 @@
+/**
+ * Licensed to The Apereo Foundation under one or more contributor license
+ * agreements. See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ *
+ * The Apereo Foundation licenses this file to you under the Educational
+ * Community License, Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License. You may obtain a copy of the License
+ * at:
+ *
+ *   http://opensource.org/licenses/ecl2.txt
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ *
+ */
+
+package org.opencastproject.serviceregistry.impl;
+
+import org.opencastproject.security.api.TrustedHttpClientException;
+import org.opencastproject.serviceregistry.api.ServiceRegistration;
+import org.opencastproject.serviceregistry.api.ServiceRegistryException;
+import org.opencastproject.serviceregistry.impl.jpa.ServiceRegistrationJpaImpl;
+import org.opencastproject.util.UrlSupport;
+
+import org.apache.http.HttpResponse;
+import org.apache.http.HttpStatus;
+import org.apache.http.client.methods.HttpHead;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A periodic check on each service registration to ensure that it is still alive. The hosts are checked concurrently,
+ * and services sharing a host are covered by a single request as long as the host answers as expected.
+ */
+final class JobProducerHeartbeat implements Runnable {
+
+  /** The logging facility */
+  private static final Logger logger = LoggerFactory.getLogger(JobProducerHeartbeat.class);
+
+  /** The outcome of a heartbeat request */
+  private enum HeartbeatResult {
+    RESPONSIVE, NOT_WORKING, UNREACHABLE
+  }
+
+  /** The service registry whose services are checked */
+  private final ServiceRegistryJpaImpl registry;
+
+  /** Service registrations that have been found unresponsive last time we checked */
+  private final Set<ServiceRegistration> unresponsive = ConcurrentHashMap.newKeySet();
+
+  /** Number of sweeps so far, used to rotate the service probing a host */
+  private long sweeps = 0;
+
+  /**
+   * Creates a heartbeat for the services of the given service registry.
+   *
+   * @param registry
+   *          the service registry
+   */
+  JobProducerHeartbeat(ServiceRegistryJpaImpl registry) {
+    this.registry = registry;
+  }
+
+  /**
+   * {@inheritDoc}
+   *
+   * @see java.lang.Runnable#run()
+   */
+  @Override
+  public void run() {
+    logger.debug("Checking for unresponsive services");
+
+    long start = System.currentTimeMillis();
+    final AtomicInteger requests = new AtomicInteger();
+    final AtomicInteger failures = new AtomicInteger();
+    Map<String, List<ServiceRegistration>> servicesByHost = new LinkedHashMap<>();
+    try {
+      List<ServiceRegistration> serviceRegistrations = registry.getOnlineServiceRegistrations();
+
+      for (ServiceRegistration service : serviceRegistrations) {
+        registry.hostsStatistics.updateHost(((ServiceRegistrationJpaImpl) service).getHostRegistration());
+        registry.servicesStatistics.updateService(service);
+        if (!service.isJobProducer())
+          continue;
+        if (service.isInMaintenanceMode())
+          continue;
+        servicesByHost.computeIfAbsent(service.getHost(), host -> new ArrayList<>()).add(service);
+      }
+
+      final long sweep = sweeps++;
+      List<CompletableFuture<Void>> checks = new ArrayList<>(servicesByHost.size());
+      for (final List<ServiceRegistration> services : servicesByHost.values()) {
+        checks.add(CompletableFuture.runAsync(() -> checkHost(services, sweep, requests, failures),
+                registry.heartbeatExecutor));
+      }
+      CompletableFuture.allOf(checks.toArray(new CompletableFuture[checks.size()])).join();
+    } catch (Throwable t) {
+      logger.warn("Error while checking for unresponsive services", t);
+    }
+
+    long duration = System.currentTimeMillis() - start;
+    registry.heartbeatStatistics.sweep(duration, servicesByHost.size(), requests.get(), failures.get());
+    logger.debug("Finished checking for unresponsive services on {} hosts in {} ms", servicesByHost.size(),
+            duration);
+  }
+
+  /**
+   * Checks the services of a single host. One of the services is probed first: if it is responsive, the host is
+   * considered alive with all of its services, and if the host cannot be reached at all, none of its services are
+   * probed any further. Only if the probed service is not working as expected are the others checked one by one.
+   *
+   * @param services
+   *          the job producers registered on the host
+   * @param sweep
+   *          the number of the current sweep
+   * @param requests
+   *          counter of the requests sent during the sweep
+   * @param failures
+   *          counter of the services which did not respond as expected during the sweep
+   */
+  private void checkHost(List<ServiceRegistration> services, long sweep, AtomicInteger requests,
+          AtomicInteger failures) {
+    try {
+      int first = (int) (sweep % services.size());
+      ServiceRegistration probe = services.get(first);
+      requests.incrementAndGet();
+      HeartbeatResult result = check(probe);
+      if (result == HeartbeatResult.RESPONSIVE) {
+        for (ServiceRegistration service : services) {
+          responsive(service);
+        }
+        return;
+      }
+
+      if (unresponsive(probe))
+        failures.incrementAndGet();
+
+      for (int i = 1; i < services.size(); i++) {
+        ServiceRegistration service = services.get((first + i) % services.size());
+        if (result == HeartbeatResult.NOT_WORKING) {
+          requests.incrementAndGet();
+          if (check(service) == HeartbeatResult.RESPONSIVE) {
+            responsive(service);
+            continue;
+          }
+        }
+        if (unresponsive(service))
+          failures.incrementAndGet();
+      }
+    } catch (Throwable t) {
+      logger.warn("Error while checking for unresponsive services on {}", services.get(0).getHost(), t);
+    }
+  }
+
+  /**
+   * Sends a heartbeat request to a service.
+   *
+   * @param service
+   *          the service to check
+   * @return whether the service is responsive, not working as expected or unreachable
+   */
+  private HeartbeatResult check(ServiceRegistration service) {
+    String serviceUrl = UrlSupport.concat(service.getHost(), service.getPath(), "dispatch");
+    int timeout = (int) TimeUnit.SECONDS.toMillis(registry.heartbeatTimeout);
+
+    HttpHead options = new HttpHead(serviceUrl);
+    HttpResponse response = null;
+    try {
+      response = registry.client.execute(options, timeout, timeout);
+      if (response == null) {
+        logger.warn("Service {} does not respond", service);
+        return HeartbeatResult.NOT_WORKING;
+      }
+      if (response.getStatusLine().getStatusCode() == HttpStatus.SC_OK) {
+        logger.trace("Service {} is responsive: {}", service, response.getStatusLine());
+        return HeartbeatResult.RESPONSIVE;
+      }
+      if (service.isOnline())
+        logger.warn("Service {} is not working as expected: {}", service, response.getStatusLine());
+      return HeartbeatResult.NOT_WORKING;
+    } catch (TrustedHttpClientException e) {
+      if (service.isOnline())
+        logger.warn("Unable to reach {}", service, e);
+      return HeartbeatResult.UNREACHABLE;
+    } finally {
+      registry.client.close(response);
+    }
+  }
+
+  /**
+   * Takes a service off the watch list and puts it back online if necessary.
+   *
+   * @param service
+   *          the responsive service
+   */
+  private void responsive(ServiceRegistration service) {
+    if (unresponsive.remove(service)) {
+      logger.info("Service {} is still online", service);
+    } else if (!service.isOnline()) {
+      try {
+        registry.setOnlineStatus(service.getServiceType(), service.getHost(), service.getPath(), true, true);
+        logger.info("Service {} is back online", service);
+      } catch (ServiceRegistryException e) {
+        logger.warn("Error setting online status for {}", service);
+      }
+    }
+  }
+
+  /**
+   * Puts a service which did not respond as expected on the watch list, or unregisters it if it already was.
+   *
+   * @param service
+   *          the unresponsive service
+   * @return whether the service has been counted as a failure, which is not the case if it already was offline
+   */
+  private boolean unresponsive(ServiceRegistration service) {
+    if (!service.isOnline())
+      return false;
+    try {
+      if (unresponsive.remove(service)) {
+        registry.unRegisterService(service.getServiceType(), service.getHost());
+        logger.warn("Marking {} as offline", service);
+      } else {
+        unresponsive.add(service);
+        logger.warn("Added {} to the watch list", service);
+      }
+    } catch (ServiceRegistryException e) {
+      logger.warn("Unable to unregister unreachable service: {}", service, e);
+    }
+    return true;
+  }
+
+}
@@ -0,0 +1,310 @@
+/**
+ * Licensed to The Apereo Foundation under one or more contributor license
+ * agreements. See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ *
+ * The Apereo Foundation licenses this file to you under the Educational
+ * Community License, Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License. You may obtain a copy of the License
+ * at:
+ *
+ *   http://opensource.org/licenses/ecl2.txt
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ *
+ */
+
+package org.opencastproject.serviceregistry.impl;
+
+import org.opencastproject.job.api.Job.Status;
+import org.opencastproject.job.jpa.JpaJob;
+import org.opencastproject.serviceregistry.impl.jpa.ServiceRegistrationJpaImpl;
+import org.opencastproject.util.data.Tuple;
+import org.opencastproject.util.data.Tuple3;
+
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * In-memory job statistics: the number of jobs per service and status along with their queue and run times, and the
+ * average queue and run times per operation.
+ * <p>
+ * Aggregating these over the whole job table is expensive, so the statistics are rebuilt from the database only once in
+ * a while by {@link #reconcile(long, long, Map, Map, Map)}. In between, every job transition performed by this node is
+ * applied incrementally. Transitions performed by other nodes, and bulk changes marked by {@link #invalidate()}, are
+ * picked up by the next reconciliation.
+ * <p>
+ * The per service statistics only consider jobs created after the start of the statistics window, which is moved
+ * forward on every reconciliation.
+ */
+final class JobStatisticsCache {
+
+  /** The attributes of a job which are relevant to the statistics */
+  static final class Sample {
+
+    private final String jobType;
+    private final String operation;
+    private final Status status;
+    private final String creatorHost;
+    private final String processorHost;
+    private final long queueTime;
+    private final long runTime;
+    private final long dateCreated;
+
+    /**
+     * Creates a sample.
+     *
+     * @param jobType
+     *          the job type
+     * @param operation
+     *          the operation, may be <code>null</code>
+     * @param status
+     *          the job status
+     * @param creatorHost
+     *          the host that created the job, may be <code>null</code>
+     * @param processorHost
+     *          the host processing the job, <code>null</code> if the job has not been dispatched yet
+     * @param queueTime
+     *          the time the job has been queued in milliseconds
+     * @param runTime
+     *          the time the job has been running in milliseconds
+     * @param dateCreated
+     *          the creation date of the job in milliseconds since the epoch
+     */
+    Sample(String jobType, String operation, Status status, String creatorHost, String processorHost,
+            long queueTime, long runTime, long dateCreated) {
+      this.jobType = jobType;
+      this.operation = operation;
+      this.status = status;
+      this.creatorHost = creatorHost;
+      this.processorHost = processorHost;
+      this.queueTime = queueTime;
+      this.runTime = runTime;
+      this.dateCreated = dateCreated;
+    }
+
+    /**
+     * Takes a sample of a persistent job. Jobs which have not been assigned a creation date yet are considered to have
+     * been created just now.
+     *
+     * @param job
+     *          the job
+     * @return the sample
+     */
+    static Sample of(JpaJob job) {
+      ServiceRegistrationJpaImpl creator = job.getCreatorServiceRegistration();
+      ServiceRegistrationJpaImpl processor = job.getProcessorServiceRegistration();
+      return new Sample(job.getJobType(), job.getOperation(), job.getStatus(),
+              creator == null ? null : creator.getHost(), processor == null ? null : processor.getHost(),
+              job.getQueueTime() == null ? 0 : job.getQueueTime(), job.getRunTime() == null ? 0 : job.getRunTime(),
+              job.getDateCreated() == null ? System.currentTimeMillis() : job.getDateCreated().getTime());
+    }
+  }
+
+  /** The number of jobs in a group along with their total queue and run times */
+  static final class Aggregate {
+
+    private long count;
+    private long queueTime;
+    private long runTime;
+
+    Aggregate() {
+    }
+
+    /**
+     * Creates an aggregate from the results of an aggregate query.
+     *
+     * @param count
+     *          the number of jobs
+     * @param meanQueueTime
+     *          the mean queue time of the jobs in milliseconds
+     * @param meanRunTime
+     *          the mean run time of the jobs in milliseconds
+     */
+    Aggregate(long count, long meanQueueTime, long meanRunTime) {
+      this.count = count;
+      this.queueTime = meanQueueTime * count;
+      this.runTime = meanRunTime * count;
+    }
+
+    private Aggregate(Aggregate other) {
+      this.count = other.count;
+      this.queueTime = other.queueTime;
+      this.runTime = other.runTime;
+    }
+
+    /** @return the number of jobs */
+    long getCount() {
+      return Math.max(0, count);
+    }
+
+    /** @return the mean queue time of the jobs in milliseconds */
+    long getMeanQueueTime() {
+      return count > 0 ? Math.max(0, queueTime / count) : 0;
+    }
+
+    /** @return the mean run time of the jobs in milliseconds */
+    long getMeanRunTime() {
+      return count > 0 ? Math.max(0, runTime / count) : 0;
+    }
+
+    private void add(Sample sample, int sign) {
+      count += sign;
+      queueTime += sign * sample.queueTime;
+      runTime += sign * sample.runTime;
+    }
+  }
+
+  /** Incremented on every bulk change that renders the statistics outdated */
+  private final AtomicLong generation = new AtomicLong(1);
+
+  /** The generation of the last reconciliation, 0 if the statistics have never been reconciled */
+  private volatile long reconciledGeneration = 0;
+
+  /** Jobs created before this time in milliseconds are not considered by the per service statistics */
+  private long windowStart = 0;
+
+  /** Job statistics per host, service type and status, considering the processing service only */
+  private Map<Tuple<String, String>, Map<Status, Aggregate>> services = new HashMap<>();
+
+  /** Number of jobs per host, service type and status, considering both the creating and the processing service */
+  private Map<Tuple3<String, String, Status>, Long> jobCounts = new HashMap<>();
+
+  /** Job statistics per operation */
+  private Map<String, Aggregate> operations = new HashMap<>();
+
+  /** Marks the statistics as outdated. */
+  void invalidate() {
+    generation.incrementAndGet();
+  }
+
+  /** @return whether the statistics need to be reconciled with the database */
+  boolean isStale() {
+    return reconciledGeneration != generation.get();
+  }
+
+  /**
+   * Starts a reconciliation. The returned generation must be passed to
+   * {@link #reconcile(long, long, Map, Map, Map)}, so that bulk changes happening while the database is being read
+   * leave the statistics outdated.
+   *
+   * @return the current generation
+   */
+  long beginReconcile() {
+    return generation.get();
+  }
+
+  /**
+   * Replaces the statistics with the ones read from the database.
+   *
+   * @param generation
+   *          the generation returned by {@link #beginReconcile()}
+   * @param windowStart
+   *          the start of the per service statistics window in milliseconds since the epoch
+   * @param services
+   *          the job statistics per host and service type and status, considering the processing service only
+   * @param jobCounts
+   *          the number of jobs per host, service type and status, considering both creating and processing service
+   * @param operations
+   *          the job statistics per operation
+   */
+  synchronized void reconcile(long generation, long windowStart,
+          Map<Tuple<String, String>, Map<Status, Aggregate>> services,
+          Map<Tuple3<String, String, Status>, Long> jobCounts, Map<String, Aggregate> operations) {
+    this.windowStart = windowStart;
+    this.services = services;
+    this.jobCounts = jobCounts;
+    this.operations = operations;
+    reconciledGeneration = generation;
+  }
+
+  /**
+   * Applies a job transition to the statistics.
+   *
+   * @param before
+   *          the job before the transition, <code>null</code> if the job has been created
+   * @param after
+   *          the job after the transition, <code>null</code> if the job has been removed
+   */
+  synchronized void update(Sample before, Sample after) {
+    if (before != null) {
+      apply(before, -1);
+    }
+    if (after != null) {
+      apply(after, 1);
+    }
+  }
+
+  private void apply(Sample sample, int sign) {
+    if (sample.processorHost != null && sample.dateCreated >= windowStart) {
+      Map<Status, Aggregate> statuses = services.computeIfAbsent(Tuple.tuple(sample.processorHost, sample.jobType),
+              key -> new EnumMap<>(Status.class));
+      statuses.computeIfAbsent(sample.status, key -> new Aggregate()).add(sample, sign);
+    }
+    if (sample.creatorHost != null) {
+      count(Tuple3.tuple3(sample.creatorHost, sample.jobType, sample.status), sign);
+    }
+    if (sample.processorHost != null && !sample.processorHost.equals(sample.creatorHost)) {
+      count(Tuple3.tuple3(sample.processorHost, sample.jobType, sample.status), sign);
+    }
+    if (sample.operation != null) {
+      operations.computeIfAbsent(sample.operation, key -> new Aggregate()).add(sample, sign);
+    }
+  }
+
+  private void count(Tuple3<String, String, Status> key, long delta) {
+    jobCounts.merge(key, delta, (a, b) -> a + b == 0 ? null : a + b);
+  }
+
+  /**
+   * Returns the statistics of the jobs processed by a service.
+   *
+   * @param host
+   *          the host of the service
+   * @param serviceType
+   *          the service type
+   * @return the statistics per job status
+   */
+  synchronized Map<Status, Aggregate> getServiceStatistics(String host, String serviceType) {
+    Map<Status, Aggregate> statuses = services.get(Tuple.tuple(host, serviceType));
+    if (statuses == null) {
+      return Collections.emptyMap();
+    }
+    Map<Status, Aggregate> copy = new EnumMap<>(Status.class);
+    for (Map.Entry<Status, Aggregate> entry : statuses.entrySet()) {
+      copy.put(entry.getKey(), new Aggregate(entry.getValue()));
+    }
+    return copy;
+  }
+
+  /** @return the number of jobs per host, service type and status */
+  synchronized Map<Tuple3<String, String, Status>, Long> getJobCounts() {
+    Map<Tuple3<String, String, Status>, Long> copy = new HashMap<>();
+    for (Map.Entry<Tuple3<String, String, Status>, Long> entry : jobCounts.entrySet()) {
+      if (entry.getValue() > 0) {
+        copy.put(entry.getKey(), entry.getValue());
+      }
+    }
+    return copy;
+  }
+
+  /** @return the job statistics per operation */
+  synchronized Map<String, Aggregate> getOperations() {
+    Map<String, Aggregate> copy = new HashMap<>();
+    for (Map.Entry<String, Aggregate> entry : operations.entrySet()) {
+      if (entry.getValue().getCount() > 0) {
+        copy.put(entry.getKey(), new Aggregate(entry.getValue()));
+      }
+    }
+    return copy;
+  }
+
+}
@@ -0,0 +1,178 @@
+/**
+ * Licensed to The Apereo Foundation under one or more contributor license
+ * agreements. See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ *
+ * The Apereo Foundation licenses this file to you under the Educational
+ * Community License, Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License. You may obtain a copy of the License
+ * at:
+ *
+ *   http://opensource.org/licenses/ecl2.txt
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ *
+ */
+
+package org.opencastproject.serviceregistry.impl;
+
+import org.opencastproject.job.api.Job.Status;
+import org.opencastproject.serviceregistry.api.ServiceRegistration;
+import org.opencastproject.serviceregistry.api.ServiceRegistryException;
+import org.opencastproject.serviceregistry.impl.jpa.ServiceRegistrationJpaImpl;
+import org.opencastproject.util.data.Tuple;
+import org.opencastproject.util.data.Tuple3;
+
+import org.apache.commons.lang3.time.DateUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Date;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.Map;
+
+import javax.persistence.EntityManager;
+import javax.persistence.Query;
+import javax.persistence.TemporalType;
+
+/**
+ * Keeps the {@link JobStatisticsCache} of the service registry in line with the database. When run, the statistics are
+ * rebuilt from the database to pick up job transitions performed by other nodes.
+ */
+final class JobStatisticsReconciler implements Runnable {
+
+  /** The logging facility */
+  private static final Logger logger = LoggerFactory.getLogger(JobStatisticsReconciler.class);
+
+  /** The service registry owning the statistics */
+  private final ServiceRegistryJpaImpl registry;
+
+  /**
+   * Creates a reconciler for the job statistics of the given service registry.
+   *
+   * @param registry
+   *          the service registry
+   */
+  JobStatisticsReconciler(ServiceRegistryJpaImpl registry) {
+    this.registry = registry;
+  }
+
+  /**
+   * {@inheritDoc}
+   *
+   * @see java.lang.Runnable#run()
+   */
+  @Override
+  public void run() {
+    try {
+      reconcile();
+    } catch (Throwable t) {
+      logger.warn("Error reconciling the job statistics with the database", t);
+    }
+  }
+
+  /**
+   * Returns the job statistics, reconciling them with the database first if they have never been read from it or if
+   * they have been invalidated by a bulk change since.
+   *
+   * @return the job statistics
+   */
+  JobStatisticsCache getStatistics() {
+    if (registry.jobStatistics.isStale()) {
+      try {
+        reconcile();
+      } catch (ServiceRegistryException e) {
+        logger.warn("Unable to reconcile the job statistics with the database, serving outdated statistics", e);
+      }
+    }
+    return registry.jobStatistics;
+  }
+
+  /** @return the average run and queue times per operation, in milliseconds */
+  Map<String, Tuple<Long, Long>> getAverageJobTimes() {
+    Map<String, Tuple<Long, Long>> avgTimes = new HashMap<>();
+    for (Map.Entry<String, JobStatisticsCache.Aggregate> entry : getStatistics().getOperations().entrySet()) {
+      avgTimes.put(entry.getKey(), Tuple.tuple(entry.getValue().getMeanRunTime(),
+              entry.getValue().getMeanQueueTime()));
+    }
+    return avgTimes;
+  }
+
+  /**
+   * Rebuilds the job statistics from the database. The per service statistics only consider jobs created within the
+   * last {@link ServiceRegistryJpaImpl#maxJobAge} days.
+   *
+   * @throws ServiceRegistryException
+   *           if there is a problem accessing the service registry
+   */
+  void reconcile() throws ServiceRegistryException {
+    JobStatisticsCache statistics = registry.jobStatistics;
+    long generation = statistics.beginReconcile();
+    Date now = new Date();
+    Date windowStart = DateUtils.addDays(now, -registry.maxJobAge);
+    EntityManager em = null;
+    try {
+      em = registry.emf.createEntityManager();
+      Map<Long, Tuple<String, String>> registrations = new HashMap<>();
+      for (ServiceRegistration s : registry.getServiceRegistrations(em)) {
+        ServiceRegistrationJpaImpl registration = (ServiceRegistrationJpaImpl) s;
+        registrations.put(registration.getId(), Tuple.tuple(registration.getHost(), registration.getServiceType()));
+      }
+
+      Map<Tuple<String, String>, Map<Status, JobStatisticsCache.Aggregate>> services = new HashMap<>();
+      Query query = em.createNamedQuery("ServiceRegistration.statistics");
+      query.setParameter("minDateCreated", windowStart, TemporalType.TIMESTAMP);
+      // Avoid glitches around 'now' by setting the end date to 'tomorrow'
+      query.setParameter("maxDateCreated", DateUtils.addDays(now, 1), TemporalType.TIMESTAMP);
+      for (Object result : query.getResultList()) {
+        Object[] oa = (Object[]) result;
+        Number serviceRegistrationId = (Number) oa[0];
+        if (serviceRegistrationId == null || oa[1] == null)
+          continue;
+        Tuple<String, String> service = registrations.get(serviceRegistrationId.longValue());
+        if (service == null)
+          continue;
+        Status status = Status.values()[((Number) oa[1]).intValue()];
+        services.computeIfAbsent(service, key -> new EnumMap<>(Status.class)).put(status,
+                new JobStatisticsCache.Aggregate(((Number) oa[2]).longValue(), toLong((Number) oa[3]),
+                        toLong((Number) oa[4])));
+      }
+
+      Map<Tuple3<String, String, Status>, Long> jobCounts = new HashMap<>();
+      for (Object[] result : registry.getCountPerHostService(em)) {
+        Status status = Status.values()[((Number) result[2]).intValue()];
+        jobCounts.put(Tuple3.tuple3((String) result[0], (String) result[1], status), ((Number) result[3]).longValue());
+      }
+
+      Map<String, JobStatisticsCache.Aggregate> operations = new HashMap<>();
+      for (Object[] result : registry.getAvgOperations(em)) {
+        if (result[0] == null)
+          continue;
+        operations.put((String) result[0], new JobStatisticsCache.Aggregate(((Number) result[3]).longValue(),
+                toLong((Number) result[2]), toLong((Number) result[1])));
+      }
+
+      statistics.reconcile(generation, windowStart.getTime(), services, jobCounts, operations);
+      logger.debug("Reconciled the job statistics of {} services with the database", services.size());
+    } catch (Exception e) {
+      throw new ServiceRegistryException(e);
+    } finally {
+      if (em != null)
+        em.close();
+    }
+    if (registry.jobsStatistics != null) {
+      registry.jobsStatistics.updated();
+    }
+  }
+
+  private static long toLong(Number number) {
+    return number == null ? 0 : number.longValue();
+  }
+
+}
@@ -0,0 +1,224 @@
+/**
+ * Licensed to The Apereo Foundation under one or more contributor license
+ * agreements. See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ *
+ * The Apereo Foundation licenses this file to you under the Educational
+ * Community License, Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License. You may obtain a copy of the License
+ * at:
+ *
+ *   http://opensource.org/licenses/ecl2.txt
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ *
+ */
+
+package org.opencastproject.serviceregistry.impl;
+
+import org.opencastproject.serviceregistry.api.HostRegistration;
+import org.opencastproject.serviceregistry.api.ServiceRegistration;
+import org.opencastproject.serviceregistry.api.SystemLoad;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Versioned, in-memory snapshot of the service registrations, host registrations and host loads.
+ * <p>
+ * Load balancing remote service calls needs all three of them on every single request. The snapshot is rebuilt from
+ * the database at most once per time-to-live and right after this node changed a registration or the status of a job
+ * in a way that affects the host loads. Changes made by other nodes are picked up once the time-to-live elapsed.
+ * <p>
+ * Snapshots are shared between threads and must therefore not be modified by their users.
+ */
+final class RegistrationCache {
+
+  /** Loads a fresh snapshot from the database */
+  interface Loader {
+
+    /**
+     * Reads the current registrations and host loads.
+     *
+     * @param version
+     *          the version to assign to the new snapshot
+     * @return the snapshot
+     */
+    Snapshot load(long version);
+  }
+
+  /** Notified about the outcome of {@link RegistrationCache#get(Loader, Listener)} */
+  interface Listener {
+
+    /**
+     * Called when the current snapshot was still valid.
+     *
+     * @param snapshot
+     *          the returned snapshot
+     */
+    void hit(Snapshot snapshot);
+
+    /**
+     * Called when a new snapshot had to be loaded.
+     *
+     * @param snapshot
+     *          the newly loaded snapshot
+     */
+    void miss(Snapshot snapshot);
+  }
+
+  /** Incremented on every local change that renders the current snapshot outdated */
+  private final AtomicLong generation = new AtomicLong();
+
+  /** Version of the latest snapshot */
+  private final AtomicLong version = new AtomicLong();
+
+  /** Guards the loading of snapshots so that concurrent misses only hit the database once */
+  private final Object loadLock = new Object();
+
+  /** The current snapshot, or <code>null</code> if none has been loaded yet */
+  private volatile Snapshot current = null;
+
+  /** Maximum age of a snapshot in milliseconds, 0 to disable caching */
+  private volatile long ttl;
+
+  /**
+   * Creates a cache whose snapshots expire after the given time.
+   *
+   * @param ttl
+   *          the maximum age of a snapshot in milliseconds, 0 to load a new snapshot on every call
+   */
+  RegistrationCache(long ttl) {
+    this.ttl = ttl;
+  }
+
+  /** @return the maximum age of a snapshot in milliseconds */
+  long getTtl() {
+    return ttl;
+  }
+
+  /**
+   * Sets the maximum age of a snapshot.
+   *
+   * @param ttl
+   *          the maximum age of a snapshot in milliseconds, 0 to load a new snapshot on every call
+   */
+  void setTtl(long ttl) {
+    this.ttl = ttl;
+  }
+
+  /** Marks the current snapshot as outdated. */
+  void invalidate() {
+    generation.incrementAndGet();
+  }
+
+  /**
+   * Returns the current snapshot if it is still valid. Otherwise, a new snapshot is loaded and returned.
+   *
+   * @param loader
+   *          the loader used on a cache miss
+   * @param listener
+   *          notified of hits and misses, may be <code>null</code>
+   * @return the snapshot
+   */
+  Snapshot get(Loader loader, Listener listener) {
+    Snapshot snapshot = current;
+    if (isValid(snapshot)) {
+      if (listener != null) {
+        listener.hit(snapshot);
+      }
+      return snapshot;
+    }
+    synchronized (loadLock) {
+      // Another thread might have loaded a snapshot while we were waiting
+      snapshot = current;
+      if (isValid(snapshot)) {
+        if (listener != null) {
+          listener.hit(snapshot);
+        }
+        return snapshot;
+      }
+      long loadedGeneration = generation.get();
+      snapshot = loader.load(version.incrementAndGet()).withGeneration(loadedGeneration);
+      if (ttl > 0) {
+        current = snapshot;
+      }
+      if (listener != null) {
+        listener.miss(snapshot);
+      }
+      return snapshot;
+    }
+  }
+
+  /** @return the current snapshot, which might be outdated, or <code>null</code> if none has been loaded yet */
+  Snapshot peek() {
+    return current;
+  }
+
+  private boolean isValid(Snapshot snapshot) {
+    return snapshot != null && snapshot.generation == generation.get() && snapshot.getAge() < ttl;
+  }
+
+  /** An immutable view of the registrations and host loads at a given point in time */
+  static final class Snapshot {
+
+    private final long version;
+    private final long created;
+    private final long generation;
+    private final List<ServiceRegistration> serviceRegistrations;
+    private final List<HostRegistration> hostRegistrations;
+    private final SystemLoad hostLoads;
+
+    Snapshot(long version, List<ServiceRegistration> serviceRegistrations, List<HostRegistration> hostRegistrations,
+            SystemLoad hostLoads) {
+      this(version, System.currentTimeMillis(), -1, serviceRegistrations, hostRegistrations, hostLoads);
+    }
+
+    private Snapshot(long version, long created, long generation, List<ServiceRegistration> serviceRegistrations,
+            List<HostRegistration> hostRegistrations, SystemLoad hostLoads) {
+      this.version = version;
+      this.created = created;
+      this.generation = generation;
+      this.serviceRegistrations = Collections.unmodifiableList(serviceRegistrations);
+      this.hostRegistrations = Collections.unmodifiableList(hostRegistrations);
+      this.hostLoads = hostLoads;
+    }
+
+    private Snapshot withGeneration(long generation) {
+      return new Snapshot(version, created, generation, serviceRegistrations, hostRegistrations, hostLoads);
+    }
+
+    long getVersion() {
+      return version;
+    }
+
+    /** @return the time this snapshot has been read from the database */
+    long getCreated() {
+      return created;
+    }
+
+    /** @return the age of this snapshot in milliseconds */
+    long getAge() {
+      return System.currentTimeMillis() - created;
+    }
+
+    List<ServiceRegistration> getServiceRegistrations() {
+      return serviceRegistrations;
+    }
+
+    List<HostRegistration> getHostRegistrations() {
+      return hostRegistrations;
+    }
+
+    SystemLoad getHostLoads() {
+      return hostLoads;
+    }
+  }
+
+}
@@ -0,0 +1,90 @@
+/**
+ * Licensed to The Apereo Foundation under one or more contributor license
+ * agreements. See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ *
+ * The Apereo Foundation licenses this file to you under the Educational
+ * Community License, Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License. You may obtain a copy of the License
+ * at:
+ *
+ *   http://opensource.org/licenses/ecl2.txt
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ *
+ */
+
+package org.opencastproject.serviceregistry.impl;
+
+import org.opencastproject.serviceregistry.api.HostRegistration;
+import org.opencastproject.serviceregistry.api.ServiceRegistration;
+import org.opencastproject.serviceregistry.api.SystemLoad;
+import org.opencastproject.serviceregistry.impl.jmx.RegistrationCacheStatistics;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.List;
+
+import javax.persistence.EntityManager;
+
+/**
+ * Reads the registrations and host loads for the {@link RegistrationCache} within a single entity manager, and
+ * forwards the cache hits and misses to the JMX statistics.
+ */
+final class RegistrationLoader implements RegistrationCache.Loader, RegistrationCache.Listener {
+
+  /** The logging facility */
+  private static final Logger logger = LoggerFactory.getLogger(RegistrationLoader.class);
+
+  /** The service registry owning the registrations */
+  private final ServiceRegistryJpaImpl registry;
+
+  /** The JMX statistics of the registration cache */
+  private final RegistrationCacheStatistics statistics;
+
+  /**
+   * Creates a loader for the registrations of the given service registry.
+   *
+   * @param registry
+   *          the service registry
+   * @param statistics
+   *          the JMX statistics of the registration cache
+   */
+  RegistrationLoader(ServiceRegistryJpaImpl registry, RegistrationCacheStatistics statistics) {
+    this.registry = registry;
+    this.statistics = statistics;
+  }
+
+  @Override
+  public RegistrationCache.Snapshot load(long version) {
+    EntityManager em = null;
+    try {
+      em = registry.emf.createEntityManager();
+      SystemLoad loadByHost = registry.getHostLoads(em);
+      List<HostRegistration> hostRegistrations = registry.getHostRegistrations(em);
+      List<ServiceRegistration> serviceRegistrations = registry.getServiceRegistrations(em);
+      logger.trace("Loaded version {} of the registration cache", version);
+      return new RegistrationCache.Snapshot(version, serviceRegistrations, hostRegistrations, loadByHost);
+    } finally {
+      if (em != null)
+        em.close();
+    }
+  }
+
+  @Override
+  public void hit(RegistrationCache.Snapshot snapshot) {
+    statistics.hit(snapshot.getAge());
+  }
+
+  @Override
+  public void miss(RegistrationCache.Snapshot snapshot) {
+    statistics.miss(snapshot.getVersion(), snapshot.getCreated());
+  }
+
+}
@@ -23,15 +23,12 @@ package org.opencastproject.serviceregistry.impl;
 
 import static com.entwinemedia.fn.Stream.$;
 import static java.lang.String.format;
-import static java.nio.charset.StandardCharsets.UTF_8;
 import static org.apache.commons.lang3.StringUtils.isBlank;
 import static org.opencastproject.job.api.AbstractJobProducer.ACCEPT_JOB_LOADS_EXCEEDING_PROPERTY;
 import static org.opencastproject.job.api.AbstractJobProducer.DEFAULT_ACCEPT_JOB_LOADS_EXCEEDING;
 import static org.opencastproject.job.api.Job.FailureReason.DATA;
 import static org.opencastproject.job.api.Job.Status.FAILED;
 import static org.opencastproject.job.jpa.JpaJob.fnToJob;
-import static org.opencastproject.security.api.SecurityConstants.ORGANIZATION_HEADER;
-import static org.opencastproject.security.api.SecurityConstants.USER_HEADER;
 import static org.opencastproject.serviceregistry.api.ServiceState.ERROR;
 import static org.opencastproject.serviceregistry.api.ServiceState.NORMAL;
 import static org.opencastproject.serviceregistry.api.ServiceState.WARNING;
@@ -39,13 +36,15 @@ import static org.opencastproject.util.OsgiUtil.getOptContextProperty;
 
 import org.opencastproject.job.api.Job;
 import org.opencastproject.job.api.Job.Status;
+import org.opencastproject.job.api.JobSpec;
+import org.opencastproject.job.jpa.JpaArchivedJob;
 import org.opencastproject.job.jpa.JpaJob;
+import org.opencastproject.job.jpa.JpaJobPayload;
 import org.opencastproject.rest.RestConstants;
 import org.opencastproject.security.api.Organization;
 import org.opencastproject.security.api.OrganizationDirectoryService;
 import org.opencastproject.security.api.SecurityService;
 import org.opencastproject.security.api.TrustedHttpClient;
-import org.opencastproject.security.api.TrustedHttpClientException;
 import org.opencastproject.security.api.User;
 import org.opencastproject.security.api.UserDirectoryService;
 import org.opencastproject.serviceregistry.api.HostRegistration;
@@ -58,8 +57,10 @@ import org.opencastproject.serviceregistry.api.ServiceRegistryException;
 import org.opencastproject.serviceregistry.api.ServiceStatistics;
 import org.opencastproject.serviceregistry.api.SystemLoad;
 import org.opencastproject.serviceregistry.api.SystemLoad.NodeLoad;
+import org.opencastproject.serviceregistry.impl.jmx.HeartbeatStatistics;
 import org.opencastproject.serviceregistry.impl.jmx.HostsStatistics;
 import org.opencastproject.serviceregistry.impl.jmx.JobsStatistics;
+import org.opencastproject.serviceregistry.impl.jmx.RegistrationCacheStatistics;
 import org.opencastproject.serviceregistry.impl.jmx.ServicesStatistics;
 import org.opencastproject.serviceregistry.impl.jpa.HostRegistrationJpaImpl;
 import org.opencastproject.serviceregistry.impl.jpa.ServiceRegistrationJpaImpl;
@@ -68,19 +69,12 @@ import org.opencastproject.util.NotFoundException;
 import org.opencastproject.util.UrlSupport;
 import org.opencastproject.util.data.functions.Strings;
 import org.opencastproject.util.jmx.JmxUtil;
+import org.opencastproject.workspace.api.Workspace;
 
 import com.entwinemedia.fn.Fn;
-import com.entwinemedia.fn.Fn2;
 
-import org.apache.commons.io.IOUtils;
 import org.apache.commons.lang3.StringUtils;
 import org.apache.commons.lang3.time.DateUtils;
-import org.apache.http.HttpResponse;
-import org.apache.http.HttpStatus;
-import org.apache.http.client.entity.UrlEncodedFormEntity;
-import org.apache.http.client.methods.HttpHead;
-import org.apache.http.client.methods.HttpPost;
-import org.apache.http.message.BasicNameValuePair;
 import org.osgi.framework.BundleContext;
 import org.osgi.framework.InvalidSyntaxException;
 import org.osgi.framework.ServiceReference;
@@ -98,7 +92,6 @@ import org.osgi.util.tracker.ServiceTracker;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.io.IOException;
 import java.net.InetAddress;
 import java.net.URI;
 import java.net.URISyntaxException;
@@ -109,11 +102,12 @@ import java.util.Comparator;
 import java.util.Date;
 import java.util.Dictionary;
 import java.util.HashMap;
-import java.util.HashSet;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
@@ -128,7 +122,6 @@ import javax.persistence.NoResultException;
 import javax.persistence.PersistenceException;
 import javax.persistence.Query;
 import javax.persistence.RollbackException;
-import javax.persistence.TemporalType;
 import javax.persistence.TypedQuery;
 
 /** JPA implementation of the {@link ServiceRegistry} */
@@ -170,14 +163,26 @@ public class ServiceRegistryJpaImpl implements ServiceRegistry, ManagedService {
   /** Jobs statistics JMX type */
   private static final String JMX_JOBS_STATISTICS_TYPE = "JobsStatistics";
 
+  /** Registration cache statistics JMX type */
+  private static final String JMX_REGISTRATION_CACHE_STATISTICS_TYPE = "RegistrationCacheStatistics";
+
+  /** Heartbeat statistics JMX type */
+  private static final String JMX_HEARTBEAT_STATISTICS_TYPE = "HeartbeatStatistics";
+
   /** The JMX business object for hosts statistics */
-  private HostsStatistics hostsStatistics;
+  HostsStatistics hostsStatistics;
 
   /** The JMX business object for services statistics */
-  private ServicesStatistics servicesStatistics;
+  ServicesStatistics servicesStatistics;
 
   /** The JMX business object for jobs statistics */
-  private JobsStatistics jobsStatistics;
+  JobsStatistics jobsStatistics;
+
+  /** The JMX business object for the registration cache statistics */
+  private final RegistrationCacheStatistics registrationCacheStatistics = new RegistrationCacheStatistics();
+
+  /** The JMX business object for the heartbeat statistics */
+  protected final HeartbeatStatistics heartbeatStatistics = new HeartbeatStatistics();
 
   /** Current job used to process job in the service registry */
   private static final ThreadLocal<Job> currentJob = new ThreadLocal<Job>();
@@ -191,12 +196,36 @@ public class ServiceRegistryJpaImpl implements ServiceRegistry, ManagedService {
   /** Configuration key for the interval to check whether the hosts in the service registry are still alive, in seconds */
   protected static final String OPT_HEARTBEATINTERVAL = "heartbeat.interval";
 
-  /** Configuration key for the collection of job statistics */
-  protected static final String OPT_JOBSTATISTICS = "jobstats.collect";
+  /** Configuration key for the maximum number of hosts checked concurrently by the heartbeat */
+  protected static final String OPT_HEARTBEAT_PARALLELISM = "heartbeat.parallelism";
+
+  /** Configuration key for the time to wait for a service to answer a heartbeat request, in seconds */
+  protected static final String OPT_HEARTBEAT_TIMEOUT = "heartbeat.timeout";
+
+  /** Configuration key for the interval to reconcile the job statistics with the database, in seconds */
+  protected static final String OPT_JOB_STATISTICS_RECONCILE_INTERVAL = "jobstats.reconcile.interval";
 
   /** Configuration key for the retrieval of service statistics: Do not consider jobs older than max_job_age (in days) */
   protected static final String OPT_SERVICE_STATISTICS_MAX_JOB_AGE = "org.opencastproject.statistics.services.max_job_age";
 
+  /** Configuration key for the maximum age of the cached registrations used for load balancing, in milliseconds */
+  protected static final String OPT_REGISTRATION_CACHE_TTL = "registration.cache.ttl";
+
+  /** Configuration key for the number of characters above which job payloads are compressed */
+  protected static final String OPT_JOB_PAYLOAD_COMPRESSION_THRESHOLD = "job.payload.compression.threshold";
+
+  /** Configuration key for the number of days after which terminated jobs are moved to the job archive */
+  protected static final String OPT_JOB_ARCHIVE_AGE = "job.archive.age";
+
+  /** Configuration key for the number of job trees moved to the job archive in a single transaction */
+  protected static final String OPT_JOB_ARCHIVE_BATCH_SIZE = "job.archive.batch.size";
+
+  /** Configuration key for the weight of input locality versus host load when dispatching jobs, between 0 and 1 */
+  protected static final String OPT_DISPATCH_LOCALITY_WEIGHT = "dispatch.locality.weight";
+
+  /** Configuration key for the interval to report the media package elements held in the workspace, in seconds */
+  protected static final String OPT_LOCALITY_REPORT_INTERVAL = "locality.report.interval";
+
   /** The http client to use when connecting to remote servers */
   protected TrustedHttpClient client = null;
 
@@ -213,12 +242,30 @@ public class ServiceRegistryJpaImpl implements ServiceRegistry, ManagedService {
    * (larger value will fetch more entries from the database at the same time and increase RAM usage) */
   static final int DEFAULT_DISPATCH_JOBS_LIMIT = 100;
 
-  /** Default setting on job statistics collection */
-  static final boolean DEFAULT_JOB_STATISTICS = false;
+  /** Default interval to reconcile the job statistics with the database, in seconds */
+  static final long DEFAULT_JOB_STATISTICS_RECONCILE_INTERVAL = 300;
 
   /** Default setting on service statistics retrieval */
   static final int DEFAULT_SERVICE_STATISTICS_MAX_JOB_AGE = 14;
 
+  /** Default maximum age of the cached registrations used for load balancing, in milliseconds */
+  static final long DEFAULT_REGISTRATION_CACHE_TTL = 2000;
+
+  /** Default number of days after which terminated jobs are archived, 0 disables archiving */
+  static final int DEFAULT_JOB_ARCHIVE_AGE = 0;
+
+  /** Default number of job trees archived in a single transaction */
+  static final int DEFAULT_JOB_ARCHIVE_BATCH_SIZE = 100;
+
+  /** Default weight of input locality when dispatching jobs, 0 dispatches by host load only */
+  static final float DEFAULT_DISPATCH_LOCALITY_WEIGHT = 0.0f;
+
+  /** Default interval to report the media package elements held in the workspace, 0 disables reporting */
+  static final long DEFAULT_LOCALITY_REPORT_INTERVAL = 0;
+
+  /** Delay between two runs of the job archiver, in seconds */
+  static final long JOB_ARCHIVE_INTERVAL = 3600;
+
   /** Default value for {@link #maxAttemptsBeforeErrorState} */
   private static final int MAX_FAILURE_BEFORE_ERROR_STATE = 10;
 
@@ -231,6 +278,15 @@ public class ServiceRegistryJpaImpl implements ServiceRegistry, ManagedService {
   /** Default delay between checking if hosts are still alive in seconds * */
   static final long DEFAULT_HEART_BEAT = 60;
 
+  /** Default maximum number of hosts checked concurrently by the heartbeat */
+  static final int DEFAULT_HEARTBEAT_PARALLELISM = 8;
+
+  /** Default time to wait for a service to answer a heartbeat request, in seconds */
+  static final int DEFAULT_HEARTBEAT_TIMEOUT = 10;
+
+  /** Interval between two checks of the awaited jobs in the database, in seconds */
+  static final long AWAITED_JOBS_CHECK_INTERVAL = 5;
+
   /** Default job load when not passed by service creating the job * */
   static final float DEFAULT_JOB_LOAD = 0.1f;
 
@@ -249,9 +305,21 @@ public class ServiceRegistryJpaImpl implements ServiceRegistry, ManagedService {
   /** Tracks services published locally and adds them to the service registry */
   protected RestServiceTracker tracker = null;
 
-  /** The thread pool to use for dispatching queued jobs and checking on phantom services. */
+  /** The thread pool to use for the heartbeat and other periodic maintenance tasks. */
   protected ScheduledExecutorService scheduledExecutor = null;
 
+  /** The thread running the job dispatch loop */
+  protected ScheduledExecutorService dispatchExecutor = null;
+
+  /** The job dispatch loop currently running, if any */
+  protected JobDispatchLoop dispatchLoop = null;
+
+  /** The thread pool used by the heartbeat to check the hosts concurrently */
+  protected ExecutorService heartbeatExecutor = null;
+
+  /** Time to wait for a service to answer a heartbeat request, in seconds */
+  protected int heartbeatTimeout = DEFAULT_HEARTBEAT_TIMEOUT;
+
   /** The security service */
   protected SecurityService securityService = null;
 
@@ -263,12 +331,24 @@ public class ServiceRegistryJpaImpl implements ServiceRegistry, ManagedService {
 
   protected Incidents incidents;
 
-  /** Whether to collect detailed job statistics */
-  protected boolean collectJobstats = DEFAULT_JOB_STATISTICS;
+  /** The job statistics, updated on every job transition */
+  protected final JobStatisticsCache jobStatistics = new JobStatisticsCache();
 
   /** Maximum age of jobs being considering for service statistics */
   protected int maxJobAge = DEFAULT_SERVICE_STATISTICS_MAX_JOB_AGE;
 
+  /** Number of days after which terminated jobs are archived, 0 if archiving is disabled */
+  protected int jobArchiveAge = DEFAULT_JOB_ARCHIVE_AGE;
+
+  /** Number of job trees archived in a single transaction */
+  protected int jobArchiveBatchSize = DEFAULT_JOB_ARCHIVE_BATCH_SIZE;
+
+  /** Weight of input locality versus host load when dispatching jobs */
+  protected float dispatchLocalityWeight = DEFAULT_DISPATCH_LOCALITY_WEIGHT;
+
+  /** The local workspace, reporting which media package elements this host holds */
+  protected Workspace workspace = null;
+
   /** A static list of statuses that influence how load balancing is calculated */
   protected static final List<Status> JOB_STATUSES_INFLUENCING_LOAD_BALANCING;
 
@@ -285,6 +365,30 @@ public class ServiceRegistryJpaImpl implements ServiceRegistry, ManagedService {
   /** The dispatcher priority list */
   protected final Map<Long, String> dispatchPriorityList = new HashMap<>();
 
+  /** The jobs waiting to be dispatched by this service registry */
+  protected final DispatchQueue dispatchQueue = new DispatchQueue();
+
+  /** Maximum time between two dispatching rounds and between two synchronizations of the dispatch queue, in ms */
+  protected long dispatchSyncInterval = TimeUnit.SECONDS.toMillis(DEFAULT_DISPATCH_INTERVAL);
+
+  /** Completes the callers waiting for jobs to terminate */
+  protected final JobCompletionNotifier completionNotifier = new JobCompletionNotifier(this);
+
+  /** The registrations and host loads used to balance the load of remote service calls */
+  protected final RegistrationCache registrationCache = new RegistrationCache(DEFAULT_REGISTRATION_CACHE_TTL);
+
+  /** Loads the registration cache */
+  private final RegistrationLoader registrationLoader = new RegistrationLoader(this, registrationCacheStatistics);
+
+  /** Keeps the job statistics in line with the database */
+  protected final JobStatisticsReconciler statisticsReconciler = new JobStatisticsReconciler(this);
+
+  /** Moves old job trees to the job archive */
+  protected final JobArchiver jobArchiver = new JobArchiver(this);
+
+  /** Tracks the media package elements held on each host */
+  protected final InputLocality inputLocality = new InputLocality(this);
+
   /** Whether to accept a job whose load exceeds the host’s max load */
   protected Boolean acceptJobLoadsExeedingMaxLoad = true;
 
@@ -315,18 +419,30 @@ public class ServiceRegistryJpaImpl implements ServiceRegistry, ManagedService {
               + "the service paths.", OpencastConstants.SERVER_URL_PROPERTY);
     }
 
+    // Read long payloads from the payload table once they are accessed
+    JpaJob.setStoredPayloadReader(this::readStoredPayload);
+
     // Clean all undispatchable jobs that were orphaned when this host was last deactivated
     cleanUndispatchableJobs(hostName);
 
+    completionNotifier.start();
+
+    if (heartbeatExecutor == null || heartbeatExecutor.isShutdown()) {
+      heartbeatExecutor = Executors.newFixedThreadPool(DEFAULT_HEARTBEAT_PARALLELISM);
+    }
+
     // Register JMX beans with statistics
     try {
       List<ServiceStatistics> serviceStatistics = getServiceStatistics();
       hostsStatistics = new HostsStatistics(serviceStatistics);
       servicesStatistics = new ServicesStatistics(hostName, serviceStatistics);
-      jobsStatistics = new JobsStatistics(hostName);
+      jobsStatistics = new JobsStatistics(hostName, () -> statisticsReconciler.getStatistics().getJobCounts(),
+              statisticsReconciler::getAverageJobTimes);
       jmxBeans.add(JmxUtil.registerMXBean(hostsStatistics, JMX_HOSTS_STATISTICS_TYPE));
       jmxBeans.add(JmxUtil.registerMXBean(servicesStatistics, JMX_SERVICES_STATISTICS_TYPE));
       jmxBeans.add(JmxUtil.registerMXBean(jobsStatistics, JMX_JOBS_STATISTICS_TYPE));
+      jmxBeans.add(JmxUtil.registerMXBean(registrationCacheStatistics, JMX_REGISTRATION_CACHE_STATISTICS_TYPE));
+      jmxBeans.add(JmxUtil.registerMXBean(heartbeatStatistics, JMX_HEARTBEAT_STATISTICS_TYPE));
     } catch (ServiceRegistryException e) {
       logger.error("Error registering JMX statistic beans", e);
     }
@@ -404,16 +520,16 @@ public class ServiceRegistryJpaImpl implements ServiceRegistry, ManagedService {
     logger.info("deactivate service registry");
 
     // Wait for job dispatcher to stop before unregistering hosts and requeuing jobs
+    stopJobDispatching();
+
     if (scheduledExecutor != null) {
-      try {
-        scheduledExecutor.shutdownNow();
-        if (!scheduledExecutor.isShutdown()) {
-          logger.info("Waiting for Dispatcher to terminate");
-          scheduledExecutor.awaitTermination(10, TimeUnit.SECONDS);
-        }
-      } catch (InterruptedException e) {
-        logger.error("Error shutting down the Dispatcher", e);
-      }
+      scheduledExecutor.shutdownNow();
+    }
+
+    completionNotifier.stop();
+
+    if (heartbeatExecutor != null) {
+      heartbeatExecutor.shutdownNow();
     }
 
     for (ObjectInstance mbean : jmxBeans) {
@@ -427,6 +543,25 @@ public class ServiceRegistryJpaImpl implements ServiceRegistry, ManagedService {
       unregisterHost(hostName);
     } catch (ServiceRegistryException e) {
       throw new IllegalStateException("Unable to unregister host " + hostName + " from the service registry", e);
+    } finally {
+      JpaJob.setStoredPayloadReader(null);
+    }
+  }
+
+  /**
+   * Reads the payload of a job from the payload table. Used for jobs whose payload is too long for the job table, once
+   * their payload is accessed.
+   *
+   * @param jobId
+   *          the job identifier
+   * @return the payload
+   */
+  private String readStoredPayload(long jobId) {
+    EntityManager em = emf.createEntityManager();
+    try {
+      return JpaJobPayload.find(em, jobId);
+    } finally {
+      em.close();
     }
   }
 
@@ -591,7 +726,14 @@ public class ServiceRegistryJpaImpl implements ServiceRegistry, ManagedService {
       }
 
       em.persist(jpaJob);
+      jpaJob.writeStoredPayload(em);
       tx.commit();
+      jobStatistics.update(null, JobStatisticsCache.Sample.of(jpaJob));
+
+      if (dispatchable) {
+        dispatchQueue.offer(jpaJob.getId(), serviceType, operation, Status.QUEUED, jpaJob.getDateCreated());
+        dispatchQueue.signal();
+      }
 
       setJobUri(jpaJob);
       Job job = jpaJob.toJob();
@@ -607,6 +749,156 @@ public class ServiceRegistryJpaImpl implements ServiceRegistry, ManagedService {
     }
   }
 
+  /**
+   * {@inheritDoc}
+   *
+   * @see org.opencastproject.serviceregistry.api.ServiceRegistry#createJobs(java.util.List)
+   */
+  @Override
+  public List<Job> createJobs(List<JobSpec> specs) throws ServiceRegistryException {
+    return createJobs(this.hostName, specs);
+  }
+
+  /**
+   * Creates a number of jobs on behalf of the given host in a single transaction. The inserts are sent to the database
+   * in JDBC batches, so creating many jobs at once takes a fraction of the round trips needed to create them one by
+   * one.
+   *
+   * @param host
+   *          the host creating the jobs
+   * @param specs
+   *          the specifications of the jobs to create
+   * @return the jobs, in the order of <code>specs</code>
+   * @throws ServiceRegistryException
+   *           if one of the job types is not registered on <code>host</code> or if a parent job does not exist
+   */
+  public List<Job> createJobs(String host, List<JobSpec> specs) throws ServiceRegistryException {
+    if (StringUtils.isBlank(host)) {
+      throw new IllegalArgumentException("Host can't be null");
+    }
+    for (JobSpec spec : specs) {
+      if (StringUtils.isBlank(spec.getJobType())) {
+        throw new IllegalArgumentException("Service type can't be null");
+      }
+      if (StringUtils.isBlank(spec.getOperation())) {
+        throw new IllegalArgumentException("Operation can't be null");
+      }
+    }
+    if (specs.isEmpty()) {
+      return Collections.emptyList();
+    }
+    Job currentJob = getCurrentJob();
+    EntityManager em = null;
+    EntityTransaction tx = null;
+    try {
+      em = emf.createEntityManager();
+      tx = em.getTransaction();
+      tx.begin();
+
+      User currentUser = securityService.getUser();
+      Organization currentOrganization = securityService.getOrganization();
+      Map<String, ServiceRegistrationJpaImpl> creatingServices = new HashMap<>();
+      Map<Long, JpaJob> parentJobs = new HashMap<>();
+      List<JpaJob> jpaJobs = new ArrayList<>(specs.size());
+
+      for (JobSpec spec : specs) {
+        ServiceRegistrationJpaImpl creatingService = creatingServices.get(spec.getJobType());
+        if (creatingService == null) {
+          creatingService = getServiceRegistration(em, spec.getJobType(), host);
+          if (creatingService == null) {
+            throw new ServiceRegistryException("No service registration exists for type '" + spec.getJobType()
+                    + "' on host '" + host + "'");
+          }
+          if (creatingService.getHostRegistration().isMaintenanceMode()) {
+            logger.warn("Creating jobs from {}, which is currently in maintenance mode.", creatingService.getHost());
+          } else if (!creatingService.getHostRegistration().isActive()) {
+            logger.warn("Creating jobs from {}, which is currently inactive.", creatingService.getHost());
+          }
+          creatingServices.put(spec.getJobType(), creatingService);
+        }
+
+        float jobLoad = spec.getJobLoad() != null ? spec.getJobLoad() : DEFAULT_JOB_LOAD;
+        JpaJob jpaJob = new JpaJob(currentUser, currentOrganization, creatingService, spec.getOperation(),
+                spec.getArguments(), spec.getPayload(), spec.isDispatchable(), jobLoad);
+
+        // Bind the parent and root job, which are usually shared by all jobs of a batch
+        Job parentJob = spec.getParentJob() != null ? spec.getParentJob() : currentJob;
+        if (parentJob != null) {
+          JpaJob jpaParentJob = findJob(em, parentJob.getId(), parentJobs);
+          jpaJob.setParentJob(jpaParentJob);
+          jpaJob.setRootJob(parentJob.getRootJobId() != null ? findJob(em, parentJob.getRootJobId(), parentJobs)
+                  : jpaParentJob);
+        }
+
+        // if this job is not dispatchable, it must be handled by the host that has created it
+        if (spec.isDispatchable()) {
+          jpaJob.setStatus(Status.QUEUED);
+        } else {
+          jpaJob.setProcessorServiceRegistration(creatingService);
+        }
+
+        em.persist(jpaJob);
+        jpaJob.writeStoredPayload(em);
+        jpaJobs.add(jpaJob);
+      }
+      tx.commit();
+      logger.debug("Created {} jobs on behalf of {}", jpaJobs.size(), host);
+
+      List<Job> jobs = new ArrayList<>(jpaJobs.size());
+      boolean dispatchable = false;
+      for (JpaJob jpaJob : jpaJobs) {
+        jobStatistics.update(null, JobStatisticsCache.Sample.of(jpaJob));
+        if (jpaJob.isDispatchable()) {
+          dispatchQueue.offer(jpaJob.getId(), jpaJob.getJobType(), jpaJob.getOperation(), Status.QUEUED,
+                  jpaJob.getDateCreated());
+          dispatchable = true;
+        }
+        setJobUri(jpaJob);
+        jobs.add(jpaJob.toJob());
+      }
+      if (dispatchable) {
+        dispatchQueue.signal();
+      }
+      return jobs;
+    } catch (PersistenceException e) {
+      throw new ServiceRegistryException(e);
+    } finally {
+      if (tx != null && tx.isActive()) {
+        tx.rollback();
+      }
+      if (em != null)
+        em.close();
+    }
+  }
+
+  /**
+   * Looks up a job within the current transaction, remembering the result for subsequent lookups.
+   *
+   * @param em
+   *          the entity manager
+   * @param id
+   *          the job identifier
+   * @param found
+   *          the jobs looked up so far
+   * @return the job
+   * @throws ServiceRegistryException
+   *           if the job does not exist
+   */
+  private JpaJob findJob(EntityManager em, long id, Map<Long, JpaJob> found) throws ServiceRegistryException {
+    JpaJob jpaJob = found.get(id);
+    if (jpaJob == null) {
+      jpaJob = em.find(JpaJob.class, id);
+      if (jpaJob == null) {
+        logger.error("Job {} not found in the persistence context", id);
+        // We don't want to leave the deleted job in the cache if there
+        removeFromLoadCache(id);
+        throw new ServiceRegistryException(new NotFoundException("Job " + id + " not found"));
+      }
+      found.put(id, jpaJob);
+    }
+    return jpaJob;
+  }
+
   @Override
   public void removeJobs(List<Long> jobIds) throws NotFoundException, ServiceRegistryException {
 
@@ -626,6 +918,9 @@ public class ServiceRegistryJpaImpl implements ServiceRegistry, ManagedService {
 
       for (long jobId: jobIds) {
         JpaJob job = em.find(JpaJob.class, jobId);
+        if (job == null && jobArchiver.removeArchivedJob(em, jobId)) {
+          continue;
+        }
         if (job == null) {
           logger.error("Job with Id {} cannot be deleted: Not found.", jobId);
           tx.rollback();
@@ -633,11 +928,21 @@ public class ServiceRegistryJpaImpl implements ServiceRegistry, ManagedService {
           throw new NotFoundException("Job with ID '" + jobId + "' not found");
         }
         deleteChildJobs(em, tx, jobId);
+        if (job.isPayloadStored()) {
+          JpaJobPayload.delete(em, Collections.singletonList(jobId));
+        }
         em.remove(job);
         removeFromLoadCache(jobId);
+        dispatchQueue.remove(jobId);
       }
 
       tx.commit();
+      registrationCache.invalidate();
+      // Child jobs are removed as well
+      jobStatistics.invalidate();
+      for (long jobId : jobIds) {
+        completionNotifier.jobRemoved(jobId);
+      }
       logger.info("Jobs with IDs '{}' deleted", jobIds);
     } finally {
       if (em != null)
@@ -658,8 +963,12 @@ public class ServiceRegistryJpaImpl implements ServiceRegistry, ManagedService {
       for (int i = childJobs.size() - 1; i >= 0; i--) {
         Job job = childJobs.get(i);
         JpaJob jobToDelete = em.find(JpaJob.class, job.getId());
+        if (jobToDelete.isPayloadStored()) {
+          JpaJobPayload.delete(em, Collections.singletonList(job.getId()));
+        }
         em.remove(jobToDelete);
         removeFromLoadCache(job.getId());
+        dispatchQueue.remove(job.getId());
         logger.debug("{} deleted", job);
       }
       logger.debug("Deleted all child jobs of job '{}'", jobId);
@@ -720,6 +1029,23 @@ public class ServiceRegistryJpaImpl implements ServiceRegistry, ManagedService {
     return;
   }
 
+  /**
+   * Moves job trees which terminated before the given date from the job table to the job archive. A job tree is only
+   * archived once its root job and all of its descendants terminated, so that jobs in the job table never refer to
+   * archived jobs.
+   *
+   * @param terminatedBefore
+   *          the date before which the root jobs must have terminated
+   * @param limit
+   *          the maximum number of job trees to archive
+   * @return the number of archived job trees
+   * @throws ServiceRegistryException
+   *           if there is a problem archiving the jobs
+   */
+  public int archiveJobs(Date terminatedBefore, int limit) throws ServiceRegistryException {
+    return jobArchiver.archive(terminatedBefore, limit);
+  }
+
   /**
    * {@inheritDoc}
    *
@@ -780,14 +1106,57 @@ public class ServiceRegistryJpaImpl implements ServiceRegistry, ManagedService {
       }
     }
 
-    String jobStatsString = StringUtils.trimToNull((String) properties.get(OPT_JOBSTATISTICS));
-    if (StringUtils.isNotBlank(jobStatsString)) {
+    int heartbeatParallelism = DEFAULT_HEARTBEAT_PARALLELISM;
+    String heartbeatParallelismString = StringUtils.trimToNull((String) properties.get(OPT_HEARTBEAT_PARALLELISM));
+    if (heartbeatParallelismString != null) {
       try {
-        collectJobstats = Boolean.valueOf(jobStatsString);
-      } catch (Exception e) {
-        logger.warn("Job statistics collection flag '{}' is malformed, setting to {}", jobStatsString,
-                DEFAULT_JOB_STATISTICS);
-        collectJobstats = DEFAULT_JOB_STATISTICS;
+        heartbeatParallelism = Integer.parseInt(heartbeatParallelismString);
+      } catch (NumberFormatException e) {
+        logger.warn("Heartbeat parallelism '{}' is malformed, setting to {}", heartbeatParallelismString,
+                DEFAULT_HEARTBEAT_PARALLELISM);
+      }
+      if (heartbeatParallelism < 1) {
+        logger.warn("Heartbeat parallelism {} too low, adjusting to {}", heartbeatParallelism,
+                DEFAULT_HEARTBEAT_PARALLELISM);
+        heartbeatParallelism = DEFAULT_HEARTBEAT_PARALLELISM;
+      } else {
+        logger.info("Heartbeat checks up to {} hosts concurrently", heartbeatParallelism);
+      }
+    }
+
+    heartbeatTimeout = DEFAULT_HEARTBEAT_TIMEOUT;
+    String heartbeatTimeoutString = StringUtils.trimToNull((String) properties.get(OPT_HEARTBEAT_TIMEOUT));
+    if (heartbeatTimeoutString != null) {
+      try {
+        heartbeatTimeout = Integer.parseInt(heartbeatTimeoutString);
+      } catch (NumberFormatException e) {
+        logger.warn("Heartbeat timeout '{}' is malformed, setting to {}", heartbeatTimeoutString,
+                DEFAULT_HEARTBEAT_TIMEOUT);
+      }
+      if (heartbeatTimeout < 1) {
+        logger.warn("Heartbeat timeout {} seconds too low, adjusting to {}", heartbeatTimeout,
+                DEFAULT_HEARTBEAT_TIMEOUT);
+        heartbeatTimeout = DEFAULT_HEARTBEAT_TIMEOUT;
+      } else {
+        logger.info("Heartbeat timeout set to {} seconds", heartbeatTimeout);
+      }
+    }
+
+    long jobStatisticsReconcileInterval = DEFAULT_JOB_STATISTICS_RECONCILE_INTERVAL;
+    String jobStatisticsReconcileIntervalString = StringUtils.trimToNull(
+            (String) properties.get(OPT_JOB_STATISTICS_RECONCILE_INTERVAL));
+    if (jobStatisticsReconcileIntervalString != null) {
+      try {
+        jobStatisticsReconcileInterval = Long.parseLong(jobStatisticsReconcileIntervalString);
+      } catch (NumberFormatException e) {
+        logger.warn("Job statistics reconcile interval '{}' is malformed, setting to {}",
+                jobStatisticsReconcileIntervalString, DEFAULT_JOB_STATISTICS_RECONCILE_INTERVAL);
+      }
+      if (jobStatisticsReconcileInterval > 0) {
+        logger.info("Reconciling the job statistics with the database every {} seconds",
+                jobStatisticsReconcileInterval);
+      } else {
+        logger.info("Periodic reconciliation of the job statistics disabled");
       }
     }
 
@@ -795,6 +1164,7 @@ public class ServiceRegistryJpaImpl implements ServiceRegistry, ManagedService {
     if (maxJobAgeString != null) {
       try {
         maxJobAge = Integer.parseInt(maxJobAgeString);
+        jobStatistics.invalidate();
         logger.info("Set service statistics max job age to {}", maxJobAgeString);
       } catch (NumberFormatException e) {
         logger.warn("Can not set service statistics max job age to {}. {} must be an integer", maxJobAgeString,
@@ -802,28 +1172,190 @@ public class ServiceRegistryJpaImpl implements ServiceRegistry, ManagedService {
       }
     }
 
+    long registrationCacheTtl = DEFAULT_REGISTRATION_CACHE_TTL;
+    String registrationCacheTtlString = StringUtils.trimToNull((String) properties.get(OPT_REGISTRATION_CACHE_TTL));
+    if (registrationCacheTtlString != null) {
+      try {
+        registrationCacheTtl = Long.parseLong(registrationCacheTtlString);
+      } catch (NumberFormatException e) {
+        logger.warn("Registration cache ttl '{}' is malformed, setting to {}", registrationCacheTtlString,
+                DEFAULT_REGISTRATION_CACHE_TTL);
+      }
+      if (registrationCacheTtl < 0) {
+        logger.warn("Registration cache ttl {} ms must not be negative, setting to {}", registrationCacheTtl,
+                DEFAULT_REGISTRATION_CACHE_TTL);
+        registrationCacheTtl = DEFAULT_REGISTRATION_CACHE_TTL;
+      } else if (registrationCacheTtl == 0) {
+        logger.info("Registration cache disabled");
+      } else {
+        logger.info("Registration cache ttl set to {} ms", registrationCacheTtl);
+      }
+    }
+    registrationCache.setTtl(registrationCacheTtl);
+    registrationCache.invalidate();
+
+    int compressionThreshold = JpaJobPayload.DEFAULT_COMPRESSION_THRESHOLD;
+    String compressionThresholdString = StringUtils.trimToNull(
+            (String) properties.get(OPT_JOB_PAYLOAD_COMPRESSION_THRESHOLD));
+    if (compressionThresholdString != null) {
+      try {
+        compressionThreshold = Integer.parseInt(compressionThresholdString);
+      } catch (NumberFormatException e) {
+        logger.warn("Job payload compression threshold '{}' is malformed, setting to {}", compressionThresholdString,
+                JpaJobPayload.DEFAULT_COMPRESSION_THRESHOLD);
+      }
+      if (compressionThreshold < 0) {
+        logger.info("Job payload compression disabled");
+      } else {
+        logger.info("Compressing job payloads longer than {} characters", compressionThreshold);
+      }
+    }
+    JpaJobPayload.setCompressionThreshold(compressionThreshold);
+
+    jobArchiveAge = DEFAULT_JOB_ARCHIVE_AGE;
+    String jobArchiveAgeString = StringUtils.trimToNull((String) properties.get(OPT_JOB_ARCHIVE_AGE));
+    if (jobArchiveAgeString != null) {
+      try {
+        jobArchiveAge = Integer.parseInt(jobArchiveAgeString);
+      } catch (NumberFormatException e) {
+        logger.warn("Job archive age '{}' is malformed, setting to {}", jobArchiveAgeString, DEFAULT_JOB_ARCHIVE_AGE);
+      }
+      if (jobArchiveAge <= 0) {
+        logger.info("Job archiving disabled");
+        jobArchiveAge = 0;
+      } else {
+        logger.info("Archiving jobs terminated more than {} days ago", jobArchiveAge);
+      }
+    }
+
+    jobArchiveBatchSize = DEFAULT_JOB_ARCHIVE_BATCH_SIZE;
+    String jobArchiveBatchSizeString = StringUtils.trimToNull((String) properties.get(OPT_JOB_ARCHIVE_BATCH_SIZE));
+    if (jobArchiveBatchSizeString != null) {
+      try {
+        jobArchiveBatchSize = Integer.parseInt(jobArchiveBatchSizeString);
+      } catch (NumberFormatException e) {
+        logger.warn("Job archive batch size '{}' is malformed, setting to {}", jobArchiveBatchSizeString,
+                DEFAULT_JOB_ARCHIVE_BATCH_SIZE);
+      }
+      if (jobArchiveBatchSize < 1) {
+        logger.warn("Job archive batch size {} must be positive, setting to {}", jobArchiveBatchSize,
+                DEFAULT_JOB_ARCHIVE_BATCH_SIZE);
+        jobArchiveBatchSize = DEFAULT_JOB_ARCHIVE_BATCH_SIZE;
+      }
+    }
+
+    dispatchLocalityWeight = DEFAULT_DISPATCH_LOCALITY_WEIGHT;
+    String dispatchLocalityWeightString = StringUtils.trimToNull(
+            (String) properties.get(OPT_DISPATCH_LOCALITY_WEIGHT));
+    if (dispatchLocalityWeightString != null) {
+      try {
+        dispatchLocalityWeight = Float.parseFloat(dispatchLocalityWeightString);
+      } catch (NumberFormatException e) {
+        logger.warn("Dispatch locality weight '{}' is malformed, setting to {}", dispatchLocalityWeightString,
+                DEFAULT_DISPATCH_LOCALITY_WEIGHT);
+      }
+      if (dispatchLocalityWeight < 0.0f || dispatchLocalityWeight > 1.0f) {
+        logger.warn("Dispatch locality weight {} must be between 0 and 1, setting to {}", dispatchLocalityWeight,
+                DEFAULT_DISPATCH_LOCALITY_WEIGHT);
+        dispatchLocalityWeight = DEFAULT_DISPATCH_LOCALITY_WEIGHT;
+      } else if (dispatchLocalityWeight > 0.0f) {
+        logger.info("Dispatching jobs by input locality with a weight of {}", dispatchLocalityWeight);
+      }
+    }
+
+    long localityReportInterval = DEFAULT_LOCALITY_REPORT_INTERVAL;
+    String localityReportIntervalString = StringUtils.trimToNull(
+            (String) properties.get(OPT_LOCALITY_REPORT_INTERVAL));
+    if (localityReportIntervalString != null) {
+      try {
+        localityReportInterval = Long.parseLong(localityReportIntervalString);
+      } catch (NumberFormatException e) {
+        logger.warn("Locality report interval '{}' is malformed, setting to {}", localityReportIntervalString,
+                DEFAULT_LOCALITY_REPORT_INTERVAL);
+      }
+      if (localityReportInterval > 0) {
+        logger.info("Reporting the workspace contents every {} seconds", localityReportInterval);
+      }
+    }
+
     long dispatchDelay = DEFAULT_DISPATCH_START_DELAY;
 
     // Stop the current scheduled executors so we can configure new ones
     if (scheduledExecutor != null) {
-      scheduledExecutor.shutdown();
+      scheduledExecutor.shutdownNow();
       dispatchDelay = dispatchInterval;
     }
+    stopJobDispatching();
 
-    scheduledExecutor = Executors.newScheduledThreadPool(2);
+    scheduledExecutor = Executors.newScheduledThreadPool(5);
+
+    if (heartbeatExecutor != null) {
+      heartbeatExecutor.shutdown();
+    }
+    heartbeatExecutor = Executors.newFixedThreadPool(heartbeatParallelism);
 
     // Schedule the service heartbeat if the interval is > 0
     if (heartbeatInterval > 0) {
       logger.debug("Starting service heartbeat at a custom interval of {}s", heartbeatInterval);
-      scheduledExecutor.scheduleWithFixedDelay(new JobProducerHeartbeat(), heartbeatInterval, heartbeatInterval,
+      scheduledExecutor.scheduleWithFixedDelay(new JobProducerHeartbeat(this), heartbeatInterval, heartbeatInterval,
               TimeUnit.SECONDS);
     }
 
-    // Schedule the job dispatching.
+    // Jobs terminating on other nodes are usually announced, the check is a safety net for lost notifications
+    scheduledExecutor.scheduleWithFixedDelay(completionNotifier, AWAITED_JOBS_CHECK_INTERVAL,
+            AWAITED_JOBS_CHECK_INTERVAL, TimeUnit.SECONDS);
+
+    // Keep the job table small by moving old job trees to the job archive. Like dispatching, archiving only runs on
+    // the nodes dispatching jobs, so that several nodes do not archive the same jobs at the same time.
+    if (jobArchiveAge > 0 && dispatchInterval > 0) {
+      scheduledExecutor.scheduleWithFixedDelay(jobArchiver, DEFAULT_DISPATCH_START_DELAY, JOB_ARCHIVE_INTERVAL,
+              TimeUnit.SECONDS);
+    }
+
+    // Pick up job transitions performed by other nodes
+    if (jobStatisticsReconcileInterval > 0) {
+      scheduledExecutor.scheduleWithFixedDelay(statisticsReconciler, jobStatisticsReconcileInterval,
+              jobStatisticsReconcileInterval, TimeUnit.SECONDS);
+    }
+
+    // Tell the dispatchers which media package elements are already available on this host
+    if (localityReportInterval > 0) {
+      scheduledExecutor.scheduleWithFixedDelay(inputLocality, localityReportInterval, localityReportInterval,
+              TimeUnit.SECONDS);
+    }
+
+    // Schedule the job dispatching. New jobs wake the dispatcher up immediately, the interval only defines how often
+    // the dispatch queue is synchronized with jobs queued by other nodes.
     if (dispatchInterval > 0) {
       logger.debug("Starting job dispatching at a custom interval of {}s", dispatchInterval);
-      scheduledExecutor.scheduleWithFixedDelay(new JobDispatcher(), dispatchDelay, dispatchInterval,
-              TimeUnit.SECONDS);
+      dispatchSyncInterval = TimeUnit.SECONDS.toMillis(dispatchInterval);
+      dispatchLoop = new JobDispatchLoop(this);
+      dispatchExecutor = Executors.newSingleThreadScheduledExecutor();
+      dispatchExecutor.schedule(dispatchLoop, dispatchDelay, TimeUnit.SECONDS);
+    } else {
+      dispatchQueue.clear();
+    }
+  }
+
+  /**
+   * Stops the job dispatch loop, if it is running, and waits for the current dispatching run to finish.
+   */
+  private void stopJobDispatching() {
+    if (dispatchLoop != null) {
+      dispatchLoop.stop();
+      dispatchLoop = null;
+    }
+    if (dispatchExecutor != null) {
+      dispatchExecutor.shutdownNow();
+      try {
+        if (!dispatchExecutor.awaitTermination(10, TimeUnit.SECONDS)) {
+          logger.warn("Job dispatcher did not terminate in time");
+        }
+      } catch (InterruptedException e) {
+        logger.error("Interrupted while waiting for the job dispatcher to terminate", e);
+        Thread.currentThread().interrupt();
+      }
+      dispatchExecutor = null;
     }
   }
 
@@ -865,7 +1397,62 @@ public class ServiceRegistryJpaImpl implements ServiceRegistry, ManagedService {
 
   @Override
   public Job getJob(long id) throws NotFoundException, ServiceRegistryException {
-    return getJpaJob(id).toJob();
+    try {
+      return getJpaJob(id).toJob();
+    } catch (NotFoundException e) {
+      return getArchivedJob(id);
+    }
+  }
+
+  /**
+   * Gets a job from the job archive. Archived jobs are read only.
+   *
+   * @param id
+   *          the job identifier
+   * @return the archived job
+   * @throws NotFoundException
+   *           if the job has not been archived
+   * @throws ServiceRegistryException
+   *           if there is a problem accessing the job archive
+   */
+  public Job getArchivedJob(long id) throws NotFoundException, ServiceRegistryException {
+    EntityManager em = null;
+    try {
+      em = emf.createEntityManager();
+      JpaArchivedJob archivedJob = em.find(JpaArchivedJob.class, id);
+      if (archivedJob == null) {
+        throw new NotFoundException("Job " + id + " not found");
+      }
+      return setJobUri(archivedJob).toJob();
+    } catch (PersistenceException e) {
+      throw new ServiceRegistryException(e);
+    } finally {
+      if (em != null)
+        em.close();
+    }
+  }
+
+  /**
+   * {@inheritDoc}
+   *
+   * @see org.opencastproject.serviceregistry.api.ServiceRegistry#awaitJobs(java.util.List)
+   */
+  @Override
+  public CompletableFuture<List<Job>> awaitJobs(List<Long> jobIds) throws ServiceRegistryException {
+    return completionNotifier.await(jobIds);
+  }
+
+  /**
+   * Called when another node announces the termination of a job. The announcement only triggers a look at the job, the
+   * job status is always taken from the database.
+   *
+   * @param jobId
+   *          the identifier of the terminated job
+   * @throws ServiceRegistryException
+   *           if the job status could not be read
+   */
+  public void jobTerminated(long jobId) throws ServiceRegistryException {
+    completionNotifier.jobTerminated(jobId);
   }
 
   /**
@@ -888,23 +1475,13 @@ public class ServiceRegistryJpaImpl implements ServiceRegistry, ManagedService {
     currentJob.set(job);
   }
 
-  private JpaJob updateJob(JpaJob job) throws ServiceRegistryException {
+  JpaJob updateJob(JpaJob job) throws ServiceRegistryException {
     EntityManager em = null;
     try {
       em = emf.createEntityManager();
       Job oldJob = getJob(job.getId());
       JpaJob jpaJob = updateInternal(em, job);
-      if (!TYPE_WORKFLOW.equals(job.getJobType()) && job.getJobLoad() > 0.0f
-              && job.getProcessorServiceRegistration() != null
-              && job.getProcessorServiceRegistration().getHost().equals(getRegistryHostname())) {
-        processCachedLoadChange(job);
-      }
-
-      // All WorkflowService Jobs will be ignored
-      if (oldJob.getStatus() != job.getStatus() && !TYPE_WORKFLOW.equals(job.getJobType())) {
-        updateServiceForFailover(em, job);
-      }
-
+      updateLoadAndServiceState(em, job, oldJob.getStatus());
       return jpaJob;
     } catch (PersistenceException e) {
       throw new ServiceRegistryException(e);
@@ -923,7 +1500,87 @@ public class ServiceRegistryJpaImpl implements ServiceRegistry, ManagedService {
     JpaJob jpaJob = JpaJob.from(job);
     jpaJob.setProcessorServiceRegistration(
             (ServiceRegistrationJpaImpl) getServiceRegistration(job.getJobType(), job.getProcessingHost()));
-    return updateJob(jpaJob).toJob();
+    Job updated = updateJob(jpaJob).toJob();
+    // Anything but a job starting to run either queues new work or frees capacity
+    if (!Status.RUNNING.equals(updated.getStatus())) {
+      dispatchQueue.signal();
+    }
+    return updated;
+  }
+
+  /**
+   * {@inheritDoc}
+   *
+   * @see org.opencastproject.serviceregistry.api.ServiceRegistry#updateJobs(java.util.List)
+   */
+  @Override
+  public List<Job> updateJobs(List<Job> jobs) throws NotFoundException, ServiceRegistryException {
+    if (jobs.isEmpty()) {
+      return Collections.emptyList();
+    }
+    Map<String, ServiceRegistrationJpaImpl> processors = new HashMap<>();
+    List<JpaJob> jpaJobs = new ArrayList<>(jobs.size());
+    for (Job job : jobs) {
+      JpaJob jpaJob = JpaJob.from(job);
+      String processor = job.getJobType() + "@" + job.getProcessingHost();
+      if (!processors.containsKey(processor)) {
+        processors.put(processor,
+                (ServiceRegistrationJpaImpl) getServiceRegistration(job.getJobType(), job.getProcessingHost()));
+      }
+      jpaJob.setProcessorServiceRegistration(processors.get(processor));
+      jpaJobs.add(jpaJob);
+    }
+
+    EntityManager em = null;
+    EntityTransaction tx = null;
+    try {
+      em = emf.createEntityManager();
+      tx = em.getTransaction();
+      tx.begin();
+      List<JpaJob> fromDb = new ArrayList<>(jpaJobs.size());
+      List<Status> previousStatus = new ArrayList<>(jpaJobs.size());
+      List<JobStatisticsCache.Sample> previousSamples = new ArrayList<>(jpaJobs.size());
+      for (JpaJob jpaJob : jpaJobs) {
+        JpaJob stored = em.find(JpaJob.class, jpaJob.getId());
+        if (stored == null) {
+          throw new NotFoundException("Job " + jpaJob.getId() + " not found");
+        }
+        previousStatus.add(stored.getStatus());
+        previousSamples.add(JobStatisticsCache.Sample.of(stored));
+        update(stored, jpaJob);
+        em.merge(stored);
+        stored.writeStoredPayload(em);
+        fromDb.add(stored);
+      }
+      tx.commit();
+      logger.debug("Updated {} jobs", fromDb.size());
+
+      List<Job> updated = new ArrayList<>(jpaJobs.size());
+      boolean invalidateRegistrations = false;
+      boolean signal = false;
+      for (int i = 0; i < jpaJobs.size(); i++) {
+        JpaJob job = jpaJobs.get(i);
+        invalidateRegistrations |= jobUpdated(job, fromDb.get(i), previousStatus.get(i), previousSamples.get(i));
+        updateLoadAndServiceState(em, job, previousStatus.get(i));
+        signal |= !Status.RUNNING.equals(job.getStatus());
+        updated.add(job.toJob());
+      }
+      if (invalidateRegistrations) {
+        registrationCache.invalidate();
+      }
+      if (signal) {
+        dispatchQueue.signal();
+      }
+      return updated;
+    } catch (PersistenceException e) {
+      throw new ServiceRegistryException(e);
+    } finally {
+      if (tx != null && tx.isActive()) {
+        tx.rollback();
+      }
+      if (em != null)
+        em.close();
+    }
   }
 
   /**
@@ -957,7 +1614,7 @@ public class ServiceRegistryJpaImpl implements ServiceRegistry, ManagedService {
     }
   }
 
-  private synchronized void removeFromLoadCache(Long jobId) {
+  synchronized void removeFromLoadCache(Long jobId) {
     if (jobCache.get(jobId) != null) {
       float jobLoad = jobCache.get(jobId);
       logger.debug("Removing deleted job from load cache: Job {}, load {}", jobId, jobLoad);
@@ -975,6 +1632,15 @@ public class ServiceRegistryJpaImpl implements ServiceRegistry, ManagedService {
     return job;
   }
 
+  protected JpaArchivedJob setJobUri(JpaArchivedJob job) {
+    try {
+      job.setUri(new URI(jobHost + "/services/job/" + job.getId() + ".xml"));
+    } catch (URISyntaxException e) {
+      logger.warn("Can not set the job URI", e);
+    }
+    return job;
+  }
+
   private Fn<JpaJob, JpaJob> fnSetJobUri() {
     return new Fn<JpaJob, JpaJob>() {
       @Override
@@ -1005,12 +1671,16 @@ public class ServiceRegistryJpaImpl implements ServiceRegistry, ManagedService {
       if (fromDb == null) {
         throw new NoResultException();
       }
+      Status previousStatus = fromDb.getStatus();
+      JobStatisticsCache.Sample previousSample = JobStatisticsCache.Sample.of(fromDb);
       update(fromDb, job);
 
       em.merge(fromDb);
+      fromDb.writeStoredPayload(em);
       tx.commit();
-      job.setVersion(fromDb.toJob().getVersion());
-      setJobUri(job);
+      if (jobUpdated(job, fromDb, previousStatus, previousSample)) {
+        registrationCache.invalidate();
+      }
       return job;
     } catch (PersistenceException e) {
       if (tx.isActive()) {
@@ -1020,6 +1690,74 @@ public class ServiceRegistryJpaImpl implements ServiceRegistry, ManagedService {
     }
   }
 
+  /**
+   * Brings the in-memory state of the registry up to date after a job update has been committed: the job statistics,
+   * the dispatch queue and the parties waiting for the job. The in-memory job receives the new version.
+   *
+   * @param job
+   *          the in-memory job
+   * @param fromDb
+   *          the job as persisted
+   * @param previousStatus
+   *          the status of the job before the update
+   * @param previousSample
+   *          the statistics sample of the job before the update
+   * @return whether the update changes the load of a service, which outdates the cached service registrations
+   */
+  private boolean jobUpdated(JpaJob job, JpaJob fromDb, Status previousStatus,
+          JobStatisticsCache.Sample previousSample) {
+    jobStatistics.update(previousSample, JobStatisticsCache.Sample.of(fromDb));
+    updateDispatchQueue(fromDb);
+    if (previousStatus != fromDb.getStatus()) {
+      completionNotifier.announceTermination(fromDb);
+    }
+    job.setVersion(fromDb.toJob().getVersion());
+    setJobUri(job);
+    return JOB_STATUSES_INFLUENCING_LOAD_BALANCING.contains(previousStatus)
+            != JOB_STATUSES_INFLUENCING_LOAD_BALANCING.contains(fromDb.getStatus());
+  }
+
+  /**
+   * Updates the load of this host and the state of the processing service after a job has been updated by its
+   * processor. Workflow jobs are ignored.
+   *
+   * @param em
+   *          the current entity manager
+   * @param job
+   *          the updated job
+   * @param previousStatus
+   *          the status of the job before the update
+   * @throws ServiceRegistryException
+   *           if the service state cannot be updated
+   */
+  private void updateLoadAndServiceState(EntityManager em, JpaJob job, Status previousStatus)
+          throws ServiceRegistryException {
+    if (TYPE_WORKFLOW.equals(job.getJobType())) {
+      return;
+    }
+    if (job.getJobLoad() > 0.0f && job.getProcessorServiceRegistration() != null
+            && job.getProcessorServiceRegistration().getHost().equals(getRegistryHostname())) {
+      processCachedLoadChange(job);
+    }
+    if (previousStatus != job.getStatus()) {
+      updateServiceForFailover(em, job);
+    }
+  }
+
+  /**
+   * Adds the given job to the dispatch queue if it is waiting to be dispatched or removes it otherwise.
+   *
+   * @param job
+   *          the job as persisted
+   */
+  private void updateDispatchQueue(JpaJob job) {
+    if (job.isDispatchable() && DispatchQueue.isQueued(job.getStatus())) {
+      dispatchQueue.offer(job.getId(), job.getJobType(), job.getOperation(), job.getStatus(), job.getDateCreated());
+    } else {
+      dispatchQueue.remove(job.getId());
+    }
+  }
+
   /**
    * Internal method to update the service registration state, throwing unwrapped JPA exceptions.
    *
@@ -1047,6 +1785,7 @@ public class ServiceRegistryJpaImpl implements ServiceRegistry, ManagedService {
       fromDb.setWarningStateTrigger(registration.getWarningStateTrigger());
       fromDb.setErrorStateTrigger(registration.getErrorStateTrigger());
       tx.commit();
+      registrationCache.invalidate();
       servicesStatistics.updateService(registration);
       return registration;
     } catch (PersistenceException e) {
@@ -1072,7 +1811,9 @@ public class ServiceRegistryJpaImpl implements ServiceRegistry, ManagedService {
     final Status status = job.getStatus();
     final Status fromDbStatus = fromDb.getStatus();
 
-    fromDb.setPayload(job.getPayload());
+    if (!jpaJob.isPayloadUnmodified()) {
+      fromDb.setPayload(jpaJob.getPayload());
+    }
     fromDb.setStatus(job.getStatus());
     fromDb.setDispatchable(job.isDispatchable());
     fromDb.setVersion(job.getVersion());
@@ -1182,6 +1923,7 @@ public class ServiceRegistryJpaImpl implements ServiceRegistry, ManagedService {
       }
       logger.info("Registering {} with a maximum load of {}", host, maxLoad);
       tx.commit();
+      registrationCache.invalidate();
       hostsStatistics.updateHost(hostRegistration);
     } catch (Exception e) {
       if (tx != null && tx.isActive()) {
@@ -1219,6 +1961,7 @@ public class ServiceRegistryJpaImpl implements ServiceRegistry, ManagedService {
       logger.info("Unregistering {}", host);
       tx.commit();
       logger.info("Host {} unregistered", host);
+      registrationCache.invalidate();
       hostsStatistics.updateHost(existingHostRegistration);
     } catch (Exception e) {
       if (tx != null && tx.isActive()) {
@@ -1262,6 +2005,7 @@ public class ServiceRegistryJpaImpl implements ServiceRegistry, ManagedService {
         servicesStatistics.updateService(registration);
       }
       tx.commit();
+      registrationCache.invalidate();
       hostsStatistics.updateHost(hostRegistration);
     } catch (NotFoundException e) {
       throw e;
@@ -1304,6 +2048,7 @@ public class ServiceRegistryJpaImpl implements ServiceRegistry, ManagedService {
       }
       logger.info("Disabling {}", host);
       tx.commit();
+      registrationCache.invalidate();
       hostsStatistics.updateHost(hostRegistration);
     } catch (NotFoundException e) {
       throw e;
@@ -1410,6 +2155,7 @@ public class ServiceRegistryJpaImpl implements ServiceRegistry, ManagedService {
         em.merge(registration);
       }
       tx.commit();
+      registrationCache.invalidate();
       hostsStatistics.updateHost(hostRegistration);
       servicesStatistics.updateService(registration);
       return registration;
@@ -1473,6 +2219,9 @@ public class ServiceRegistryJpaImpl implements ServiceRegistry, ManagedService {
         }
       }
       tx.commit();
+      if (!undispatchableJobs.isEmpty()) {
+        jobStatistics.invalidate();
+      }
     } catch (Exception e) {
       logger.error("Unable to clean undispatchable jobs for host {}! {}", hostName, e.getMessage());
       if (tx != null && tx.isActive()) {
@@ -1512,6 +2261,7 @@ public class ServiceRegistryJpaImpl implements ServiceRegistry, ManagedService {
       query.setParameter("serviceType", serviceType);
 
       List<JpaJob> unregisteredJobs = query.getResultList();
+      List<JpaJob> restartedJobs = new ArrayList<>();
       if (unregisteredJobs.size() > 0) {
         logger.info("Found {} jobs to clean for {}@{}", unregisteredJobs.size(), serviceType, baseUrl);
       }
@@ -1527,6 +2277,7 @@ public class ServiceRegistryJpaImpl implements ServiceRegistry, ManagedService {
             rootJob.setStatus(Status.RESTART);
             rootJob.setOperation(START_OPERATION);
             em.merge(rootJob);
+            restartedJobs.add(rootJob);
             continue;
           }
 
@@ -1535,6 +2286,7 @@ public class ServiceRegistryJpaImpl implements ServiceRegistry, ManagedService {
           logger.info("Rescheduling lost {}", job);
           job.setStatus(Status.RESTART);
           job.setProcessorServiceRegistration(null);
+          restartedJobs.add(job);
         } else {
           logger.info("Marking lost {} as failed", job);
           job.setStatus(Status.FAILED);
@@ -1542,6 +2294,16 @@ public class ServiceRegistryJpaImpl implements ServiceRegistry, ManagedService {
         em.merge(job);
       }
       tx.commit();
+      if (!unregisteredJobs.isEmpty()) {
+        registrationCache.invalidate();
+        jobStatistics.invalidate();
+      }
+      if (!restartedJobs.isEmpty()) {
+        for (JpaJob job : restartedJobs) {
+          updateDispatchQueue(job);
+        }
+        dispatchQueue.signal();
+      }
     } catch (Exception e) {
       if (tx != null && tx.isActive()) {
         tx.rollback();
@@ -1594,6 +2356,7 @@ public class ServiceRegistryJpaImpl implements ServiceRegistry, ManagedService {
       reg.setMaintenanceMode(maintenance);
       em.merge(reg);
       tx.commit();
+      registrationCache.invalidate();
       hostsStatistics.updateHost(reg);
       logger.info("Finished setting maintenance mode on host '{}'", baseUrl);
     } catch (RollbackException e) {
@@ -1630,7 +2393,7 @@ public class ServiceRegistryJpaImpl implements ServiceRegistry, ManagedService {
   }
 
   @SuppressWarnings("unchecked")
-  private List<ServiceRegistration> getOnlineServiceRegistrations() {
+  List<ServiceRegistration> getOnlineServiceRegistrations() {
     EntityManager em = null;
     try {
       em = emf.createEntityManager();
@@ -1714,6 +2477,9 @@ public class ServiceRegistryJpaImpl implements ServiceRegistry, ManagedService {
       if (jobs.size() == 0) {
         jobs = getChildren(em, id);
       }
+      if (jobs.size() == 0) {
+        return getArchivedChildJobs(em, id);
+      }
       return $(jobs).sort(new Comparator<JpaJob>() {
         @Override
         public int compare(JpaJob job1, JpaJob job2) {
@@ -1744,6 +2510,72 @@ public class ServiceRegistryJpaImpl implements ServiceRegistry, ManagedService {
     return resultJobs;
   }
 
+  /**
+   * Gets the descendants of an archived job. Job trees are archived as a whole, so there are no archived children of
+   * jobs which are still in the job table.
+   *
+   * @param em
+   *          the entity manager
+   * @param id
+   *          the job identifier
+   * @return the archived descendants, ordered by creation date
+   */
+  private List<Job> getArchivedChildJobs(EntityManager em, long id) {
+    List<JpaArchivedJob> jobs = em.createNamedQuery("ArchivedJob.root.children", JpaArchivedJob.class)
+            .setParameter("id", id).getResultList();
+    if (jobs.isEmpty()) {
+      jobs = getArchivedChildren(em, id);
+      jobs.sort(Comparator.comparing(JpaArchivedJob::getDateCreated,
+              Comparator.nullsFirst(Comparator.naturalOrder())));
+    }
+    List<Job> result = new ArrayList<>(jobs.size());
+    for (JpaArchivedJob job : jobs) {
+      result.add(setJobUri(job).toJob());
+    }
+    return result;
+  }
+
+  List<JpaArchivedJob> getArchivedChildren(EntityManager em, long id) {
+    List<JpaArchivedJob> childJobs = em.createNamedQuery("ArchivedJob.children", JpaArchivedJob.class)
+            .setParameter("id", id).getResultList();
+    List<JpaArchivedJob> resultJobs = new ArrayList<>(childJobs);
+    for (JpaArchivedJob childJob : childJobs) {
+      resultJobs.addAll(getArchivedChildren(em, childJob.getId()));
+    }
+    return resultJobs;
+  }
+
+  private List<Job> getArchivedJobs(String type, Status status) throws ServiceRegistryException {
+    EntityManager em = null;
+    try {
+      em = emf.createEntityManager();
+      TypedQuery<JpaArchivedJob> query;
+      if (type == null && status == null) {
+        query = em.createNamedQuery("ArchivedJob.all", JpaArchivedJob.class);
+      } else if (type == null) {
+        query = em.createNamedQuery("ArchivedJob.status", JpaArchivedJob.class);
+        query.setParameter("status", status.ordinal());
+      } else if (status == null) {
+        query = em.createNamedQuery("ArchivedJob.type", JpaArchivedJob.class);
+        query.setParameter("serviceType", type);
+      } else {
+        query = em.createNamedQuery("ArchivedJob", JpaArchivedJob.class);
+        query.setParameter("status", status.ordinal());
+        query.setParameter("serviceType", type);
+      }
+      List<Job> jobs = new ArrayList<>();
+      for (JpaArchivedJob job : query.getResultList()) {
+        jobs.add(setJobUri(job).toJob());
+      }
+      return jobs;
+    } catch (Exception e) {
+      throw new ServiceRegistryException(e);
+    } finally {
+      if (em != null)
+        em.close();
+    }
+  }
+
   /**
    * {@inheritDoc}
    *
@@ -1751,6 +2583,26 @@ public class ServiceRegistryJpaImpl implements ServiceRegistry, ManagedService {
    */
   @Override
   public List<Job> getJobs(String type, Status status) throws ServiceRegistryException {
+    return getJobs(type, status, false);
+  }
+
+  /**
+   * Gets the jobs of a service type with a given status, either from the job table or from the job archive.
+   *
+   * @param type
+   *          the service type, or <code>null</code> for jobs of all types
+   * @param status
+   *          the job status, or <code>null</code> for jobs of any status
+   * @param archived
+   *          whether to look up archived jobs instead of current ones
+   * @return the jobs
+   * @throws ServiceRegistryException
+   *           if there is a problem accessing the service registry
+   */
+  public List<Job> getJobs(String type, Status status, boolean archived) throws ServiceRegistryException {
+    if (archived) {
+      return getArchivedJobs(type, status);
+    }
     TypedQuery<JpaJob> query = null;
     EntityManager em = null;
     logger.trace("Getting jobs '{}' and '{}'", type, status);
@@ -1788,10 +2640,17 @@ public class ServiceRegistryJpaImpl implements ServiceRegistry, ManagedService {
   public List<String> getJobPayloads(String operation) throws ServiceRegistryException {
     EntityManager em = emf.createEntityManager();
     try {
-      TypedQuery<String> query = em.createNamedQuery("Job.payload", String.class);
+      TypedQuery<JpaArchivedJob> archiveQuery = em.createNamedQuery("ArchivedJob.payload", JpaArchivedJob.class);
+      archiveQuery.setParameter("operation", operation);
+      List<String> payloads = new ArrayList<>();
+      for (JpaArchivedJob archivedJob : archiveQuery.getResultList()) {
+        payloads.add(archivedJob.getPayload());
+      }
+      TypedQuery<Object[]> query = em.createNamedQuery("Job.payload", Object[].class);
       query.setParameter("operation", operation);
       logger.debug("Requesting job payloads using query: {}", query);
-      return query.getResultList();
+      payloads.addAll(toPayloads(em, query.getResultList()));
+      return payloads;
     } catch (Exception e) {
       throw new ServiceRegistryException(e);
     }
@@ -1801,17 +2660,60 @@ public class ServiceRegistryJpaImpl implements ServiceRegistry, ManagedService {
   public List<String> getJobPayloads(String operation, int limit, int offset) throws ServiceRegistryException {
     EntityManager em = emf.createEntityManager();
     try {
-      TypedQuery<String> query = em.createNamedQuery("Job.payload", String.class);
+      // Archived jobs are older than the ones in the job table, so they come first
+      List<String> payloads = new ArrayList<>();
+      int archived = ((Number) em.createNamedQuery("ArchivedJob.countByOperationOnly")
+              .setParameter("operation", operation).getSingleResult()).intValue();
+      if (offset < archived) {
+        TypedQuery<JpaArchivedJob> archiveQuery = em.createNamedQuery("ArchivedJob.payload", JpaArchivedJob.class);
+        archiveQuery.setParameter("operation", operation);
+        archiveQuery.setMaxResults(limit);
+        archiveQuery.setFirstResult(offset);
+        for (JpaArchivedJob archivedJob : archiveQuery.getResultList()) {
+          payloads.add(archivedJob.getPayload());
+        }
+      }
+      if (payloads.size() >= limit) {
+        return payloads;
+      }
+      TypedQuery<Object[]> query = em.createNamedQuery("Job.payload", Object[].class);
       query.setParameter("operation", operation);
-      query.setMaxResults(limit);
-      query.setFirstResult(offset);
+      query.setMaxResults(limit - payloads.size());
+      query.setFirstResult(Math.max(0, offset - archived));
       logger.debug("Requesting job payloads using query: {}", query);
-      return query.getResultList();
+      payloads.addAll(toPayloads(em, query.getResultList()));
+      return payloads;
     } catch (Exception e) {
       throw new ServiceRegistryException(e);
     }
   }
 
+  /**
+   * Extracts the payloads from the result of the <code>Job.payload</code> query, which returns the job identifier, the
+   * payload stored in the job table and whether the payload is kept in the payload table instead. The payloads kept
+   * there are read with a single query.
+   *
+   * @param em
+   *          the entity manager
+   * @param rows
+   *          the query result
+   * @return the payloads
+   */
+  private List<String> toPayloads(EntityManager em, List<Object[]> rows) {
+    List<Long> storedIds = new ArrayList<>();
+    for (Object[] row : rows) {
+      if ((Boolean) row[2]) {
+        storedIds.add(((Number) row[0]).longValue());
+      }
+    }
+    Map<Long, String> storedPayloads = JpaJobPayload.findAll(em, storedIds);
+    List<String> payloads = new ArrayList<>(rows.size());
+    for (Object[] row : rows) {
+      payloads.add((Boolean) row[2] ? storedPayloads.get(((Number) row[0]).longValue()) : (String) row[1]);
+    }
+    return payloads;
+  }
+
   @Override
   public int getJobCount(final String operation) throws ServiceRegistryException {
     EntityManager em = null;
@@ -1820,7 +2722,10 @@ public class ServiceRegistryJpaImpl implements ServiceRegistry, ManagedService {
       Query query = em.createNamedQuery("Job.countByOperationOnly");
       query.setParameter("operation", operation);
       final Number countResult = (Number) query.getSingleResult();
-      return countResult.intValue();
+      Query archiveQuery = em.createNamedQuery("ArchivedJob.countByOperationOnly");
+      archiveQuery.setParameter("operation", operation);
+      final Number archiveCountResult = (Number) archiveQuery.getSingleResult();
+      return countResult.intValue() + archiveCountResult.intValue();
     } catch (Exception e) {
       throw new ServiceRegistryException(e);
     } finally {
@@ -1883,33 +2788,23 @@ public class ServiceRegistryJpaImpl implements ServiceRegistry, ManagedService {
   }
 
   /**
-   * Gets jobs of all types that are in the given state.
+   * Return dispatchable job ids, where the job status is RESTART or QUEUED and the job id is listed in the given set.
    *
    * @param em the entity manager
-   * @param offset apply offset to the db query if offset &gt; 0
-   * @param limit apply limit to the db query if limit &gt; 0
-   * @param statuses the job status should be one from the given statuses
-   * @return the list of jobs waiting for dispatch
+   * @param jobIds set with job id's interested in
+   * @return list with dispatchable job id's from the given set, with job status RESTART or QUEUED
    * @throws ServiceRegistryException if there is a problem communicating with the jobs database
    */
-  protected List<JpaJob> getDispatchableJobsWithStatus(EntityManager em, int offset, int limit, Status... statuses)
+  protected List<Long> getDispatchableJobsWithIdFilter(EntityManager em, Set<Long> jobIds)
           throws ServiceRegistryException {
-    if (statuses == null)
+    if (jobIds == null || jobIds.isEmpty())
       return Collections.EMPTY_LIST;
 
-    List<Integer> statusesOrdinal = new ArrayList<>(statuses.length);
-    for (Status status : statuses) {
-      statusesOrdinal.add(status.ordinal());
-    }
-
-    TypedQuery<JpaJob> query = null;
+    Query query = null;
     try {
-      query = em.createNamedQuery("Job.dispatchable.status", JpaJob.class);
-      query.setParameter("statuses", statusesOrdinal);
-      if (offset > 0)
-        query.setFirstResult(offset);
-      if (limit > 0)
-        query.setMaxResults(limit);
+      query = em.createNamedQuery("Job.dispatchable.status.idfilter");
+      query.setParameter("jobids", dispatchPriorityList.keySet());
+      query.setParameter("statuses", Arrays.asList(Status.RESTART.ordinal(), Status.QUEUED.ordinal()));
       return query.getResultList();
     } catch (Exception e) {
       throw new ServiceRegistryException(e);
@@ -1917,27 +2812,67 @@ public class ServiceRegistryJpaImpl implements ServiceRegistry, ManagedService {
   }
 
   /**
-   * Return dispatchable job ids, where the job status is RESTART or QUEUED and the job id is listed in the given set.
+   * Loads the given jobs if they are still waiting to be dispatched. Jobs that are no longer queued are removed from the
+   * dispatch queue.
    *
    * @param em the entity manager
-   * @param jobIds set with job id's interested in
-   * @return list with dispatchable job id's from the given set, with job status RESTART or QUEUED
+   * @param jobIds the identifiers of the jobs to load, in dispatching order
+   * @return the jobs with status RESTART or QUEUED, in the order of the given identifiers
    * @throws ServiceRegistryException if there is a problem communicating with the jobs database
    */
-  protected List<Long> getDispatchableJobsWithIdFilter(EntityManager em, Set<Long> jobIds)
-          throws ServiceRegistryException {
-    if (jobIds == null || jobIds.isEmpty())
-      return Collections.EMPTY_LIST;
+  protected List<JpaJob> getQueuedJobs(EntityManager em, List<Long> jobIds) throws ServiceRegistryException {
+    if (jobIds.isEmpty())
+      return Collections.emptyList();
 
-    Query query = null;
+    Map<Long, JpaJob> jobs = new HashMap<>();
     try {
-      query = em.createNamedQuery("Job.dispatchable.status.idfilter");
-      query.setParameter("jobids", dispatchPriorityList.keySet());
+      TypedQuery<JpaJob> query = em.createNamedQuery("Job.dispatchable.status.ids", JpaJob.class);
+      query.setParameter("jobids", jobIds);
       query.setParameter("statuses", Arrays.asList(Status.RESTART.ordinal(), Status.QUEUED.ordinal()));
-      return query.getResultList();
+      for (JpaJob job : query.getResultList()) {
+        jobs.put(job.getId(), job);
+      }
+    } catch (Exception e) {
+      throw new ServiceRegistryException(e);
+    }
+
+    List<JpaJob> result = new ArrayList<>(jobs.size());
+    for (Long jobId : jobIds) {
+      JpaJob job = jobs.get(jobId);
+      if (job == null) {
+        logger.debug("Removing outdated job '{}' from the dispatch queue", jobId);
+        dispatchQueue.remove(jobId);
+      } else {
+        result.add(job);
+      }
+    }
+    return result;
+  }
+
+  /**
+   * Replaces the content of the dispatch queue with the dispatchable jobs found in the database. This picks up jobs
+   * which have been queued by other nodes and recovers the queue after a restart. Only the columns needed for ordering
+   * are read.
+   *
+   * @param em the entity manager
+   * @throws ServiceRegistryException if there is a problem communicating with the jobs database
+   */
+  protected void synchronizeDispatchQueue(EntityManager em) throws ServiceRegistryException {
+    long token = dispatchQueue.beginSync();
+    List<DispatchQueue.Entry> queued = new ArrayList<>();
+    try {
+      Query query = em.createNamedQuery("Job.dispatchable.status.summary");
+      query.setParameter("statuses", Arrays.asList(Status.RESTART.ordinal(), Status.QUEUED.ordinal()));
+      for (Object result : query.getResultList()) {
+        Object[] row = (Object[]) result;
+        queued.add(new DispatchQueue.Entry(((Number) row[0]).longValue(), (String) row[1], (String) row[2],
+                Status.values()[((Number) row[3]).intValue()], (Date) row[4]));
+      }
     } catch (Exception e) {
       throw new ServiceRegistryException(e);
     }
+    dispatchQueue.completeSync(queued, token);
+    logger.debug("Synchronized dispatch queue with the database, {} jobs are queued", dispatchQueue.size());
   }
 
   @SuppressWarnings("unchecked")
@@ -2088,95 +3023,53 @@ public class ServiceRegistryJpaImpl implements ServiceRegistry, ManagedService {
    */
   @Override
   public List<ServiceStatistics> getServiceStatistics() throws ServiceRegistryException {
-    Date now = new Date();
-    return getServiceStatistics(
-             DateUtils.addDays(now, -maxJobAge),
-             DateUtils.addDays(now, 1)); // Avoid glitches around 'now' by setting the endDate to 'tomorrow'
-  }
-
-  /**
-   * Gets performance and runtime statistics for each known service registration.
-   * For the statistics, only jobs created within the time interval [startDate, endDate] are being considered
-   *
-   * @param startDate
-   *          Only jobs created after this data are considered for statistics
-   * @param endDate
-   *          Only jobs created before this data are considered for statistics
-   * @return the service statistics
-   * @throws ServiceRegistryException
-   *           if there is a problem accessing the service registry
-   */
-  private List<ServiceStatistics> getServiceStatistics(Date startDate, Date endDate) throws ServiceRegistryException {
-    EntityManager em = null;
+    JobStatisticsCache statistics = statisticsReconciler.getStatistics();
+    List<ServiceRegistration> services;
     try {
-      em = emf.createEntityManager();
-      Map<Long, JaxbServiceStatistics> statsMap = new HashMap<Long, JaxbServiceStatistics>();
-
-      // Make sure we also include the services that have no processing history so far
-      List<ServiceRegistrationJpaImpl> services = em.createNamedQuery("ServiceRegistration.getAll").getResultList();
-      for (ServiceRegistrationJpaImpl s : services) {
-        statsMap.put(s.getId(), new JaxbServiceStatistics(s));
-      }
-
-      Query query = em.createNamedQuery("ServiceRegistration.statistics");
-      query.setParameter("minDateCreated", startDate, TemporalType.TIMESTAMP);
-      query.setParameter("maxDateCreated", endDate, TemporalType.TIMESTAMP);
-
-      List queryResults = query.getResultList();
-      for (Object result : queryResults) {
-        Object[] oa = (Object[]) result;
-        Number serviceRegistrationId = ((Number) oa[0]);
-        if (serviceRegistrationId == null || serviceRegistrationId.longValue() == 0)
-          continue;
-        Status status = Status.values()[((Number) oa[1]).intValue()];
-        Number count = (Number) oa[2];
-        Number meanQueueTime = (Number) oa[3];
-        Number meanRunTime = (Number) oa[4];
-
-        // The statistics query returns a cartesian product, so we need to iterate over them to build up the objects
-        JaxbServiceStatistics stats = statsMap.get(serviceRegistrationId.longValue());
-        if (stats == null)
-          continue;
+      services = registrationCache.get(registrationLoader, registrationLoader).getServiceRegistrations();
+    } catch (PersistenceException e) {
+      throw new ServiceRegistryException(e);
+    }
 
-        // the status will be null if there are no jobs at all associated with this service registration
-        if (status != null) {
-          switch (status) {
-            case RUNNING:
-              stats.setRunningJobs(count.intValue());
-              break;
-            case QUEUED:
-            case DISPATCHING:
-              stats.setQueuedJobs(count.intValue());
-              break;
-            case FINISHED:
-              stats.setMeanRunTime(meanRunTime.longValue());
-              stats.setMeanQueueTime(meanQueueTime.longValue());
-              stats.setFinishedJobs(count.intValue());
-              break;
-            default:
-              break;
-          }
+    List<ServiceStatistics> stats = new ArrayList<ServiceStatistics>(services.size());
+    for (ServiceRegistration service : services) {
+      JaxbServiceStatistics serviceStats = new JaxbServiceStatistics(service);
+      Map<Status, JobStatisticsCache.Aggregate> byStatus = statistics.getServiceStatistics(service.getHost(),
+              service.getServiceType());
+      long queued = 0;
+      for (Map.Entry<Status, JobStatisticsCache.Aggregate> entry : byStatus.entrySet()) {
+        JobStatisticsCache.Aggregate aggregate = entry.getValue();
+        switch (entry.getKey()) {
+          case RUNNING:
+            serviceStats.setRunningJobs((int) aggregate.getCount());
+            break;
+          case QUEUED:
+          case DISPATCHING:
+            queued += aggregate.getCount();
+            break;
+          case FINISHED:
+            serviceStats.setMeanRunTime(aggregate.getMeanRunTime());
+            serviceStats.setMeanQueueTime(aggregate.getMeanQueueTime());
+            serviceStats.setFinishedJobs((int) aggregate.getCount());
+            break;
+          default:
+            break;
         }
       }
-
-      List<ServiceStatistics> stats = new ArrayList<ServiceStatistics>(statsMap.values());
-      Collections.sort(stats, new Comparator<ServiceStatistics>() {
-        @Override
-        public int compare(ServiceStatistics o1, ServiceStatistics o2) {
-          ServiceRegistration reg1 = o1.getServiceRegistration();
-          ServiceRegistration reg2 = o2.getServiceRegistration();
-          int typeComparison = reg1.getServiceType().compareTo(reg2.getServiceType());
-          return typeComparison == 0 ? reg1.getHost().compareTo(reg2.getHost()) : typeComparison;
-        }
-      });
-
-      return stats;
-    } catch (Exception e) {
-      throw new ServiceRegistryException(e);
-    } finally {
-      if (em != null)
-        em.close();
+      serviceStats.setQueuedJobs((int) queued);
+      stats.add(serviceStats);
     }
+
+    Collections.sort(stats, new Comparator<ServiceStatistics>() {
+      @Override
+      public int compare(ServiceStatistics o1, ServiceStatistics o2) {
+        ServiceRegistration reg1 = o1.getServiceRegistration();
+        ServiceRegistration reg2 = o2.getServiceRegistration();
+        int typeComparison = reg1.getServiceType().compareTo(reg2.getServiceType());
+        return typeComparison == 0 ? reg1.getHost().compareTo(reg2.getHost()) : typeComparison;
+      }
+    });
+    return stats;
   }
 
   /**
@@ -2189,16 +3082,12 @@ public class ServiceRegistryJpaImpl implements ServiceRegistry, ManagedService {
    */
   @Override
   public List<ServiceRegistration> getServiceRegistrationsByLoad(String serviceType) throws ServiceRegistryException {
-    EntityManager em = null;
     try {
-      em = emf.createEntityManager();
-      SystemLoad loadByHost = getHostLoads(em);
-      List<HostRegistration> hostRegistrations = getHostRegistrations();
-      List<ServiceRegistration> serviceRegistrations = getServiceRegistrationsByType(serviceType);
-      return getServiceRegistrationsByLoad(serviceType, serviceRegistrations, hostRegistrations, loadByHost);
-    } finally {
-      if (em != null)
-        em.close();
+      RegistrationCache.Snapshot snapshot = registrationCache.get(registrationLoader, registrationLoader);
+      return getServiceRegistrationsByLoad(serviceType, snapshot.getServiceRegistrations(),
+              snapshot.getHostRegistrations(), snapshot.getHostLoads());
+    } catch (PersistenceException e) {
+      throw new ServiceRegistryException(e);
     }
   }
 
@@ -2456,6 +3345,16 @@ public class ServiceRegistryJpaImpl implements ServiceRegistry, ManagedService {
     this.incidents = null;
   }
 
+  /** OSGi DI. */
+  @Reference(name = "workspace", cardinality = ReferenceCardinality.OPTIONAL, policy = ReferencePolicy.DYNAMIC, unbind = "unsetWorkspace")
+  public void setWorkspace(Workspace workspace) {
+    this.workspace = workspace;
+  }
+
+  public void unsetWorkspace(Workspace workspace) {
+    this.workspace = null;
+  }
+
   /**
    * Update the jobs failure history and the service status with the given information. All these data are then use for
    * the jobs failover strategy. Only the terminated job (with FAILED or FINISHED status) are taken into account.
@@ -2807,6 +3706,32 @@ public class ServiceRegistryJpaImpl implements ServiceRegistry, ManagedService {
     return filteredList;
   }
 
+  /**
+   * Replaces the record of media package elements held on a host.
+   *
+   * @param host
+   *          the host's base URL
+   * @param elementSizes
+   *          the number of bytes held on the host, by media package identifier and element identifier
+   * @throws ServiceRegistryException
+   *           if there is a problem storing the record
+   */
+  public void updateHostElements(String host, Map<String, Map<String, Long>> elementSizes)
+          throws ServiceRegistryException {
+    inputLocality.updateHostElements(host, elementSizes);
+  }
+
+  /**
+   * {@inheritDoc}
+   *
+   * @see org.opencastproject.serviceregistry.api.ServiceRegistry#getHostsHoldingElement(String, String)
+   */
+  @Override
+  public List<String> getHostsHoldingElement(String mediaPackageId, String elementId)
+          throws ServiceRegistryException {
+    return inputLocality.getHostsHoldingElement(mediaPackageId, elementId);
+  }
+
   /**
    * {@inheritDoc}
    *
@@ -2853,492 +3778,6 @@ public class ServiceRegistryJpaImpl implements ServiceRegistry, ManagedService {
     }
   };
 
-  /**
-   * This dispatcher implementation will check for jobs in the QUEUED {@link Status}. If
-   * new jobs are found, the dispatcher will attempt to dispatch each job to the least loaded service.
-   */
-  class JobDispatcher implements Runnable {
-
-    /** A list with job types that cannot be dispatched in each interation */
-    private List<String> undispatchableJobTypes = null;
-
-    /**
-     * {@inheritDoc}
-     *
-     * @see java.lang.Thread#run()
-     */
-    @Override
-    public void run() {
-
-      logger.debug("Starting job dispatching");
-
-      undispatchableJobTypes = new ArrayList<String>();
-      EntityManager em = null;
-      try {
-        em = emf.createEntityManager();
-
-        // FIXME: the stats are not currently used and the queries are very
-        // expense in database time.
-        if (collectJobstats) {
-          jobsStatistics.updateAvg(getAvgOperations(em));
-          jobsStatistics.updateJobCount(getCountPerHostService(em));
-        }
-
-        if (!dispatchPriorityList.isEmpty()) {
-          logger.trace("Checking for outdated jobs in dispatchPriorityList's '{}' jobs", dispatchPriorityList.size());
-          // Remove outdated jobs from priority list
-          List<Long> jobIds = getDispatchableJobsWithIdFilter(em, dispatchPriorityList.keySet());
-          for (Long jobId : new HashSet<>(dispatchPriorityList.keySet())) {
-            if (!jobIds.contains(jobId)) {
-              logger.debug("Removing outdated dispatchPriorityList job '{}'", jobId);
-              dispatchPriorityList.remove(jobId);
-            }
-          }
-        }
-
-        int jobsOffset = 0;
-        List<JpaJob> dispatchableJobs = null;
-        List<JpaJob> workflowJobs = new ArrayList();
-        boolean jobsFound = false;
-        do {
-          // dispatch all dispatchable jobs with status restarted
-          dispatchableJobs = getDispatchableJobsWithStatus(em, jobsOffset, DEFAULT_DISPATCH_JOBS_LIMIT, Status.RESTART);
-          jobsOffset += DEFAULT_DISPATCH_JOBS_LIMIT;
-          jobsFound = !dispatchableJobs.isEmpty();
-
-          // skip all jobs of type workflow, we will handle them next
-          for (JpaJob job : dispatchableJobs) {
-            if (TYPE_WORKFLOW.equals(job.getJobType())) {
-              workflowJobs.add(job);
-            }
-          }
-          if (dispatchableJobs.removeAll(workflowJobs) && dispatchableJobs.isEmpty())
-            continue;
-
-          dispatchDispatchableJobs(em, dispatchableJobs);
-        } while (jobsFound);
-
-        jobsOffset = 0;
-        jobsFound = false;
-        do {
-          // dispatch all dispatchable jobs with status queued
-          dispatchableJobs = getDispatchableJobsWithStatus(em, jobsOffset, DEFAULT_DISPATCH_JOBS_LIMIT, Status.QUEUED);
-          jobsOffset += DEFAULT_DISPATCH_JOBS_LIMIT;
-          jobsFound = !dispatchableJobs.isEmpty();
-
-          // skip all jobs of type workflow, we will handle them next
-          for (JpaJob job : dispatchableJobs) {
-            if (TYPE_WORKFLOW.equals(job.getJobType())) {
-              workflowJobs.add(job);
-            }
-          }
-          if (dispatchableJobs.removeAll(workflowJobs) && dispatchableJobs.isEmpty())
-            continue;
-
-          dispatchDispatchableJobs(em, dispatchableJobs);
-        } while (jobsFound);
-
-        if (!workflowJobs.isEmpty())
-          dispatchDispatchableJobs(em, workflowJobs);
-
-      } catch (Throwable t) {
-        logger.warn("Error dispatching jobs", t);
-      } finally {
-        undispatchableJobTypes = null;
-        if (em != null)
-          em.close();
-      }
-
-      logger.debug("Finished job dispatching");
-    }
-
-    /**
-     * Dispatch the given jobs.
-     *
-     * @param em the entity manager
-     * @param jobsToDispatch list with dispatchable jobs to dispatch
-     */
-    private void dispatchDispatchableJobs(EntityManager em, List<JpaJob> jobsToDispatch) {
-      //Get the current system load
-      SystemLoad systemLoad = getHostLoads(em);
-
-      for (JpaJob job : jobsToDispatch) {
-
-        // Remember the job type
-        String jobType = job.getJobType();
-
-        // Skip jobs that we already know can't be dispatched except of jobs in the priority list
-        String jobSignature = new StringBuilder(jobType).append('@').append(job.getOperation()).toString();
-        if (undispatchableJobTypes.contains(jobSignature) && !dispatchPriorityList.keySet().contains(job.getId())) {
-          logger.trace("Skipping dispatching of {} with type '{}' for this round of dispatching", job,
-                  jobType);
-          continue;
-        }
-
-        // Set the job's user and organization prior to dispatching
-        String creator = job.getCreator();
-        String creatorOrganization = job.getOrganization();
-
-        // Try to load the organization.
-        Organization organization = null;
-        try {
-          organization = organizationDirectoryService.getOrganization(creatorOrganization);
-          securityService.setOrganization(organization);
-        } catch (NotFoundException e) {
-          logger.debug("Skipping dispatching of job for non-existing organization '{}'", creatorOrganization);
-          continue;
-        }
-
-        // Try to load the user
-        User user = userDirectoryService.loadUser(creator);
-        if (user == null) {
-          logger.warn("Unable to dispatch {}: creator '{}' is not available", job, creator);
-          continue;
-        }
-        securityService.setUser(user);
-
-        // Start dispatching
-        try {
-          List<ServiceRegistration> services = getServiceRegistrations(em);
-          List<HostRegistration> hosts = $(getHostRegistrations(em)).filter(filterOutPriorityHosts._2(job.getId()))
-                  .toList();
-          List<ServiceRegistration> candidateServices = null;
-
-          // Depending on whether this running job is trying to reach out to other services or whether this is an
-          // attempt to execute the next operation in a workflow, choose either from a limited or from the full list
-          // of services
-          Job parentJob = null;
-          try {
-            if (job.getParentJob() != null)
-              parentJob = getJob(job.getParentJob().getId());
-          } catch (NotFoundException e) {
-            // That's ok
-          }
-
-          // When a job A starts a series of child jobs, then those child jobs should only be dispatched at the
-          // same time if there is processing capacity available.
-          boolean parentHasRunningChildren = false;
-          if (parentJob != null) {
-            for (Job child : getChildJobs(parentJob.getId())) {
-              if (Status.RUNNING.equals(child.getStatus())) {
-                parentHasRunningChildren = true;
-                break;
-              }
-            }
-          }
-
-          // If this is a root job (a new workflow or a new workflow operation), then only dispatch if there is
-          // capacity, i. e. the workflow service is ok dispatching the next workflow or the next workflow operation.
-          if (parentJob == null || TYPE_WORKFLOW.equals(jobType) || parentHasRunningChildren) {
-            logger.trace("Using available capacity only for dispatching of {} to a service of type '{}'", job,
-                    jobType);
-            candidateServices = getServiceRegistrationsWithCapacity(jobType, services, hosts, systemLoad);
-          } else {
-            logger.trace("Using full list of services for dispatching of {} to a service of type '{}'", job, jobType);
-            candidateServices = getServiceRegistrationsByLoad(jobType, services, hosts, systemLoad);
-          }
-
-          // Try to dispatch the job
-          String hostAcceptingJob = null;
-          try {
-            hostAcceptingJob = dispatchJob(em, job, candidateServices);
-            try {
-              systemLoad.updateNodeLoad(hostAcceptingJob, job.getJobLoad());
-            } catch (NotFoundException e) {
-              logger.info("Host {} not found in load list, cannot dispatch {} to it", hostAcceptingJob, job);
-            }
-
-            dispatchPriorityList.remove(job.getId());
-          } catch (ServiceUnavailableException e) {
-            logger.debug("Jobs of type {} currently cannot be dispatched", job.getOperation());
-            // Don't mark workflow jobs as undispatchable to not impact worklfow operations
-            if (!TYPE_WORKFLOW.equals(jobType))
-              undispatchableJobTypes.add(jobSignature);
-            continue;
-          } catch (UndispatchableJobException e) {
-            logger.debug("{} currently cannot be dispatched", job);
-            continue;
-          }
-
-          logger.debug("{} dispatched to {}", job, hostAcceptingJob);
-        } catch (ServiceRegistryException e) {
-          Throwable cause = (e.getCause() != null) ? e.getCause() : e;
-          logger.error("Error dispatching {}: {}", job, cause);
-        } finally {
-          securityService.setUser(null);
-          securityService.setOrganization(null);
-        }
-      }
-    }
-
-    /**
-     * Dispatches the job to the least loaded service that will accept the job, or throws a
-     * <code>ServiceUnavailableException</code> if there is no such service.
-     *
-     * @param em
-     *          the current entity manager
-     * @param job
-     *          the job to dispatch
-     * @param services
-     *          a list of service registrations
-     * @return the host that accepted the dispatched job, or <code>null</code> if no services took the job.
-     * @throws ServiceRegistryException
-     *           if the service registrations are unavailable
-     * @throws ServiceUnavailableException
-     *           if no service is available or if all available services refuse to take on more work
-     * @throws UndispatchableJobException
-     *           if the current job cannot be processed
-     */
-    protected String dispatchJob(EntityManager em, JpaJob job, List<ServiceRegistration> services)
-            throws ServiceRegistryException, ServiceUnavailableException, UndispatchableJobException {
-
-      if (services.size() == 0) {
-        logger.debug("No service is currently available to handle jobs of type '" + job.getJobType() + "'");
-        throw new ServiceUnavailableException("No service of type " + job.getJobType() + " available");
-      }
-
-      // Try the service registrations, after the first one finished, we quit;
-      job.setStatus(Status.DISPATCHING);
-
-      boolean triedDispatching = false;
-
-      boolean jobLoadExceedsMaximumLoads = false;
-      final Float highestMaxLoad = $(services).map(toHostRegistration).map(toMaxLoad).sort(sortFloatValuesDesc).head2();
-      if (job.getJobLoad() > highestMaxLoad) {
-        // None of the available hosts is able to accept the job because the largest max load value is less than this job's load value
-        jobLoadExceedsMaximumLoads = true;
-      }
-
-      for (ServiceRegistration registration : services) {
-        job.setProcessorServiceRegistration((ServiceRegistrationJpaImpl) registration);
-
-        // Skip registration of host with less max load than highest available max load
-        // Note: This service registration may or may not live on a node which is set to accept jobs exceeding its max load
-        if (jobLoadExceedsMaximumLoads
-                && job.getProcessorServiceRegistration().getHostRegistration().getMaxLoad() != highestMaxLoad) {
-          continue;
-        }
-
-        try {
-          job = updateInternal(em, job);
-        } catch (Exception e) {
-          // In theory, we should catch javax.persistence.OptimisticLockException. Unfortunately, eclipselink throws
-          // org.eclipse.persistence.exceptions.OptimisticLockException. In order to avoid importing the implementation
-          // specific APIs, we just catch Exception.
-          logger.debug("Unable to dispatch {}.  This is likely caused by another service registry dispatching the job",
-                  job);
-          throw new UndispatchableJobException(job + " is already being dispatched");
-        }
-
-        triedDispatching = true;
-
-        String serviceUrl = UrlSupport.concat(registration.getHost(), registration.getPath(), "dispatch");
-        HttpPost post = new HttpPost(serviceUrl);
-
-        // Add current organization and user so they can be used during execution at the remote end
-        post.addHeader(ORGANIZATION_HEADER, securityService.getOrganization().getId());
-        post.addHeader(USER_HEADER, securityService.getUser().getUsername());
-
-        List<BasicNameValuePair> params = new ArrayList<BasicNameValuePair>();
-        params.add(new BasicNameValuePair("id", Long.toString(job.getId())));
-        params.add(new BasicNameValuePair("operation", job.getOperation()));
-        post.setEntity(new UrlEncodedFormEntity(params, UTF_8));
-
-        // Post the request
-        HttpResponse response = null;
-        int responseStatusCode;
-        try {
-          logger.debug("Trying to dispatch {} type '{}' load {} to {}",
-                  job, job.getJobType(), job.getJobLoad(), registration.getHost());
-          if (!START_WORKFLOW.equals(job.getOperation()))
-            setCurrentJob(job.toJob());
-          response = client.execute(post);
-          responseStatusCode = response.getStatusLine().getStatusCode();
-          if (responseStatusCode == HttpStatus.SC_NO_CONTENT) {
-            return registration.getHost();
-          } else if (responseStatusCode == HttpStatus.SC_SERVICE_UNAVAILABLE) {
-            logger.debug("Service {} is currently refusing to accept jobs of type {}", registration,
-                    job.getOperation());
-            continue;
-          } else if (responseStatusCode == HttpStatus.SC_PRECONDITION_FAILED) {
-            job.setStatus(Status.FAILED);
-            job = updateJob(job);
-            logger.debug("Service {} refused to accept {}", registration, job);
-            throw new UndispatchableJobException(IOUtils.toString(response.getEntity().getContent()));
-          } else if (responseStatusCode == HttpStatus.SC_METHOD_NOT_ALLOWED) {
-            logger.debug("Service {} is not yet reachable", registration);
-            continue;
-          } else {
-            logger.warn("Service {} failed ({}) accepting {}", registration, responseStatusCode, job);
-            continue;
-          }
-        } catch (UndispatchableJobException e) {
-          throw e;
-        } catch (TrustedHttpClientException e) {
-          // Will try another node. If no other node, it will be re-queued
-          logger.warn("Unable to dispatch {}", job, e);
-          continue;
-        } catch (Exception e) {
-          logger.warn("Unable to dispatch {}", job, e);
-        } finally {
-          try {
-            client.close(response);
-          } catch (IOException e) {
-            // ignore
-          }
-          setCurrentJob(null);
-        }
-      }
-
-      // We've tried dispatching to every online service that can handle this type of job, with no luck.
-      if (triedDispatching) {
-        // Workflow type jobs are not set to priority list, because they handle accepting jobs not based on the job load
-        // If the system don't accepts jobs whose load exceeds the host's max load we can't make use of the priority
-        // list
-        if (acceptJobLoadsExeedingMaxLoad && !dispatchPriorityList.containsKey(job.getId())
-                && !TYPE_WORKFLOW.equals(job.getJobType()) && job.getProcessorServiceRegistration() != null) {
-          String host = job.getProcessorServiceRegistration().getHost();
-          logger.debug("About to add {} to dispatchPriorityList with processor host {}", job, host);
-          dispatchPriorityList.put(job.getId(), host);
-        }
-
-        try {
-          job.setStatus(Status.QUEUED);
-          job.setProcessorServiceRegistration(null);
-          job = updateJob(job);
-        } catch (Exception e) {
-          logger.error("Unable to put {} back into queue", job, e);
-        }
-      }
-
-      logger.debug("Unable to dispatch {}, no service is currently ready to accept the job", job);
-      throw new UndispatchableJobException(job + " is currently undispatchable");
-    }
-
-    private final Fn2<HostRegistration, Long, Boolean> filterOutPriorityHosts = new Fn2<HostRegistration, Long, Boolean>() {
-      @Override
-      public Boolean apply(HostRegistration host, Long jobId) {
-        if (dispatchPriorityList.values().contains(host.getBaseUrl())
-                && !host.getBaseUrl().equals(dispatchPriorityList.get(jobId))) {
-          return false;
-        }
-        return true;
-      }
-    };
-
-    private final Fn<ServiceRegistration, HostRegistration> toHostRegistration = new Fn<ServiceRegistration, HostRegistration>() {
-      @Override
-      public HostRegistration apply(ServiceRegistration s) {
-        return ((ServiceRegistrationJpaImpl) s).getHostRegistration();
-      }
-    };
-
-    private final Fn<HostRegistration, Float> toMaxLoad = new Fn<HostRegistration, Float>() {
-      @Override
-      public Float apply(HostRegistration h) {
-        return h.getMaxLoad();
-      }
-    };
-
-    private final Comparator<Float> sortFloatValuesDesc = new Comparator<Float>() {
-      @Override
-      public int compare(Float o1, Float o2) {
-        return o2.compareTo(o1);
-      }
-    };
-
-  }
-
-  /** A periodic check on each service registration to ensure that it is still alive. */
-  class JobProducerHeartbeat implements Runnable {
-
-    /** List of service registrations that have been found unresponsive last time we checked */
-    private final List<ServiceRegistration> unresponsive = new ArrayList<ServiceRegistration>();
-
-    /**
-     * {@inheritDoc}
-     *
-     * @see java.lang.Runnable#run()
-     */
-    @Override
-    public void run() {
-      logger.debug("Checking for unresponsive services");
-
-      try {
-        List<ServiceRegistration> serviceRegistrations = getOnlineServiceRegistrations();
-
-        for (ServiceRegistration service : serviceRegistrations) {
-          hostsStatistics.updateHost(((ServiceRegistrationJpaImpl) service).getHostRegistration());
-          servicesStatistics.updateService(service);
-          if (!service.isJobProducer())
-            continue;
-          if (service.isInMaintenanceMode())
-            continue;
-
-          // We think this service is online and available. Prove it.
-          String serviceUrl = UrlSupport.concat(service.getHost(), service.getPath(), "dispatch");
-
-          HttpHead options = new HttpHead(serviceUrl);
-          HttpResponse response = null;
-          try {
-            try {
-              response = client.execute(options);
-              if (response != null) {
-                switch (response.getStatusLine().getStatusCode()) {
-                  case HttpStatus.SC_OK:
-                    // this service is reachable, continue checking other services
-                    logger.trace("Service " + service.toString() + " is responsive: " + response.getStatusLine());
-                    if (unresponsive.remove(service)) {
-                      logger.info("Service {} is still online", service);
-                    } else if (!service.isOnline()) {
-                      try {
-                        setOnlineStatus(service.getServiceType(), service.getHost(), service.getPath(), true, true);
-                        logger.info("Service {} is back online", service);
-                      } catch (ServiceRegistryException e) {
-                        logger.warn("Error setting online status for {}", service);
-                      }
-                    }
-                    continue;
-                  default:
-                    if (!service.isOnline())
-                      continue;
-                    logger.warn("Service {} is not working as expected: {}", service, response.getStatusLine());
-                }
-              } else {
-                logger.warn("Service {} does not respond", service);
-              }
-            } catch (TrustedHttpClientException e) {
-              if (!service.isOnline())
-                continue;
-              logger.warn("Unable to reach {}", service, e);
-            }
-
-            // If we get here, the service did not respond as expected
-            try {
-              if (unresponsive.contains(service)) {
-                unRegisterService(service.getServiceType(), service.getHost());
-                unresponsive.remove(service);
-                logger.warn("Marking {} as offline", service);
-              } else {
-                unresponsive.add(service);
-                logger.warn("Added {} to the watch list", service);
-              }
-            } catch (ServiceRegistryException e) {
-              logger.warn("Unable to unregister unreachable service: {}", service, e);
-            }
-          } finally {
-            client.close(response);
-          }
-        }
-      } catch (Throwable t) {
-        logger.warn("Error while checking for unresponsive services", t);
-      }
-
-      logger.debug("Finished checking for unresponsive services");
-    }
-
-  }
-
   /**
    * Comparator that will sort service registrations depending on their capacity, wich is defined by the number of jobs
    * the service's host is already running. The lower that number, the bigger the capacity.
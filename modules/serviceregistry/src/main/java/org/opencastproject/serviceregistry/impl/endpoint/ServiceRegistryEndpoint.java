@@ -34,6 +34,7 @@ import org.opencastproject.job.api.JaxbJob;
 import org.opencastproject.job.api.JaxbJobList;
 import org.opencastproject.job.api.Job;
 import org.opencastproject.job.api.JobParser;
+import org.opencastproject.job.api.JobSpec;
 import org.opencastproject.rest.RestConstants;
 import org.opencastproject.security.api.SecurityService;
 import org.opencastproject.serviceregistry.api.HostRegistration;
@@ -60,12 +61,14 @@ import org.opencastproject.util.doc.rest.RestService;
 
 import org.apache.commons.lang3.StringUtils;
 import org.json.simple.JSONArray;
+import org.json.simple.JSONObject;
 import org.json.simple.JSONValue;
 import org.osgi.service.component.ComponentContext;
 import org.osgi.service.component.annotations.Activate;
 import org.osgi.service.component.annotations.Component;
 import org.osgi.service.component.annotations.Reference;
 
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.LinkedList;
@@ -542,6 +545,79 @@ public class ServiceRegistryEndpoint {
     }
   }
 
+  @POST
+  @Path("jobs")
+  @Produces(MediaType.TEXT_XML)
+  @RestQuery(name = "createjobs", description = "Creates a number of new jobs in a single transaction.", returnDescription = "An XML representation of the jobs, in the order they were specified.", restParameters = {
+          @RestParameter(name = "host", isRequired = true, type = Type.STRING, description = "The creating host, including the http(s) protocol"),
+          @RestParameter(name = "jobs", isRequired = true, type = Type.TEXT, description = "A JSON array of job specifications, each an object with the fields 'jobType', 'operation', and optionally 'arguments' (an array of strings), 'payload', 'start' and 'jobLoad'") }, responses = {
+          @RestResponse(responseCode = SC_CREATED, description = "Jobs created."),
+          @RestResponse(responseCode = SC_BAD_REQUEST, description = "The required parameters were not supplied, bad request.") })
+  public Response createJobs(@FormParam("host") String host, @FormParam("jobs") String jobs) {
+    List<JobSpec> specs = new ArrayList<>();
+    try {
+      Job parentJob = serviceRegistry.getCurrentJob();
+      for (Object item : (JSONArray) JSONValue.parseWithException(jobs)) {
+        JSONObject spec = (JSONObject) item;
+        List<String> arguments = null;
+        if (spec.get("arguments") != null) {
+          arguments = new ArrayList<>();
+          for (Object argument : (JSONArray) spec.get("arguments")) {
+            arguments.add((String) argument);
+          }
+        }
+        boolean start = spec.get("start") == null || Boolean.parseBoolean(spec.get("start").toString());
+        Float jobLoad = spec.get("jobLoad") == null ? null : Float.parseFloat(spec.get("jobLoad").toString());
+        specs.add(new JobSpec((String) spec.get("jobType"), (String) spec.get("operation"), arguments,
+                (String) spec.get("payload"), start, parentJob, jobLoad));
+      }
+    } catch (Exception e) {
+      throw new WebApplicationException(Status.BAD_REQUEST);
+    }
+    try {
+      List<Job> created = ((ServiceRegistryJpaImpl) serviceRegistry).createJobs(host, specs);
+      return Response.status(Status.CREATED).entity(new JaxbJobList(created)).build();
+    } catch (IllegalArgumentException e) {
+      throw new WebApplicationException(Status.BAD_REQUEST);
+    } catch (Exception e) {
+      throw new WebApplicationException(e);
+    }
+  }
+
+  @PUT
+  @Path("jobs.xml")
+  @Produces(MediaType.TEXT_XML)
+  @RestQuery(name = "updatejobs", description = "Updates a number of existing jobs in a single transaction", returnDescription = "No content", restParameters = { @RestParameter(name = "jobs", isRequired = true, type = Type.TEXT, description = "The updated jobs as an XML job list") }, responses = {
+          @RestResponse(responseCode = SC_NO_CONTENT, description = "Jobs updated."),
+          @RestResponse(responseCode = SC_NOT_FOUND, description = "At least one of the jobs was not found.") })
+  public Response updateJobs(@FormParam("jobs") String jobsXml) throws NotFoundException {
+    try {
+      List<Job> jobs = new ArrayList<>();
+      for (JaxbJob job : JobParser.parseJobList(jobsXml).getJobs()) {
+        jobs.add(job.toJob());
+      }
+      serviceRegistry.updateJobs(jobs);
+      return Response.status(Status.NO_CONTENT).build();
+    } catch (NotFoundException e) {
+      throw e;
+    } catch (Exception e) {
+      throw new WebApplicationException(e);
+    }
+  }
+
+  @POST
+  @Path("job/{id}/terminated")
+  @RestQuery(name = "jobterminated", description = "Notifies this node that a job reached a terminal state, so that callers waiting for the job are released right away", returnDescription = "No content", pathParameters = { @RestParameter(name = "id", isRequired = true, type = Type.INTEGER, description = "The job identifier") }, responses = {
+          @RestResponse(responseCode = SC_NO_CONTENT, description = "Notification processed.") })
+  public Response jobTerminated(@PathParam("id") long id) {
+    try {
+      ((ServiceRegistryJpaImpl) serviceRegistry).jobTerminated(id);
+      return Response.noContent().build();
+    } catch (ServiceRegistryException e) {
+      throw new WebApplicationException(e);
+    }
+  }
+
   @GET
   @Path("job/{id}.xml")
   @Produces(MediaType.TEXT_XML)
@@ -589,8 +665,12 @@ public class ServiceRegistryEndpoint {
   @GET
   @Path("jobs.xml")
   @Produces(MediaType.TEXT_XML)
-  public JaxbJobList getJobsAsXml(@QueryParam("serviceType") String serviceType, @QueryParam("status") Job.Status status) {
+  public JaxbJobList getJobsAsXml(@QueryParam("serviceType") String serviceType, @QueryParam("status") Job.Status status,
+          @QueryParam("archived") boolean archived) {
     try {
+      if (archived) {
+        return new JaxbJobList(((ServiceRegistryJpaImpl) serviceRegistry).getJobs(serviceType, status, true));
+      }
       return new JaxbJobList(serviceRegistry.getJobs(serviceType, status));
     } catch (ServiceRegistryException e) {
       throw new WebApplicationException(e);
@@ -0,0 +1,147 @@
+/**
+ * Licensed to The Apereo Foundation under one or more contributor license
+ * agreements. See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ *
+ * The Apereo Foundation licenses this file to you under the Educational
+ * Community License, Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License. You may obtain a copy of the License
+ * at:
+ *
+ *   http://opensource.org/licenses/ecl2.txt
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ *
+ */
+
+package org.opencastproject.serviceregistry.impl.jmx;
+
+import org.opencastproject.util.jmx.JmxUtil;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.management.MBeanNotificationInfo;
+import javax.management.Notification;
+import javax.management.NotificationBroadcasterSupport;
+
+public class HeartbeatStatistics extends NotificationBroadcasterSupport implements HeartbeatStatisticsMXBean {
+
+  private final AtomicLong sweeps = new AtomicLong();
+  private final AtomicLong totalSweepDuration = new AtomicLong();
+  private final AtomicLong maxSweepDuration = new AtomicLong();
+  private final AtomicLong totalFailures = new AtomicLong();
+
+  private volatile long lastSweepDuration = 0;
+  private volatile int lastSweepHosts = 0;
+  private volatile int lastSweepRequests = 0;
+  private volatile int lastSweepFailures = 0;
+
+  private long sequenceNumber = 1;
+
+  /**
+   * Records a completed heartbeat sweep.
+   *
+   * @param duration
+   *          the duration of the sweep in milliseconds
+   * @param hosts
+   *          the number of hosts checked
+   * @param requests
+   *          the number of requests sent
+   * @param failures
+   *          the number of services which did not respond as expected
+   */
+  public void sweep(long duration, int hosts, int requests, int failures) {
+    sweeps.incrementAndGet();
+    totalSweepDuration.addAndGet(duration);
+    maxSweepDuration.accumulateAndGet(duration, Math::max);
+    totalFailures.addAndGet(failures);
+    synchronized (this) {
+      lastSweepDuration = duration;
+      lastSweepHosts = hosts;
+      lastSweepRequests = requests;
+      lastSweepFailures = failures;
+      sendNotification(JmxUtil.createUpdateNotification(this, sequenceNumber++, "Heartbeat sweep completed"));
+    }
+  }
+
+  @Override
+  public MBeanNotificationInfo[] getNotificationInfo() {
+    String[] types = new String[] { JmxUtil.OPENCAST_UPDATE_NOTIFICATION };
+
+    String name = Notification.class.getName();
+    String description = "An update was executed";
+    MBeanNotificationInfo info = new MBeanNotificationInfo(types, name, description);
+    return new MBeanNotificationInfo[] { info };
+  }
+
+  /**
+   * @see org.opencastproject.serviceregistry.impl.jmx.HeartbeatStatisticsMXBean#getSweeps()
+   */
+  @Override
+  public long getSweeps() {
+    return sweeps.get();
+  }
+
+  /**
+   * @see org.opencastproject.serviceregistry.impl.jmx.HeartbeatStatisticsMXBean#getLastSweepDuration()
+   */
+  @Override
+  public long getLastSweepDuration() {
+    return lastSweepDuration;
+  }
+
+  /**
+   * @see org.opencastproject.serviceregistry.impl.jmx.HeartbeatStatisticsMXBean#getAverageSweepDuration()
+   */
+  @Override
+  public long getAverageSweepDuration() {
+    long sweepCount = sweeps.get();
+    return sweepCount == 0 ? 0 : totalSweepDuration.get() / sweepCount;
+  }
+
+  /**
+   * @see org.opencastproject.serviceregistry.impl.jmx.HeartbeatStatisticsMXBean#getMaxSweepDuration()
+   */
+  @Override
+  public long getMaxSweepDuration() {
+    return maxSweepDuration.get();
+  }
+
+  /**
+   * @see org.opencastproject.serviceregistry.impl.jmx.HeartbeatStatisticsMXBean#getLastSweepHosts()
+   */
+  @Override
+  public int getLastSweepHosts() {
+    return lastSweepHosts;
+  }
+
+  /**
+   * @see org.opencastproject.serviceregistry.impl.jmx.HeartbeatStatisticsMXBean#getLastSweepRequests()
+   */
+  @Override
+  public int getLastSweepRequests() {
+    return lastSweepRequests;
+  }
+
+  /**
+   * @see org.opencastproject.serviceregistry.impl.jmx.HeartbeatStatisticsMXBean#getLastSweepFailures()
+   */
+  @Override
+  public int getLastSweepFailures() {
+    return lastSweepFailures;
+  }
+
+  /**
+   * @see org.opencastproject.serviceregistry.impl.jmx.HeartbeatStatisticsMXBean#getTotalFailures()
+   */
+  @Override
+  public long getTotalFailures() {
+    return totalFailures.get();
+  }
+
+}
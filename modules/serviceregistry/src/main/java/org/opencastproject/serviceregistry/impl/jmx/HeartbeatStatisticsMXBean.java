@@ -0,0 +1,85 @@
+/**
+ * Licensed to The Apereo Foundation under one or more contributor license
+ * agreements. See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ *
+ * The Apereo Foundation licenses this file to you under the Educational
+ * Community License, Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License. You may obtain a copy of the License
+ * at:
+ *
+ *   http://opensource.org/licenses/ecl2.txt
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ *
+ */
+
+package org.opencastproject.serviceregistry.impl.jmx;
+
+/**
+ * JMX Bean interface exposing statistics of the heartbeat checking whether the registered services are still alive.
+ */
+public interface HeartbeatStatisticsMXBean {
+
+  /**
+   * Gets the number of completed heartbeat sweeps
+   *
+   * @return the number of sweeps
+   */
+  long getSweeps();
+
+  /**
+   * Gets the duration of the last sweep in milliseconds
+   *
+   * @return the last sweep duration
+   */
+  long getLastSweepDuration();
+
+  /**
+   * Gets the average duration of a sweep in milliseconds
+   *
+   * @return the average sweep duration
+   */
+  long getAverageSweepDuration();
+
+  /**
+   * Gets the longest duration of a sweep in milliseconds
+   *
+   * @return the maximum sweep duration
+   */
+  long getMaxSweepDuration();
+
+  /**
+   * Gets the number of hosts checked during the last sweep
+   *
+   * @return the number of hosts
+   */
+  int getLastSweepHosts();
+
+  /**
+   * Gets the number of requests sent during the last sweep
+   *
+   * @return the number of requests
+   */
+  int getLastSweepRequests();
+
+  /**
+   * Gets the number of services which did not respond as expected during the last sweep
+   *
+   * @return the number of failed services
+   */
+  int getLastSweepFailures();
+
+  /**
+   * Gets the number of services which did not respond as expected over all sweeps
+   *
+   * @return the total number of failed services
+   */
+  long getTotalFailures();
+
+}
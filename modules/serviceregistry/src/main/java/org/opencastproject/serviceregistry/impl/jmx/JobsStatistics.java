@@ -22,14 +22,15 @@
 package org.opencastproject.serviceregistry.impl.jmx;
 
 import org.opencastproject.job.api.Job.Status;
+import org.opencastproject.util.data.Tuple;
 import org.opencastproject.util.data.Tuple3;
 import org.opencastproject.util.jmx.JmxUtil;
 
 import java.util.ArrayList;
-import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
+import java.util.function.Supplier;
 
 import javax.management.MBeanNotificationInfo;
 import javax.management.Notification;
@@ -39,37 +40,35 @@ public class JobsStatistics extends NotificationBroadcasterSupport implements Jo
 
   private static final String DELIMITER = ";";
 
-  private Map<Tuple3<String, String, Status>, Long> jobCounts = new HashMap<Tuple3<String, String, Status>, Long>();
-  private Map<String, Long> avgRunTimes = new HashMap<String, Long>();
-  private Map<String, Long> avgQueueTimes = new HashMap<String, Long>();
+  /** Provides the number of jobs per host, service type and status */
+  private final Supplier<Map<Tuple3<String, String, Status>, Long>> jobCounts;
+
+  /** Provides the average run and queue times per operation */
+  private final Supplier<Map<String, Tuple<Long, Long>>> avgTimes;
 
   // Job Table runTime, queueTime
   private long sequenceNumber = 1;
   private final String hostName;
 
-  public JobsStatistics(String hostName) {
+  /**
+   * Creates the statistics bean. The statistics are read from the given suppliers whenever an attribute is accessed.
+   *
+   * @param hostName
+   *          this node's host name
+   * @param jobCounts
+   *          provides the number of jobs per host, service type and status
+   * @param avgTimes
+   *          provides the average run and queue times per operation
+   */
+  public JobsStatistics(String hostName, Supplier<Map<Tuple3<String, String, Status>, Long>> jobCounts,
+          Supplier<Map<String, Tuple<Long, Long>>> avgTimes) {
     this.hostName = hostName;
+    this.jobCounts = jobCounts;
+    this.avgTimes = avgTimes;
   }
 
-  public void updateJobCount(List<Object[]> perHostServiceCount) {
-    jobCounts.clear();
-    for (Object[] result : perHostServiceCount) {
-      Status status = Status.values()[((Number) result[2]).intValue()];
-      jobCounts.put(Tuple3.tuple3((String) result[0], (String) result[1], status), (Long) result[3]);
-    }
-    sendNotification(JmxUtil.createUpdateNotification(this, sequenceNumber++, "Job updated"));
-  }
-
-  public void updateAvg(List<Object[]> avgOperations) {
-    avgRunTimes.clear();
-    avgQueueTimes.clear();
-    for (Object[] result : avgOperations) {
-      Long avgRunTime = ((Double) result[1]).longValue();
-      Long avgQueueTime = ((Double) result[2]).longValue();
-
-      avgRunTimes.put((String) result[0], avgRunTime);
-      avgQueueTimes.put((String) result[0], avgQueueTime);
-    }
+  /** Notifies the listeners that the statistics have been reconciled with the database. */
+  public synchronized void updated() {
     sendNotification(JmxUtil.createUpdateNotification(this, sequenceNumber++, "Job updated"));
   }
 
@@ -169,8 +168,8 @@ public class JobsStatistics extends NotificationBroadcasterSupport implements Jo
   @Override
   public String[] getAverageJobRunTime() {
     List<String> avgJobList = new ArrayList<String>();
-    for (Entry<String, Long> entry : avgRunTimes.entrySet()) {
-      avgJobList.add(entry.getKey() + DELIMITER + entry.getValue());
+    for (Entry<String, Tuple<Long, Long>> entry : avgTimes.get().entrySet()) {
+      avgJobList.add(entry.getKey() + DELIMITER + entry.getValue().getA());
     }
     return avgJobList.toArray(new String[avgJobList.size()]);
   }
@@ -181,8 +180,8 @@ public class JobsStatistics extends NotificationBroadcasterSupport implements Jo
   @Override
   public String[] getAverageJobQueueTime() {
     List<String> avgJobList = new ArrayList<String>();
-    for (Entry<String, Long> entry : avgQueueTimes.entrySet()) {
-      avgJobList.add(entry.getKey() + DELIMITER + entry.getValue());
+    for (Entry<String, Tuple<Long, Long>> entry : avgTimes.get().entrySet()) {
+      avgJobList.add(entry.getKey() + DELIMITER + entry.getValue().getB());
     }
     return avgJobList.toArray(new String[avgJobList.size()]);
   }
@@ -269,7 +268,7 @@ public class JobsStatistics extends NotificationBroadcasterSupport implements Jo
 
   private int countJobs(String hostName, Status status) {
     int i = 0;
-    for (Entry<Tuple3<String, String, Status>, Long> entry : jobCounts.entrySet()) {
+    for (Entry<Tuple3<String, String, Status>, Long> entry : jobCounts.get().entrySet()) {
       if (hostName != null && !hostName.equals(entry.getKey().getA()))
         continue;
       if (status != null && !status.equals(entry.getKey().getC()))
@@ -281,7 +280,7 @@ public class JobsStatistics extends NotificationBroadcasterSupport implements Jo
 
   private String[] toJobCountArray(String hostName, Status status) {
     List<String> list = new ArrayList<String>();
-    for (Entry<Tuple3<String, String, Status>, Long> entry : jobCounts.entrySet()) {
+    for (Entry<Tuple3<String, String, Status>, Long> entry : jobCounts.get().entrySet()) {
       if (hostName != null && !hostName.equals(entry.getKey().getA()))
         continue;
       if (status != null && !status.equals(entry.getKey().getC()))
@@ -0,0 +1,146 @@
+/**
+ * Licensed to The Apereo Foundation under one or more contributor license
+ * agreements. See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ *
+ * The Apereo Foundation licenses this file to you under the Educational
+ * Community License, Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License. You may obtain a copy of the License
+ * at:
+ *
+ *   http://opensource.org/licenses/ecl2.txt
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ *
+ */
+
+package org.opencastproject.serviceregistry.impl.jmx;
+
+import org.opencastproject.util.jmx.JmxUtil;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.management.MBeanNotificationInfo;
+import javax.management.Notification;
+import javax.management.NotificationBroadcasterSupport;
+
+public class RegistrationCacheStatistics extends NotificationBroadcasterSupport
+        implements RegistrationCacheStatisticsMXBean {
+
+  private final AtomicLong hits = new AtomicLong();
+  private final AtomicLong misses = new AtomicLong();
+  private final AtomicLong totalStaleness = new AtomicLong();
+  private final AtomicLong maxStaleness = new AtomicLong();
+
+  private volatile long snapshotVersion = 0;
+  private volatile long snapshotCreated = -1;
+
+  private long sequenceNumber = 1;
+
+  /**
+   * Records a request served from the cached snapshot.
+   *
+   * @param staleness
+   *          the age of the served snapshot in milliseconds
+   */
+  public void hit(long staleness) {
+    hits.incrementAndGet();
+    totalStaleness.addAndGet(staleness);
+    maxStaleness.accumulateAndGet(staleness, Math::max);
+  }
+
+  /**
+   * Records a request that loaded a new snapshot.
+   *
+   * @param version
+   *          the version of the new snapshot
+   * @param created
+   *          the time the new snapshot has been loaded
+   */
+  public void miss(long version, long created) {
+    misses.incrementAndGet();
+    synchronized (this) {
+      if (version > snapshotVersion) {
+        snapshotVersion = version;
+        snapshotCreated = created;
+      }
+      sendNotification(JmxUtil.createUpdateNotification(this, sequenceNumber++, "Registration snapshot updated"));
+    }
+  }
+
+  @Override
+  public MBeanNotificationInfo[] getNotificationInfo() {
+    String[] types = new String[] { JmxUtil.OPENCAST_UPDATE_NOTIFICATION };
+
+    String name = Notification.class.getName();
+    String description = "An update was executed";
+    MBeanNotificationInfo info = new MBeanNotificationInfo(types, name, description);
+    return new MBeanNotificationInfo[] { info };
+  }
+
+  /**
+   * @see org.opencastproject.serviceregistry.impl.jmx.RegistrationCacheStatisticsMXBean#getHits()
+   */
+  @Override
+  public long getHits() {
+    return hits.get();
+  }
+
+  /**
+   * @see org.opencastproject.serviceregistry.impl.jmx.RegistrationCacheStatisticsMXBean#getMisses()
+   */
+  @Override
+  public long getMisses() {
+    return misses.get();
+  }
+
+  /**
+   * @see org.opencastproject.serviceregistry.impl.jmx.RegistrationCacheStatisticsMXBean#getHitRatio()
+   */
+  @Override
+  public double getHitRatio() {
+    long hitCount = hits.get();
+    long total = hitCount + misses.get();
+    return total == 0 ? 0 : (double) hitCount / total;
+  }
+
+  /**
+   * @see org.opencastproject.serviceregistry.impl.jmx.RegistrationCacheStatisticsMXBean#getSnapshotVersion()
+   */
+  @Override
+  public long getSnapshotVersion() {
+    return snapshotVersion;
+  }
+
+  /**
+   * @see org.opencastproject.serviceregistry.impl.jmx.RegistrationCacheStatisticsMXBean#getSnapshotAge()
+   */
+  @Override
+  public long getSnapshotAge() {
+    long created = snapshotCreated;
+    return created < 0 ? -1 : System.currentTimeMillis() - created;
+  }
+
+  /**
+   * @see org.opencastproject.serviceregistry.impl.jmx.RegistrationCacheStatisticsMXBean#getMaxStaleness()
+   */
+  @Override
+  public long getMaxStaleness() {
+    return maxStaleness.get();
+  }
+
+  /**
+   * @see org.opencastproject.serviceregistry.impl.jmx.RegistrationCacheStatisticsMXBean#getAverageStaleness()
+   */
+  @Override
+  public long getAverageStaleness() {
+    long hitCount = hits.get();
+    return hitCount == 0 ? 0 : totalStaleness.get() / hitCount;
+  }
+
+}
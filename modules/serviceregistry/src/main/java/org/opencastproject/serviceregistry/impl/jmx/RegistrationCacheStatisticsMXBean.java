@@ -0,0 +1,78 @@
+/**
+ * Licensed to The Apereo Foundation under one or more contributor license
+ * agreements. See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ *
+ * The Apereo Foundation licenses this file to you under the Educational
+ * Community License, Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License. You may obtain a copy of the License
+ * at:
+ *
+ *   http://opensource.org/licenses/ecl2.txt
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ *
+ */
+
+package org.opencastproject.serviceregistry.impl.jmx;
+
+/**
+ * JMX Bean interface exposing statistics of the cached service registration snapshot used for load balancing.
+ */
+public interface RegistrationCacheStatisticsMXBean {
+
+  /**
+   * Gets the number of requests served from the cached snapshot
+   *
+   * @return the number of cache hits
+   */
+  long getHits();
+
+  /**
+   * Gets the number of requests that had to load a new snapshot from the database
+   *
+   * @return the number of cache misses
+   */
+  long getMisses();
+
+  /**
+   * Gets the ratio of requests served from the cached snapshot
+   *
+   * @return the hit ratio between 0 and 1
+   */
+  double getHitRatio();
+
+  /**
+   * Gets the version of the current snapshot
+   *
+   * @return the snapshot version
+   */
+  long getSnapshotVersion();
+
+  /**
+   * Gets the age of the current snapshot in milliseconds
+   *
+   * @return the snapshot age, or -1 if no snapshot has been loaded yet
+   */
+  long getSnapshotAge();
+
+  /**
+   * Gets the highest age of a snapshot served from the cache in milliseconds
+   *
+   * @return the maximum staleness of a cache hit
+   */
+  long getMaxStaleness();
+
+  /**
+   * Gets the average age of the snapshots served from the cache in milliseconds
+   *
+   * @return the average staleness of a cache hit
+   */
+  long getAverageStaleness();
+
+}
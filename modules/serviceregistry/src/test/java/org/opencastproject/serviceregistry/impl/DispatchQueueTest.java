@@ -0,0 +1,114 @@
+/**
+ * Licensed to The Apereo Foundation under one or more contributor license
+ * agreements. See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ *
+ * The Apereo Foundation licenses this file to you under the Educational
+ * Community License, Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License. You may obtain a copy of the License
+ * at:
+ *
+ *   http://opensource.org/licenses/ecl2.txt
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ *
+ */
+
+package org.opencastproject.serviceregistry.impl;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.opencastproject.job.api.Job.Status;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+
+public class DispatchQueueTest {
+
+  private DispatchQueue queue;
+
+  @Before
+  public void setUp() {
+    queue = new DispatchQueue();
+    queue.completeSync(Collections.<DispatchQueue.Entry> emptyList(), queue.beginSync());
+  }
+
+  @Test
+  public void testIgnoreOffersBeforeFirstSync() {
+    DispatchQueue unsynchronized = new DispatchQueue();
+    assertTrue(unsynchronized.isSyncDue(Long.MAX_VALUE));
+    unsynchronized.offer(1L, "compose", "encode", Status.QUEUED, new Date());
+    assertEquals(0, unsynchronized.size());
+  }
+
+  @Test
+  public void testDispatchOrder() {
+    queue.offer(1L, ServiceRegistryJpaImpl.TYPE_WORKFLOW, "START_WORKFLOW", Status.RESTART, new Date(1000));
+    queue.offer(2L, "compose", "encode", Status.QUEUED, new Date(3000));
+    queue.offer(3L, "compose", "encode", Status.QUEUED, new Date(2000));
+    queue.offer(4L, "inspect", "inspect", Status.RESTART, new Date(4000));
+
+    List<DispatchQueue.Entry> entries = queue.snapshot();
+    assertEquals(4, entries.size());
+    assertEquals("Restarted jobs come first", 4L, entries.get(0).getId());
+    assertEquals("Older jobs come before newer ones", 3L, entries.get(1).getId());
+    assertEquals(2L, entries.get(2).getId());
+    assertEquals("Workflow jobs come last", 1L, entries.get(3).getId());
+  }
+
+  @Test
+  public void testSignatureIndex() {
+    queue.offer(1L, "compose", "encode", Status.QUEUED, new Date());
+    queue.offer(2L, "compose", "encode", Status.QUEUED, new Date());
+    queue.offer(3L, "compose", "image", Status.QUEUED, new Date());
+    assertEquals(2, queue.count(DispatchQueue.signature("compose", "encode")));
+
+    // Offering a job twice replaces its entry
+    queue.offer(2L, "compose", "encode", Status.RESTART, new Date());
+    assertEquals(2, queue.count(DispatchQueue.signature("compose", "encode")));
+    assertEquals(3, queue.size());
+
+    assertTrue(queue.remove(1L));
+    assertTrue(queue.remove(2L));
+    assertFalse(queue.remove(2L));
+    assertEquals(0, queue.count(DispatchQueue.signature("compose", "encode")));
+    assertEquals(1, queue.count(DispatchQueue.signature("compose", "image")));
+  }
+
+  @Test
+  public void testSyncKeepsJobsOfferedMeanwhile() {
+    queue.offer(1L, "compose", "encode", Status.QUEUED, new Date());
+    long token = queue.beginSync();
+    queue.offer(2L, "compose", "encode", Status.QUEUED, new Date());
+
+    // The database result was read before job 2 was created and job 1 has been dispatched by now
+    queue.completeSync(Arrays.asList(new DispatchQueue.Entry(3L, "inspect", "inspect", Status.QUEUED, new Date())),
+            token);
+
+    assertEquals(2, queue.size());
+    assertEquals(1, queue.count(DispatchQueue.signature("compose", "encode")));
+    assertEquals(1, queue.count(DispatchQueue.signature("inspect", "inspect")));
+    assertFalse(queue.remove(1L));
+  }
+
+  @Test
+  public void testAwaitSignal() throws Exception {
+    assertFalse(queue.await(1));
+    queue.signal();
+    assertTrue(queue.await(1000));
+    assertFalse("Signals are consumed by the waiting dispatcher", queue.await(1));
+  }
+
+}
@@ -0,0 +1,142 @@
+/**
+ * Licensed to The Apereo Foundation under one or more contributor license
+ * agreements. See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ *
+ * The Apereo Foundation licenses this file to you under the Educational
+ * Community License, Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License. You may obtain a copy of the License
+ * at:
+ *
+ *   http://opensource.org/licenses/ecl2.txt
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ *
+ */
+
+package org.opencastproject.serviceregistry.impl;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import org.opencastproject.job.api.Job.Status;
+import org.opencastproject.serviceregistry.impl.JobStatisticsCache.Aggregate;
+import org.opencastproject.serviceregistry.impl.JobStatisticsCache.Sample;
+import org.opencastproject.util.data.Tuple;
+import org.opencastproject.util.data.Tuple3;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.Map;
+
+public class JobStatisticsCacheTest {
+
+  private static final String TYPE = "org.opencastproject.composer";
+
+  private JobStatisticsCache cache;
+
+  @Before
+  public void setUp() {
+    cache = new JobStatisticsCache();
+    cache.reconcile(cache.beginReconcile(), 1000L, new HashMap<>(), new HashMap<>(), new HashMap<>());
+  }
+
+  private static Sample sample(Status status, String processor, long queueTime, long runTime, long dateCreated) {
+    return new Sample(TYPE, "encode", status, "admin", processor, queueTime, runTime, dateCreated);
+  }
+
+  @Test
+  public void testTransitions() {
+    Sample queued = sample(Status.QUEUED, null, 0, 0, 2000L);
+    Sample running = sample(Status.RUNNING, "worker", 100, 0, 2000L);
+    Sample finished = sample(Status.FINISHED, "worker", 100, 500, 2000L);
+
+    cache.update(null, queued);
+    assertEquals(Long.valueOf(1), cache.getJobCounts().get(Tuple3.tuple3("admin", TYPE, Status.QUEUED)));
+    assertTrue(cache.getServiceStatistics("worker", TYPE).isEmpty());
+
+    cache.update(queued, running);
+    assertNull(cache.getJobCounts().get(Tuple3.tuple3("admin", TYPE, Status.QUEUED)));
+    assertEquals(Long.valueOf(1), cache.getJobCounts().get(Tuple3.tuple3("admin", TYPE, Status.RUNNING)));
+    assertEquals(Long.valueOf(1), cache.getJobCounts().get(Tuple3.tuple3("worker", TYPE, Status.RUNNING)));
+    assertEquals(1, cache.getServiceStatistics("worker", TYPE).get(Status.RUNNING).getCount());
+
+    cache.update(running, finished);
+    Map<Status, Aggregate> statistics = cache.getServiceStatistics("worker", TYPE);
+    assertEquals(0, statistics.get(Status.RUNNING).getCount());
+    assertEquals(1, statistics.get(Status.FINISHED).getCount());
+    assertEquals(500, statistics.get(Status.FINISHED).getMeanRunTime());
+    assertEquals(100, statistics.get(Status.FINISHED).getMeanQueueTime());
+
+    cache.update(finished, null);
+    assertTrue(cache.getJobCounts().isEmpty());
+    assertTrue(cache.getOperations().isEmpty());
+  }
+
+  @Test
+  public void testWindow() {
+    cache.update(null, sample(Status.FINISHED, "worker", 100, 500, 500L));
+    assertTrue(cache.getServiceStatistics("worker", TYPE).isEmpty());
+    assertEquals(Long.valueOf(1), cache.getJobCounts().get(Tuple3.tuple3("worker", TYPE, Status.FINISHED)));
+    assertEquals(1, cache.getOperations().get("encode").getCount());
+  }
+
+  @Test
+  public void testOperationAverages() {
+    cache.update(null, sample(Status.FINISHED, "worker", 100, 400, 2000L));
+    cache.update(null, sample(Status.FINISHED, "worker", 300, 800, 2000L));
+    Aggregate encode = cache.getOperations().get("encode");
+    assertEquals(2, encode.getCount());
+    assertEquals(200, encode.getMeanQueueTime());
+    assertEquals(600, encode.getMeanRunTime());
+  }
+
+  @Test
+  public void testInvalidate() {
+    assertFalse(cache.isStale());
+    cache.invalidate();
+    assertTrue(cache.isStale());
+
+    // a bulk change during the reconciliation leaves the statistics outdated
+    long generation = cache.beginReconcile();
+    cache.invalidate();
+    cache.reconcile(generation, 0L, new HashMap<>(), new HashMap<>(), new HashMap<>());
+    assertTrue(cache.isStale());
+
+    cache.reconcile(cache.beginReconcile(), 0L, new HashMap<>(), new HashMap<>(), new HashMap<>());
+    assertFalse(cache.isStale());
+  }
+
+  @Test
+  public void testReconcile() {
+    cache.update(null, sample(Status.RUNNING, "worker", 100, 0, 2000L));
+
+    Map<Status, Aggregate> statuses = new EnumMap<>(Status.class);
+    statuses.put(Status.FINISHED, new Aggregate(4, 10, 20));
+    Map<Tuple<String, String>, Map<Status, Aggregate>> services = new HashMap<>();
+    services.put(Tuple.tuple("worker", TYPE), statuses);
+    Map<Tuple3<String, String, Status>, Long> jobCounts = new HashMap<>();
+    jobCounts.put(Tuple3.tuple3("worker", TYPE, Status.FINISHED), 4L);
+    Map<String, Aggregate> operations = new HashMap<>();
+    operations.put("encode", new Aggregate(4, 10, 20));
+    cache.reconcile(cache.beginReconcile(), 0L, services, jobCounts, operations);
+
+    Map<Status, Aggregate> statistics = cache.getServiceStatistics("worker", TYPE);
+    assertEquals(1, statistics.size());
+    assertEquals(4, statistics.get(Status.FINISHED).getCount());
+    assertEquals(20, statistics.get(Status.FINISHED).getMeanRunTime());
+    assertEquals(1, cache.getJobCounts().size());
+    assertEquals(10, cache.getOperations().get("encode").getMeanQueueTime());
+  }
+
+}
@@ -0,0 +1,113 @@
+/**
+ * Licensed to The Apereo Foundation under one or more contributor license
+ * agreements. See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ *
+ * The Apereo Foundation licenses this file to you under the Educational
+ * Community License, Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License. You may obtain a copy of the License
+ * at:
+ *
+ *   http://opensource.org/licenses/ecl2.txt
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ *
+ */
+
+package org.opencastproject.serviceregistry.impl;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+import org.opencastproject.serviceregistry.api.HostRegistration;
+import org.opencastproject.serviceregistry.api.ServiceRegistration;
+import org.opencastproject.serviceregistry.api.SystemLoad;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+
+public class RegistrationCacheTest {
+
+  private int loads;
+  private int hits;
+  private int misses;
+
+  private final RegistrationCache.Loader loader = new RegistrationCache.Loader() {
+    @Override
+    public RegistrationCache.Snapshot load(long version) {
+      loads++;
+      return new RegistrationCache.Snapshot(version, new ArrayList<ServiceRegistration>(),
+              new ArrayList<HostRegistration>(), new SystemLoad());
+    }
+  };
+
+  private final RegistrationCache.Listener listener = new RegistrationCache.Listener() {
+    @Override
+    public void hit(RegistrationCache.Snapshot snapshot) {
+      hits++;
+    }
+
+    @Override
+    public void miss(RegistrationCache.Snapshot snapshot) {
+      misses++;
+    }
+  };
+
+  @Before
+  public void setUp() {
+    loads = 0;
+    hits = 0;
+    misses = 0;
+  }
+
+  @Test
+  public void testSnapshotIsReusedWithinTtl() {
+    RegistrationCache cache = new RegistrationCache(60000);
+    RegistrationCache.Snapshot first = cache.get(loader, listener);
+    RegistrationCache.Snapshot second = cache.get(loader, listener);
+    assertSame(first, second);
+    assertEquals(1, loads);
+    assertEquals(1, hits);
+    assertEquals(1, misses);
+  }
+
+  @Test
+  public void testInvalidateForcesReload() {
+    RegistrationCache cache = new RegistrationCache(60000);
+    RegistrationCache.Snapshot first = cache.get(loader, listener);
+    cache.invalidate();
+    RegistrationCache.Snapshot second = cache.get(loader, listener);
+    assertEquals(2, loads);
+    assertEquals(first.getVersion() + 1, second.getVersion());
+    assertSame(second, cache.get(loader, listener));
+  }
+
+  @Test
+  public void testExpiredSnapshotIsReloaded() throws Exception {
+    RegistrationCache cache = new RegistrationCache(1);
+    cache.get(loader, listener);
+    Thread.sleep(5);
+    cache.get(loader, listener);
+    assertEquals(2, loads);
+    assertEquals(0, hits);
+  }
+
+  @Test
+  public void testDisabledCacheAlwaysLoads() {
+    RegistrationCache cache = new RegistrationCache(0);
+    cache.get(loader, listener);
+    cache.get(loader, listener);
+    assertEquals(2, loads);
+    assertEquals(2, misses);
+    assertNull(cache.peek());
+  }
+
+}
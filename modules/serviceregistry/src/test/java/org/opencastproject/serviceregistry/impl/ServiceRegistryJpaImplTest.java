@@ -22,11 +22,17 @@
 package org.opencastproject.serviceregistry.impl;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertThrows;
+import static org.junit.Assert.assertTrue;
 
 import org.opencastproject.job.api.Job;
 import org.opencastproject.job.api.Job.Status;
 import org.opencastproject.job.api.JobBarrier;
+import org.opencastproject.job.api.JobSpec;
+import org.opencastproject.job.jpa.JpaJob;
+import org.opencastproject.job.jpa.JpaJobPayload;
 import org.opencastproject.security.api.DefaultOrganization;
 import org.opencastproject.security.api.JaxbOrganization;
 import org.opencastproject.security.api.JaxbRole;
@@ -38,12 +44,12 @@ import org.opencastproject.security.api.TrustedHttpClient;
 import org.opencastproject.security.api.TrustedHttpClientException;
 import org.opencastproject.security.api.User;
 import org.opencastproject.security.api.UserDirectoryService;
+import org.opencastproject.serviceregistry.api.ServiceRegistration;
 import org.opencastproject.serviceregistry.api.ServiceRegistryException;
 import org.opencastproject.serviceregistry.api.SystemLoad;
-import org.opencastproject.serviceregistry.impl.ServiceRegistryJpaImpl.JobDispatcher;
-import org.opencastproject.serviceregistry.impl.ServiceRegistryJpaImpl.JobProducerHeartbeat;
 import org.opencastproject.systems.OpencastConstants;
 import org.opencastproject.util.NotFoundException;
+import org.opencastproject.util.data.Tuple3;
 import org.opencastproject.util.jmx.JmxUtil;
 import org.opencastproject.util.persistence.PersistenceUtil;
 
@@ -75,13 +81,19 @@ import org.slf4j.LoggerFactory;
 
 import java.beans.PropertyVetoException;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.Date;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.Executors;
 import java.util.concurrent.TimeUnit;
 
 import javax.management.ObjectInstance;
+import javax.persistence.EntityManager;
 import javax.persistence.EntityManagerFactory;
 
 public class ServiceRegistryJpaImplTest {
@@ -160,6 +172,9 @@ public class ServiceRegistryJpaImplTest {
     if (serviceRegistryJpaImpl.scheduledExecutor != null) {
       serviceRegistryJpaImpl.scheduledExecutor.shutdown();
     }
+    if (serviceRegistryJpaImpl.dispatchExecutor != null) {
+      serviceRegistryJpaImpl.dispatchExecutor.shutdownNow();
+    }
     logger.debug("end clean before each");
   }
 
@@ -295,11 +310,11 @@ public class ServiceRegistryJpaImplTest {
       serviceRegistryJpaImpl.scheduledExecutor.shutdown();
     }
     serviceRegistryJpaImpl.scheduledExecutor = Executors.newScheduledThreadPool(1);
-    JobDispatcher jd = serviceRegistryJpaImpl.new JobDispatcher();
+    JobDispatcher jd = new JobDispatcher(serviceRegistryJpaImpl);
     serviceRegistryJpaImpl.scheduledExecutor.schedule(jd, DISPATCH_START_DELAY, TimeUnit.MILLISECONDS);
 
     if (withProducerHeartBeat) {
-      JobProducerHeartbeat jph = serviceRegistryJpaImpl.new JobProducerHeartbeat();
+      JobProducerHeartbeat jph = new JobProducerHeartbeat(serviceRegistryJpaImpl);
       serviceRegistryJpaImpl.scheduledExecutor.schedule(jph, DISPATCH_START_DELAY, TimeUnit.MILLISECONDS);
     }
   }
@@ -309,6 +324,235 @@ public class ServiceRegistryJpaImplTest {
     serviceRegistryJpaImpl.removeJobs(Collections.singletonList(1L));
   }
 
+  @Test
+  public void testAwaitJobs() throws Exception {
+    Job job = serviceRegistryJpaImpl.createJob(TEST_HOST, TEST_SERVICE, TEST_OPERATION, null, null, false, null);
+    CompletableFuture<List<Job>> future = serviceRegistryJpaImpl.awaitJobs(Collections.singletonList(job.getId()));
+    assertFalse(future.isDone());
+
+    job.setStatus(Status.RUNNING);
+    job = serviceRegistryJpaImpl.updateJob(job);
+    assertFalse(future.isDone());
+
+    job.setStatus(Status.FINISHED);
+    serviceRegistryJpaImpl.updateJob(job);
+    assertTrue(future.isDone());
+    assertEquals(Status.FINISHED, future.get().get(0).getStatus());
+
+    // Jobs which already terminated complete the future right away
+    future = serviceRegistryJpaImpl.awaitJobs(Collections.singletonList(job.getId()));
+    assertTrue(future.isDone());
+  }
+
+  @Test
+  public void testCreateAndUpdateJobs() throws Exception {
+    Job parent = serviceRegistryJpaImpl.createJob(TEST_HOST, TEST_SERVICE, TEST_OPERATION, null, null, false, null);
+    List<JobSpec> specs = new ArrayList<>();
+    for (int i = 0; i < 3; i++) {
+      specs.add(new JobSpec(TEST_SERVICE, TEST_OPERATION, Collections.singletonList("arg" + i), null, false, parent,
+              1.5f));
+    }
+    List<Job> jobs = serviceRegistryJpaImpl.createJobs(TEST_HOST, specs);
+    assertEquals(3, jobs.size());
+    for (int i = 0; i < jobs.size(); i++) {
+      Job job = serviceRegistryJpaImpl.getJob(jobs.get(i).getId());
+      assertEquals("arg" + i, job.getArguments().get(0));
+      assertEquals(parent.getId(), job.getParentJobId().longValue());
+      assertEquals(parent.getId(), job.getRootJobId().longValue());
+      assertEquals(1.5f, job.getJobLoad(), 0.0f);
+      job.setStatus(Status.FINISHED);
+      jobs.set(i, job);
+    }
+
+    List<Job> updated = serviceRegistryJpaImpl.updateJobs(jobs);
+    assertEquals(3, updated.size());
+    for (Job job : updated) {
+      assertEquals(Status.FINISHED, serviceRegistryJpaImpl.getJob(job.getId()).getStatus());
+    }
+
+    // Either all or none of the jobs are created
+    int existing = serviceRegistryJpaImpl.getJobs(TEST_SERVICE, null).size();
+    specs.add(new JobSpec("unknown", TEST_OPERATION));
+    try {
+      serviceRegistryJpaImpl.createJobs(TEST_HOST, specs);
+      Assert.fail("Jobs of unregistered services must not be created");
+    } catch (ServiceRegistryException e) {
+      assertEquals(existing, serviceRegistryJpaImpl.getJobs(TEST_SERVICE, null).size());
+    }
+  }
+
+  @Test
+  public void testCompressedPayload() throws Exception {
+    String operation = "compressed-payload";
+    String longPayload = StringUtils.repeat("<mediapackage/>", 100);
+    JpaJobPayload.setCompressionThreshold(64);
+    try {
+      Job job = serviceRegistryJpaImpl.createJob(TEST_HOST, TEST_SERVICE, operation, null, longPayload, false, null);
+      assertEquals(longPayload, serviceRegistryJpaImpl.getJob(job.getId()).getPayload());
+      assertEquals(Collections.singletonList(longPayload), serviceRegistryJpaImpl.getJobPayloads(operation));
+
+      // Payloads below the threshold move back into the job table
+      job.setPayload("short");
+      serviceRegistryJpaImpl.updateJob(job);
+      assertEquals("short", serviceRegistryJpaImpl.getJob(job.getId()).getPayload());
+      assertEquals(Collections.singletonList("short"), serviceRegistryJpaImpl.getJobPayloads(operation));
+
+      job = serviceRegistryJpaImpl.getJob(job.getId());
+      job.setPayload(longPayload + "updated");
+      serviceRegistryJpaImpl.updateJob(job);
+      assertEquals(longPayload + "updated", serviceRegistryJpaImpl.getJob(job.getId()).getPayload());
+
+      // A payload which has not been modified is kept as it is stored
+      job = serviceRegistryJpaImpl.getJob(job.getId());
+      job.setStatus(Status.FINISHED);
+      assertEquals(longPayload + "updated", serviceRegistryJpaImpl.updateJob(job).getPayload());
+      assertEquals(longPayload + "updated", serviceRegistryJpaImpl.getJob(job.getId()).getPayload());
+      assertEquals(Collections.singletonList(longPayload + "updated"),
+              serviceRegistryJpaImpl.getJobPayloads(operation));
+
+      // Removing the job removes its payload as well
+      serviceRegistryJpaImpl.removeJobs(Collections.singletonList(job.getId()));
+      EntityManager em = emf.createEntityManager();
+      try {
+        assertNull(JpaJobPayload.find(em, job.getId()));
+      } finally {
+        em.close();
+      }
+    } finally {
+      JpaJobPayload.setCompressionThreshold(JpaJobPayload.DEFAULT_COMPRESSION_THRESHOLD);
+    }
+  }
+
+  @Test
+  public void testArchiveJobs() throws Exception {
+    Job parent = serviceRegistryJpaImpl.createJob(TEST_HOST, TEST_SERVICE, TEST_OPERATION, null, "parent", false, null);
+    Job child = serviceRegistryJpaImpl.createJob(TEST_HOST, TEST_SERVICE, TEST_OPERATION, null, "child", false,
+            parent);
+    child.setStatus(Status.FINISHED);
+    serviceRegistryJpaImpl.updateJob(child);
+    Date future = new Date(System.currentTimeMillis() + 60000L);
+
+    // Job trees are only archived once all of their jobs terminated
+    serviceRegistryJpaImpl.archiveJobs(future, Integer.MAX_VALUE);
+    assertEquals(1, serviceRegistryJpaImpl.getJobs(TEST_SERVICE, Status.FINISHED).stream()
+            .filter(job -> job.getId() == child.getId()).count());
+
+    parent = serviceRegistryJpaImpl.getJob(parent.getId());
+    parent.setStatus(Status.FINISHED);
+    serviceRegistryJpaImpl.updateJob(parent);
+    assertEquals(1, serviceRegistryJpaImpl.archiveJobs(future, Integer.MAX_VALUE));
+    assertEquals(0, serviceRegistryJpaImpl.getJobs(TEST_SERVICE, Status.FINISHED).stream()
+            .filter(job -> job.getId() == child.getId()).count());
+
+    Job archivedChild = serviceRegistryJpaImpl.getJob(child.getId());
+    assertEquals(Status.FINISHED, archivedChild.getStatus());
+    assertEquals("child", archivedChild.getPayload());
+    assertEquals(parent.getId(), archivedChild.getParentJobId().longValue());
+    assertEquals(1, serviceRegistryJpaImpl.getChildJobs(parent.getId()).size());
+    assertTrue(serviceRegistryJpaImpl.getJobs(TEST_SERVICE, Status.FINISHED, true).size() >= 2);
+
+    serviceRegistryJpaImpl.removeJobs(Collections.singletonList(parent.getId()));
+    assertThrows(NotFoundException.class, () -> serviceRegistryJpaImpl.getJob(child.getId()));
+  }
+
+  @Test
+  public void testGetInputElements() throws Exception {
+    Map<String, Set<String>> elements = InputLocality.getInputElements(Arrays.asList(
+            "<track id=\"t1\"><url>http://localhost:8080/files/mediapackage/mp1/t1/video.mp4</url></track>",
+            "http://localhost:8080/files/mediapackage/mp1/c1/catalog.xml?token=1",
+            "http://localhost:8080/files/collection/composer/file.mp4", null));
+    assertEquals(1, elements.size());
+    assertEquals(2, elements.get("mp1").size());
+    assertTrue(elements.get("mp1").contains("t1"));
+    assertTrue(elements.get("mp1").contains("c1"));
+  }
+
+  @Test
+  public void testDispatchByInputLocality() throws Exception {
+    Job job = serviceRegistryJpaImpl.createJob(TEST_HOST, TEST_SERVICE_FAIRNESS, TEST_OPERATION,
+            Collections.singletonList("http://localhost:8080/files/mediapackage/mp1/t1/video.mp4"), null, false, null);
+    serviceRegistryJpaImpl.updateHostElements(TEST_HOST, Collections.singletonMap("mp1",
+            Collections.singletonMap("t1", 1000L)));
+    serviceRegistryJpaImpl.updateHostElements(TEST_HOST_OTHER, Collections.singletonMap("mp1",
+            Collections.singletonMap("t1", 500L)));
+
+    EntityManager em = emf.createEntityManager();
+    try {
+      JpaJob jpaJob = em.find(JpaJob.class, job.getId());
+      SystemLoad systemLoad = serviceRegistryJpaImpl.getHostLoads(em);
+      List<ServiceRegistration> services = serviceRegistryJpaImpl.getServiceRegistrationsByLoad(TEST_SERVICE_FAIRNESS,
+              serviceRegistryJpaImpl.getServiceRegistrations(), serviceRegistryJpaImpl.getHostRegistrations(),
+              systemLoad);
+      assertEquals(TEST_HOST_THIRD, services.get(0).getHost());
+
+      serviceRegistryJpaImpl.dispatchLocalityWeight = 0.5f;
+      List<ServiceRegistration> byLocality = serviceRegistryJpaImpl.inputLocality.sortByLocality(em, jpaJob,
+              services, systemLoad);
+      assertEquals(TEST_HOST, byLocality.get(0).getHost());
+      assertEquals(TEST_HOST_OTHER, byLocality.get(1).getHost());
+      assertEquals(TEST_HOST_THIRD, byLocality.get(2).getHost());
+
+      // Elements removed from a workspace no longer count
+      serviceRegistryJpaImpl.updateHostElements(TEST_HOST, Collections.emptyMap());
+      byLocality = serviceRegistryJpaImpl.inputLocality.sortByLocality(em, jpaJob, services, systemLoad);
+      assertEquals(TEST_HOST_OTHER, byLocality.get(0).getHost());
+    } finally {
+      em.close();
+      serviceRegistryJpaImpl.dispatchLocalityWeight = ServiceRegistryJpaImpl.DEFAULT_DISPATCH_LOCALITY_WEIGHT;
+      serviceRegistryJpaImpl.updateHostElements(TEST_HOST_OTHER, Collections.emptyMap());
+    }
+  }
+
+  @Test
+  public void testHeartbeatChecksEachHostOnce() throws Exception {
+    serviceRegistryJpaImpl.registerService(TEST_SERVICE, TEST_HOST, TEST_PATH, true);
+    serviceRegistryJpaImpl.registerService(TEST_SERVICE_2, TEST_HOST, TEST_PATH_2, true);
+    serviceRegistryJpaImpl.registerService(TEST_SERVICE, TEST_HOST_OTHER, TEST_PATH, true);
+    serviceRegistryJpaImpl.registerService(TEST_SERVICE_FAIRNESS, TEST_HOST_OTHER, TEST_PATH_2, true);
+
+    // The first host answers, the other one cannot be reached
+    final Map<String, Integer> requests = new ConcurrentHashMap<>();
+    TrustedHttpClient trustedHttpClient = EasyMock.createNiceMock(TrustedHttpClient.class);
+    EasyMock.expect(trustedHttpClient.execute(EasyMock.anyObject(HttpUriRequest.class), EasyMock.anyInt(),
+            EasyMock.anyInt())).andAnswer(new IAnswer<HttpResponse>() {
+              @Override
+              public HttpResponse answer() throws Throwable {
+                String uri = ((HttpUriRequest) EasyMock.getCurrentArguments()[0]).getURI().toString();
+                String host = uri.startsWith(TEST_HOST) ? TEST_HOST : TEST_HOST_OTHER;
+                requests.merge(host, 1, Integer::sum);
+                if (TEST_HOST_OTHER.equals(host))
+                  throw new TrustedHttpClientException(new Exception("Connection refused"));
+                return new BasicHttpResponse(new BasicStatusLine(new HttpVersion(1, 1), HttpStatus.SC_OK, "OK"));
+              }
+            }).anyTimes();
+    EasyMock.replay(trustedHttpClient);
+
+    TrustedHttpClient originalClient = serviceRegistryJpaImpl.client;
+    serviceRegistryJpaImpl.setTrustedHttpClient(trustedHttpClient);
+    try {
+      long sweeps = serviceRegistryJpaImpl.heartbeatStatistics.getSweeps();
+      JobProducerHeartbeat heartbeat = new JobProducerHeartbeat(serviceRegistryJpaImpl);
+      heartbeat.run();
+
+      assertEquals(Integer.valueOf(1), requests.get(TEST_HOST));
+      assertEquals(Integer.valueOf(1), requests.get(TEST_HOST_OTHER));
+      assertEquals(sweeps + 1, serviceRegistryJpaImpl.heartbeatStatistics.getSweeps());
+      assertEquals(2, serviceRegistryJpaImpl.heartbeatStatistics.getLastSweepHosts());
+      assertEquals(2, serviceRegistryJpaImpl.heartbeatStatistics.getLastSweepRequests());
+      assertEquals(2, serviceRegistryJpaImpl.heartbeatStatistics.getLastSweepFailures());
+
+      // Unreachable services are put on the watch list first and only unregistered if they are still unreachable
+      assertTrue(serviceRegistryJpaImpl.getServiceRegistration(TEST_SERVICE, TEST_HOST_OTHER).isOnline());
+      heartbeat.run();
+      assertFalse(serviceRegistryJpaImpl.getServiceRegistration(TEST_SERVICE, TEST_HOST_OTHER).isOnline());
+      assertFalse(serviceRegistryJpaImpl.getServiceRegistration(TEST_SERVICE_FAIRNESS, TEST_HOST_OTHER).isOnline());
+      assertTrue(serviceRegistryJpaImpl.getServiceRegistration(TEST_SERVICE, TEST_HOST).isOnline());
+      assertTrue(serviceRegistryJpaImpl.getServiceRegistration(TEST_SERVICE_2, TEST_HOST).isOnline());
+    } finally {
+      serviceRegistryJpaImpl.setTrustedHttpClient(originalClient);
+    }
+  }
+
   @Test
   public void testCancelUndispatchablesOrphanedByActivatingNode() throws Exception {
     setUpUndispatchableJobs();
@@ -482,6 +726,29 @@ public class ServiceRegistryJpaImplTest {
     Assert.assertNotNull(updatedJob.getRunTime());
   }
 
+  @Test
+  public void testJobStatisticsFollowJobTransitions() throws Exception {
+    serviceRegistryJpaImpl.statisticsReconciler.reconcile();
+    Tuple3<String, String, Status> queued = Tuple3.tuple3(TEST_HOST, TEST_SERVICE, Status.QUEUED);
+    Tuple3<String, String, Status> finished = Tuple3.tuple3(TEST_HOST, TEST_SERVICE, Status.FINISHED);
+    Map<Tuple3<String, String, Status>, Long> before = serviceRegistryJpaImpl.jobStatistics.getJobCounts();
+
+    Job job = serviceRegistryJpaImpl.createJob(TEST_HOST, TEST_SERVICE, TEST_OPERATION, null, null, true, null);
+    Map<Tuple3<String, String, Status>, Long> counts = serviceRegistryJpaImpl.jobStatistics.getJobCounts();
+    assertEquals(before.getOrDefault(queued, 0L) + 1, (long) counts.getOrDefault(queued, 0L));
+
+    job.setStatus(Status.FINISHED);
+    serviceRegistryJpaImpl.updateJob(job);
+    counts = serviceRegistryJpaImpl.jobStatistics.getJobCounts();
+    assertEquals((long) before.getOrDefault(queued, 0L), (long) counts.getOrDefault(queued, 0L));
+    assertEquals(before.getOrDefault(finished, 0L) + 1, (long) counts.getOrDefault(finished, 0L));
+    assertFalse(serviceRegistryJpaImpl.jobStatistics.isStale());
+
+    // the incrementally maintained statistics match the database
+    serviceRegistryJpaImpl.statisticsReconciler.reconcile();
+    assertEquals(counts, serviceRegistryJpaImpl.jobStatistics.getJobCounts());
+  }
+
   @Test
   public void testCompletedRuntimeDoNotChange() throws Exception {
     Job job = serviceRegistryJpaImpl.createJob(TEST_HOST, TEST_SERVICE, TEST_PATH, null, null, true, null, 1.0f);
@@ -24,6 +24,7 @@ package org.opencastproject.fsresources;
 import org.opencastproject.security.api.SecurityService;
 import org.opencastproject.security.api.StaticFileAuthorization;
 import org.opencastproject.util.ConfigurationException;
+import org.opencastproject.util.FileRangeStreamingOutput;
 import org.opencastproject.util.MimeTypes;
 
 import org.apache.commons.lang3.BooleanUtils;
@@ -38,11 +39,13 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.File;
-import java.io.FileInputStream;
 import java.io.IOException;
-import java.io.InputStream;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
 import java.util.ArrayList;
+import java.util.Comparator;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Objects;
@@ -217,7 +220,10 @@ public class StaticResourceServlet extends HttpServlet {
     ArrayList<Range> ranges = parseRange(req, resp, eTag, file.lastModified(), file.length());
 
     if ((((ranges == null) || (ranges.isEmpty())) && (req.getHeader("Range") == null)) || (ranges == FULL_RANGE)) {
-      IOException e = copyRange(new FileInputStream(file), resp.getOutputStream(), 0, file.length());
+      IOException e;
+      try (FileChannel channel = open(file)) {
+        e = copyRange(channel, resp.getOutputStream(), 0, file.length() - 1);
+      }
       if (e != null) {
         try {
           resp.sendError(HttpServletResponse.SC_INTERNAL_SERVER_ERROR);
@@ -232,6 +238,7 @@ public class StaticResourceServlet extends HttpServlet {
     if ((ranges == null) || (ranges.isEmpty())) {
       return;
     }
+    ranges = coalesce(ranges);
     if (ranges.size() == 1) {
       Range range = ranges.get(0);
       resp.addHeader("Content-Range", "bytes " + range.start + "-" + range.end + "/" + range.length);
@@ -248,7 +255,10 @@ public class StaticResourceServlet extends HttpServlet {
         logger.debug(e.getMessage(), e);
       }
       resp.setStatus(HttpServletResponse.SC_PARTIAL_CONTENT);
-      IOException e = copyRange(new FileInputStream(file), resp.getOutputStream(), range.start, range.end);
+      IOException e;
+      try (FileChannel channel = open(file)) {
+        e = copyRange(channel, resp.getOutputStream(), range.start, range.end);
+      }
       if (e != null) {
         try {
           resp.sendError(HttpServletResponse.SC_INTERNAL_SERVER_ERROR);
@@ -263,6 +273,11 @@ public class StaticResourceServlet extends HttpServlet {
 
     resp.setStatus(HttpServletResponse.SC_PARTIAL_CONTENT);
     resp.setContentType("multipart/byteranges; boundary=" + mimeSeparation);
+    long length = MULTIPART_TRAILER.length;
+    for (Range range : ranges) {
+      length += partHeader(range, contentType).length + range.end - range.start + 1;
+    }
+    resp.setHeader("Content-Length", Long.toString(length));
     try {
       resp.setBufferSize(2048);
     } catch (IllegalStateException e) {
@@ -295,35 +310,67 @@ public class StaticResourceServlet extends HttpServlet {
 
   protected void copy(File f, ServletOutputStream out, Iterator<Range> ranges, String contentType) throws IOException {
     IOException exception = null;
-    while ((exception == null) && (ranges.hasNext())) {
-      Range currentRange = ranges.next();
-      // Writing MIME header.
-      out.println();
-      out.println("--" + mimeSeparation);
-      if (contentType != null) {
-        out.println("Content-Type: " + contentType);
+    try (FileChannel channel = open(f)) {
+      while ((exception == null) && (ranges.hasNext())) {
+        Range currentRange = ranges.next();
+        out.write(partHeader(currentRange, contentType));
+        exception = copyRange(channel, out, currentRange.start, currentRange.end);
       }
-      out.println("Content-Range: bytes " + currentRange.start + "-" + currentRange.end + "/" + currentRange.length);
-      out.println();
-
-      // Printing content
-      InputStream in = new FileInputStream(f);
-      exception = copyRange(in, out, currentRange.start, currentRange.end);
-      in.close();
     }
-    out.println();
-    out.print("--" + mimeSeparation + "--");
+    out.write(MULTIPART_TRAILER);
     // Rethrow any exception that has occurred
     if (exception != null) {
       throw exception;
     }
   }
 
+  /** Returns the MIME header preceding a range in a multipart response. */
+  private static byte[] partHeader(Range range, String contentType) {
+    StringBuilder header = new StringBuilder("\r\n--").append(mimeSeparation).append("\r\n");
+    if (contentType != null) {
+      header.append("Content-Type: ").append(contentType).append("\r\n");
+    }
+    header.append("Content-Range: bytes ").append(range.start).append('-').append(range.end).append('/')
+            .append(range.length).append("\r\n\r\n");
+    return header.toString().getBytes(StandardCharsets.ISO_8859_1);
+  }
+
+  /**
+   * Sorts the requested ranges and merges those which overlap or adjoin, so that no byte is sent twice.
+   *
+   * @param ranges
+   *          the requested ranges
+   * @return the ranges to send
+   */
+  protected ArrayList<Range> coalesce(List<Range> ranges) {
+    List<Range> sorted = new ArrayList<>(ranges);
+    sorted.sort(Comparator.comparingLong(r -> r.start));
+    ArrayList<Range> result = new ArrayList<>();
+    Range last = null;
+    for (Range range : sorted) {
+      if (last != null && range.start <= last.end + 1) {
+        last.end = Math.max(last.end, range.end);
+      } else {
+        last = range;
+        result.add(range);
+      }
+    }
+    return result;
+  }
+
+  private static FileChannel open(File file) throws IOException {
+    return FileChannel.open(file.toPath(), StandardOpenOption.READ);
+  }
+
   /**
    * MIME multipart separation string
    */
   private static final String mimeSeparation = "MATTERHORN_MIME_BOUNDARY";
 
+  /** End of a multipart response */
+  private static final byte[] MULTIPART_TRAILER = ("\r\n--" + mimeSeparation + "--")
+          .getBytes(StandardCharsets.ISO_8859_1);
+
   /**
    * Parse the range header.
    *
@@ -401,7 +448,7 @@ public class StaticResourceServlet extends HttpServlet {
       if (dashPos == 0) {
         try {
           long offset = Long.parseLong(rangeDefinition);
-          currentRange.start = fileLength + offset;
+          currentRange.start = Math.max(0, fileLength + offset);
           currentRange.end = fileLength - 1;
         } catch (NumberFormatException e) {
           response.addHeader("Content-Range", "bytes */" + fileLength);
@@ -433,11 +480,10 @@ public class StaticResourceServlet extends HttpServlet {
   }
 
   /**
-   * Copy the contents of the specified input stream to the specified output stream, and ensure that both streams are
-   * closed before returning (even in the face of an exception).
+   * Copy a range of the specified file channel to the specified output stream.
    *
-   * @param istream
-   *          The input stream to read from
+   * @param channel
+   *          The file channel to read from
    * @param ostream
    *          The output stream to write to
    * @param start
@@ -446,45 +492,13 @@ public class StaticResourceServlet extends HttpServlet {
    *          End of the range which will be copied
    * @return Exception which occurred during processing
    */
-  protected IOException copyRange(InputStream istream, ServletOutputStream ostream, long start, long end) {
+  protected IOException copyRange(FileChannel channel, ServletOutputStream ostream, long start, long end) {
     logger.debug("Serving bytes:{}-{}", start, end);
     try {
-      istream.skip(start);
-    } catch (IOException e) {
-      logger.trace("Cannot skip to input stream position {}. The user probably closed the client side.", start, e);
-      return e;
-    }
-    // MH-10447, fix for files of size 2048*C bytes
-    long bytesToRead = end - start + 1;
-    byte[] buffer = new byte[2048];
-    int len = buffer.length;
-    try {
-      len = (int) bytesToRead % buffer.length;
-      if (len > 0) {
-        len = istream.read(buffer, 0, len);
-        if (len > 0) {
-          // This test could actually be "if (len != -1)"
-          ostream.write(buffer, 0, len);
-          bytesToRead -= len;
-          if (bytesToRead == 0) {
-            return null;
-          }
-        } else {
-          return null;
-        }
-      }
-
-      for (len = istream.read(buffer); len > 0; len = istream.read(buffer)) {
-        ostream.write(buffer, 0, len);
-        bytesToRead -= len;
-        if (bytesToRead < 1) {
-          break;
-        }
-      }
+      FileRangeStreamingOutput.transfer(channel, start, end, ostream);
     } catch (IOException e) {
-      logger.trace("IOException after starting the byte copy, current length {}, buffer {}."
-              + " The user probably closed the client side after the file started copying.",
-              len, buffer, e);
+      logger.trace("IOException after starting the byte copy of range {}-{}."
+              + " The user probably closed the client side after the file started copying.", start, end, e);
       return e;
     }
     return null;
@@ -21,26 +21,49 @@
 
 package org.opencastproject.fsresources;
 
+import static org.easymock.EasyMock.anyString;
+import static org.easymock.EasyMock.expect;
+
 import org.easymock.EasyMock;
-import org.easymock.IAnswer;
+import org.junit.Assert;
 import org.junit.Before;
+import org.junit.Rule;
 import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.osgi.framework.BundleContext;
+import org.osgi.service.component.ComponentContext;
 
-import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
 import java.io.IOException;
-import java.io.InputStream;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Hashtable;
+import java.util.Map;
+import java.util.Random;
 
 import javax.servlet.ServletOutputStream;
+import javax.servlet.WriteListener;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
 
 /**
  * Test for StaticResourceServlet
- * 
+ *
  * Sept 22, 2014 MH-10447, fix for files of size 2048*C bytes in copyRange()
- * 
+ *
  */
 public class StaticResourceServletTest {
 
+  @Rule
+  public TemporaryFolder testFolder = new TemporaryFolder();
+
   private StaticResourceServlet servlet;
+  private ByteArrayOutputStream written;
   private ServletOutputStream ostream;
 
   /**
@@ -51,55 +74,107 @@ public class StaticResourceServletTest {
 
     servlet = new StaticResourceServlet();
 
-    // Mock the ostream
-    // Specifically, throw exception if len is -1
-    // http://docs.oracle.com/javase/1.5.0/docs/api/java/io/OutputStream.html#write%28byte[],%20int,%20int%29
-    ostream = EasyMock.createNiceMock(ServletOutputStream.class);
-    ostream.write((byte[]) EasyMock.anyObject(), EasyMock.eq(0), EasyMock.anyInt());
-    EasyMock.expectLastCall().andAnswer(new IAnswer<Object>() {
+    // Collect everything written to the response
+    written = new ByteArrayOutputStream();
+    ostream = new ServletOutputStream() {
+      @Override
+      public void write(int b) {
+        written.write(b);
+      }
+
       @Override
-      public Object answer() {
-        //supply your mock implementation here...
-        int len = (Integer) EasyMock.getCurrentArguments()[2];
+      public void write(byte[] b, int off, int len) {
         // negative len
-        if (len == -1) {
+        if (len < 0) {
           throw new IndexOutOfBoundsException();
         }
-        return null;
+        written.write(b, off, len);
+      }
+
+      @Override
+      public boolean isReady() {
+        return true;
       }
-    }).anyTimes();
-    EasyMock.replay(ostream);
 
+      @Override
+      public void setWriteListener(WriteListener writeListener) {
+      }
+    };
   }
 
   /**
    * Helper utility for copyRange() method test
-   * 
+   *
    * @param byteArray
    * @param start
    * @param end
    */
-  private void testCopyRangeMethod(byte[] byteArray, long start, long end) {
-    InputStream instream = new ByteArrayInputStream(byteArray);
-    try {
-      servlet.copyRange(instream, ostream, start, end);
-    } catch (Exception io) {
-      throw new AssertionError(io);
-    } finally {
-      try {
-        instream.close();
-      } catch (IOException e) {
-        // Ignore quietly
-      }
+  private void testCopyRangeMethod(byte[] byteArray, long start, long end) throws IOException {
+    File file = testFolder.newFile();
+    Files.write(file.toPath(), byteArray);
+    written.reset();
+    try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+      Assert.assertNull(servlet.copyRange(channel, ostream, start, end));
     }
+    Assert.assertArrayEquals(Arrays.copyOfRange(byteArray, (int) start, (int) end + 1), written.toByteArray());
   }
 
   // Test copyRange with multiple size files
   @Test
-  public void testCopyRange() {
-    testCopyRangeMethod(new byte[2048], 0, 2048);
-    testCopyRangeMethod(new byte[2049], 0, 2049);
-    testCopyRangeMethod(new byte[2047], 0, 2047);
-    testCopyRangeMethod(new byte[0], 0, 0);
+  public void testCopyRange() throws Exception {
+    testCopyRangeMethod(new byte[2048], 0, 2047);
+    testCopyRangeMethod(new byte[2049], 0, 2048);
+    testCopyRangeMethod(new byte[2047], 0, 2046);
+    testCopyRangeMethod(new byte[0], 0, -1);
+    byte[] large = new byte[3 * 64 * 1024 + 17];
+    new Random(42).nextBytes(large);
+    testCopyRangeMethod(large, 0, large.length - 1);
+    testCopyRangeMethod(large, 1000, 2 * 64 * 1024 + 5);
   }
+
+  @Test
+  public void testMultipleRanges() throws Exception {
+    File root = testFolder.newFolder();
+    byte[] content = new byte[1000];
+    new Random(42).nextBytes(content);
+    Files.write(new File(root, "video.mp4").toPath(), content);
+
+    BundleContext bundleContext = EasyMock.createNiceMock(BundleContext.class);
+    expect(bundleContext.getProperty("org.opencastproject.download.directory")).andReturn(root.getPath());
+    Hashtable<String, Object> properties = new Hashtable<>();
+    properties.put("authentication.required", "false");
+    ComponentContext cc = EasyMock.createNiceMock(ComponentContext.class);
+    expect(cc.getBundleContext()).andReturn(bundleContext).anyTimes();
+    expect(cc.getProperties()).andReturn(properties).anyTimes();
+    EasyMock.replay(bundleContext, cc);
+    servlet.activate(cc);
+
+    HttpServletRequest request = EasyMock.createNiceMock(HttpServletRequest.class);
+    expect(request.getPathInfo()).andReturn("/video.mp4").anyTimes();
+    // the overlapping second and third range are sent as one part
+    expect(request.getHeader("Range")).andReturn("bytes=0-9,500-599,550-649").anyTimes();
+    Map<String, String> headers = new HashMap<>();
+    HttpServletResponse response = EasyMock.createNiceMock(HttpServletResponse.class);
+    response.setHeader(anyString(), anyString());
+    EasyMock.expectLastCall().andAnswer(() -> {
+      headers.put((String) EasyMock.getCurrentArguments()[0], (String) EasyMock.getCurrentArguments()[1]);
+      return null;
+    }).anyTimes();
+    expect(response.getOutputStream()).andReturn(ostream).anyTimes();
+    EasyMock.replay(request, response);
+
+    servlet.doGet(request, response);
+
+    String body = new String(written.toByteArray(), StandardCharsets.ISO_8859_1);
+    Assert.assertEquals(Integer.toString(written.size()), headers.get("Content-Length"));
+    Assert.assertTrue(body.contains("Content-Range: bytes 0-9/1000"));
+    Assert.assertTrue(body.contains("Content-Range: bytes 500-649/1000"));
+    Assert.assertFalse(body.contains("Content-Range: bytes 550-649/1000"));
+    Assert.assertTrue(body.endsWith("--MATTERHORN_MIME_BOUNDARY--"));
+    String partHeader = "Content-Range: bytes 500-649/1000\r\n\r\n";
+    int partStart = body.indexOf(partHeader) + partHeader.length();
+    Assert.assertArrayEquals(Arrays.copyOfRange(content, 500, 650),
+            Arrays.copyOfRange(written.toByteArray(), partStart, partStart + 150));
+  }
+
 }
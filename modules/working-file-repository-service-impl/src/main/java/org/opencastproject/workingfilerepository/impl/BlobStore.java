@@ -0,0 +1,229 @@
+/**
+ * Licensed to The Apereo Foundation under one or more contributor license
+ * agreements. See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ *
+ * The Apereo Foundation licenses this file to you under the Educational
+ * Community License, Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License. You may obtain a copy of the License
+ * at:
+ *
+ *   http://opensource.org/licenses/ecl2.txt
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ *
+ */
+
+
+package org.opencastproject.workingfilerepository.impl;
+
+import org.opencastproject.util.FileSupport;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.UUID;
+import java.util.regex.Pattern;
+
+/**
+ * Stores file contents once by their md5 checksum.
+ * <p>
+ * Every distinct content is kept as a blob named after its checksum. The files of media package elements are hard
+ * links to these blobs, so identical files stored under different media packages or elements occupy disk space only
+ * once. The link count kept by the file system serves as reference count: a blob whose only remaining link is the
+ * blob itself is no longer used and can be deleted.
+ */
+class BlobStore {
+
+  /** The logging facility */
+  private static final Logger logger = LoggerFactory.getLogger(BlobStore.class);
+
+  /** Name of the blob directory below the repository root */
+  static final String BLOB_DIRECTORY = "blobs";
+
+  /** File attribute holding the number of hard links to a file */
+  private static final String LINK_COUNT_ATTRIBUTE = "unix:nlink";
+
+  /** Blob names, which are md5 checksums */
+  private static final Pattern MD5 = Pattern.compile("[0-9a-f]{32}");
+
+  /** The directory holding the blobs */
+  private final File root;
+
+  /**
+   * Creates a blob store.
+   *
+   * @param root
+   *          the directory to store blobs in, must be on the same file system as the files linking to them
+   */
+  BlobStore(File root) {
+    this.root = root;
+  }
+
+  /**
+   * Checks whether a directory supports the hard links and link counts needed to store blobs.
+   *
+   * @param directory
+   *          the directory
+   * @return whether blobs can be stored in the directory
+   */
+  static boolean isSupported(File directory) {
+    final File file = new File(directory, ".linktest." + UUID.randomUUID());
+    final File link = new File(directory, file.getName() + ".link");
+    try {
+      Files.createFile(file.toPath());
+      return FileSupport.supportsLinking(file, link) && linkCount(file.toPath()) == 2;
+    } catch (IOException | UnsupportedOperationException e) {
+      logger.debug("Hard links or link counts are not supported in {}: {}", directory, e.getMessage());
+      return false;
+    } finally {
+      file.delete();
+      link.delete();
+    }
+  }
+
+  /**
+   * Returns the blob for a checksum. The blob may not exist.
+   *
+   * @param md5
+   *          the md5 checksum
+   * @return the blob
+   */
+  File getBlob(String md5) {
+    final String name = md5.toLowerCase();
+    return new File(new File(root, name.substring(0, 2)), name);
+  }
+
+  /**
+   * Makes a file share its contents with the blob of the same checksum. If there is such a blob, the file is replaced
+   * by a link to it. Otherwise, the file becomes the blob.
+   *
+   * @param file
+   *          the file
+   * @param md5
+   *          the md5 checksum of the file
+   * @return whether the file has been replaced by a link to an existing blob
+   * @throws IOException
+   *           if the file cannot be linked
+   */
+  boolean deduplicate(File file, String md5) throws IOException {
+    final Path path = file.toPath();
+    final Path blob = getBlob(md5).toPath();
+    Files.createDirectories(blob.getParent());
+    // Another thread may delete or add the blob in between, so try a few times
+    for (int attempt = 0; attempt < 3; attempt++) {
+      if (Files.isRegularFile(blob)) {
+        if (Files.isSameFile(blob, path)) {
+          return false;
+        }
+        if (Files.size(blob) != Files.size(path)) {
+          logger.warn("Blob {} does not match the size of {}, not deduplicating", blob, file);
+          return false;
+        }
+        // Link next to the file, then replace the file by the link
+        final Path link = path.resolveSibling(path.getFileName() + "." + UUID.randomUUID() + ".link");
+        try {
+          Files.createLink(link, blob);
+        } catch (NoSuchFileException e) {
+          continue;
+        }
+        try {
+          Files.move(link, path, StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException e) {
+          Files.move(link, path, StandardCopyOption.REPLACE_EXISTING);
+        }
+        logger.debug("Replaced {} by a link to {}", file, blob);
+        return true;
+      }
+      try {
+        Files.createLink(blob, path);
+        logger.debug("Stored {} as blob {}", file, blob);
+        return false;
+      } catch (FileAlreadyExistsException e) {
+        continue;
+      }
+    }
+    logger.warn("Unable to deduplicate {} since blob {} keeps changing", file, blob);
+    return false;
+  }
+
+  /**
+   * Deletes the blob of a checksum if no file links to it anymore.
+   *
+   * @param md5
+   *          the md5 checksum
+   * @return whether the blob has been deleted
+   * @throws IOException
+   *           if the blob cannot be accessed
+   */
+  boolean release(String md5) throws IOException {
+    if (md5 == null || !MD5.matcher(md5.toLowerCase()).matches()) {
+      return false;
+    }
+    return release(getBlob(md5).toPath());
+  }
+
+  private boolean release(Path blob) throws IOException {
+    try {
+      if (linkCount(blob) > 1) {
+        return false;
+      }
+    } catch (NoSuchFileException e) {
+      return false;
+    }
+    // A file linked to the blob in the meantime keeps its contents, it is just not shared with later files
+    Files.deleteIfExists(blob);
+    FileSupport.deleteHierarchyIfEmpty(root, blob.getParent().toFile());
+    logger.debug("Deleted unused blob {}", blob);
+    return true;
+  }
+
+  /**
+   * Deletes all blobs no file links to anymore. These remain if files are deleted from the repository without
+   * releasing their blob, for example by the workspace deleting its links to repository files.
+   *
+   * @return the number of deleted blobs
+   * @throws IOException
+   *           if the blobs cannot be listed
+   */
+  int collectGarbage() throws IOException {
+    if (!root.isDirectory()) {
+      return 0;
+    }
+    int deleted = 0;
+    try (DirectoryStream<Path> directories = Files.newDirectoryStream(root.toPath())) {
+      for (Path directory : directories) {
+        if (!Files.isDirectory(directory)) {
+          continue;
+        }
+        try (DirectoryStream<Path> blobs = Files.newDirectoryStream(directory)) {
+          for (Path blob : blobs) {
+            if (MD5.matcher(blob.getFileName().toString()).matches() && release(blob)) {
+              deleted++;
+            }
+          }
+        }
+      }
+    }
+    return deleted;
+  }
+
+  private static int linkCount(Path path) throws IOException {
+    return ((Number) Files.getAttribute(path, LINK_COUNT_ATTRIBUTE)).intValue();
+  }
+
+}
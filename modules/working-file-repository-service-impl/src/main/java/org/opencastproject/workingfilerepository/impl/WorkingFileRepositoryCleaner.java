@@ -144,6 +144,10 @@ public class WorkingFileRepositoryCleaner {
         logger.error("Cleaning of collection with id:{} failed", collectionId);
       }
     }
+    // Deleting files outside the repository API, like the workspace does with its links, leaves unused blobs
+    if (workingFileRepository instanceof WorkingFileRepositoryImpl) {
+      ((WorkingFileRepositoryImpl) workingFileRepository).collectUnusedBlobs();
+    }
   }
 
   // --
@@ -40,6 +40,7 @@ import org.opencastproject.workingfilerepository.jmx.WorkingFileRepositoryBean;
 import org.apache.commons.codec.digest.DigestUtils;
 import org.apache.commons.io.FileUtils;
 import org.apache.commons.io.IOUtils;
+import org.apache.commons.lang3.BooleanUtils;
 import org.apache.commons.lang3.StringUtils;
 import org.osgi.service.component.ComponentContext;
 import org.slf4j.Logger;
@@ -59,8 +60,11 @@ import java.nio.file.StandardCopyOption;
 import java.security.DigestInputStream;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.Date;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 
@@ -93,6 +97,8 @@ public class WorkingFileRepositoryImpl implements WorkingFileRepository, PathMap
   public static final String WORKING_FILE_REPOSITORY_CLEANUP_MAX_AGE_KEY = "org.opencastproject.working.file.repository.cleanup.max.age";
   /** Configuration key for collections to clean up. */
   private static final String WORKING_FILE_REPOSITORY_CLEANUP_COLLECTIONS_KEY = "org.opencastproject.working.file.repository.cleanup.collections";
+  /** Configuration key for storing identical media package element files only once */
+  public static final String WORKING_FILE_REPOSITORY_DEDUPLICATION_KEY = "org.opencastproject.working.file.repository.deduplication";
 
   /** The JMX working file repository bean */
   private WorkingFileRepositoryBean workingFileRepositoryBean = new WorkingFileRepositoryBean(this);
@@ -118,6 +124,9 @@ public class WorkingFileRepositoryImpl implements WorkingFileRepository, PathMap
   /** The working file repository cleaner */
   private WorkingFileRepositoryCleaner workingFileRepositoryCleaner;
 
+  /** Stores the contents of media package elements by checksum, if deduplication is enabled */
+  protected BlobStore blobStore = null;
+
   /**
    * Activate the component
    */
@@ -150,6 +159,17 @@ public class WorkingFileRepositoryImpl implements WorkingFileRepository, PathMap
       throw e;
     }
 
+    // Store identical media package element files only once
+    if (BooleanUtils.toBoolean(cc.getBundleContext().getProperty(WORKING_FILE_REPOSITORY_DEDUPLICATION_KEY))) {
+      if (BlobStore.isSupported(new File(rootDirectory))) {
+        blobStore = new BlobStore(new File(rootDirectory, BlobStore.BLOB_DIRECTORY));
+        logger.info("Deduplication of media package element files enabled");
+      } else {
+        logger.warn("Deduplication of media package element files requires hard links and link counts, which are not "
+                + "supported in {}", rootDirectory);
+      }
+    }
+
     registeredMXBean = JmxUtil.registerMXBean(workingFileRepositoryBean, JMX_WORKING_FILE_REPOSITORY_TYPE);
 
     // Determine garbage collection period
@@ -214,6 +234,7 @@ public class WorkingFileRepositoryImpl implements WorkingFileRepository, PathMap
     File f;
     try {
       f = getFile(mediaPackageID, mediaPackageElementID);
+      final List<String> digests = readDigests(f.getParentFile().listFiles());
 
       File parentDirectory = f.getParentFile();
       logger.debug("Attempting to delete {}", parentDirectory.getAbsolutePath());
@@ -221,6 +242,7 @@ public class WorkingFileRepositoryImpl implements WorkingFileRepository, PathMap
       File parentsParentDirectory = parentDirectory.getParentFile();
       if (parentsParentDirectory.isDirectory() && parentsParentDirectory.list().length == 0)
         FileUtils.forceDelete(parentDirectory.getParentFile());
+      releaseBlobs(digests);
       return true;
     } catch (NotFoundException e) {
       log.info("Unable to delete non existing media package element {}@{}", mediaPackageElementID, mediaPackageID);
@@ -328,6 +350,7 @@ public class WorkingFileRepositoryImpl implements WorkingFileRepository, PathMap
     // Temporary files while adding
     File fTmp = null;
     File md5FileTmp = null;
+    String md5 = null;
 
     if (f.exists()) {
       logger.debug("Updating file {}", f.getAbsolutePath());
@@ -357,7 +380,7 @@ public class WorkingFileRepositoryImpl implements WorkingFileRepository, PathMap
       }
 
       // Store the hash
-      String md5 = Checksum.convertToHex(dis.getMessageDigest().digest());
+      md5 = Checksum.convertToHex(dis.getMessageDigest().digest());
       try {
         FileUtils.writeStringToFile(md5FileTmp, md5);
       } catch (IOException e) {
@@ -376,6 +399,9 @@ public class WorkingFileRepositoryImpl implements WorkingFileRepository, PathMap
       IOUtils.closeQuietly(in);
     }
 
+    // Remember the contents replaced by this file
+    final List<String> replacedDigests = readDigests(filesToDelete);
+
     // Rename temporary files to the final version atomically
     try {
       Files.move(md5FileTmp.toPath(), md5File.toPath(), StandardCopyOption.ATOMIC_MOVE);
@@ -398,6 +424,8 @@ public class WorkingFileRepositoryImpl implements WorkingFileRepository, PathMap
       }
     }
 
+    deduplicate(f, md5);
+    releaseBlobs(replacedDigests);
     return getURI(mediaPackageID, mediaPackageElementID, filename);
   }
 
@@ -731,6 +759,9 @@ public class WorkingFileRepositoryImpl implements WorkingFileRepository, PathMap
       FileUtils.deleteDirectory(destDir);
       throw new IllegalStateException("unable to copy file" + e);
     }
+    for (String md5 : readDigests(new File[] { getMd5File(dest) })) {
+      deduplicate(dest, md5);
+    }
     return getURI(toMediaPackage, toMediaPackageElement, dest.getName());
   }
 
@@ -816,6 +847,120 @@ public class WorkingFileRepositoryImpl implements WorkingFileRepository, PathMap
     return uris;
   }
 
+  /**
+   * Reads the md5 hashes stored along with files.
+   *
+   * @param files
+   *         the files of an element directory, may be <code>null</code>
+   * @return the hashes found in md5 files, or an empty list if deduplication is disabled
+   */
+  private List<String> readDigests(File[] files) {
+    if (blobStore == null || files == null) {
+      return Collections.emptyList();
+    }
+    final List<String> digests = new ArrayList<>();
+    for (File file : files) {
+      if (file.getName().endsWith(MD5_EXTENSION) && file.isFile()) {
+        try {
+          digests.add(StringUtils.trim(FileUtils.readFileToString(file, "utf-8")));
+        } catch (IOException e) {
+          logger.warn("Unable to read md5 hash {}: {}", file, e.getMessage());
+        }
+      }
+    }
+    return digests;
+  }
+
+  /** Makes a media package element file share its contents with identical files, if deduplication is enabled. */
+  private boolean deduplicate(File file, String md5) {
+    if (blobStore == null || md5 == null) {
+      return false;
+    }
+    try {
+      return blobStore.deduplicate(file, md5);
+    } catch (IOException e) {
+      logger.warn("Unable to deduplicate {}: {}", file, e.getMessage());
+      return false;
+    }
+  }
+
+  /** Deletes the stored contents of the given hashes if they are not used anymore. */
+  private void releaseBlobs(List<String> digests) {
+    for (String md5 : digests) {
+      try {
+        blobStore.release(md5);
+      } catch (IOException e) {
+        logger.warn("Unable to release blob {}: {}", md5, e.getMessage());
+      }
+    }
+  }
+
+  /**
+   * Converts all media package element files in the repository to the deduplicated layout. Files with the same contents
+   * are replaced by links to a single copy, and copies no file refers to anymore are deleted.
+   *
+   * @return the number of files checked and deduplicated, the number of bytes freed and the number of copies deleted
+   * @throws IllegalStateException
+   *         if deduplication is not enabled
+   * @throws IOException
+   *         if the repository cannot be read
+   */
+  public Map<String, Long> deduplicate() throws IllegalStateException, IOException {
+    if (blobStore == null) {
+      throw new IllegalStateException("Deduplication is not enabled");
+    }
+    long files = 0;
+    long deduplicated = 0;
+    long freedBytes = 0;
+    final File[] mediaPackageDirs = new File(PathSupport.concat(rootDirectory, MEDIAPACKAGE_PATH_PREFIX))
+            .listFiles(File::isDirectory);
+    for (File mediaPackageDir : mediaPackageDirs == null ? new File[0] : mediaPackageDirs) {
+      final File[] elementDirs = mediaPackageDir.listFiles(File::isDirectory);
+      for (File elementDir : elementDirs == null ? new File[0] : elementDirs) {
+        final File[] md5Files = elementDir.listFiles(MD5_FINAME_FILTER);
+        for (File md5File : md5Files == null ? new File[0] : md5Files) {
+          final File file = getSourceFile(md5File);
+          if (!file.isFile()) {
+            continue;
+          }
+          files++;
+          final long size = file.length();
+          for (String md5 : readDigests(new File[] { md5File })) {
+            if (deduplicate(file, md5)) {
+              deduplicated++;
+              freedBytes += size;
+            }
+          }
+        }
+      }
+    }
+    final long deletedBlobs = blobStore.collectGarbage();
+    logger.info("Deduplicated {} of {} media package element files, freeing {} bytes and {} unused blobs", deduplicated,
+            files, freedBytes, deletedBlobs);
+
+    final Map<String, Long> result = new LinkedHashMap<>();
+    result.put("files", files);
+    result.put("deduplicated", deduplicated);
+    result.put("freedBytes", freedBytes);
+    result.put("deletedBlobs", deletedBlobs);
+    return result;
+  }
+
+  /**
+   * Deletes the stored contents no media package element file refers to anymore, if deduplication is enabled.
+   */
+  void collectUnusedBlobs() {
+    if (blobStore == null) {
+      return;
+    }
+    try {
+      final int deleted = blobStore.collectGarbage();
+      logger.debug("Deleted {} unused blobs", deleted);
+    } catch (IOException e) {
+      logger.warn("Unable to delete unused blobs: {}", e.getMessage());
+    }
+  }
+
   /**
    * Returns the md5 hash value for the given mediapackage element.
    *
@@ -21,12 +21,13 @@
 
 package org.opencastproject.workingfilerepository.impl;
 
+import static javax.servlet.http.HttpServletResponse.SC_CONFLICT;
 import static javax.servlet.http.HttpServletResponse.SC_NOT_FOUND;
 import static javax.servlet.http.HttpServletResponse.SC_NOT_MODIFIED;
 import static javax.servlet.http.HttpServletResponse.SC_NO_CONTENT;
 import static javax.servlet.http.HttpServletResponse.SC_OK;
+import static javax.servlet.http.HttpServletResponse.SC_PARTIAL_CONTENT;
 import static org.opencastproject.util.MimeTypes.getMimeType;
-import static org.opencastproject.util.RestUtil.R.ok;
 import static org.opencastproject.util.RestUtil.fileResponse;
 import static org.opencastproject.util.RestUtil.partialFileResponse;
 import static org.opencastproject.util.data.Option.none;
@@ -36,6 +37,7 @@ import static org.opencastproject.util.doc.rest.RestParameter.Type.STRING;
 
 import org.opencastproject.security.api.SecurityService;
 import org.opencastproject.serviceregistry.api.ServiceRegistry;
+import org.opencastproject.util.FileRangeStreamingOutput;
 import org.opencastproject.util.MimeTypes;
 import org.opencastproject.util.NotFoundException;
 import org.opencastproject.util.UnknownFileTypeException;
@@ -269,11 +271,13 @@ public class WorkingFileRepositoryRestEndpoint extends WorkingFileRepositoryImpl
           @RestParameter(name = "mediaPackageID", description = "the mediapackage identifier", isRequired = true, type = STRING),
           @RestParameter(name = "mediaPackageElementID", description = "the mediapackage element identifier", isRequired = true, type = STRING) }, responses = {
           @RestResponse(responseCode = SC_OK, description = "File returned"),
+          @RestResponse(responseCode = SC_PARTIAL_CONTENT, description = "Requested range of the file returned"),
           @RestResponse(responseCode = SC_NOT_MODIFIED, description = "If file not modified"),
           @RestResponse(responseCode = SC_NOT_FOUND, description = "Not found") })
   public Response restGet(@PathParam("mediaPackageID") final String mediaPackageID,
           @PathParam("mediaPackageElementID") final String mediaPackageElementID,
-          @HeaderParam("If-None-Match") String ifNoneMatch) throws NotFoundException {
+          @HeaderParam("If-None-Match") String ifNoneMatch, @HeaderParam("Range") String range)
+          throws NotFoundException {
     // Check the If-None-Match header first
     String md5 = null;
     try {
@@ -293,7 +297,12 @@ public class WorkingFileRepositoryRestEndpoint extends WorkingFileRepositoryImpl
         contentType = "application/octet-stream";
       }
       try {
-        return ok(get(mediaPackageID, mediaPackageElementID), contentType, some(file.length()), none(""));
+        if (StringUtils.isNotBlank(range)) {
+          logger.debug("trying to retrieve range: {}", range);
+          return partialFileResponse(file, contentType, none(""), range).tag(md5).build();
+        }
+        return Response.ok(new FileRangeStreamingOutput(file)).header("Content-Type", contentType)
+                .header("Content-Length", file.length()).header("Accept-Ranges", "bytes").tag(md5).build();
       } catch (IOException e) {
         throw new NotFoundException();
       }
@@ -311,6 +320,7 @@ public class WorkingFileRepositoryRestEndpoint extends WorkingFileRepositoryImpl
           @RestParameter(name = "mediaPackageElementID", description = "the mediapackage element identifier", isRequired = true, type = STRING),
           @RestParameter(name = "fileName", description = "the file name", isRequired = true, type = STRING) }, responses = {
           @RestResponse(responseCode = SC_OK, description = "File returned"),
+          @RestResponse(responseCode = SC_PARTIAL_CONTENT, description = "Requested range of the file returned"),
           @RestResponse(responseCode = SC_NOT_FOUND, description = "Not found") })
   public Response restGet(@PathParam("mediaPackageID") String mediaPackageID,
           @PathParam("mediaPackageElementID") String mediaPackageElementID, @PathParam("fileName") String fileName,
@@ -336,8 +346,9 @@ public class WorkingFileRepositoryRestEndpoint extends WorkingFileRepositoryImpl
 
       } else {
         // No If-Non-Match header provided, or the file changed in the meantime
-        return fileResponse(getFile(mediaPackageID, mediaPackageElementID), getMimeType(fileName),
-                some(fileName)).tag(md5).build();
+        File file = getFile(mediaPackageID, mediaPackageElementID);
+        return fileResponse(file, getMimeType(fileName), some(fileName)).entity(new FileRangeStreamingOutput(file))
+                .header("Accept-Ranges", "bytes").tag(md5).build();
       }
     } catch (Exception e) {
       logger.error("Unable to provide element '{}' from mediapackage '{}': {}", mediaPackageElementID,
@@ -457,6 +468,26 @@ public class WorkingFileRepositoryRestEndpoint extends WorkingFileRepositoryImpl
     }
   }
 
+  @POST
+  @Produces(MediaType.APPLICATION_JSON)
+  @Path("/deduplicate")
+  @RestQuery(name = "deduplicate", description = "Converts the media package element files stored so far to the "
+          + "deduplicated layout, so that identical files share a single copy. Requires deduplication to be enabled.",
+          returnDescription = "The number of files checked and deduplicated, the bytes freed and the number of unused "
+          + "copies deleted", responses = {
+          @RestResponse(responseCode = SC_OK, description = "Repository deduplicated"),
+          @RestResponse(responseCode = SC_CONFLICT, description = "Deduplication is not enabled") })
+  public Response restDeduplicate() {
+    try {
+      return Response.ok(new JSONObject(super.deduplicate()).toJSONString()).build();
+    } catch (IllegalStateException e) {
+      return Response.status(Response.Status.CONFLICT).entity(e.getMessage()).build();
+    } catch (IOException e) {
+      logger.error("Unable to deduplicate the working file repository", e);
+      return Response.serverError().entity(e.getMessage()).build();
+    }
+  }
+
   @SuppressWarnings("unchecked")
   @GET
   @Produces(MediaType.APPLICATION_JSON)
@@ -35,13 +35,17 @@ import org.junit.Assert;
 import org.junit.Before;
 import org.junit.Test;
 
+import java.io.ByteArrayOutputStream;
 import java.io.File;
+import java.io.IOException;
 import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
 import java.util.Arrays;
 import java.util.HashMap;
 import java.util.Map;
 
 import javax.ws.rs.core.Response;
+import javax.ws.rs.core.StreamingOutput;
 
 public class WorkingFileRepositoryRestEndpointTest {
 
@@ -78,7 +82,6 @@ public class WorkingFileRepositoryRestEndpointTest {
     String mediaPackageId = "mp";
     String image = "element1";
     InputStream in = null;
-    InputStream responseIn = null;
 
     try {
       in = getClass().getResourceAsStream("/opencast_header.gif");
@@ -88,7 +91,7 @@ public class WorkingFileRepositoryRestEndpointTest {
     }
 
     // execute gets, and ensure that the content types are correct
-    Response response = endpoint.restGet(mediaPackageId, image, null);
+    Response response = endpoint.restGet(mediaPackageId, image, null, null);
 
     Assert.assertEquals("Gif content type", "image/gif", response.getMetadata().getFirst("Content-Type"));
 
@@ -96,12 +99,10 @@ public class WorkingFileRepositoryRestEndpointTest {
     try {
       in = getClass().getResourceAsStream("/opencast_header.gif");
       byte[] bytesFromClasspath = IOUtils.toByteArray(in);
-      responseIn = (InputStream) response.getEntity();
-      byte[] bytesFromRepo = IOUtils.toByteArray(responseIn);
+      byte[] bytesFromRepo = body(response);
       Assert.assertTrue(Arrays.equals(bytesFromClasspath, bytesFromRepo));
     } finally {
       IOUtils.closeQuietly(in);
-      IOUtils.closeQuietly(responseIn);
     }
   }
 
@@ -133,18 +134,88 @@ public class WorkingFileRepositoryRestEndpointTest {
     }
 
     // execute gets, and ensure that the content types are correct
-    Response response = endpoint.restGet(mediaPackageId, dc, null);
+    Response response = endpoint.restGet(mediaPackageId, dc, null, null);
 
     Assert.assertEquals("DC content type", "text/xml", response.getMetadata().getFirst("Content-Type"));
 
     // Make sure the image byte stream was not modified by the content type detection
     try (InputStream in = getClass().getResourceAsStream("/dublincore.xml")) {
       byte[] imageBytesFromClasspath = IOUtils.toByteArray(in);
-      try (InputStream responseIn = (InputStream) response.getEntity()) {
-        byte[] imageBytesFromRepo = IOUtils.toByteArray(responseIn);
-        Assert.assertTrue(Arrays.equals(imageBytesFromClasspath, imageBytesFromRepo));
-      }
+      byte[] imageBytesFromRepo = body(response);
+      Assert.assertTrue(Arrays.equals(imageBytesFromClasspath, imageBytesFromRepo));
     }
   }
 
+  @Test
+  public void testGetRange() throws Exception {
+    String mediaPackageId = "mp";
+    String dc = "element1";
+    try (InputStream in = getClass().getResourceAsStream("/dublincore.xml")) {
+      endpoint.put(mediaPackageId, dc, "dublincore.xml", in);
+    }
+    byte[] bytes;
+    try (InputStream in = getClass().getResourceAsStream("/dublincore.xml")) {
+      bytes = IOUtils.toByteArray(in);
+    }
+
+    Response full = endpoint.restGet(mediaPackageId, dc, null, null);
+    Assert.assertEquals("bytes", full.getMetadata().getFirst("Accept-Ranges"));
+
+    Response response = endpoint.restGet(mediaPackageId, dc, null, "bytes=10-19");
+    Assert.assertEquals(206, response.getStatus());
+    Assert.assertEquals("bytes 10-19/" + bytes.length, response.getMetadata().getFirst("Content-Range"));
+    Assert.assertArrayEquals(Arrays.copyOfRange(bytes, 10, 20), body(response));
+
+    response = endpoint.restGet(mediaPackageId, dc, null, "bytes=-10");
+    Assert.assertEquals(206, response.getStatus());
+    Assert.assertArrayEquals(Arrays.copyOfRange(bytes, bytes.length - 10, bytes.length), body(response));
+
+    response = endpoint.restGet(mediaPackageId, dc, null, "bytes=" + bytes.length + "-");
+    Assert.assertEquals(416, response.getStatus());
+  }
+
+  @Test
+  public void testGetMultipleRanges() throws Exception {
+    String mediaPackageId = "mp";
+    String dc = "element1";
+    try (InputStream in = getClass().getResourceAsStream("/dublincore.xml")) {
+      endpoint.put(mediaPackageId, dc, "dublincore.xml", in);
+    }
+    byte[] bytes;
+    try (InputStream in = getClass().getResourceAsStream("/dublincore.xml")) {
+      bytes = IOUtils.toByteArray(in);
+    }
+
+    // Overlapping ranges are merged, so this is a single range response
+    Response response = endpoint.restGet(mediaPackageId, dc, null, "bytes=10-19,15-29");
+    Assert.assertEquals(206, response.getStatus());
+    Assert.assertEquals("bytes 10-29/" + bytes.length, response.getMetadata().getFirst("Content-Range"));
+    Assert.assertArrayEquals(Arrays.copyOfRange(bytes, 10, 30), body(response));
+
+    response = endpoint.restGet(mediaPackageId, dc, null, "bytes=20-29,0-9");
+    Assert.assertEquals(206, response.getStatus());
+    String contentType = response.getMetadata().getFirst("Content-Type").toString();
+    Assert.assertTrue(contentType.startsWith("multipart/byteranges; boundary="));
+    String boundary = contentType.substring("multipart/byteranges; boundary=".length());
+    byte[] body = body(response);
+    Assert.assertEquals(Integer.toString(body.length), response.getMetadata().getFirst("Content-Length").toString());
+    String text = new String(body, StandardCharsets.ISO_8859_1);
+    String first = "Content-Range: bytes 0-9/" + bytes.length + "\r\n\r\n"
+            + new String(bytes, 0, 10, StandardCharsets.ISO_8859_1) + "\r\n--" + boundary + "\r\n";
+    String second = "Content-Range: bytes 20-29/" + bytes.length + "\r\n\r\n"
+            + new String(bytes, 20, 10, StandardCharsets.ISO_8859_1) + "\r\n--" + boundary + "--";
+    Assert.assertTrue(text.startsWith("\r\n--" + boundary + "\r\n"));
+    Assert.assertTrue(text.contains(first));
+    Assert.assertTrue(text.endsWith(second));
+
+    response = endpoint.restGet(mediaPackageId, dc, null, "bytes=" + bytes.length + "-,-0");
+    Assert.assertEquals(416, response.getStatus());
+  }
+
+  private static byte[] body(Response response) throws IOException {
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    ((StreamingOutput) response.getEntity()).write(out);
+    return out.toByteArray();
+  }
+
 }
@@ -39,6 +39,7 @@ import org.junit.Test;
 
 import java.io.File;
 import java.io.InputStream;
+import java.nio.file.Files;
 import java.util.Arrays;
 import java.util.HashMap;
 import java.util.Map;
@@ -247,4 +248,55 @@ public class WorkingFileRepositoryTest {
     Assert.assertFalse(result);
   }
 
+  @Test
+  public void testDeduplicatedPut() throws Exception {
+    repo.blobStore = new BlobStore(new File(repo.rootDirectory, BlobStore.BLOB_DIRECTORY));
+    putHeader(mediaPackageID, "working-file-test-element-2");
+    putHeader("working-file-test-media-package-2", mediaPackageElementID);
+
+    File first = repo.getFile(mediaPackageID, "working-file-test-element-2");
+    File second = repo.getFile("working-file-test-media-package-2", mediaPackageElementID);
+    File md5File = new File(first.getPath() + WorkingFileRepositoryImpl.MD5_EXTENSION);
+    File blob = repo.blobStore.getBlob(FileUtils.readFileToString(md5File, "utf-8").trim());
+    Assert.assertTrue(Files.isSameFile(first.toPath(), second.toPath()));
+    Assert.assertTrue(Files.isSameFile(first.toPath(), blob.toPath()));
+
+    // The blob must outlive the first delete and go away with the last one
+    repo.delete(mediaPackageID, "working-file-test-element-2");
+    Assert.assertTrue(blob.isFile());
+    repo.delete("working-file-test-media-package-2", mediaPackageElementID);
+    Assert.assertFalse(blob.exists());
+  }
+
+  @Test
+  public void testDeduplicateExistingFiles() throws Exception {
+    putHeader("working-file-test-media-package-2", mediaPackageElementID);
+    repo.blobStore = new BlobStore(new File(repo.rootDirectory, BlobStore.BLOB_DIRECTORY));
+
+    Map<String, Long> result = repo.deduplicate();
+    Assert.assertEquals(2L, result.get("files").longValue());
+    // The first file becomes the stored copy, the second one is replaced by a link to it
+    Assert.assertEquals(1L, result.get("deduplicated").longValue());
+    Assert.assertTrue(Files.isSameFile(repo.getFile(mediaPackageID, mediaPackageElementID).toPath(),
+            repo.getFile("working-file-test-media-package-2", mediaPackageElementID).toPath()));
+
+    // Running it again does not find anything new
+    Assert.assertEquals(0L, repo.deduplicate().get("deduplicated").longValue());
+  }
+
+  @Test(expected = IllegalStateException.class)
+  public void testDeduplicateDisabled() throws Exception {
+    repo.deduplicate();
+  }
+
+  private void putHeader(String mediaPackageId, String elementId) throws Exception {
+    InputStream in = null;
+    try {
+      in = getClass().getClassLoader().getResourceAsStream("opencast_header.gif");
+      repo.put(mediaPackageId, elementId, "opencast_header.gif", in);
+    } finally {
+      IOUtils.closeQuietly(in);
+    }
+  }
+
 }
@@ -160,17 +160,26 @@ public class WorkingFileRepositoryRemoteImpl extends RemoteBase implements Worki
             .concat(new String[] { MEDIAPACKAGE_PATH_PREFIX, mediaPackageID, mediaPackageElementID });
     HttpGet get = new HttpGet(urlSuffix);
     HttpResponse response = getResponse(get, SC_OK, SC_NOT_FOUND);
+    boolean streaming = false;
     try {
       if (response != null) {
         if (SC_NOT_FOUND == response.getStatusLine().getStatusCode()) {
           throw new NotFoundException();
         } else {
           // Do not close this response. It will be closed when the caller closes the input stream
-          return new HttpClientClosingInputStream(response);
+          final InputStream in = new HttpClientClosingInputStream(response);
+          streaming = true;
+          return in;
         }
       }
+    } catch (NotFoundException e) {
+      throw e;
     } catch (Exception e) {
       throw new RuntimeException();
+    } finally {
+      if (!streaming) {
+        closeConnection(response);
+      }
     }
     throw new RuntimeException("Error getting file");
   }
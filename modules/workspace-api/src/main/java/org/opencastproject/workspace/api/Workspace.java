@@ -23,12 +23,14 @@ package org.opencastproject.workspace.api;
 
 import org.opencastproject.mediapackage.identifier.Id;
 import org.opencastproject.storage.StorageUsage;
+import org.opencastproject.util.Checksum;
 import org.opencastproject.util.NotFoundException;
 
 import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
 import java.net.URI;
+import java.util.Map;
 
 /**
  * Provides efficient access java.io.File objects from potentially remote URIs. This helper service prevents different
@@ -81,6 +83,16 @@ public interface Workspace extends StorageUsage {
    */
   InputStream read(URI uri) throws NotFoundException, IOException;
 
+  /**
+   * Returns the checksum of a locally cached file if it is known without reading the file, for example because the
+   * working file repository stored it along with the file or it was verified during the download.
+   *
+   * @param uri
+   *          URI identifying the resource
+   * @return the md5 checksum of the file returned by {@link #get(URI)}, or <code>null</code> if it is not known
+   */
+  Checksum getChecksum(URI uri);
+
 
   /**
    * Gets the base URI for files stored using this service.
@@ -257,4 +269,11 @@ public interface Workspace extends StorageUsage {
    */
   String rootDirectory();
 
+  /**
+   * Returns the media package elements of the working file repository that are currently held in this workspace.
+   *
+   * @return the number of bytes stored locally, by media package identifier and element identifier
+   */
+  Map<String, Map<String, Long>> getLocalElementSizes();
+
 }
@@ -0,0 +1,214 @@
+/**
+ * Licensed to The Apereo Foundation under one or more contributor license
+ * agreements. See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ *
+ * The Apereo Foundation licenses this file to you under the Educational
+ * Community License, Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License. You may obtain a copy of the License
+ * at:
+ *
+ *   http://opensource.org/licenses/ecl2.txt
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ *
+ */
+
+
+
+package org.opencastproject.workspace.impl;
+
+import org.opencastproject.util.NotFoundException;
+import org.opencastproject.workspace.impl.jmx.WorkspaceDownloadsMXBean;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.net.URI;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Lets concurrent requests for the same remote file share a single download.
+ * <p>
+ * The first request for a URI downloads the file. Requests for the same URI arriving while the download is running
+ * wait for it instead of starting their own, and periodically log its progress while doing so. Requests which need a
+ * different workspace file, for example because they asked for a unique file name, get a copy of the downloaded file.
+ */
+class DownloadCoalescer implements WorkspaceDownloadsMXBean {
+
+  /** The logging facility */
+  private static final Logger logger = LoggerFactory.getLogger(DownloadCoalescer.class);
+
+  /** Downloads a remote file to a workspace file. */
+  interface Download {
+    File run(File dst) throws NotFoundException, IOException;
+  }
+
+  /** Copies or links a workspace file to another one. */
+  interface Copy {
+    void run(File src, File dst) throws NotFoundException, IOException;
+  }
+
+  /** The running downloads, by URI */
+  private final ConcurrentMap<String, Transfer> transfers = new ConcurrentHashMap<>();
+
+  /** Reports the progress of running downloads */
+  private final RangedDownloader downloader;
+
+  /** Provides joining requests with their own copy of a downloaded file */
+  private final Copy copy;
+
+  /** How often waiting requests log the progress of the download, in milliseconds */
+  private final long progressInterval;
+
+  private final AtomicLong downloads = new AtomicLong();
+  private final AtomicLong joinedRequests = new AtomicLong();
+  private final AtomicLong savedBytes = new AtomicLong();
+
+  /**
+   * Creates a coalescer.
+   *
+   * @param downloader
+   *          the downloader whose progress is reported
+   * @param copy
+   *          copies a downloaded file for requests which need it in a different workspace file
+   * @param progressInterval
+   *          how often waiting requests log the progress of the download, in milliseconds
+   */
+  DownloadCoalescer(RangedDownloader downloader, Copy copy, long progressInterval) {
+    this.downloader = downloader;
+    this.copy = copy;
+    this.progressInterval = progressInterval;
+  }
+
+  /**
+   * Downloads a remote file, unless a download of the same file is already running, in which case its result is used.
+   *
+   * @param uri
+   *          the remote file
+   * @param dst
+   *          the workspace file to download to
+   * @param download
+   *          runs the actual download
+   * @return the workspace file
+   * @throws NotFoundException
+   *           if the remote file does not exist
+   * @throws IOException
+   *           if the download fails
+   */
+  File download(URI uri, File dst, Download download) throws NotFoundException, IOException {
+    final Transfer transfer = new Transfer(uri, dst);
+    final Transfer running = transfers.putIfAbsent(uri.toString(), transfer);
+    if (running != null) {
+      return join(running, dst, download);
+    }
+    downloads.incrementAndGet();
+    try {
+      final File file = download.run(dst);
+      transfer.result.complete(file);
+      return file;
+    } catch (Throwable t) {
+      transfer.result.completeExceptionally(t);
+      throw t;
+    } finally {
+      transfers.remove(uri.toString(), transfer);
+    }
+  }
+
+  /** Waits for a running download and makes its result available as <code>dst</code>. */
+  private File join(Transfer transfer, File dst, Download download) throws NotFoundException, IOException {
+    joinedRequests.incrementAndGet();
+    logger.debug("Joining the running download of {}", transfer.uri);
+    final File file;
+    try {
+      file = await(transfer);
+    } catch (InterruptedIOException e) {
+      throw e;
+    } catch (IOException e) {
+      logger.info("Download of {} failed, trying once more: {}", transfer.uri, e.getMessage());
+      return download.run(dst);
+    }
+    if (!file.equals(dst)) {
+      try {
+        copy.run(file, dst);
+      } catch (IOException e) {
+        // The downloaded file may have been deleted in the meantime
+        logger.debug("Unable to copy {} to {}, downloading it instead: {}", file, dst, e.getMessage());
+        return download.run(dst);
+      }
+    }
+    savedBytes.addAndGet(dst.length());
+    return dst;
+  }
+
+  private File await(Transfer transfer) throws NotFoundException, IOException {
+    while (true) {
+      try {
+        return transfer.result.get(progressInterval, TimeUnit.MILLISECONDS);
+      } catch (TimeoutException e) {
+        logger.info("Waiting for the download of {}: {}", transfer.uri, progress(transfer));
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        throw new InterruptedIOException("Interrupted while waiting for the download of " + transfer.uri);
+      } catch (ExecutionException e) {
+        final Throwable cause = e.getCause();
+        if (cause instanceof NotFoundException) {
+          throw new NotFoundException(cause.getMessage(), cause);
+        }
+        throw new IOException(cause);
+      }
+    }
+  }
+
+  private String progress(Transfer transfer) {
+    final RangedDownloader.Progress progress = downloader.getProgress(transfer.dst);
+    return progress == null ? "not started" : progress.toString();
+  }
+
+  @Override
+  public String[] getRunningDownloads() {
+    return transfers.values().stream().map(t -> t.uri + ": " + progress(t)).sorted().toArray(String[]::new);
+  }
+
+  @Override
+  public long getDownloads() {
+    return downloads.get();
+  }
+
+  @Override
+  public long getJoinedRequests() {
+    return joinedRequests.get();
+  }
+
+  @Override
+  public long getSavedBytes() {
+    return savedBytes.get();
+  }
+
+  /** A running download. */
+  private static final class Transfer {
+    private final URI uri;
+    private final File dst;
+    private final CompletableFuture<File> result = new CompletableFuture<>();
+
+    Transfer(URI uri, File dst) {
+      this.uri = uri;
+      this.dst = dst;
+    }
+  }
+
+}
@@ -0,0 +1,429 @@
+/**
+ * Licensed to The Apereo Foundation under one or more contributor license
+ * agreements. See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ *
+ * The Apereo Foundation licenses this file to you under the Educational
+ * Community License, Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License. You may obtain a copy of the License
+ * at:
+ *
+ *   http://opensource.org/licenses/ecl2.txt
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ *
+ */
+
+
+package org.opencastproject.workspace.impl;
+
+import static java.lang.String.format;
+
+import org.opencastproject.security.api.TrustedHttpClient;
+
+import org.apache.commons.codec.binary.Hex;
+import org.apache.commons.codec.digest.DigestUtils;
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
+import org.apache.commons.io.input.ProxyInputStream;
+import org.apache.commons.lang3.StringUtils;
+import org.apache.commons.lang3.math.NumberUtils;
+import org.apache.http.Header;
+import org.apache.http.HttpResponse;
+import org.apache.http.HttpStatus;
+import org.apache.http.client.methods.HttpGet;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.net.URI;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Pattern;
+
+/**
+ * Writes the body of an HTTP response to a file.
+ * <p>
+ * If the server announces byte range support, large files are split into segments which are fetched in parallel, and a
+ * transfer which breaks off is resumed at the last byte written instead of starting over. If the server sends the md5
+ * of the file as its entity tag, as the working file repository does, the downloaded file is verified against it.
+ * The checksum is computed while the file is being written, so the file is never read again after the download.
+ */
+class RangedDownloader {
+
+  /** The logging facility */
+  private static final Logger logger = LoggerFactory.getLogger(RangedDownloader.class);
+
+  /** How often the transfer of a single segment is attempted before the download is given up */
+  static final int MAX_ATTEMPTS = 5;
+
+  /** Size of the copy buffer */
+  private static final int BUFFER_SIZE = 64 * 1024;
+
+  /** Entity tags of this form are taken to be md5 checksums */
+  private static final Pattern MD5 = Pattern.compile("[0-9a-fA-F]{32}");
+
+  /** Maximum number of segments a single file is split into */
+  private final int parallelism;
+
+  /** Minimum size of a segment in bytes */
+  private final long segmentSize;
+
+  /**
+   * Fetches all but the first segment of a file; the first one is read from the initial response. A download uses at
+   * most <code>parallelism - 1</code> of these threads, and the pool grows with the number of concurrent downloads so
+   * that the segments of a large file never queue up in front of those of other files.
+   */
+  private final ExecutorService executor;
+
+  /** The progress of the running downloads, by destination file */
+  private final Map<File, Progress> running = new ConcurrentHashMap<>();
+
+  /**
+   * Creates a new downloader.
+   *
+   * @param parallelism
+   *          the maximum number of segments a file is split into, <code>1</code> disables parallel downloads
+   * @param segmentSize
+   *          the minimum size of a segment in bytes
+   */
+  RangedDownloader(int parallelism, long segmentSize) {
+    this.parallelism = Math.max(1, parallelism);
+    this.segmentSize = Math.max(1, segmentSize);
+    final AtomicInteger threads = new AtomicInteger();
+    this.executor = Executors.newCachedThreadPool(r -> {
+      final Thread thread = new Thread(r, "workspace-download-" + threads.incrementAndGet());
+      thread.setDaemon(true);
+      return thread;
+    });
+  }
+
+  /** Stops the segment download threads. */
+  void shutdown() {
+    executor.shutdownNow();
+  }
+
+  /**
+   * Returns the progress of the download to a file.
+   *
+   * @return the progress, or <code>null</code> if no download to <code>dst</code> is running
+   */
+  Progress getProgress(File dst) {
+    return running.get(dst);
+  }
+
+  /**
+   * Writes the body of a successful response for <code>src</code> to <code>dst</code>. Missing parts are requested
+   * from <code>src</code> using byte ranges if the server supports them.
+   *
+   * @return the md5 checksum of the downloaded file, or <code>null</code> if it is not known
+   * @throws IOException
+   *           if the download fails or the downloaded file does not match the checksum sent by the server
+   */
+  String download(TrustedHttpClient client, HttpResponse response, URI src, File dst) throws IOException {
+    final String etag = entityTag(response);
+    final long length = NumberUtils.toLong(header(response, "Content-Length"), -1);
+    final boolean ranges = "bytes".equalsIgnoreCase(header(response, "Accept-Ranges"));
+    final Progress progress = new Progress(length);
+    running.put(dst, progress);
+    try {
+      // ignore return value
+      dst.createNewFile();
+      if (ranges && length > 0) {
+        final boolean checksum = etag != null && MD5.matcher(etag).matches();
+        final String md5 = downloadSegments(client, response, src, dst, length, progress, checksum);
+        return checksum ? verify(src, dst, etag, md5) : null;
+      }
+      final MessageDigest digest = DigestUtils.getMd5Digest();
+      try (InputStream in = new DigestInputStream(progress.count(response.getEntity().getContent()), digest)) {
+        try (OutputStream out = new FileOutputStream(dst)) {
+          IOUtils.copyLarge(in, out);
+        }
+      }
+      final String md5 = Hex.encodeHexString(digest.digest());
+      return etag == null || !MD5.matcher(etag).matches() ? md5 : verify(src, dst, etag, md5);
+    } finally {
+      running.remove(dst, progress);
+    }
+  }
+
+  /**
+   * Downloads the file in parallel segments.
+   *
+   * @return the md5 checksum of the file if <code>checksum</code> is set, <code>null</code> otherwise
+   */
+  private String downloadSegments(final TrustedHttpClient client, final HttpResponse response, final URI src,
+          final File dst, final long length, final Progress progress, final boolean checksum) throws IOException {
+    final int segments = (int) Math.max(1, Math.min(parallelism, length / segmentSize));
+    final long segmentLength = (length + segments - 1) / segments;
+    logger.debug("Downloading {} ({} bytes) in {} segment(s)", src, length, segments);
+    try (RandomAccessFile file = new RandomAccessFile(dst, "rw")) {
+      file.setLength(length);
+      final FileChannel channel = file.getChannel();
+      final MessageDigest digest = checksum ? DigestUtils.getMd5Digest() : null;
+      final List<Segment> parts = new ArrayList<>(segments - 1);
+      final List<Future<?>> futures = new ArrayList<>(segments - 1);
+      try {
+        for (int i = 1; i < segments; i++) {
+          final Segment segment = new Segment(i * segmentLength, Math.min(length, (i + 1) * segmentLength) - 1,
+                  progress, null);
+          parts.add(segment);
+          futures.add(executor.submit(() -> {
+            resume(client, src, channel, segment);
+            return null;
+          }));
+        }
+        // The first segment is the beginning of the response at hand. Its stream is deliberately left open:
+        // closing it would read the rest of the body, while closing the response just drops the connection.
+        final Segment first = new Segment(0, Math.min(length, segmentLength) - 1, progress, digest);
+        try {
+          first.receive(response.getEntity().getContent(), channel);
+        } catch (IOException e) {
+          if (!channel.isOpen()) {
+            throw e;
+          }
+          logger.debug("Download of {} broke off at byte {}: {}", src, first.position, e.getMessage());
+        }
+        resume(client, src, channel, first);
+        if (digest == null) {
+          for (Future<?> future : futures) {
+            await(future);
+          }
+          return null;
+        }
+        // the first segment is hashed as it arrives, the others are hashed in order while they are still being written
+        for (int i = 0; i < parts.size(); i++) {
+          digest(channel, parts.get(i), futures.get(i), digest);
+        }
+        return Hex.encodeHexString(digest.digest());
+      } finally {
+        for (Future<?> future : futures) {
+          future.cancel(true);
+        }
+      }
+    }
+  }
+
+  /** Requests the missing part of a segment until it is complete or {@link #MAX_ATTEMPTS} is reached. */
+  private void resume(TrustedHttpClient client, URI src, FileChannel channel, Segment segment) throws IOException {
+    for (int attempt = 1; !segment.isComplete(); attempt++) {
+      final HttpGet get = new HttpGet(src);
+      get.setHeader("Range", "bytes=" + segment.position + "-" + segment.end);
+      HttpResponse response = null;
+      try {
+        response = client.execute(get);
+        final int status = response.getStatusLine().getStatusCode();
+        if (status != HttpStatus.SC_PARTIAL_CONTENT) {
+          throw new IOException(format("Unexpected status %d when requesting %s of %s", status,
+                  get.getFirstHeader("Range").getValue(), src));
+        }
+        segment.receive(response.getEntity().getContent(), channel);
+        if (!segment.isComplete()) {
+          throw new EOFException(format("Premature end of range at byte %d", segment.position));
+        }
+      } catch (IOException e) {
+        if (attempt >= MAX_ATTEMPTS || !channel.isOpen() || Thread.currentThread().isInterrupted()) {
+          throw new IOException(format("Unable to download %s: giving up at byte %d after %d attempts", src,
+                  segment.position, attempt), e);
+        }
+        logger.debug("Resuming download of {} at byte {}: {}", src, segment.position, e.getMessage());
+      } finally {
+        if (response != null) {
+          client.close(response);
+        }
+      }
+    }
+  }
+
+  /**
+   * Hashes a segment which is written by another thread, following its progress until it is complete. The bytes are
+   * read right after they have been written and are usually still in the page cache.
+   */
+  private static void digest(FileChannel channel, Segment segment, Future<?> future, MessageDigest digest)
+          throws IOException {
+    final ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+    long next = segment.start;
+    while (true) {
+      final long written = segment.position;
+      if (next < written) {
+        buffer.clear().limit((int) Math.min(BUFFER_SIZE, written - next));
+        final int n = channel.read(buffer, next);
+        if (n < 0) {
+          throw new EOFException(format("Premature end of file at byte %d", next));
+        }
+        digest.update(buffer.array(), 0, n);
+        next += n;
+      } else if (segment.isComplete()) {
+        await(future);
+        return;
+      } else if (future.isDone()) {
+        // rethrows the failure of the segment download
+        await(future);
+      } else {
+        segment.awaitProgress(next);
+      }
+    }
+  }
+
+  private static void await(Future<?> future) throws IOException {
+    try {
+      future.get();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new InterruptedIOException("Interrupted while waiting for segment download");
+    } catch (ExecutionException e) {
+      if (e.getCause() instanceof IOException) {
+        throw (IOException) e.getCause();
+      }
+      throw new IOException(e.getCause());
+    }
+  }
+
+  /** Deletes <code>dst</code> if its md5 checksum does not match the one sent as entity tag. */
+  private static String verify(URI src, File dst, String etag, String md5) throws IOException {
+    if (!md5.equalsIgnoreCase(etag)) {
+      FileUtils.deleteQuietly(dst);
+      throw new IOException(format("Checksum of %s downloaded from %s is %s instead of %s", dst, src, md5, etag));
+    }
+    return md5;
+  }
+
+  /** Returns the entity tag of a response without weakness indicator and quotes. */
+  static String entityTag(HttpResponse response) {
+    final String etag = StringUtils.removeStart(header(response, "ETag"), "W/");
+    return StringUtils.trimToNull(StringUtils.strip(etag, "\""));
+  }
+
+  private static String header(HttpResponse response, String name) {
+    final Header header = response.getFirstHeader(name);
+    return header != null ? header.getValue() : null;
+  }
+
+  /** A byte range of the file, <code>end</code> being inclusive. */
+  private static final class Segment {
+
+    /** How long to wait for more bytes before checking whether the segment download failed */
+    private static final long PROGRESS_TIMEOUT = 100L;
+
+    private final long start;
+
+    private final long end;
+
+    /** Progress of the whole download */
+    private final Progress progress;
+
+    /** Hashes the bytes written, or <code>null</code> */
+    private final MessageDigest digest;
+
+    /** Next byte to write */
+    private volatile long position;
+
+    Segment(long start, long end, Progress progress, MessageDigest digest) {
+      this.start = start;
+      this.position = start;
+      this.end = end;
+      this.progress = progress;
+      this.digest = digest;
+    }
+
+    boolean isComplete() {
+      return position > end;
+    }
+
+    /** Writes the stream to the channel starting at the current position until the segment is complete. */
+    void receive(InputStream in, FileChannel channel) throws IOException {
+      final byte[] buffer = new byte[BUFFER_SIZE];
+      int n;
+      while (!isComplete() && (n = in.read(buffer, 0, (int) Math.min(buffer.length, end - position + 1))) != -1) {
+        final ByteBuffer bytes = ByteBuffer.wrap(buffer, 0, n);
+        while (bytes.hasRemaining()) {
+          final int offset = bytes.position();
+          final int written = channel.write(bytes, position);
+          if (digest != null) {
+            digest.update(buffer, offset, written);
+          }
+          position += written;
+          progress.received.addAndGet(written);
+        }
+        synchronized (this) {
+          notifyAll();
+        }
+      }
+    }
+
+    /** Waits until bytes beyond <code>mark</code> have been written, or for a short while at most. */
+    synchronized void awaitProgress(long mark) throws InterruptedIOException {
+      try {
+        if (position <= mark) {
+          wait(PROGRESS_TIMEOUT);
+        }
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        throw new InterruptedIOException("Interrupted while waiting for segment download");
+      }
+    }
+  }
+
+  /** The number of bytes received by a running download. */
+  static final class Progress {
+
+    /** The length of the file, or <code>-1</code> if it is not known */
+    private final long length;
+
+    private final AtomicLong received = new AtomicLong();
+
+    Progress(long length) {
+      this.length = length;
+    }
+
+    long getLength() {
+      return length;
+    }
+
+    long getReceived() {
+      return received.get();
+    }
+
+    /** Counts the bytes read from a stream as received. */
+    InputStream count(InputStream in) {
+      return new ProxyInputStream(in) {
+        @Override
+        protected void afterRead(int n) {
+          if (n > 0) {
+            received.addAndGet(n);
+          }
+        }
+      };
+    }
+
+    @Override
+    public String toString() {
+      return length < 0 ? format("%d bytes", getReceived()) : format("%d of %d bytes", getReceived(), length);
+    }
+  }
+
+}
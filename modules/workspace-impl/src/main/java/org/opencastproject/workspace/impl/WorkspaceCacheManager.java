@@ -0,0 +1,357 @@
+/**
+ * Licensed to The Apereo Foundation under one or more contributor license
+ * agreements. See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ *
+ * The Apereo Foundation licenses this file to you under the Educational
+ * Community License, Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License. You may obtain a copy of the License
+ * at:
+ *
+ *   http://opensource.org/licenses/ecl2.txt
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ *
+ */
+
+
+package org.opencastproject.workspace.impl;
+
+import org.opencastproject.util.FileSupport;
+import org.opencastproject.workspace.impl.jmx.WorkspaceCacheMXBean;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentNavigableMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongPredicate;
+import java.util.function.LongSupplier;
+
+/**
+ * Keeps the workspace within a size budget by evicting the least recently used files.
+ * <p>
+ * Every file stored through the workspace is recorded in an in-memory index together with its size and the time it was
+ * last accessed, so neither the current size nor the eviction order require walking the directory tree. The tree is
+ * scanned once on start-up only, to pick up the files left from before. Once the indexed size exceeds the high
+ * watermark, files are evicted in order of their last access until it drops below the low watermark.
+ * <p>
+ * A file is pinned, i.e. never evicted, while a transfer into it is in progress and as long as any job which requested
+ * it has not terminated.
+ */
+class WorkspaceCacheManager implements WorkspaceCacheMXBean {
+
+  /** The logging facility */
+  private static final Logger logger = LoggerFactory.getLogger(WorkspaceCacheManager.class);
+
+  /** Job identifier to use if a file is not requested on behalf of a job */
+  static final long NO_JOB = -1L;
+
+  private final Path root;
+  private final long maxSize;
+  private final long highWatermark;
+  private final long lowWatermark;
+
+  /** Tells whether the job with the given identifier has not terminated yet */
+  private final LongPredicate jobActive;
+  private final LongSupplier clock;
+
+  /** Runs the start-up scan and evictions */
+  private final Executor executor;
+
+  /** Indexed files sorted by path, so the files below a directory form one contiguous range */
+  private final ConcurrentNavigableMap<Path, Entry> index = new ConcurrentSkipListMap<>();
+  private final AtomicLong size = new AtomicLong();
+  private final AtomicBoolean evictionPending = new AtomicBoolean();
+
+  private final AtomicLong hits = new AtomicLong();
+  private final AtomicLong misses = new AtomicLong();
+  private final AtomicLong evictions = new AtomicLong();
+  private final AtomicLong evictedBytes = new AtomicLong();
+
+  /**
+   * Creates a new cache manager.
+   *
+   * @param root
+   *          the workspace root directory
+   * @param maxSize
+   *          the size budget in bytes
+   * @param highWatermark
+   *          the share of the budget at which eviction starts
+   * @param lowWatermark
+   *          the share of the budget eviction frees the cache down to
+   * @param jobActive
+   *          tells whether a job has not terminated yet
+   * @param clock
+   *          the time source for access times
+   * @param executor
+   *          runs the start-up scan and evictions
+   */
+  WorkspaceCacheManager(File root, long maxSize, double highWatermark, double lowWatermark, LongPredicate jobActive,
+          LongSupplier clock, Executor executor) {
+    if (lowWatermark > highWatermark) {
+      throw new IllegalArgumentException("The low watermark must not be above the high watermark");
+    }
+    this.root = key(root);
+    this.maxSize = maxSize;
+    this.highWatermark = (long) (maxSize * highWatermark);
+    this.lowWatermark = (long) (maxSize * lowWatermark);
+    this.jobActive = jobActive;
+    this.clock = clock;
+    this.executor = executor;
+  }
+
+  /** Indexes the files already in the workspace, using their modification date as last access. */
+  void start() {
+    executor.execute(() -> {
+      try {
+        Files.walkFileTree(root, new SimpleFileVisitor<Path>() {
+          @Override
+          public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) {
+            index.computeIfAbsent(file.toAbsolutePath().normalize(), p -> {
+              final Entry entry = new Entry(attrs.lastModifiedTime().toMillis());
+              entry.size = attrs.size();
+              size.addAndGet(entry.size);
+              return entry;
+            });
+            return FileVisitResult.CONTINUE;
+          }
+
+          @Override
+          public FileVisitResult visitFileFailed(Path file, IOException e) {
+            logger.debug("Unable to index {}: {}", file, e.getMessage());
+            return FileVisitResult.CONTINUE;
+          }
+        });
+      } catch (IOException e) {
+        logger.warn("Unable to index workspace {}: {}", root, e.getMessage());
+      }
+      logger.info("Indexed {} files with {} bytes in workspace {}", index.size(), size.get(), root);
+      evict();
+    });
+  }
+
+  /** Records that a request for a remote file could be answered from the workspace. */
+  void hit() {
+    hits.incrementAndGet();
+  }
+
+  /** Records that a requested remote file had to be fetched. */
+  void miss() {
+    misses.incrementAndGet();
+  }
+
+  /**
+   * Records an access to a workspace file, updating its size, and starts an eviction if the cache grew above the high
+   * watermark.
+   *
+   * @param file
+   *          the accessed file
+   * @param job
+   *          the identifier of the job the file is used by or {@link #NO_JOB}
+   */
+  void touch(File file, long job) {
+    final Path path = key(file);
+    if (!Files.isRegularFile(path)) {
+      remove(file);
+      return;
+    }
+    final long length = file.length();
+    final long now = clock.getAsLong();
+    index.compute(path, (p, entry) -> {
+      if (entry == null) {
+        entry = new Entry(now);
+      }
+      size.addAndGet(length - entry.size);
+      entry.size = length;
+      entry.lastAccess = now;
+      if (job != NO_JOB) {
+        entry.jobs.add(job);
+      }
+      return entry;
+    });
+    if (size.get() > highWatermark && evictionPending.compareAndSet(false, true)) {
+      executor.execute(this::evict);
+    }
+  }
+
+  /** Pins a file while it is being written. Every call must be followed by a call to {@link #unpin(File)}. */
+  void pin(File file) {
+    index.computeIfAbsent(key(file), p -> new Entry(clock.getAsLong())).transfers.incrementAndGet();
+  }
+
+  /** Releases a pin set by {@link #pin(File)}. */
+  void unpin(File file) {
+    final Entry entry = index.get(key(file));
+    if (entry != null) {
+      entry.transfers.decrementAndGet();
+    }
+  }
+
+  /**
+   * Forgets a file which was deleted from the workspace. If the file is a directory, all files below it are forgotten.
+   *
+   * @param file
+   *          the deleted file or directory
+   */
+  void remove(File file) {
+    final Path path = key(file);
+    final String prefix = path.toString();
+    // Every path below the given one has its name as prefix, and those paths directly follow it in the sorted index.
+    // Siblings like "mp-2" next to "mp" share the prefix as well and are skipped.
+    for (Path indexed : index.tailMap(path).keySet()) {
+      if (!indexed.toString().startsWith(prefix)) {
+        break;
+      }
+      if (indexed.startsWith(path)) {
+        index.computeIfPresent(indexed, (p, entry) -> {
+          size.addAndGet(-entry.size);
+          return null;
+        });
+      }
+    }
+  }
+
+  /** Evicts the least recently used files which are not pinned until the size is below the low watermark. */
+  synchronized void evict() {
+    evictionPending.set(false);
+    if (size.get() <= highWatermark) {
+      return;
+    }
+    final List<Map.Entry<Path, Entry>> candidates = new ArrayList<>(index.entrySet());
+    candidates.sort(Comparator.comparingLong(candidate -> candidate.getValue().lastAccess));
+    final Map<Long, Boolean> activeJobs = new HashMap<>();
+    for (Map.Entry<Path, Entry> candidate : candidates) {
+      if (size.get() <= lowWatermark) {
+        break;
+      }
+      final Path path = candidate.getKey();
+      final Entry entry = candidate.getValue();
+      if (isPinned(entry, activeJobs) || !index.remove(path, entry)) {
+        continue;
+      }
+      size.addAndGet(-entry.size);
+      try {
+        Files.deleteIfExists(path);
+        evictions.incrementAndGet();
+        evictedBytes.addAndGet(entry.size);
+        logger.debug("Evicted {} ({} bytes) from the workspace", path, entry.size);
+        FileSupport.deleteHierarchyIfEmpty(root.toFile(), path.getParent().toFile());
+      } catch (IOException e) {
+        logger.warn("Unable to evict {} from the workspace: {}", path, e.getMessage());
+      }
+    }
+    if (size.get() > lowWatermark) {
+      logger.warn("Workspace still holds {} of {} bytes after eviction since the remaining files are in use",
+              size.get(), maxSize);
+    }
+  }
+
+  /** Checks whether a file is being written or used by an active job, forgetting jobs which have terminated. */
+  private boolean isPinned(Entry entry, Map<Long, Boolean> activeJobs) {
+    if (entry.transfers.get() > 0) {
+      return true;
+    }
+    for (Long job : entry.jobs) {
+      if (activeJobs.computeIfAbsent(job, jobActive::test)) {
+        return true;
+      }
+      entry.jobs.remove(job);
+    }
+    return false;
+  }
+
+  private static Path key(File file) {
+    return file.toPath().toAbsolutePath().normalize();
+  }
+
+  @Override
+  public long getHits() {
+    return hits.get();
+  }
+
+  @Override
+  public long getMisses() {
+    return misses.get();
+  }
+
+  @Override
+  public double getHitRate() {
+    final long requests = hits.get() + misses.get();
+    return requests == 0 ? 0.0 : (double) hits.get() / requests;
+  }
+
+  @Override
+  public long getEvictions() {
+    return evictions.get();
+  }
+
+  @Override
+  public long getEvictedBytes() {
+    return evictedBytes.get();
+  }
+
+  @Override
+  public long getSize() {
+    return size.get();
+  }
+
+  @Override
+  public long getMaxSize() {
+    return maxSize;
+  }
+
+  @Override
+  public int getFiles() {
+    return index.size();
+  }
+
+  @Override
+  public int getPinnedFiles() {
+    int pinned = 0;
+    for (Entry entry : index.values()) {
+      if (entry.transfers.get() > 0 || !entry.jobs.isEmpty()) {
+        pinned++;
+      }
+    }
+    return pinned;
+  }
+
+  /** What is known about an indexed file */
+  private static final class Entry {
+    private volatile long size;
+    private volatile long lastAccess;
+    /** Jobs which requested the file */
+    private final Set<Long> jobs = ConcurrentHashMap.newKeySet();
+    /** Number of transfers into the file in progress */
+    private final AtomicInteger transfers = new AtomicInteger();
+
+    Entry(long lastAccess) {
+      this.lastAccess = lastAccess;
+    }
+  }
+
+}
@@ -37,15 +37,22 @@ import static org.opencastproject.util.data.Prelude.sleep;
 
 import org.opencastproject.assetmanager.util.AssetPathUtils;
 import org.opencastproject.assetmanager.util.DistributionPathUtils;
+import org.opencastproject.job.api.Job;
 import org.opencastproject.mediapackage.identifier.Id;
 import org.opencastproject.security.api.SecurityService;
 import org.opencastproject.security.api.TrustedHttpClient;
 import org.opencastproject.security.api.TrustedHttpClientException;
+import org.opencastproject.serviceregistry.api.ServiceRegistry;
+import org.opencastproject.serviceregistry.api.ServiceRegistration;
+import org.opencastproject.serviceregistry.api.ServiceRegistryException;
+import org.opencastproject.util.Checksum;
+import org.opencastproject.util.ChecksumType;
 import org.opencastproject.util.FileSupport;
 import org.opencastproject.util.HttpUtil;
 import org.opencastproject.util.IoSupport;
 import org.opencastproject.util.NotFoundException;
 import org.opencastproject.util.PathSupport;
+import org.opencastproject.util.UrlSupport;
 import org.opencastproject.util.data.Effect;
 import org.opencastproject.util.data.Either;
 import org.opencastproject.util.data.Function;
@@ -60,17 +67,20 @@ import org.opencastproject.workspace.impl.jmx.WorkspaceBean;
 import org.apache.commons.codec.digest.DigestUtils;
 import org.apache.commons.io.FileUtils;
 import org.apache.commons.io.FilenameUtils;
-import org.apache.commons.io.IOUtils;
 import org.apache.commons.io.input.TeeInputStream;
+import org.apache.commons.lang3.BooleanUtils;
 import org.apache.commons.lang3.StringUtils;
 import org.apache.http.HttpResponse;
 import org.apache.http.client.methods.HttpGet;
+import org.apache.http.client.methods.HttpHead;
 import org.apache.http.client.utils.URIBuilder;
 import org.osgi.service.component.ComponentContext;
 import org.osgi.service.component.annotations.Activate;
 import org.osgi.service.component.annotations.Component;
 import org.osgi.service.component.annotations.Deactivate;
 import org.osgi.service.component.annotations.Reference;
+import org.osgi.service.component.annotations.ReferenceCardinality;
+import org.osgi.service.component.annotations.ReferencePolicy;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -80,16 +90,23 @@ import java.io.FileNotFoundException;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
-import java.io.OutputStream;
 import java.net.URI;
 import java.net.URISyntaxException;
 import java.nio.file.Files;
 import java.nio.file.StandardCopyOption;
 import java.util.Collections;
 import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.Map;
+import java.util.Set;
 import java.util.UUID;
 import java.util.concurrent.CopyOnWriteArraySet;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
 
 import javax.management.ObjectInstance;
 import javax.servlet.http.HttpServletResponse;
@@ -124,10 +141,58 @@ public final class WorkspaceImpl implements Workspace {
   public static final String WORKSPACE_CLEANUP_PERIOD_KEY = "org.opencastproject.workspace.cleanup.period";
   /** Configuration key for garbage collection max age. */
   public static final String WORKSPACE_CLEANUP_MAX_AGE_KEY = "org.opencastproject.workspace.cleanup.max.age";
+  /** Configuration key for the maximum number of segments a download is split into */
+  public static final String WORKSPACE_DOWNLOAD_PARALLEL_KEY = "org.opencastproject.workspace.download.parallel";
+  /** Configuration key for the minimum size of a download segment in MiB */
+  public static final String WORKSPACE_DOWNLOAD_SEGMENT_SIZE_KEY =
+      "org.opencastproject.workspace.download.segment.size";
+  /** Configuration key for letting concurrent requests for the same file share a single download */
+  public static final String WORKSPACE_DOWNLOAD_COALESCE_KEY = "org.opencastproject.workspace.download.coalesce";
+  /** Configuration key for the size budget of the workspace in MiB */
+  public static final String WORKSPACE_CACHE_MAX_SIZE_KEY = "org.opencastproject.workspace.cache.max.size";
+  /** Configuration key for the share of the size budget at which files are evicted */
+  public static final String WORKSPACE_CACHE_HIGH_WATERMARK_KEY = "org.opencastproject.workspace.cache.high.watermark";
+  /** Configuration key for the share of the size budget eviction frees the workspace down to */
+  public static final String WORKSPACE_CACHE_LOW_WATERMARK_KEY = "org.opencastproject.workspace.cache.low.watermark";
+  /** Configuration key for fetching files from the workspaces of other nodes */
+  public static final String WORKSPACE_PEER_FETCH_KEY = "org.opencastproject.workspace.peer.fetch";
+
+  /** Service type of the endpoint serving workspace files to other nodes */
+  static final String PEER_SERVICE_TYPE = "org.opencastproject.workspace.peer";
+
+  /** Maximum number of peers asked for a file before falling back to the working file repository */
+  private static final int MAX_PEER_ATTEMPTS = 3;
+
+  /** Path of a media package element file in the working file repository */
+  private static final Pattern ELEMENT_PATH_PATTERN = Pattern.compile(
+          ".*" + WorkingFileRepository.MEDIAPACKAGE_PATH_PREFIX + "([^/]+)/([^/]+)/([^/]+)");
+
+  /** Extension of the files the working file repository keeps the md5 checksums of its files in */
+  private static final String MD5_EXTENSION = ".md5";
+
+  /** Maximum number of checksums of workspace files kept in memory */
+  private static final int CHECKSUM_CACHE_SIZE = 10000;
+
+  /** Default maximum number of segments a download is split into */
+  private static final int DEFAULT_DOWNLOAD_PARALLEL = 4;
+  /** Default minimum size of a download segment in MiB */
+  private static final long DEFAULT_DOWNLOAD_SEGMENT_SIZE = 64;
+  /** How often requests waiting for a running download log its progress, in milliseconds */
+  private static final long DOWNLOAD_PROGRESS_INTERVAL = 30000L;
+  /** Default share of the size budget at which files are evicted */
+  private static final double DEFAULT_CACHE_HIGH_WATERMARK = 0.9;
+  /** Default share of the size budget eviction frees the workspace down to */
+  private static final double DEFAULT_CACHE_LOW_WATERMARK = 0.8;
 
   /** Workspace JMX type */
   private static final String JMX_WORKSPACE_TYPE = "Workspace";
 
+  /** Workspace cache JMX type */
+  private static final String JMX_WORKSPACE_CACHE_TYPE = "WorkspaceCache";
+
+  /** Workspace downloads JMX type */
+  private static final String JMX_WORKSPACE_DOWNLOADS_TYPE = "WorkspaceDownloads";
+
   /** Unknown file name string */
   private static final String UNKNOWN_FILENAME = "unknown";
 
@@ -137,6 +202,12 @@ public final class WorkspaceImpl implements Workspace {
   /** The JMX bean object instance */
   private ObjectInstance registeredMXBean;
 
+  /** The JMX cache bean object instance */
+  private ObjectInstance registeredCacheMXBean;
+
+  /** The JMX downloads bean object instance */
+  private ObjectInstance registeredDownloadsMXBean;
+
   private final Object lock = new Object();
 
   /** The workspace root directory */
@@ -149,6 +220,9 @@ public final class WorkspaceImpl implements Workspace {
 
   private SecurityService securityService = null;
 
+  /** The service registry, used to find the job files are requested for */
+  private volatile ServiceRegistry serviceRegistry = null;
+
   /** The working file repository */
   private WorkingFileRepository wfr = null;
 
@@ -169,6 +243,29 @@ public final class WorkspaceImpl implements Workspace {
   /** The workspce cleaner */
   private WorkspaceCleaner workspaceCleaner = null;
 
+  /** Writes remote files to the workspace */
+  private RangedDownloader downloader = null;
+
+  /** Lets concurrent requests for the same remote file share a single download, if enabled */
+  private DownloadCoalescer coalescer = null;
+
+  /** Keeps the workspace within its size budget, if one is configured */
+  private WorkspaceCacheManager cache = null;
+
+  /** Runs the evictions of the cache */
+  private ExecutorService cacheExecutor = null;
+
+  /** If true, files held by other nodes are fetched from there instead of the working file repository */
+  private boolean peerFetchEnabled = false;
+
+  /** The md5 checksums of workspace files known from downloading them, by absolute path */
+  private final Map<String, KnownChecksum> checksums = new LinkedHashMap<String, KnownChecksum>(16, 0.75f, true) {
+    @Override
+    protected boolean removeEldestEntry(Map.Entry<String, KnownChecksum> eldest) {
+      return size() > CHECKSUM_CACHE_SIZE;
+    }
+  };
+
   public WorkspaceImpl() {
   }
 
@@ -290,8 +387,83 @@ public final class WorkspaceImpl implements Workspace {
       }
     }
 
+    // Set up segmented downloads
+    int downloadParallel = DEFAULT_DOWNLOAD_PARALLEL;
+    if (ensureContextProp(cc, WORKSPACE_DOWNLOAD_PARALLEL_KEY)) {
+      String parallel = cc.getBundleContext().getProperty(WORKSPACE_DOWNLOAD_PARALLEL_KEY);
+      try {
+        downloadParallel = Integer.parseInt(parallel);
+      } catch (NumberFormatException e) {
+        logger.warn("Invalid configuration for workspace download parallelism ({}={})",
+                WORKSPACE_DOWNLOAD_PARALLEL_KEY, parallel);
+      }
+    }
+    long downloadSegmentSize = DEFAULT_DOWNLOAD_SEGMENT_SIZE;
+    if (ensureContextProp(cc, WORKSPACE_DOWNLOAD_SEGMENT_SIZE_KEY)) {
+      String size = cc.getBundleContext().getProperty(WORKSPACE_DOWNLOAD_SEGMENT_SIZE_KEY);
+      try {
+        downloadSegmentSize = Long.parseLong(size);
+      } catch (NumberFormatException e) {
+        logger.warn("Invalid configuration for workspace download segment size ({}={})",
+                WORKSPACE_DOWNLOAD_SEGMENT_SIZE_KEY, size);
+      }
+    }
+    downloader = new RangedDownloader(downloadParallel, downloadSegmentSize * 1024 * 1024);
+    boolean downloadCoalesce = true;
+    if (ensureContextProp(cc, WORKSPACE_DOWNLOAD_COALESCE_KEY)) {
+      downloadCoalesce = BooleanUtils.toBoolean(cc.getBundleContext().getProperty(WORKSPACE_DOWNLOAD_COALESCE_KEY));
+    }
+    if (downloadCoalesce) {
+      coalescer = new DownloadCoalescer(downloader, (src, dst) -> locked(dst, copyOrLink(src)),
+              DOWNLOAD_PROGRESS_INTERVAL);
+      registeredDownloadsMXBean = JmxUtil.registerMXBean(coalescer, JMX_WORKSPACE_DOWNLOADS_TYPE);
+    }
+
     registeredMXBean = JmxUtil.registerMXBean(workspaceBean, JMX_WORKSPACE_TYPE);
 
+    // Set up the size-bounded cache
+    long cacheMaxSize = 0;
+    if (ensureContextProp(cc, WORKSPACE_CACHE_MAX_SIZE_KEY)) {
+      String size = cc.getBundleContext().getProperty(WORKSPACE_CACHE_MAX_SIZE_KEY);
+      try {
+        cacheMaxSize = Long.parseLong(size);
+      } catch (NumberFormatException e) {
+        logger.warn("Invalid configuration for workspace cache size ({}={})", WORKSPACE_CACHE_MAX_SIZE_KEY, size);
+      }
+    }
+    if (cacheMaxSize > 0) {
+      double highWatermark = DEFAULT_CACHE_HIGH_WATERMARK;
+      double lowWatermark = DEFAULT_CACHE_LOW_WATERMARK;
+      try {
+        if (ensureContextProp(cc, WORKSPACE_CACHE_HIGH_WATERMARK_KEY)) {
+          highWatermark = Double.parseDouble(cc.getBundleContext().getProperty(WORKSPACE_CACHE_HIGH_WATERMARK_KEY));
+        }
+        if (ensureContextProp(cc, WORKSPACE_CACHE_LOW_WATERMARK_KEY)) {
+          lowWatermark = Double.parseDouble(cc.getBundleContext().getProperty(WORKSPACE_CACHE_LOW_WATERMARK_KEY));
+        }
+      } catch (NumberFormatException e) {
+        logger.warn("Invalid configuration for workspace cache watermarks, using {} and {}",
+                DEFAULT_CACHE_HIGH_WATERMARK, DEFAULT_CACHE_LOW_WATERMARK);
+        highWatermark = DEFAULT_CACHE_HIGH_WATERMARK;
+        lowWatermark = DEFAULT_CACHE_LOW_WATERMARK;
+      }
+      cacheExecutor = Executors.newSingleThreadExecutor(r -> {
+        Thread thread = new Thread(r, "workspace-cache");
+        thread.setDaemon(true);
+        return thread;
+      });
+      cache = new WorkspaceCacheManager(new File(wsRoot), cacheMaxSize * 1024 * 1024, highWatermark, lowWatermark,
+              this::isJobActive, System::currentTimeMillis, cacheExecutor);
+      cache.start();
+      registeredCacheMXBean = JmxUtil.registerMXBean(cache, JMX_WORKSPACE_CACHE_TYPE);
+      logger.info("Limiting the workspace to {} MiB", cacheMaxSize);
+    }
+
+    if (ensureContextProp(cc, WORKSPACE_PEER_FETCH_KEY)) {
+      peerFetchEnabled = BooleanUtils.toBoolean(cc.getBundleContext().getProperty(WORKSPACE_PEER_FETCH_KEY));
+      logger.info("Fetching files from other workspaces {}", peerFetchEnabled ? "enabled" : "disabled");
+    }
+
     // Start cleanup scheduler if we have sensible cleanup values:
     if (garbageCollectionPeriodInSeconds > 0) {
       workspaceCleaner = new WorkspaceCleaner(this, garbageCollectionPeriodInSeconds, maxAgeInSeconds);
@@ -329,6 +501,18 @@ public final class WorkspaceImpl implements Workspace {
     if (workspaceCleaner != null) {
       workspaceCleaner.shutdown();
     }
+    if (downloader != null) {
+      downloader.shutdown();
+    }
+    if (coalescer != null) {
+      JmxUtil.unregisterMXBean(registeredDownloadsMXBean);
+      coalescer = null;
+    }
+    if (cache != null) {
+      JmxUtil.unregisterMXBean(registeredCacheMXBean);
+      cacheExecutor.shutdownNow();
+      cache = null;
+    }
   }
 
   @Override
@@ -358,12 +542,14 @@ public final class WorkspaceImpl implements Workspace {
           // if the file exists in the workspace, but is older than the wfr copy, replace it
           if (workspaceFileLastModified < wfrCopy.lastModified()) {
             logger.debug("Replacing {} with an updated version from the file repository", inWs.getAbsolutePath());
+            cacheMiss();
             locked(inWs, copyOrLink(wfrCopy));
           } else {
             logger.debug("{} is up to date", inWs);
+            cacheHit();
           }
           logger.debug("Getting {} directly from working file repository root at {}", uri, inWs);
-          return new File(inWs.getAbsolutePath());
+          return touch(new File(inWs.getAbsolutePath()));
         } else {
           logger.warn("The working file repository and workspace paths don't match. Looking up {} at {} failed",
                   uri.toString(), wfrCopy.getAbsolutePath());
@@ -376,11 +562,75 @@ public final class WorkspaceImpl implements Workspace {
     if (asset != null) {
       logger.debug("Copy local file {} from asset manager to workspace", asset);
       Files.copy(asset.toPath(), inWs.toPath(), StandardCopyOption.REPLACE_EXISTING);
-      return new File(inWs.getAbsolutePath());
+      return touch(new File(inWs.getAbsolutePath()));
+    }
+
+    // do HTTP transfer, keeping the file from being evicted while it is written
+    final DownloadCoalescer.Download download = dst -> {
+      if (cache != null) {
+        cache.pin(dst);
+      }
+      try {
+        return locked(dst, downloadIfNecessary(uri));
+      } finally {
+        if (cache != null) {
+          cache.unpin(dst);
+        }
+      }
+    };
+    final DownloadCoalescer downloads = coalescer;
+    return touch(downloads == null ? download.run(inWs) : downloads.download(uri, inWs, download));
+  }
+
+  /** Records an access to a workspace file on behalf of the current job, if the workspace is size-bounded. */
+  private File touch(File file) {
+    if (cache != null) {
+      final ServiceRegistry registry = serviceRegistry;
+      final Job job = registry == null ? null : registry.getCurrentJob();
+      cache.touch(file, job == null ? WorkspaceCacheManager.NO_JOB : job.getId());
     }
+    return file;
+  }
 
-    // do HTTP transfer
-    return locked(inWs, downloadIfNecessary(uri));
+  /** Tells the cache that a file or directory has been deleted from the workspace. */
+  private void forget(File file) {
+    synchronized (checksums) {
+      checksums.remove(file.getAbsolutePath());
+    }
+    if (cache != null) {
+      cache.remove(file);
+    }
+  }
+
+  private void cacheHit() {
+    if (cache != null) {
+      cache.hit();
+    }
+  }
+
+  private void cacheMiss() {
+    if (cache != null) {
+      cache.miss();
+    }
+  }
+
+  /**
+   * Checks whether a job has not terminated yet. Jobs are considered active if their state cannot be determined, so
+   * their files are not evicted by mistake.
+   */
+  private boolean isJobActive(long id) {
+    final ServiceRegistry registry = serviceRegistry;
+    if (registry == null) {
+      return true;
+    }
+    try {
+      return registry.getJob(id).getStatus().isActive();
+    } catch (NotFoundException e) {
+      return false;
+    } catch (ServiceRegistryException e) {
+      logger.warn("Unable to look up the state of job {}: {}", id, e.getMessage());
+      return true;
+    }
   }
 
   @Override
@@ -454,13 +704,16 @@ public final class WorkspaceImpl implements Workspace {
         return right(none(File.class));
       case HttpServletResponse.SC_NOT_MODIFIED:
         logger.debug("{} has not been modified.", url);
+        cacheHit();
         return right(some(dst));
       case HttpServletResponse.SC_ACCEPTED:
         logger.debug("{} is not ready, try again later.", url);
         return left(response.getHeaders("token")[0].getValue());
       case HttpServletResponse.SC_OK:
         logger.debug("Downloading {} to {}", url, dst.getAbsolutePath());
-        return right(some(downloadTo(response, dst)));
+        cacheMiss();
+        rememberChecksum(dst, downloader.download(trustedHttpClient, response, src, dst));
+        return right(some(dst));
       default:
         logger.warn("Received unexpected response status {} while trying to download from {}", status, url);
         FileUtils.deleteQuietly(dst);
@@ -478,7 +731,11 @@ public final class WorkspaceImpl implements Workspace {
       final HttpGet get = new HttpGet(builder.build());
       // if the destination file already exists add the If-None-Match header
       if (dst.isFile() && dst.length() > 0) {
-        get.setHeader("If-None-Match", md5(dst));
+        String md5 = knownChecksum(dst);
+        if (md5 == null) {
+          md5 = rememberChecksum(dst, md5(dst));
+        }
+        get.setHeader("If-None-Match", md5);
       }
       return get;
     } catch (URISyntaxException e) {
@@ -493,6 +750,9 @@ public final class WorkspaceImpl implements Workspace {
    * @return the file
    */
   private File downloadIfNecessary(final URI src, final File dst) throws IOException, NotFoundException {
+    if (downloadFromPeer(src, dst)) {
+      return dst;
+    }
     HttpGet get = createGetRequest(src, dst, Collections.emptyMap());
     while (true) {
       // run the http request and handle its response
@@ -527,6 +787,110 @@ public final class WorkspaceImpl implements Workspace {
     }
   }
 
+  /**
+   * Downloads a media package element file from the workspace of another node instead of the working file repository.
+   * Peers reported to hold the element are asked in order of their load, and only a copy with the same md5 checksum as
+   * the one in the working file repository is accepted.
+   *
+   * @return whether the file was downloaded
+   */
+  private boolean downloadFromPeer(final URI src, final File dst) {
+    final ServiceRegistry registry = serviceRegistry;
+    if (!peerFetchEnabled || registry == null || dst.isFile()
+            || !src.toString().startsWith(wfr.getBaseUri().toString())) {
+      return false;
+    }
+    final Matcher matcher = ELEMENT_PATH_PATTERN.matcher(src.getPath());
+    if (!matcher.matches()) {
+      return false;
+    }
+    final String mediaPackageId = matcher.group(1);
+    final String elementId = matcher.group(2);
+    final String fileName = matcher.group(3);
+
+    try {
+      final Set<String> holders = new HashSet<>(registry.getHostsHoldingElement(mediaPackageId, elementId));
+      holders.remove(registry.getRegistryHostname());
+      if (holders.isEmpty()) {
+        return false;
+      }
+      int attempts = 0;
+      String md5 = null;
+      for (ServiceRegistration peer : registry.getServiceRegistrationsByLoad(PEER_SERVICE_TYPE)) {
+        if (!holders.contains(peer.getHost())) {
+          continue;
+        }
+        if (md5 == null) {
+          md5 = getRepositoryMd5(src);
+          if (md5 == null) {
+            return false;
+          }
+        }
+        final URI peerUri = URI.create(UrlSupport.concat(peer.getHost(), peer.getPath(),
+                WorkingFileRepository.MEDIAPACKAGE_PATH_PREFIX, mediaPackageId, elementId, fileName));
+        if (downloadFromPeer(peerUri, md5, dst)) {
+          cacheMiss();
+          return true;
+        }
+        if (++attempts == MAX_PEER_ATTEMPTS) {
+          break;
+        }
+      }
+    } catch (ServiceRegistryException e) {
+      logger.warn("Unable to look up the peers holding {}: {}", src, e.getMessage());
+    }
+    return false;
+  }
+
+  /** Downloads a file from a peer if its copy matches the given md5 checksum. */
+  private boolean downloadFromPeer(final URI peerUri, final String md5, final File dst) {
+    final HttpGet get = new HttpGet(peerUri);
+    get.setHeader("If-Match", "\"" + md5 + "\"");
+    HttpResponse response = null;
+    try {
+      response = trustedHttpClient.execute(get);
+      final int status = response.getStatusLine().getStatusCode();
+      if (status != SC_OK) {
+        logger.debug("Peer cannot serve {}: {}", peerUri, status);
+        return false;
+      }
+      logger.debug("Downloading {} to {}", peerUri, dst);
+      rememberChecksum(dst, downloader.download(trustedHttpClient, response, peerUri, dst));
+      return true;
+    } catch (IOException e) {
+      logger.info("Unable to download {}: {}", peerUri, e.getMessage());
+      FileUtils.deleteQuietly(dst);
+      return false;
+    } finally {
+      closeQuietly(response);
+    }
+  }
+
+  /** Returns the md5 checksum the working file repository sends as entity tag of a file, or null if there is none. */
+  private String getRepositoryMd5(final URI src) {
+    HttpResponse response = null;
+    try {
+      response = trustedHttpClient.execute(new HttpHead(src));
+      return response.getStatusLine().getStatusCode() == SC_OK ? RangedDownloader.entityTag(response) : null;
+    } catch (TrustedHttpClientException e) {
+      logger.debug("Unable to get the checksum of {}: {}", src, e.getMessage());
+      return null;
+    } finally {
+      closeQuietly(response);
+    }
+  }
+
+  /** Releases the connection of a response, if any. */
+  private void closeQuietly(HttpResponse response) {
+    if (response != null) {
+      try {
+        trustedHttpClient.close(response);
+      } catch (IOException e) {
+        logger.debug("Unable to close response: {}", e.getMessage());
+      }
+    }
+  }
+
   /**
    * {@link #downloadIfNecessary(java.net.URI, java.io.File)} as a function.
    * <code>src_uri -&gt; dst_file -&gt; dst_file</code>
@@ -540,20 +904,62 @@ public final class WorkspaceImpl implements Workspace {
     };
   }
 
+  @Override
+  public Checksum getChecksum(final URI uri) {
+    final File file = toWorkspaceFile(uri);
+    if (!file.isFile()) {
+      return null;
+    }
+    String md5 = knownChecksum(file);
+    if (md5 == null) {
+      md5 = getRepositoryChecksum(uri, file);
+    }
+    return md5 == null ? null : Checksum.create(ChecksumType.DEFAULT_TYPE, md5);
+  }
+
   /**
-   * Download content of an HTTP response to a file.
-   *
-   * @return the destination file
+   * Reads the checksum the working file repository stored along with a file, if the repository is locally available
+   * and the workspace file is an up to date copy of the one in the repository.
    */
-  private static File downloadTo(final HttpResponse response, final File dst) throws IOException {
-    // ignore return value
-    dst.createNewFile();
-    try (InputStream in = response.getEntity().getContent()) {
-      try (OutputStream out = new FileOutputStream(dst)) {
-        IOUtils.copyLarge(in, out);
+  private String getRepositoryChecksum(final URI uri, final File file) {
+    if (pathMappable == null || StringUtils.isBlank(pathMappable.getUrlPrefix())
+            || !uri.toString().startsWith(pathMappable.getUrlPrefix())) {
+      return null;
+    }
+    final File wfrCopy = workingFileRepositoryFile(uri.toString().substring(pathMappable.getUrlPrefix().length()));
+    final File md5File = new File(wfrCopy.getAbsolutePath() + MD5_EXTENSION);
+    // The repository writes the checksum after the file, so an older checksum belongs to a previous version
+    if (!wfrCopy.isFile() || wfrCopy.length() != file.length() || file.lastModified() < wfrCopy.lastModified()
+            || md5File.lastModified() < wfrCopy.lastModified()) {
+      return null;
+    }
+    try {
+      return StringUtils.trimToNull(FileUtils.readFileToString(md5File, "UTF-8"));
+    } catch (IOException e) {
+      logger.debug("Unable to read the checksum of {}: {}", wfrCopy, e.getMessage());
+      return null;
+    }
+  }
+
+  /** Returns the md5 checksum recorded for a workspace file, unless the file has changed since. */
+  private String knownChecksum(final File file) {
+    synchronized (checksums) {
+      final KnownChecksum known = checksums.get(file.getAbsolutePath());
+      if (known != null && known.length == file.length() && known.lastModified == file.lastModified()) {
+        return known.md5;
       }
     }
-    return dst;
+    return null;
+  }
+
+  /** Records the md5 checksum of a workspace file as it is now. */
+  private String rememberChecksum(final File file, final String md5) {
+    if (md5 != null) {
+      synchronized (checksums) {
+        checksums.put(file.getAbsolutePath(), new KnownChecksum(file.length(), file.lastModified(), md5));
+      }
+    }
+    return md5;
   }
 
   /**
@@ -615,6 +1021,7 @@ public final class WorkspaceImpl implements Workspace {
       synchronized (lock) {
         File mpElementDir = f.getParentFile();
         FileUtils.forceDelete(f);
+        forget(f);
 
         // Remove containing folder if a mediapackage element or a not a static collection
         if (isMediaPackage || !isStaticCollection(collectionId)) {
@@ -637,6 +1044,7 @@ public final class WorkspaceImpl implements Workspace {
     // delete locally
     final File f = workspaceFile(WorkingFileRepository.MEDIAPACKAGE_PATH_PREFIX, mediaPackageID, mediaPackageElementID);
     FileUtils.deleteQuietly(f);
+    forget(f);
     FileSupport.delete(f.getParentFile());
     // delete in WFR
     wfr.delete(mediaPackageID, mediaPackageElementID);
@@ -673,6 +1081,7 @@ public final class WorkspaceImpl implements Workspace {
         }
       }
     }
+    touch(workspaceFile);
     // wait until the file appears on the WFR node
     waitForResource(uri, HttpServletResponse.SC_OK, "File %s does not appear in WFR");
     return uri;
@@ -714,6 +1123,7 @@ public final class WorkspaceImpl implements Workspace {
       IoSupport.closeQuietly(tee);
       IoSupport.closeQuietly(out);
     }
+    touch(tempFile);
     waitForResource(uri, HttpServletResponse.SC_OK, "File %s does not appear in WFR");
     return uri;
   }
@@ -743,6 +1153,8 @@ public final class WorkspaceImpl implements Workspace {
       FileUtils.forceMkdir(copy.getParentFile());
       FileUtils.deleteQuietly(copy);
       FileUtils.moveFile(original, copy);
+      forget(original);
+      touch(copy);
       if (!isStaticCollection(collection)) {
         FileSupport.delete(original.getParentFile());
       }
@@ -765,6 +1177,7 @@ public final class WorkspaceImpl implements Workspace {
     final File f = workspaceFile(WorkingFileRepository.COLLECTION_PATH_PREFIX, collectionId,
             PathSupport.toSafeName(fileName));
     FileUtils.deleteQuietly(f);
+    forget(f);
     if (removeCollection) {
       FileSupport.delete(f.getParentFile());
     }
@@ -894,6 +1307,19 @@ public final class WorkspaceImpl implements Workspace {
     this.securityService = securityService;
   }
 
+  @Reference(
+      name = "serviceRegistry",
+      cardinality = ReferenceCardinality.OPTIONAL,
+      policy = ReferencePolicy.DYNAMIC,
+      unbind = "unsetServiceRegistry")
+  public void setServiceRegistry(ServiceRegistry serviceRegistry) {
+    this.serviceRegistry = serviceRegistry;
+  }
+
+  public void unsetServiceRegistry(ServiceRegistry serviceRegistry) {
+    this.serviceRegistry = null;
+  }
+
   private static final long TIMEOUT = 2L * 60L * 1000L;
   private static final long INTERVAL = 1000L;
 
@@ -945,6 +1371,7 @@ public final class WorkspaceImpl implements Workspace {
 
       // Delete old files
       if (FileUtils.deleteQuietly(file)) {
+        forget(file);
         logger.info("Deleted {}", file);
       } else {
         logger.warn("Could not delete {}", file);
@@ -971,6 +1398,7 @@ public final class WorkspaceImpl implements Workspace {
       logger.debug("Clean workspace media package directory {}", mediaPackageDir);
       FileUtils.deleteDirectory(mediaPackageDir);
     }
+    forget(mediaPackageDir);
   }
 
   @Override
@@ -978,6 +1406,37 @@ public final class WorkspaceImpl implements Workspace {
     return wsRoot;
   }
 
+  @Override
+  public Map<String, Map<String, Long>> getLocalElementSizes() {
+    final Map<String, Map<String, Long>> sizes = new HashMap<>();
+    final File[] mediaPackageDirs = workspaceFile(WorkingFileRepository.MEDIAPACKAGE_PATH_PREFIX)
+            .listFiles(File::isDirectory);
+    if (mediaPackageDirs == null) {
+      return sizes;
+    }
+    for (File mediaPackageDir : mediaPackageDirs) {
+      final File[] elementDirs = mediaPackageDir.listFiles(File::isDirectory);
+      if (elementDirs == null) {
+        continue;
+      }
+      for (File elementDir : elementDirs) {
+        final File[] files = elementDir.listFiles(File::isFile);
+        if (files == null) {
+          continue;
+        }
+        // Files with unique names are copies of the same element, so count the largest file only
+        long size = 0L;
+        for (File file : files) {
+          size = Math.max(size, file.length());
+        }
+        if (size > 0L) {
+          sizes.computeIfAbsent(mediaPackageDir.getName(), id -> new HashMap<>()).put(elementDir.getName(), size);
+        }
+      }
+    }
+    return sizes;
+  }
+
   private class DeleteOnCloseFileInputStream extends FileInputStream {
     private File file;
 
@@ -993,9 +1452,24 @@ public final class WorkspaceImpl implements Workspace {
         if (file != null) {
           logger.debug("Cleaning up {}", file);
           file.delete();
+          forget(file);
           file = null;
         }
       }
     }
   }
+
+  /** The md5 checksum of a file, along with the size and modification time the file had when it was computed. */
+  private static final class KnownChecksum {
+    private final long length;
+    private final long lastModified;
+    private final String md5;
+
+    KnownChecksum(long length, long lastModified, String md5) {
+      this.length = length;
+      this.lastModified = lastModified;
+      this.md5 = md5;
+    }
+  }
+
 }
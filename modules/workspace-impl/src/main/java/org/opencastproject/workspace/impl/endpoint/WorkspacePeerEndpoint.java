@@ -0,0 +1,190 @@
+/**
+ * Licensed to The Apereo Foundation under one or more contributor license
+ * agreements. See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ *
+ * The Apereo Foundation licenses this file to you under the Educational
+ * Community License, Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License. You may obtain a copy of the License
+ * at:
+ *
+ *   http://opensource.org/licenses/ecl2.txt
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ *
+ */
+
+
+package org.opencastproject.workspace.impl.endpoint;
+
+import static javax.servlet.http.HttpServletResponse.SC_NOT_FOUND;
+import static javax.servlet.http.HttpServletResponse.SC_OK;
+import static javax.servlet.http.HttpServletResponse.SC_PARTIAL_CONTENT;
+import static javax.servlet.http.HttpServletResponse.SC_PRECONDITION_FAILED;
+import static org.opencastproject.util.MimeTypes.getMimeType;
+import static org.opencastproject.util.RestUtil.fileResponse;
+import static org.opencastproject.util.RestUtil.partialFileResponse;
+import static org.opencastproject.util.data.Option.some;
+import static org.opencastproject.util.doc.rest.RestParameter.Type.STRING;
+
+import org.opencastproject.util.FileRangeStreamingOutput;
+import org.opencastproject.util.PathSupport;
+import org.opencastproject.util.doc.rest.RestParameter;
+import org.opencastproject.util.doc.rest.RestQuery;
+import org.opencastproject.util.doc.rest.RestResponse;
+import org.opencastproject.util.doc.rest.RestService;
+import org.opencastproject.workingfilerepository.api.WorkingFileRepository;
+import org.opencastproject.workspace.api.Workspace;
+
+import org.apache.commons.codec.digest.DigestUtils;
+import org.apache.commons.lang3.StringUtils;
+import org.osgi.service.component.annotations.Component;
+import org.osgi.service.component.annotations.Reference;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import javax.ws.rs.GET;
+import javax.ws.rs.HeaderParam;
+import javax.ws.rs.Path;
+import javax.ws.rs.PathParam;
+import javax.ws.rs.core.Response;
+
+/**
+ * Serves the media package element files held in the local workspace to the workspaces of other nodes, so they do not
+ * all have to fetch them from the working file repository.
+ */
+@Path("/")
+@RestService(
+  name = "workspacepeer",
+  title = "Workspace Peer Service",
+  abstractText = "Serves media package element files held in the workspace of this node to other nodes.",
+  notes = {
+    "All paths above are relative to the REST endpoint base (something like http://your.server/workspace)",
+    "Files are tagged with their md5 checksum. Clients should send the checksum of the working file repository copy "
+        + "as If-Match header to make sure they receive the same file."
+  })
+@Component(
+  property = {
+    "service.description=Workspace Peer REST Endpoint",
+    "opencast.service.type=org.opencastproject.workspace.peer",
+    "opencast.service.path=/workspace"
+  },
+  immediate = true,
+  service = { WorkspacePeerEndpoint.class }
+)
+public class WorkspacePeerEndpoint {
+
+  /** The logging facility */
+  private static final Logger logger = LoggerFactory.getLogger(WorkspacePeerEndpoint.class);
+
+  /** Number of checksums kept in memory */
+  private static final int DIGEST_CACHE_SIZE = 1000;
+
+  /** The local workspace */
+  private Workspace workspace;
+
+  /** Checksums of recently served files, so that popular files are not read twice per request */
+  private final Map<String, Digest> digests = new LinkedHashMap<String, Digest>(16, 0.75f, true) {
+    @Override
+    protected boolean removeEldestEntry(Map.Entry<String, Digest> eldest) {
+      return size() > DIGEST_CACHE_SIZE;
+    }
+  };
+
+  @Reference(name = "workspace")
+  public void setWorkspace(Workspace workspace) {
+    this.workspace = workspace;
+  }
+
+  @GET
+  @Path(WorkingFileRepository.MEDIAPACKAGE_PATH_PREFIX + "{mediaPackageID}/{mediaPackageElementID}/{fileName}")
+  @RestQuery(
+    name = "get",
+    description = "Gets a media package element file from the workspace of this node",
+    returnDescription = "The file",
+    pathParameters = {
+      @RestParameter(name = "mediaPackageID", description = "the mediapackage identifier", isRequired = true,
+          type = STRING),
+      @RestParameter(name = "mediaPackageElementID", description = "the mediapackage element identifier",
+          isRequired = true, type = STRING),
+      @RestParameter(name = "fileName", description = "the file name", isRequired = true, type = STRING)
+    },
+    responses = {
+      @RestResponse(responseCode = SC_OK, description = "File returned"),
+      @RestResponse(responseCode = SC_PARTIAL_CONTENT, description = "Requested range of the file returned"),
+      @RestResponse(responseCode = SC_PRECONDITION_FAILED, description = "The file does not match the checksum"),
+      @RestResponse(responseCode = SC_NOT_FOUND, description = "The file is not held in the workspace")
+    })
+  public Response get(@PathParam("mediaPackageID") String mediaPackageID,
+          @PathParam("mediaPackageElementID") String mediaPackageElementID, @PathParam("fileName") String fileName,
+          @HeaderParam("If-Match") String ifMatch, @HeaderParam("Range") String range) throws IOException {
+    // The workspace mirrors the layout of the working file repository
+    final File root = new File(workspace.rootDirectory(), WorkingFileRepository.MEDIAPACKAGE_PATH_PREFIX)
+            .getCanonicalFile();
+    final File file = new File(PathSupport.concat(new String[] {
+        root.getPath(), mediaPackageID, mediaPackageElementID, PathSupport.toSafeName(fileName) })).getCanonicalFile();
+    if (!file.toPath().startsWith(root.toPath()) || !file.isFile()) {
+      return Response.status(Response.Status.NOT_FOUND).build();
+    }
+
+    final String md5 = digest(file);
+    final String expected = StringUtils.strip(StringUtils.trimToNull(ifMatch), "\"");
+    if (expected != null && !"*".equals(expected) && !expected.equalsIgnoreCase(md5)) {
+      logger.debug("Workspace copy {} does not match checksum {}", file, expected);
+      return Response.status(Response.Status.PRECONDITION_FAILED).tag(md5).build();
+    }
+
+    if (StringUtils.isNotBlank(range)) {
+      return partialFileResponse(file, getMimeType(fileName), some(fileName), range).tag(md5).build();
+    }
+    return fileResponse(file, getMimeType(fileName), some(fileName)).entity(new FileRangeStreamingOutput(file))
+            .header("Accept-Ranges", "bytes").tag(md5).build();
+  }
+
+  /** Returns the md5 checksum of a file, computing it only if the file changed since it was last served. */
+  private String digest(File file) throws IOException {
+    final String path = file.getAbsolutePath();
+    final long length = file.length();
+    final long lastModified = file.lastModified();
+    synchronized (digests) {
+      final Digest digest = digests.get(path);
+      if (digest != null && digest.length == length && digest.lastModified == lastModified) {
+        return digest.md5;
+      }
+    }
+    final String md5;
+    try (InputStream in = new FileInputStream(file)) {
+      md5 = DigestUtils.md5Hex(in);
+    }
+    synchronized (digests) {
+      digests.put(path, new Digest(length, lastModified, md5));
+    }
+    return md5;
+  }
+
+  /** The checksum of a file along with the attributes it was computed for */
+  private static final class Digest {
+    private final long length;
+    private final long lastModified;
+    private final String md5;
+
+    Digest(long length, long lastModified, String md5) {
+      this.length = length;
+      this.lastModified = lastModified;
+      this.md5 = md5;
+    }
+  }
+
+}
@@ -0,0 +1,91 @@
+/**
+ * Licensed to The Apereo Foundation under one or more contributor license
+ * agreements. See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ *
+ * The Apereo Foundation licenses this file to you under the Educational
+ * Community License, Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License. You may obtain a copy of the License
+ * at:
+ *
+ *   http://opensource.org/licenses/ecl2.txt
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ *
+ */
+
+
+package org.opencastproject.workspace.impl.jmx;
+
+/** Statistics of the size-bounded workspace cache. */
+public interface WorkspaceCacheMXBean {
+
+  /**
+   * Gets the number of requests for remote files which were answered from the workspace
+   *
+   * @return the number of cache hits
+   */
+  long getHits();
+
+  /**
+   * Gets the number of requests for remote files which had to be fetched
+   *
+   * @return the number of cache misses
+   */
+  long getMisses();
+
+  /**
+   * Gets the share of requests answered from the workspace
+   *
+   * @return the hit rate between 0 and 1
+   */
+  double getHitRate();
+
+  /**
+   * Gets the number of files evicted to stay within the size budget
+   *
+   * @return the number of evicted files
+   */
+  long getEvictions();
+
+  /**
+   * Gets the number of bytes freed by evictions
+   *
+   * @return the evicted bytes
+   */
+  long getEvictedBytes();
+
+  /**
+   * Gets the size of all files tracked by the cache
+   *
+   * @return the size in bytes
+   */
+  long getSize();
+
+  /**
+   * Gets the size budget of the cache
+   *
+   * @return the maximum size in bytes
+   */
+  long getMaxSize();
+
+  /**
+   * Gets the number of files tracked by the cache
+   *
+   * @return the number of files
+   */
+  int getFiles();
+
+  /**
+   * Gets the number of files which may currently not be evicted
+   *
+   * @return the number of pinned files
+   */
+  int getPinnedFiles();
+
+}
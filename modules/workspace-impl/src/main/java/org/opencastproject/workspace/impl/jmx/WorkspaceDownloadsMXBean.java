@@ -0,0 +1,55 @@
+/**
+ * Licensed to The Apereo Foundation under one or more contributor license
+ * agreements. See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ *
+ * The Apereo Foundation licenses this file to you under the Educational
+ * Community License, Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License. You may obtain a copy of the License
+ * at:
+ *
+ *   http://opensource.org/licenses/ecl2.txt
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ *
+ */
+
+package org.opencastproject.workspace.impl.jmx;
+
+/** Statistics of the downloads of remote files into the workspace. */
+public interface WorkspaceDownloadsMXBean {
+
+  /**
+   * Gets the downloads which are currently running, along with their progress
+   *
+   * @return the URIs and progress of the running downloads
+   */
+  String[] getRunningDownloads();
+
+  /**
+   * Gets the number of downloads started
+   *
+   * @return the number of downloads
+   */
+  long getDownloads();
+
+  /**
+   * Gets the number of requests which joined a running download of the same file instead of starting their own
+   *
+   * @return the number of joined requests
+   */
+  long getJoinedRequests();
+
+  /**
+   * Gets the number of bytes which did not have to be downloaded since requests joined a running download
+   *
+   * @return the saved bytes
+   */
+  long getSavedBytes();
+
+}
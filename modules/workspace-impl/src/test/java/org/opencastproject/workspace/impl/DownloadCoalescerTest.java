@@ -0,0 +1,190 @@
+/**
+ * Licensed to The Apereo Foundation under one or more contributor license
+ * agreements. See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ *
+ * The Apereo Foundation licenses this file to you under the Educational
+ * Community License, Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License. You may obtain a copy of the License
+ * at:
+ *
+ *   http://opensource.org/licenses/ecl2.txt
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ *
+ */
+
+
+package org.opencastproject.workspace.impl;
+
+import org.opencastproject.util.NotFoundException;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class DownloadCoalescerTest {
+
+  private static final URI SRC = URI.create("http://localhost/files/mediapackage/mp/track/video.mp4");
+
+  @Rule
+  public TemporaryFolder testFolder = new TemporaryFolder();
+
+  private RangedDownloader downloader;
+
+  private DownloadCoalescer coalescer;
+
+  private ExecutorService executor;
+
+  /** Number of downloads actually run */
+  private final AtomicInteger runs = new AtomicInteger();
+
+  /** Keeps the first download running until the test lets it complete */
+  private final CountDownLatch release = new CountDownLatch(1);
+
+  @Before
+  public void setUp() {
+    downloader = new RangedDownloader(1, 1);
+    coalescer = new DownloadCoalescer(downloader, (src, dst) -> FileUtils.copyFile(src, dst), 10);
+    executor = Executors.newCachedThreadPool();
+  }
+
+  @After
+  public void tearDown() {
+    executor.shutdownNow();
+    downloader.shutdown();
+  }
+
+  @Test
+  public void testConcurrentRequestsShareDownload() throws Exception {
+    final File dst = testFolder.newFile("video.mp4");
+    final File unique = new File(testFolder.getRoot(), "video-unique.mp4");
+    final List<Future<File>> requests = new ArrayList<>();
+    requests.add(executor.submit(() -> coalescer.download(SRC, dst, this::blockingDownload)));
+    awaitRuns(1);
+    requests.add(executor.submit(() -> coalescer.download(SRC, dst, this::blockingDownload)));
+    requests.add(executor.submit(() -> coalescer.download(SRC, dst, this::blockingDownload)));
+    requests.add(executor.submit(() -> coalescer.download(SRC, unique, this::blockingDownload)));
+    awaitJoins(3);
+    Assert.assertEquals(1, coalescer.getRunningDownloads().length);
+    release.countDown();
+
+    Assert.assertEquals(dst, requests.get(0).get(5, TimeUnit.SECONDS));
+    Assert.assertEquals(dst, requests.get(1).get(5, TimeUnit.SECONDS));
+    Assert.assertEquals(dst, requests.get(2).get(5, TimeUnit.SECONDS));
+    // a request for a different workspace file gets a copy
+    Assert.assertEquals(unique, requests.get(3).get(5, TimeUnit.SECONDS));
+    Assert.assertEquals("content", FileUtils.readFileToString(unique, StandardCharsets.UTF_8));
+
+    Assert.assertEquals(1, runs.get());
+    Assert.assertEquals(1L, coalescer.getDownloads());
+    Assert.assertEquals(3L, coalescer.getJoinedRequests());
+    Assert.assertEquals(3L * "content".length(), coalescer.getSavedBytes());
+    Assert.assertEquals(0, coalescer.getRunningDownloads().length);
+  }
+
+  @Test
+  public void testMissingFileIsReportedToAllRequests() throws Exception {
+    final File dst = testFolder.newFile("video.mp4");
+    final DownloadCoalescer.Download missing = file -> {
+      runs.incrementAndGet();
+      await(release);
+      throw new NotFoundException();
+    };
+    final Future<File> first = executor.submit(() -> coalescer.download(SRC, dst, missing));
+    awaitRuns(1);
+    final Future<File> second = executor.submit(() -> coalescer.download(SRC, dst, missing));
+    awaitJoins(1);
+    release.countDown();
+
+    assertNotFound(first);
+    assertNotFound(second);
+    Assert.assertEquals(1, runs.get());
+  }
+
+  @Test
+  public void testFailedDownloadIsRetried() throws Exception {
+    final File dst = testFolder.newFile("video.mp4");
+    final Future<File> first = executor.submit(() -> coalescer.download(SRC, dst, file -> {
+      runs.incrementAndGet();
+      await(release);
+      throw new IOException("Connection reset");
+    }));
+    awaitRuns(1);
+    final Future<File> second = executor.submit(() -> coalescer.download(SRC, dst, this::blockingDownload));
+    awaitJoins(1);
+    release.countDown();
+
+    try {
+      first.get(5, TimeUnit.SECONDS);
+      Assert.fail("The failed download must not return a file");
+    } catch (ExecutionException e) {
+      Assert.assertTrue(e.getCause() instanceof IOException);
+    }
+    // the joined request does not fail along with the download it waited for
+    Assert.assertEquals(dst, second.get(5, TimeUnit.SECONDS));
+    Assert.assertEquals(2, runs.get());
+  }
+
+  private File blockingDownload(File dst) throws IOException {
+    runs.incrementAndGet();
+    await(release);
+    FileUtils.writeStringToFile(dst, "content", StandardCharsets.UTF_8);
+    return dst;
+  }
+
+  private static void await(CountDownLatch latch) throws IOException {
+    try {
+      latch.await();
+    } catch (InterruptedException e) {
+      throw new IOException(e);
+    }
+  }
+
+  private void awaitRuns(int expected) throws InterruptedException {
+    for (int i = 0; i < 500 && runs.get() < expected; i++) {
+      Thread.sleep(10);
+    }
+    Assert.assertEquals(expected, runs.get());
+  }
+
+  private void awaitJoins(long expected) throws InterruptedException {
+    for (int i = 0; i < 500 && coalescer.getJoinedRequests() < expected; i++) {
+      Thread.sleep(10);
+    }
+    Assert.assertEquals(expected, coalescer.getJoinedRequests());
+  }
+
+  private static void assertNotFound(Future<File> request) throws Exception {
+    try {
+      request.get(5, TimeUnit.SECONDS);
+      Assert.fail("The download of a missing file must not return a file");
+    } catch (ExecutionException e) {
+      Assert.assertTrue(e.getCause() instanceof NotFoundException);
+    }
+  }
+
+}
@@ -0,0 +1,203 @@
+/**
+ * Licensed to The Apereo Foundation under one or more contributor license
+ * agreements. See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ *
+ * The Apereo Foundation licenses this file to you under the Educational
+ * Community License, Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License. You may obtain a copy of the License
+ * at:
+ *
+ *   http://opensource.org/licenses/ecl2.txt
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ *
+ */
+
+
+package org.opencastproject.workspace.impl;
+
+import static org.easymock.EasyMock.anyObject;
+import static org.easymock.EasyMock.expect;
+
+import org.opencastproject.security.api.TrustedHttpClient;
+
+import org.apache.commons.codec.digest.DigestUtils;
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.input.BrokenInputStream;
+import org.apache.http.HttpResponse;
+import org.apache.http.HttpStatus;
+import org.apache.http.HttpVersion;
+import org.apache.http.client.methods.HttpUriRequest;
+import org.apache.http.entity.InputStreamEntity;
+import org.apache.http.message.BasicHttpResponse;
+import org.easymock.EasyMock;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.SequenceInputStream;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+public class RangedDownloaderTest {
+
+  private static final URI SRC = URI.create("http://localhost:8080/files/mediapackage/mp/track/video.mp4");
+
+  @Rule
+  public TemporaryFolder testFolder = new TemporaryFolder();
+
+  private final byte[] content = new byte[1000];
+
+  /** Range headers of all requests sent to the server */
+  private final List<String> ranges = Collections.synchronizedList(new ArrayList<>());
+
+  private TrustedHttpClient client;
+
+  private RangedDownloader downloader;
+
+  @Before
+  public void setUp() throws Exception {
+    new Random(42).nextBytes(content);
+    // serve the requested ranges, the transfer of the third segment breaks off once
+    client = EasyMock.createNiceMock(TrustedHttpClient.class);
+    expect(client.execute(anyObject(HttpUriRequest.class))).andAnswer(() -> {
+      final String range = ((HttpUriRequest) EasyMock.getCurrentArguments()[0]).getFirstHeader("Range").getValue();
+      final String[] bounds = range.substring("bytes=".length()).split("-");
+      final int start = Integer.parseInt(bounds[0]);
+      final int end = Integer.parseInt(bounds[1]);
+      final boolean broken = start == 500;
+      ranges.add(range);
+      final BasicHttpResponse response = new BasicHttpResponse(HttpVersion.HTTP_1_1, HttpStatus.SC_PARTIAL_CONTENT,
+              "Partial Content");
+      response.setEntity(new InputStreamEntity(broken ? breaksAfter(start, 10) : slice(start, end + 1)));
+      return response;
+    }).anyTimes();
+    EasyMock.replay(client);
+    downloader = new RangedDownloader(4, 100);
+  }
+
+  @After
+  public void tearDown() {
+    downloader.shutdown();
+  }
+
+  @Test
+  public void testParallelDownloadWithResume() throws Exception {
+    final File dst = testFolder.newFile("video.mp4");
+    final HttpResponse response = fullResponse(DigestUtils.md5Hex(content));
+    response.setEntity(new InputStreamEntity(breaksAfter(0, 100)));
+
+    Assert.assertEquals(DigestUtils.md5Hex(content), downloader.download(client, response, SRC, dst));
+    Assert.assertArrayEquals(content, FileUtils.readFileToByteArray(dst));
+    // the first segment is resumed at the byte the initial response broke off
+    Assert.assertTrue(ranges.contains("bytes=100-249"));
+    Assert.assertTrue(ranges.contains("bytes=250-499"));
+    Assert.assertTrue(ranges.contains("bytes=500-749"));
+    Assert.assertTrue(ranges.contains("bytes=510-749"));
+    Assert.assertTrue(ranges.contains("bytes=750-999"));
+  }
+
+  @Test
+  public void testSequentialDownloadWithoutRangeSupport() throws Exception {
+    final File dst = testFolder.newFile("video.mp4");
+    final HttpResponse response = fullResponse(null);
+    response.removeHeaders("Accept-Ranges");
+    response.setEntity(new InputStreamEntity(slice(0, content.length)));
+
+    // the checksum is computed while downloading even if the server does not send one
+    Assert.assertEquals(DigestUtils.md5Hex(content), downloader.download(client, response, SRC, dst));
+    Assert.assertArrayEquals(content, FileUtils.readFileToByteArray(dst));
+    Assert.assertTrue(ranges.isEmpty());
+  }
+
+  @Test
+  public void testChecksumMismatch() throws Exception {
+    final File dst = testFolder.newFile("video.mp4");
+    final HttpResponse response = fullResponse(DigestUtils.md5Hex("something else"));
+    response.setEntity(new InputStreamEntity(slice(0, content.length)));
+
+    try {
+      downloader.download(client, response, SRC, dst);
+      Assert.fail("Download with wrong checksum must fail");
+    } catch (IOException e) {
+      Assert.assertFalse(dst.exists());
+    }
+  }
+
+  @Test
+  public void testConcurrentDownloadsDoNotWaitForEachOther() throws Exception {
+    // more concurrent downloads than segments per download: each segment request is only answered once all downloads
+    // have requested their second segment
+    final int downloads = 3;
+    final CountDownLatch requested = new CountDownLatch(downloads);
+    final TrustedHttpClient blockingClient = EasyMock.createNiceMock(TrustedHttpClient.class);
+    expect(blockingClient.execute(anyObject(HttpUriRequest.class))).andAnswer(() -> {
+      requested.countDown();
+      if (!requested.await(10, TimeUnit.SECONDS)) {
+        throw new IOException("Segments of concurrent downloads have not been requested in parallel");
+      }
+      final BasicHttpResponse response = new BasicHttpResponse(HttpVersion.HTTP_1_1, HttpStatus.SC_PARTIAL_CONTENT,
+              "Partial Content");
+      response.setEntity(new InputStreamEntity(slice(500, content.length)));
+      return response;
+    }).anyTimes();
+    EasyMock.replay(blockingClient);
+    final RangedDownloader twoSegments = new RangedDownloader(2, 100);
+    final ExecutorService callers = Executors.newFixedThreadPool(downloads);
+    try {
+      final List<Future<String>> results = new ArrayList<>();
+      for (int i = 0; i < downloads; i++) {
+        final File dst = testFolder.newFile("video-" + i + ".mp4");
+        final HttpResponse response = fullResponse(DigestUtils.md5Hex(content));
+        response.setEntity(new InputStreamEntity(slice(0, content.length)));
+        results.add(callers.submit(() -> twoSegments.download(blockingClient, response, SRC, dst)));
+      }
+      for (Future<String> result : results) {
+        Assert.assertEquals(DigestUtils.md5Hex(content), result.get(30, TimeUnit.SECONDS));
+      }
+    } finally {
+      callers.shutdownNow();
+      twoSegments.shutdown();
+    }
+  }
+
+  private HttpResponse fullResponse(String md5) {
+    final BasicHttpResponse response = new BasicHttpResponse(HttpVersion.HTTP_1_1, HttpStatus.SC_OK, "OK");
+    response.setHeader("Accept-Ranges", "bytes");
+    response.setHeader("Content-Length", Integer.toString(content.length));
+    if (md5 != null) {
+      response.setHeader("ETag", "\"" + md5 + "\"");
+    }
+    return response;
+  }
+
+  private InputStream slice(int from, int to) {
+    return new ByteArrayInputStream(content, from, to - from);
+  }
+
+  private InputStream breaksAfter(int from, int length) {
+    return new SequenceInputStream(slice(from, from + length), new BrokenInputStream());
+  }
+
+}
@@ -0,0 +1,183 @@
+/**
+ * Licensed to The Apereo Foundation under one or more contributor license
+ * agreements. See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ *
+ * The Apereo Foundation licenses this file to you under the Educational
+ * Community License, Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License. You may obtain a copy of the License
+ * at:
+ *
+ *   http://opensource.org/licenses/ecl2.txt
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ *
+ */
+
+
+package org.opencastproject.workspace.impl;
+
+import static org.opencastproject.workspace.impl.WorkspaceCacheManager.NO_JOB;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+
+public class WorkspaceCacheManagerTest {
+
+  @Rule
+  public TemporaryFolder testFolder = new TemporaryFolder();
+
+  private final AtomicLong clock = new AtomicLong();
+
+  private final Set<Long> activeJobs = new HashSet<>();
+
+  private File root;
+
+  private WorkspaceCacheManager cache;
+
+  @Before
+  public void setUp() throws Exception {
+    root = testFolder.newFolder("workspace");
+    // 1000 bytes, evict at 900 down to 600, run evictions synchronously
+    cache = new WorkspaceCacheManager(root, 1000, 0.9, 0.6, activeJobs::contains, clock::incrementAndGet,
+            Runnable::run);
+  }
+
+  private File file(String path, int size) throws IOException {
+    final File file = new File(root, path);
+    Files.createDirectories(file.getParentFile().toPath());
+    Files.write(file.toPath(), new byte[size]);
+    return file;
+  }
+
+  @Test
+  public void testEvictLeastRecentlyUsed() throws Exception {
+    final File a = file("mediapackage/mp/a/a.mp4", 300);
+    final File b = file("mediapackage/mp/b/b.mp4", 300);
+    final File c = file("mediapackage/mp/c/c.mp4", 300);
+    cache.touch(a, NO_JOB);
+    cache.touch(b, NO_JOB);
+    cache.touch(c, NO_JOB);
+    Assert.assertEquals(900, cache.getSize());
+    Assert.assertEquals(0, cache.getEvictions());
+
+    // a is used again, so b is the least recently used file now
+    cache.touch(a, NO_JOB);
+    final File d = file("mediapackage/mp/d/d.mp4", 100);
+    cache.touch(d, NO_JOB);
+
+    Assert.assertFalse(b.exists());
+    Assert.assertFalse(c.exists());
+    Assert.assertFalse("Empty directories must be removed", c.getParentFile().exists());
+    Assert.assertTrue(a.exists());
+    Assert.assertTrue(d.exists());
+    Assert.assertEquals(400, cache.getSize());
+    Assert.assertEquals(2, cache.getEvictions());
+    Assert.assertEquals(600, cache.getEvictedBytes());
+    Assert.assertEquals(2, cache.getFiles());
+  }
+
+  @Test
+  public void testKeepFilesOfActiveJobs() throws Exception {
+    final File a = file("a", 400);
+    final File b = file("b", 400);
+    activeJobs.add(1L);
+    cache.touch(a, 1L);
+    cache.touch(b, 2L);
+    Assert.assertEquals(2, cache.getPinnedFiles());
+
+    final File c = file("c", 200);
+    cache.touch(c, NO_JOB);
+    Assert.assertTrue("Files of active jobs must not be evicted", a.exists());
+    Assert.assertFalse(b.exists());
+    Assert.assertTrue(c.exists());
+    // job 2 has terminated, so the file is not pinned anymore
+    Assert.assertEquals(1, cache.getPinnedFiles());
+
+    // once the job has terminated, its files can be evicted
+    activeJobs.clear();
+    cache.touch(file("d", 400), NO_JOB);
+    Assert.assertFalse(a.exists());
+    Assert.assertTrue(c.exists());
+    Assert.assertEquals(600, cache.getSize());
+  }
+
+  @Test
+  public void testKeepFilesInTransfer() throws Exception {
+    final File a = file("a", 600);
+    cache.pin(a);
+    cache.touch(a, NO_JOB);
+    final File b = file("b", 350);
+    cache.touch(b, NO_JOB);
+    Assert.assertTrue(a.exists());
+    Assert.assertFalse(b.exists());
+
+    cache.unpin(a);
+    cache.touch(file("c", 350), NO_JOB);
+    Assert.assertFalse(a.exists());
+    Assert.assertEquals(350, cache.getSize());
+  }
+
+  @Test
+  public void testIndexExistingFiles() throws Exception {
+    file("mediapackage/mp/a/a.mp4", 200);
+    file("collection/c/b.xml", 100);
+    cache.start();
+    Assert.assertEquals(2, cache.getFiles());
+    Assert.assertEquals(300, cache.getSize());
+  }
+
+  @Test
+  public void testRemove() throws Exception {
+    cache.touch(file("mediapackage/mp/a/a.mp4", 200), NO_JOB);
+    cache.touch(file("mediapackage/mp/b/b.mp4", 200), NO_JOB);
+    cache.touch(file("mediapackage/other/a/a.mp4", 100), NO_JOB);
+    cache.touch(file("mediapackage/mp-2/a/a.mp4", 50), NO_JOB);
+    cache.touch(file("mediapackage/mp2/a/a.mp4", 50), NO_JOB);
+
+    // siblings sharing the name as prefix are kept
+    cache.remove(new File(root, "mediapackage/mp"));
+    Assert.assertEquals(3, cache.getFiles());
+    Assert.assertEquals(200, cache.getSize());
+
+    cache.remove(new File(root, "mediapackage/mp-2/a/a.mp4"));
+    cache.remove(new File(root, "mediapackage/mp2"));
+    Assert.assertEquals(1, cache.getFiles());
+    Assert.assertEquals(100, cache.getSize());
+
+    // touching a file which no longer exists forgets it as well
+    final File file = new File(root, "mediapackage/other/a/a.mp4");
+    Assert.assertTrue(file.delete());
+    cache.touch(file, NO_JOB);
+    Assert.assertEquals(0, cache.getFiles());
+    Assert.assertEquals(0, cache.getSize());
+  }
+
+  @Test
+  public void testHitRate() {
+    Assert.assertEquals(0.0, cache.getHitRate(), 0.0);
+    cache.hit();
+    cache.hit();
+    cache.hit();
+    cache.miss();
+    Assert.assertEquals(3, cache.getHits());
+    Assert.assertEquals(1, cache.getMisses());
+    Assert.assertEquals(0.75, cache.getHitRate(), 0.0);
+  }
+
+}
@@ -27,13 +27,19 @@ import static org.easymock.EasyMock.expect;
 import org.opencastproject.security.api.Organization;
 import org.opencastproject.security.api.SecurityService;
 import org.opencastproject.security.api.TrustedHttpClient;
+import org.opencastproject.serviceregistry.api.ServiceRegistration;
+import org.opencastproject.serviceregistry.api.ServiceRegistry;
+import org.opencastproject.util.Checksum;
+import org.opencastproject.util.ChecksumType;
 import org.opencastproject.util.NotFoundException;
 import org.opencastproject.util.PathSupport;
 import org.opencastproject.util.UrlSupport;
+import org.opencastproject.workingfilerepository.api.PathMappable;
 import org.opencastproject.workingfilerepository.api.WorkingFileRepository;
 
 import com.entwinemedia.fn.Prelude;
 
+import org.apache.commons.codec.digest.DigestUtils;
 import org.apache.commons.io.FileUtils;
 import org.apache.commons.io.IOUtils;
 import org.apache.http.HttpEntity;
@@ -42,8 +48,12 @@ import org.apache.http.ProtocolVersion;
 import org.apache.http.StatusLine;
 import org.apache.http.client.methods.CloseableHttpResponse;
 import org.apache.http.client.methods.HttpUriRequest;
+import org.apache.http.entity.ByteArrayEntity;
+import org.apache.http.message.BasicHttpResponse;
 import org.apache.http.message.BasicStatusLine;
 import org.easymock.EasyMock;
+import org.osgi.framework.BundleContext;
+import org.osgi.service.component.ComponentContext;
 import org.junit.After;
 import org.junit.Assert;
 import org.junit.Before;
@@ -57,6 +67,10 @@ import java.io.InputStream;
 import java.net.URI;
 import java.net.URL;
 import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
 
 import javax.servlet.http.HttpServletResponse;
 
@@ -269,6 +283,7 @@ public class WorkspaceImplTest {
         .andReturn(new BasicStatusLine(new ProtocolVersion("Http", 1, 1), 200, "Good to go"))
         .anyTimes();
     expect(response.getEntity()).andReturn(httpEntity);
+    expect(response.getFirstHeader(EasyMock.anyString())).andReturn(null).anyTimes();
     TrustedHttpClient trustedHttpClient = EasyMock.createNiceMock(TrustedHttpClient.class);
     expect(trustedHttpClient.execute(anyObject(HttpUriRequest.class))).andReturn(response).anyTimes();
     EasyMock.replay(httpEntity, response, trustedHttpClient);
@@ -278,6 +293,104 @@ public class WorkspaceImplTest {
     Assert.assertEquals(expectedFile, resultingFile);
   }
 
+  @Test
+  public void testGetFromPeer() throws Exception {
+    final byte[] content = "media package element".getBytes(StandardCharsets.UTF_8);
+    final String md5 = DigestUtils.md5Hex(content);
+
+    BundleContext bundleContext = EasyMock.createNiceMock(BundleContext.class);
+    expect(bundleContext.getProperty(WorkspaceImpl.WORKSPACE_PEER_FETCH_KEY)).andReturn("true").anyTimes();
+    ComponentContext cc = EasyMock.createNiceMock(ComponentContext.class);
+    expect(cc.getBundleContext()).andReturn(bundleContext).anyTimes();
+    EasyMock.replay(bundleContext, cc);
+    workspace.deactivate();
+    workspace.activate(cc);
+
+    WorkingFileRepository repo = EasyMock.createNiceMock(WorkingFileRepository.class);
+    EasyMock.expect(repo.getBaseUri()).andReturn(new URI("http://admin/files")).anyTimes();
+    EasyMock.replay(repo);
+    workspace.setRepository(repo);
+
+    Organization organization = EasyMock.createMock(Organization.class);
+    EasyMock.expect(organization.getId()).andReturn("org1").anyTimes();
+    SecurityService securityService = EasyMock.createMock(SecurityService.class);
+    EasyMock.expect(securityService.getOrganization()).andReturn(organization).anyTimes();
+    EasyMock.replay(securityService, organization);
+    workspace.setSecurityService(securityService);
+
+    // worker1 is less loaded but holds an outdated copy, this node's own copy is ignored
+    ServiceRegistration worker1 = EasyMock.createNiceMock(ServiceRegistration.class);
+    expect(worker1.getHost()).andReturn("http://worker1").anyTimes();
+    expect(worker1.getPath()).andReturn("/workspace").anyTimes();
+    ServiceRegistration worker2 = EasyMock.createNiceMock(ServiceRegistration.class);
+    expect(worker2.getHost()).andReturn("http://worker2").anyTimes();
+    expect(worker2.getPath()).andReturn("/workspace").anyTimes();
+    ServiceRegistration worker3 = EasyMock.createNiceMock(ServiceRegistration.class);
+    expect(worker3.getHost()).andReturn("http://worker3").anyTimes();
+    expect(worker3.getPath()).andReturn("/workspace").anyTimes();
+    ServiceRegistry serviceRegistry = EasyMock.createNiceMock(ServiceRegistry.class);
+    expect(serviceRegistry.getRegistryHostname()).andReturn("http://worker4").anyTimes();
+    expect(serviceRegistry.getHostsHoldingElement("mp", "track"))
+            .andReturn(Arrays.asList("http://worker4", "http://worker2", "http://worker1")).anyTimes();
+    expect(serviceRegistry.getServiceRegistrationsByLoad(WorkspaceImpl.PEER_SERVICE_TYPE))
+            .andReturn(Arrays.asList(worker1, worker3, worker2)).anyTimes();
+    EasyMock.replay(worker1, worker2, worker3, serviceRegistry);
+    workspace.setServiceRegistry(serviceRegistry);
+
+    final List<String> requests = new ArrayList<>();
+    TrustedHttpClient httpClient = EasyMock.createNiceMock(TrustedHttpClient.class);
+    expect(httpClient.execute(anyObject(HttpUriRequest.class))).andAnswer(() -> {
+      final HttpUriRequest request = (HttpUriRequest) EasyMock.getCurrentArguments()[0];
+      requests.add(request.getMethod() + " " + request.getURI());
+      final String host = request.getURI().getHost();
+      final boolean matches = !"worker1".equals(host) && ("HEAD".equals(request.getMethod())
+              || ("\"" + md5 + "\"").equals(request.getFirstHeader("If-Match").getValue()));
+      final BasicHttpResponse response = new BasicHttpResponse(new BasicStatusLine(new ProtocolVersion("HTTP", 1, 1),
+              matches ? HttpServletResponse.SC_OK : HttpServletResponse.SC_PRECONDITION_FAILED, null));
+      response.setHeader("ETag", "\"" + md5 + "\"");
+      response.setHeader("Content-Length", Integer.toString(content.length));
+      response.setEntity(new ByteArrayEntity(content));
+      return response;
+    }).anyTimes();
+    EasyMock.replay(httpClient);
+    workspace.setTrustedHttpClient(httpClient);
+
+    File file = workspace.get(URI.create("http://admin/files/mediapackage/mp/track/video.mp4"));
+    Assert.assertArrayEquals(content, FileUtils.readFileToByteArray(file));
+    Assert.assertEquals(Arrays.asList(
+            "HEAD http://admin/files/mediapackage/mp/track/video.mp4",
+            "GET http://worker1/workspace/mediapackage/mp/track/video.mp4",
+            "GET http://worker2/workspace/mediapackage/mp/track/video.mp4"), requests);
+    // the checksum verified during the download is known without reading the file again
+    Assert.assertEquals(Checksum.create(ChecksumType.DEFAULT_TYPE, md5),
+            workspace.getChecksum(URI.create("http://admin/files/mediapackage/mp/track/video.mp4")));
+  }
+
+  @Test
+  public void testGetChecksumFromRepository() throws Exception {
+    final File wfrFile = new File(PathSupport.concat(new String[] { repoRoot, "mediapackage", "mp", "track",
+            "video.mp4" }));
+    FileUtils.write(wfrFile, "media package element", StandardCharsets.UTF_8);
+    final String md5 = DigestUtils.md5Hex("media package element");
+    FileUtils.write(new File(wfrFile.getPath() + ".md5"), md5, StandardCharsets.UTF_8);
+
+    MappableRepository repo = EasyMock.createNiceMock(MappableRepository.class);
+    expect(repo.getBaseUri()).andReturn(URI.create("http://admin/files")).anyTimes();
+    expect(repo.getPathPrefix()).andReturn(repoRoot).anyTimes();
+    expect(repo.getUrlPrefix()).andReturn("http://admin/files").anyTimes();
+    EasyMock.replay(repo);
+    workspace.setRepository(repo);
+
+    final URI uri = URI.create("http://admin/files/mediapackage/mp/track/video.mp4");
+    Assert.assertNull(workspace.getChecksum(uri));
+    workspace.get(uri);
+    Assert.assertEquals(Checksum.create(ChecksumType.DEFAULT_TYPE, md5), workspace.getChecksum(uri));
+
+    // a workspace copy which differs from the repository file does not get its checksum
+    FileUtils.write(workspace.toWorkspaceFile(uri), "modified", StandardCharsets.UTF_8);
+    Assert.assertNull(workspace.getChecksum(uri));
+  }
+
   @Test
   public void testCleanup() throws Exception {
     workspace.cleanup(-1);
@@ -304,4 +417,27 @@ public class WorkspaceImplTest {
     Assert.assertEquals(0L, workspace.getUsedSpace().get().longValue());
   }
 
+  @Test
+  public void testGetLocalElementSizes() throws Exception {
+    Assert.assertTrue(workspace.getLocalElementSizes().isEmpty());
+
+    FileUtils.write(new File(PathSupport.concat(new String[] { workspaceRoot, "mediapackage", "mp", "e1", "a.mov" })),
+            "asdf", StandardCharsets.UTF_8);
+    FileUtils.write(new File(PathSupport.concat(new String[] { workspaceRoot, "mediapackage", "mp", "e1", "a-1.mov" })),
+            "asdf", StandardCharsets.UTF_8);
+    FileUtils.write(new File(PathSupport.concat(new String[] { workspaceRoot, "mediapackage", "mp", "e2", "b.xml" })),
+            "asdfgh", StandardCharsets.UTF_8);
+    FileUtils.write(new File(PathSupport.concat(new String[] { workspaceRoot, "collection", "c1", "bar.mov" })),
+            "asdf", StandardCharsets.UTF_8);
+
+    Map<String, Map<String, Long>> sizes = workspace.getLocalElementSizes();
+    Assert.assertEquals(1, sizes.size());
+    Assert.assertEquals(4L, sizes.get("mp").get("e1").longValue());
+    Assert.assertEquals(6L, sizes.get("mp").get("e2").longValue());
+  }
+
+  /** A working file repository whose files are accessible on the local file system */
+  interface MappableRepository extends WorkingFileRepository, PathMappable {
+  }
+
 }